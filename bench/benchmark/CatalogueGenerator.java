@@ -0,0 +1,363 @@
+package benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+import database.Lookups;
+
+/**
+ * CatalogueGenerator makes copies of scddata.db that are 10, 100 or 1000 times larger, so
+ * the benchmarks and stress tests can be run on a catalogue of the size it may grow to
+ * without downloading anything.
+ *
+ *  -	The schema is read from the file: every table, index, view and trigger is made again
+ * 		in the new file, except the full-text tables, which the application builds again
+ * 		when it opens the file.
+ *
+ * 	-	The lookup tables (see Lookups.TABLES) and tables without an id are copied as they
+ * 		are. Every other table, the entities and the map tables joining them, is copied as
+ * 		many times as the scale, with the ids of each copy and the columns referring to
+ * 		other copied tables moved past the ids of the copies before it. So each copy has
+ * 		the same dance types, formations, steps, publications per dance, recordings per
+ * 		album and so on as the real catalogue. The names of every copy but the first are
+ * 		made from random words of the names of the same table, so searches by title find
+ * 		about as many rows in every copy.
+ *
+ * 	-	A collection is written in the format of ihave.txt for each size asked for, of
+ * 		entries picked at random from the dances, albums, publications and recordings in
+ * 		proportion to their number, a tenth of them with a tag. The application loads
+ * 		ihave.txt the first time it opens the folder.
+ *
+ * Each scale is written to a folder of its own, eg. x10, with scddata.db, ihave-N.txt for
+ * each collection size and ihave.txt, a copy of the first of them. Usage:
+ * 		CatalogueGenerator scddata.db output-folder [-scale 10,100,1000] [-collection 1000] [-seed 1]
+ */
+public class CatalogueGenerator {
+
+	private static final String[] COLLECTION = {"dance", "album", "publication", "recording"};
+	private static final String[] TAGS = {"favourite", "to learn", "class", "ball", "demonstration"};
+	//the columns that refer to person by another name than person_id
+	private static final List<String> PEOPLE = Arrays.asList("devisor_id", "artist_id", "composer_id");
+	private static final int BATCH = 10000;
+
+	private File source;
+	private long seed;
+	private LinkedHashMap<String, Table> tables;
+	private ArrayList<String> schema;
+
+	/**
+	 * A table of the catalogue with its rows
+	 */
+	private static final class Table {
+		final String name;
+		final String definition;
+		final ArrayList<String> columns;
+		final ArrayList<Object[]> rows;
+		boolean scaled;
+		long span;
+		int id;
+		int title;
+		//the table each column refers to, null for a column that is not moved
+		String[] refers;
+		String[] words;
+
+		Table(String name, String definition) {
+			this.name = name;
+			this.definition = definition;
+			columns = new ArrayList<String>();
+			rows = new ArrayList<Object[]>();
+			id = -1;
+			title = -1;
+		}
+	}
+
+	/**
+	 * Constructor for a CatalogueGenerator. The catalogue is read at once.
+	 * @param source - the scddata.db to scale
+	 * @param seed - the seed of the names and collections made, so runs can be repeated
+	 * @throws SQLException
+	 */
+	public CatalogueGenerator(File source, long seed) throws SQLException {
+		this.source = source;
+		this.seed = seed;
+		tables = new LinkedHashMap<String, Table>();
+		schema = new ArrayList<String>();
+		read();
+	}
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 2) {
+			System.out.println("Usage: CatalogueGenerator scddata.db output-folder [-scale 10,100,1000] [-collection 1000] [-seed 1]");
+			return;
+		}
+		int[] scales = {10, 100, 1000};
+		int[] sizes = {1000};
+		long seed = 1;
+		for(int i = 2; i + 1 < args.length; i += 2) {
+			if(args[i].equals("-scale")) scales = ints(args[i + 1]);
+			else if(args[i].equals("-collection")) sizes = ints(args[i + 1]);
+			else if(args[i].equals("-seed")) seed = Long.parseLong(args[i + 1]);
+		}
+		Class.forName("org.sqlite.JDBC");
+		CatalogueGenerator generator = new CatalogueGenerator(new File(args[0]), seed);
+		for(int s = 0; s < scales.length; s++) {
+			File folder = new File(args[1], "x" + scales[s]);
+			long start = System.currentTimeMillis();
+			generator.write(new File(folder, "scddata.db"), scales[s]);
+			for(int c = 0; c < sizes.length; c++) {
+				File file = new File(folder, "ihave-" + sizes[c] + ".txt");
+				generator.writeCollection(file, scales[s], sizes[c]);
+				if(c == 0) Files.copy(file.toPath(), new File(folder, "ihave.txt").toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			System.out.println("Wrote " + folder.getPath() + " in " + (System.currentTimeMillis() - start) + " ms");
+		}
+	}
+
+	/**
+	 * Read the schema and rows of the catalogue
+	 * @throws SQLException
+	 */
+	private void read() throws SQLException {
+		Connection con = DriverManager.getConnection("jdbc:sqlite:" + source.getPath());
+		try {
+			Statement s = con.createStatement();
+			ArrayList<String> virtual = new ArrayList<String>();
+			ResultSet rs = s.executeQuery("SELECT name FROM sqlite_master WHERE type='table' AND sql LIKE 'CREATE VIRTUAL%'");
+			while(rs.next()) {
+				virtual.add(rs.getString(1));
+			}
+			rs.close();
+			rs = s.executeQuery("SELECT type, name, tbl_name, sql FROM sqlite_master WHERE sql IS NOT NULL "
+					+ "AND name NOT LIKE 'sqlite_%' ORDER BY type='table' DESC, rowid");
+			while(rs.next()) {
+				if(derived(rs.getString(3), virtual)) continue;
+				if(rs.getString(1).equals("table")) tables.put(rs.getString(2), new Table(rs.getString(2), rs.getString(4)));
+				else schema.add(rs.getString(4));
+			}
+			rs.close();
+			for(Table t : tables.values()) {
+				rs = s.executeQuery("SELECT * FROM " + t.name);
+				ResultSetMetaData md = rs.getMetaData();
+				for(int i = 1; i <= md.getColumnCount(); i++) {
+					t.columns.add(md.getColumnName(i).toLowerCase());
+				}
+				while(rs.next()) {
+					Object[] row = new Object[t.columns.size()];
+					for(int i = 0; i < row.length; i++) {
+						row[i] = rs.getObject(i + 1);
+					}
+					t.rows.add(row);
+				}
+				rs.close();
+				t.id = t.columns.indexOf("id");
+				t.scaled = t.name.endsWith("map") || (t.id >= 0 && !Arrays.asList(Lookups.TABLES).contains(t.name));
+				for(Object[] row : t.rows) {
+					if(t.id >= 0 && row[t.id] instanceof Number) t.span = Math.max(t.span, ((Number) row[t.id]).longValue());
+				}
+			}
+			s.close();
+		} finally {
+			con.close();
+		}
+		for(Table t : tables.values()) {
+			t.refers = new String[t.columns.size()];
+			for(int i = 0; i < t.refers.length; i++) {
+				String refers = references(t.columns.get(i));
+				if(refers != null && tables.containsKey(refers) && tables.get(refers).scaled) t.refers[i] = refers;
+			}
+			if(t.scaled && t.id >= 0) {
+				t.title = t.columns.indexOf("name");
+				if(t.title >= 0) t.words = words(t);
+			}
+		}
+	}
+
+	/**
+	 * Write the catalogue at a scale to a new file, replacing the file and the collection
+	 * files next to it if they exist
+	 * @param file - the new scddata.db
+	 * @param scale - the number of copies of each scaled table
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public void write(File file, int scale) throws SQLException, IOException {
+		File folder = file.getAbsoluteFile().getParentFile();
+		Files.createDirectories(folder.toPath());
+		for(String name : new String[] {file.getName(), file.getName() + "-wal", file.getName() + "-shm", file.getName() + "-journal",
+				"collection.db", "collection.db-wal", "collection.db-shm", "collection.journal", "collection.snapshot"}) {
+			Files.deleteIfExists(new File(folder, name).toPath());
+		}
+		Connection con = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+		try {
+			Statement s = con.createStatement();
+			s.execute("PRAGMA journal_mode=OFF");
+			s.execute("PRAGMA synchronous=OFF");
+			con.setAutoCommit(false);
+			for(Table t : tables.values()) {
+				s.execute(t.definition);
+				insert(con, t, t.scaled ? scale : 1);
+				con.commit();
+			}
+			//indexes are made once the rows are in, which is faster than keeping them up to date
+			for(String sql : schema) {
+				s.execute(sql);
+			}
+			con.commit();
+			s.close();
+		} finally {
+			con.close();
+		}
+	}
+
+	/**
+	 * Insert the copies of a table's rows
+	 * @param con - the new file
+	 * @param t - the table
+	 * @param copies - the number of copies
+	 * @throws SQLException
+	 */
+	private void insert(Connection con, Table t, int copies) throws SQLException {
+		StringBuilder sql = new StringBuilder("INSERT INTO " + t.name + "(");
+		StringBuilder values = new StringBuilder();
+		for(int i = 0; i < t.columns.size(); i++) {
+			sql.append((i > 0) ? ", " : "").append(t.columns.get(i));
+			values.append((i > 0) ? ", ?" : "?");
+		}
+		sql.append(") VALUES(").append(values).append(")");
+		PreparedStatement ps = con.prepareStatement(sql.toString());
+		try {
+			int batched = 0;
+			for(int c = 0; c < copies; c++) {
+				Random random = new Random(seed * 31 + t.name.hashCode() * 1000003L + c);
+				for(Object[] row : t.rows) {
+					for(int i = 0; i < row.length; i++) {
+						Object value = row[i];
+						if(c > 0 && value instanceof Number) {
+							if(i == t.id) value = ((Number) value).longValue() + c * t.span;
+							else if(t.refers[i] != null) value = ((Number) value).longValue() + c * tables.get(t.refers[i]).span;
+						}
+						if(c > 0 && i == t.title && value instanceof String) value = name((String) value, t.words, random);
+						ps.setObject(i + 1, value);
+					}
+					ps.addBatch();
+					if(++batched % BATCH == 0) ps.executeBatch();
+				}
+			}
+			ps.executeBatch();
+		} finally {
+			ps.close();
+		}
+	}
+
+	/**
+	 * Write a collection of the catalogue at a scale in the format of ihave.txt
+	 * @param file - the file
+	 * @param scale - the scale the catalogue was written at
+	 * @param size - the number of entries, at most every dance, album, publication and recording
+	 * @throws IOException
+	 */
+	public void writeCollection(File file, int scale, int size) throws IOException {
+		long[] counts = new long[COLLECTION.length];
+		long total = 0;
+		for(int i = 0; i < COLLECTION.length; i++) {
+			Table t = tables.get(COLLECTION[i]);
+			counts[i] = (t == null) ? 0 : (long) t.rows.size() * scale;
+			total += counts[i];
+		}
+		Random random = new Random(seed * 31 + size);
+		HashSet<Long> picked = new HashSet<Long>();
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			while(picked.size() < Math.min(size, total)) {
+				long n = (long) (random.nextDouble() * total);
+				if(!picked.add(n)) continue;
+				int i = 0;
+				while(n >= counts[i]) {
+					n -= counts[i++];
+				}
+				Table t = tables.get(COLLECTION[i]);
+				int copy = (int) (n / t.rows.size());
+				long id = ((Number) t.rows.get((int) (n % t.rows.size()))[t.id]).longValue() + copy * t.span;
+				out.write(t.name + " " + id);
+				if(random.nextInt(10) == 0) out.write(" " + TAGS[random.nextInt(TAGS.length)]);
+				out.write("\n");
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * The table a column refers to
+	 * @param column - the name of the column
+	 * @return the table, or null if it is not a reference
+	 */
+	private static String references(String column) {
+		if(PEOPLE.contains(column)) return "person";
+		if(column.endsWith("_id")) return column.substring(0, column.length() - 3);
+		return null;
+	}
+
+	/**
+	 * The words of the names of a table
+	 */
+	private static String[] words(Table t) {
+		ArrayList<String> words = new ArrayList<String>();
+		for(Object[] row : t.rows) {
+			if(row[t.title] instanceof String) words.addAll(Arrays.asList(((String) row[t.title]).trim().split("\\s+")));
+		}
+		words.removeAll(Arrays.asList(""));
+		return words.isEmpty() ? null : words.toArray(new String[words.size()]);
+	}
+
+	/**
+	 * A name of as many random words as the name it replaces
+	 */
+	private static String name(String name, String[] words, Random random) {
+		if(words == null) return name;
+		int n = name.trim().split("\\s+").length;
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < n; i++) {
+			sb.append((i > 0) ? " " : "").append(words[random.nextInt(words.length)]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Check if a table belongs to a full-text table, as the table itself or one of the
+	 * tables it keeps its index in
+	 */
+	private static boolean derived(String table, List<String> virtual) {
+		for(String v : virtual) {
+			if(table.equals(v) || table.startsWith(v + "_")) return true;
+		}
+		return false;
+	}
+
+	private static int[] ints(String list) {
+		String[] parts = list.split(",");
+		int[] values = new int[parts.length];
+		for(int i = 0; i < parts.length; i++) {
+			values[i] = Integer.parseInt(parts[i].trim());
+		}
+		return values;
+	}
+}
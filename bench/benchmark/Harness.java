@@ -0,0 +1,213 @@
+package benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Harness runs benchmarks the way JMH does in its average time mode: each one is run for a
+ * number of warmup iterations whose times are thrown away, then for a number of measured
+ * iterations of a fixed length, and its score is the mean time of one run in microseconds.
+ * The error is half the width of the 99.9% confidence interval of the iterations' scores.
+ *
+ * The results are written as JSON in the format JMH writes with -rf json, so they can be
+ * compared between revisions with the tools made for JMH's results.
+ */
+public class Harness {
+
+	/**
+	 * The code that is measured
+	 */
+	public interface Operation {
+		void run() throws Exception;
+	}
+
+	//the 99.95th percentile of Student's t distribution for 1 to 30 degrees of freedom
+	private static final double[] T = {636.62, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+			4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+			3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646};
+
+	private int warmups;
+	private int iterations;
+	private long millis;
+	private Pattern include;
+	private ArrayList<String> json;
+	private long sink;
+
+	/**
+	 * Constructor for a Harness
+	 * @param warmups - number of warmup iterations
+	 * @param iterations - number of measured iterations
+	 * @param millis - length of each iteration in milliseconds
+	 * @param include - only benchmarks whose name and params match are run, null for all
+	 */
+	public Harness(int warmups, int iterations, long millis, Pattern include) {
+		this.warmups = warmups;
+		this.iterations = iterations;
+		this.millis = millis;
+		this.include = include;
+		json = new ArrayList<String>();
+	}
+
+	/**
+	 * Run a benchmark and keep its result
+	 * @param name - the name of the benchmark, eg. benchmark.QueryBenchmark.searchTableByName
+	 * @param params - the values of its parameters, in order
+	 * @param op - the code that is measured
+	 */
+	public void run(String name, LinkedHashMap<String, String> params, Operation op) {
+		String label = name + " " + params;
+		if(include != null && !include.matcher(label).find()) return;
+		System.out.println("# Benchmark: " + label);
+		try {
+			for(int i = 0; i < warmups; i++) {
+				System.out.println("# Warmup Iteration " + (i + 1) + ": " + format(iteration(op)) + " us/op");
+			}
+			double[] scores = new double[iterations];
+			for(int i = 0; i < iterations; i++) {
+				scores[i] = iteration(op);
+				System.out.println("Iteration " + (i + 1) + ": " + format(scores[i]) + " us/op");
+			}
+			double mean = mean(scores);
+			double error = error(scores, mean);
+			System.out.println("Result: " + format(mean) + " +- " + format(error) + " us/op\n");
+			json.add(json(name, params, scores, mean, error));
+		} catch(Exception e) {
+			System.out.println("Failed: " + e + "\n");
+		}
+	}
+
+	/**
+	 * Run the operation for one iteration
+	 * @param op - the code that is measured
+	 * @return mean time of a run in microseconds
+	 * @throws Exception
+	 */
+	private double iteration(Operation op) throws Exception {
+		long start = System.nanoTime();
+		long end = start + millis * 1000000;
+		long runs = 0;
+		long now;
+		do {
+			op.run();
+			runs++;
+			now = System.nanoTime();
+		} while(now < end);
+		return (now - start) / 1000.0 / runs;
+	}
+
+	/**
+	 * Keep a value the benchmark computed, so the code that computed it cannot be left out
+	 * @param value - any value
+	 */
+	public void consume(long value) {
+		sink += value;
+	}
+
+	/**
+	 * Write the results of every benchmark run so far
+	 * @param file - the JSON file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			out.write("[\n");
+			for(int i = 0; i < json.size(); i++) {
+				out.write(json.get(i));
+				out.write((i < json.size() - 1) ? ",\n" : "\n");
+			}
+			out.write("]\n");
+		} finally {
+			out.close();
+		}
+		//so the sink is read and the computations feeding it are kept
+		if(sink == 42) System.out.println();
+	}
+
+	/**
+	 * The result of a benchmark in JMH's format
+	 */
+	private String json(String name, LinkedHashMap<String, String> params, double[] scores, double mean, double error) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("    {\n");
+		sb.append("        \"jmhVersion\" : \"none\",\n");
+		sb.append("        \"benchmark\" : ").append(quote(name)).append(",\n");
+		sb.append("        \"mode\" : \"avgt\",\n");
+		sb.append("        \"threads\" : 1,\n");
+		sb.append("        \"forks\" : 0,\n");
+		sb.append("        \"jdkVersion\" : ").append(quote(System.getProperty("java.version"))).append(",\n");
+		sb.append("        \"vmName\" : ").append(quote(System.getProperty("java.vm.name"))).append(",\n");
+		sb.append("        \"warmupIterations\" : ").append(warmups).append(",\n");
+		sb.append("        \"warmupTime\" : \"").append(millis).append(" ms\",\n");
+		sb.append("        \"measurementIterations\" : ").append(iterations).append(",\n");
+		sb.append("        \"measurementTime\" : \"").append(millis).append(" ms\",\n");
+		sb.append("        \"params\" : {");
+		int n = 0;
+		for(Map.Entry<String, String> e : params.entrySet()) {
+			sb.append((n++ > 0) ? ", " : "").append(quote(e.getKey())).append(" : ").append(quote(e.getValue()));
+		}
+		sb.append("},\n");
+		sb.append("        \"primaryMetric\" : {\n");
+		sb.append("            \"score\" : ").append(mean).append(",\n");
+		sb.append("            \"scoreError\" : ").append(error).append(",\n");
+		sb.append("            \"scoreConfidence\" : [").append(mean - error).append(", ").append(mean + error).append("],\n");
+		sb.append("            \"scoreUnit\" : \"us/op\",\n");
+		sb.append("            \"rawData\" : [[");
+		for(int i = 0; i < scores.length; i++) {
+			sb.append((i > 0) ? ", " : "").append(scores[i]);
+		}
+		sb.append("]]\n");
+		sb.append("        },\n");
+		sb.append("        \"secondaryMetrics\" : {}\n");
+		sb.append("    }");
+		return sb.toString();
+	}
+
+	/**
+	 * A string as a JSON string
+	 */
+	private static String quote(String s) {
+		StringBuilder sb = new StringBuilder("\"");
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if(c == '"' || c == '\\') sb.append('\\').append(c);
+			else if(c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+			else sb.append(c);
+		}
+		return sb.append('"').toString();
+	}
+
+	private static double mean(double[] scores) {
+		double total = 0;
+		for(int i = 0; i < scores.length; i++) {
+			total += scores[i];
+		}
+		return total / scores.length;
+	}
+
+	/**
+	 * Half the width of the 99.9% confidence interval of the mean
+	 */
+	private static double error(double[] scores, double mean) {
+		if(scores.length < 2) return Double.NaN;
+		double squares = 0;
+		for(int i = 0; i < scores.length; i++) {
+			squares += (scores[i] - mean) * (scores[i] - mean);
+		}
+		double deviation = Math.sqrt(squares / (scores.length - 1));
+		int df = scores.length - 1;
+		double t = (df <= T.length) ? T[df - 1] : 3.291;
+		return t * deviation / Math.sqrt(scores.length);
+	}
+
+	private static String format(double value) {
+		return String.format("%.3f", value);
+	}
+}
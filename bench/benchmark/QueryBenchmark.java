@@ -0,0 +1,325 @@
+package benchmark;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import database.Database;
+import tables.RecordTable;
+
+/**
+ * QueryBenchmark measures the query layer against a fixed copy of scddata.db, so runs on
+ * different revisions can be compared. The copy is opened from a temporary folder, so the
+ * indexes and collection files made when it is opened do not change it.
+ *
+ *  -	searchTableByName on every table with an empty, a short and a long title, and
+ * 		advancedTableSearch on every table with no filter, each filter on its own and every
+ * 		filter at once, on both the sql and the in-memory engine. The result cache is off.
+ *
+ * 	-	Every lookup CellInfo makes to show an entry, on an entry from the middle of its table.
+ *
+ * 	-	RecordTable.populate making the Records of a whole table.
+ *
+ * Every benchmark reads its results to the end. Usage:
+ * 		QueryBenchmark scddata.db [-wi warmups] [-i iterations] [-r millis] [-f regex] [-o results.json]
+ */
+public class QueryBenchmark {
+
+	private static final String NAME = QueryBenchmark.class.getName();
+	private static final String[] TABLES = {"dance", "album", "publication", "recording"};
+	private static final String[] STATES = {"d", "a", "p", "r"};
+
+	private Database db;
+	private Harness harness;
+
+	public QueryBenchmark(Database db, Harness harness) {
+		this.db = db;
+		this.harness = harness;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if(args.length == 0) {
+			System.out.println("Usage: QueryBenchmark scddata.db [-wi warmups] [-i iterations] [-r millis] [-f regex] [-o results.json]");
+			return;
+		}
+		int warmups = 3, iterations = 5;
+		long millis = 1000;
+		Pattern include = null;
+		File output = new File("bench-results.json");
+		for(int i = 1; i + 1 < args.length; i += 2) {
+			if(args[i].equals("-wi")) warmups = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-i")) iterations = Integer.parseInt(args[i + 1]);
+			else if(args[i].equals("-r")) millis = Long.parseLong(args[i + 1]);
+			else if(args[i].equals("-f")) include = Pattern.compile(args[i + 1]);
+			else if(args[i].equals("-o")) output = new File(args[i + 1]);
+		}
+		File folder = Files.createTempDirectory("scddata-bench").toFile();
+		Files.copy(new File(args[0]).toPath(), new File(folder, "scddata.db").toPath(), StandardCopyOption.REPLACE_EXISTING);
+		Database db = new Database(folder);
+		try {
+			Harness harness = new Harness(warmups, iterations, millis, include);
+			QueryBenchmark benchmark = new QueryBenchmark(db, harness);
+			db.useResultCache(false);
+			for(String engine : new String[] {"sql", "memory"}) {
+				db.useMemoryEngine(engine.equals("memory"));
+				benchmark.searches(engine);
+			}
+			db.useMemoryEngine(false);
+			benchmark.lookups();
+			benchmark.populate();
+			harness.write(output);
+			System.out.println("Results written to " + output.getPath());
+		} finally {
+			db.close();
+			for(File f : folder.listFiles()) {
+				f.delete();
+			}
+			folder.delete();
+		}
+	}
+
+	/**
+	 * Benchmark searchTableByName and advancedTableSearch on every table
+	 * @param engine - the name of the engine the searches go to
+	 * @throws SQLException
+	 */
+	public void searches(String engine) throws SQLException {
+		for(final String table : TABLES) {
+			String name = middle(table, "name");
+			String[] titles = {"", name.substring(0, Math.min(2, name.length())), name};
+			String[] lengths = {"empty", "short", "long"};
+			for(int i = 0; i < titles.length; i++) {
+				final String title = titles[i];
+				harness.run(NAME + ".searchTableByName", params("engine", engine, "table", table, "title", lengths[i]),
+						new Harness.Operation() {
+					@Override
+					public void run() throws Exception {
+						consume(db.searchTableByName(table, title, false));
+					}
+				});
+			}
+			LinkedHashMap<String, String> values = filters(table);
+			LinkedHashMap<String, LinkedHashMap<String, String>> combinations = new LinkedHashMap<String, LinkedHashMap<String, String>>();
+			combinations.put("none", empty(values));
+			for(String key : values.keySet()) {
+				LinkedHashMap<String, String> one = empty(values);
+				one.put(key, values.get(key));
+				combinations.put(key, one);
+			}
+			combinations.put("all", values);
+			for(Map.Entry<String, LinkedHashMap<String, String>> e : combinations.entrySet()) {
+				final Map<String, String> map = e.getValue();
+				harness.run(NAME + ".advancedTableSearch", params("engine", engine, "table", table, "filters", e.getKey()),
+						new Harness.Operation() {
+					@Override
+					public void run() throws Exception {
+						consume(db.advancedTableSearch(table, "", map, false));
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Benchmark the lookups CellInfo makes for each type of entry
+	 * @throws SQLException
+	 */
+	public void lookups() throws SQLException {
+		final int dance = id("dance"), album = id("album"), publication = id("publication");
+		final int recording = id("recording"), person = id("person"), tune = id("tune");
+		for(final String table : TABLES) {
+			final int id = id(table);
+			harness.run(NAME + ".getAllByIdFromTable", params("table", table), new Harness.Operation() {
+				@Override
+				public void run() throws Exception {
+					consume(db.getAllByIdFromTable(table, id));
+				}
+			});
+		}
+		lookup("getRecordingsByAlbum", new Harness.Operation() {
+			@Override
+			public void run() throws Exception { consume(db.getRecordingsByAlbum(album)); }
+		});
+		lookup("getFormationsByDance", new Harness.Operation() {
+			@Override
+			public void run() throws Exception { consume(db.getFormationsByDance(dance)); }
+		});
+		lookup("getStepsByDance", new Harness.Operation() {
+			@Override
+			public void run() throws Exception { consume(db.getStepsByDance(dance)); }
+		});
+		lookup("getPublicationsByDance", new Harness.Operation() {
+			@Override
+			public void run() throws Exception { consume(db.getPublicationsByDance(dance)); }
+		});
+		lookup("getTunesByDance", new Harness.Operation() {
+			@Override
+			public void run() throws Exception { consume(db.getTunesByDance(dance)); }
+		});
+		lookup("getRecordingsByDance", new Harness.Operation() {
+			@Override
+			public void run() throws Exception { consume(db.getRecordingsByDance(dance)); }
+		});
+		lookup("getDancesByPerson", new Harness.Operation() {
+			@Override
+			public void run() throws Exception { consume(db.getDancesByPerson(person)); }
+		});
+		lookup("getPublicationsByPerson", new Harness.Operation() {
+			@Override
+			public void run() throws Exception { consume(db.getPublicationsByPerson(person)); }
+		});
+		lookup("getTunesByPerson", new Harness.Operation() {
+			@Override
+			public void run() throws Exception { consume(db.getTunesByPerson(person)); }
+		});
+		lookup("getRecordingsByPerson", new Harness.Operation() {
+			@Override
+			public void run() throws Exception { consume(db.getRecordingsByPerson(person)); }
+		});
+		lookup("getAlbumsByPerson", new Harness.Operation() {
+			@Override
+			public void run() throws Exception { consume(db.getAlbumsByPerson(person)); }
+		});
+		lookup("getDancesByPublication", new Harness.Operation() {
+			@Override
+			public void run() throws Exception { consume(db.getDancesByPublication(publication)); }
+		});
+		lookup("getTunesByPublication", new Harness.Operation() {
+			@Override
+			public void run() throws Exception { consume(db.getTunesByPublication(publication)); }
+		});
+		lookup("getAlbumByRecording", new Harness.Operation() {
+			@Override
+			public void run() throws Exception { consume(db.getAlbumByRecording(recording)); }
+		});
+		lookup("getTunesByRecording", new Harness.Operation() {
+			@Override
+			public void run() throws Exception { consume(db.getTunesByRecording(recording)); }
+		});
+		lookup("getDancesByTune", new Harness.Operation() {
+			@Override
+			public void run() throws Exception { consume(db.getDancesByTune(tune)); }
+		});
+		lookup("getRecordingsByTune", new Harness.Operation() {
+			@Override
+			public void run() throws Exception { consume(db.getRecordingsByTune(tune)); }
+		});
+	}
+
+	/**
+	 * Benchmark making the Records of every row of each table, as the tables do after a search
+	 */
+	public void populate() {
+		for(int i = 0; i < TABLES.length; i++) {
+			final String table = TABLES[i];
+			final String state = STATES[i];
+			harness.run(NAME + ".populate", params("table", table), new Harness.Operation() {
+				@Override
+				public void run() throws Exception {
+					ResultSet rs = db.searchTableByName(table, "", false);
+					harness.consume(RecordTable.populate(rs, RecordTable.columns(state).values()).size());
+					rs.close();
+				}
+			});
+		}
+	}
+
+	private void lookup(String method, Harness.Operation op) {
+		harness.run(NAME + "." + method, params(), op);
+	}
+
+	/**
+	 * Read the results to the end and close them
+	 * @param rs - the results
+	 * @throws SQLException
+	 */
+	private void consume(ResultSet rs) throws SQLException {
+		long n = 0;
+		while(rs.next()) {
+			n += rs.getInt("id");
+		}
+		rs.close();
+		harness.consume(n);
+	}
+
+	/**
+	 * The filters of the advanced search of a table as the filter panes name them, with a
+	 * value from the data for each
+	 * @param table - the table
+	 * @return map of filter to value
+	 * @throws SQLException
+	 */
+	private LinkedHashMap<String, String> filters(String table) throws SQLException {
+		LinkedHashMap<String, String> map = new LinkedHashMap<String, String>();
+		if(table.equals("dance")) {
+			map.put("type", first("SELECT name FROM dancetype ORDER BY id"));
+			map.put("bars", "=32");
+			map.put("couples", first("SELECT name FROM couples ORDER BY id"));
+			map.put("shape", first("SELECT name FROM shape ORDER BY id"));
+			map.put("author", "e");
+			map.put("formation", first("SELECT name FROM formation ORDER BY id") + "~");
+			map.put("steps", first("SELECT name FROM step ORDER BY id") + "~");
+			map.put("RSCDS", "1");
+		} else if(table.equals("recording")) {
+			map.put("type", first("SELECT name FROM dancetype ORDER BY id"));
+			map.put("medleytype", first("SELECT description FROM medleytype ORDER BY id"));
+			map.put("repetitions", "=8");
+			map.put("bars", "=32");
+		} else if(table.equals("album")) {
+			map.put("artist_id", "e");
+			map.put("productionyear", first("SELECT productionyear FROM album WHERE productionyear IS NOT NULL ORDER BY id"));
+		} else {
+			map.put("author", "e");
+			map.put("RSCDS", "1");
+		}
+		return map;
+	}
+
+	/**
+	 * The filters as the panes have them before anything is chosen
+	 */
+	private static LinkedHashMap<String, String> empty(LinkedHashMap<String, String> filters) {
+		LinkedHashMap<String, String> map = new LinkedHashMap<String, String>();
+		for(String key : filters.keySet()) {
+			map.put(key, key.equals("RSCDS") ? "0" : "");
+		}
+		return map;
+	}
+
+	/**
+	 * The id of the row in the middle of a table
+	 */
+	private int id(String table) throws SQLException {
+		return Integer.parseInt(middle(table, "id"));
+	}
+
+	/**
+	 * A column of the row in the middle of a table, by id
+	 */
+	private String middle(String table, String column) throws SQLException {
+		return first("SELECT " + column + " FROM " + table + " ORDER BY id LIMIT 1 OFFSET (SELECT count(*) / 2 FROM " + table + ")");
+	}
+
+	/**
+	 * The first column of the first row of a query, empty if there is none
+	 */
+	private String first(String sql) throws SQLException {
+		ResultSet rs = db.doQuery(sql);
+		String value = rs.next() ? rs.getString(1) : null;
+		rs.close();
+		return (value == null) ? "" : value;
+	}
+
+	private static LinkedHashMap<String, String> params(String... pairs) {
+		LinkedHashMap<String, String> params = new LinkedHashMap<String, String>();
+		for(int i = 0; i + 1 < pairs.length; i += 2) {
+			params.put(pairs[i], pairs[i + 1]);
+		}
+		return params;
+	}
+}
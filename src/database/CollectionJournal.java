@@ -0,0 +1,400 @@
+package database;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.zip.CRC32;
+
+/**
+ * CollectionJournal keeps a copy of the collection outside the sqlite files, so it can be
+ * restored if the collection file is lost or damaged. It replaces the ihave.txt the
+ * collection used to be saved to before every update.
+ *
+ *  -	Every change to the collection is appended to the journal as one line, through a
+ * 		buffered writer that stays open, so a change costs one small write instead of
+ * 		rewriting a file. Each line has a sequence number and a CRC32 of its fields, and
+ * 		lines that do not match their checksum, such as one cut off by a crash, are skipped.
+ *
+ * 	-	Once the journal has COMPACT_AFTER lines, the whole collection is written to a
+ * 		snapshot file in the background and the lines it covers are dropped from the journal,
+ * 		so the journal never grows past a few hundred kilobytes however long it is used.
+ *
+ * The journal is only read when the collection has to be restored: the snapshot and the
+ * lines after it are then applied in one transaction.
+ */
+class CollectionJournal {
+
+	public static final int COMPACT_AFTER = 1000;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String NULL = "\\N";
+
+	private File journal;
+	private File snapshot;
+	private Writer out;
+	private long last;
+	private int lines;
+	private boolean compacting;
+
+	/**
+	 * A change as it was written to the journal
+	 */
+	static final class Change {
+		final String table;
+		final int id;
+		final String column;
+		final String value;
+
+		Change(String table, int id, String column, String value) {
+			this.table = table;
+			this.id = id;
+			this.column = column;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * A row of the collection as it was written to the snapshot
+	 */
+	static final class Item {
+		final String type;
+		final int id;
+		final int ihave;
+		final String tag;
+
+		Item(String type, int id, int ihave, String tag) {
+			this.type = type;
+			this.id = id;
+			this.ihave = ihave;
+			this.tag = tag;
+		}
+	}
+
+	/**
+	 * Constructor for a CollectionJournal. The files are not read until they are needed.
+	 * @param journal - the file the changes are appended to
+	 * @param snapshot - the file the whole collection is written to when the journal is compacted
+	 */
+	CollectionJournal(File journal, File snapshot) {
+		this.journal = journal;
+		this.snapshot = snapshot;
+		last = -1;
+	}
+
+	/**
+	 * Check if there is anything to restore the collection from
+	 * @return true if the snapshot or the journal exists
+	 */
+	boolean exists() {
+		return snapshot.exists() || journal.exists();
+	}
+
+	/**
+	 * Check if the collection has been written to a snapshot yet
+	 * @return true if the snapshot exists
+	 */
+	boolean hasSnapshot() {
+		return snapshot.exists();
+	}
+
+	/**
+	 * Append a change to the journal for each id, flushing once they are all written
+	 * @param table - the type (album, recording, publication, or dance)
+	 * @param ids - the ids
+	 * @param column - ihave or tag
+	 * @param value - the value they were set to, or null
+	 * @throws IOException
+	 */
+	synchronized void append(String table, Collection<Integer> ids, String column, Object value) throws IOException {
+		open();
+		for(Integer id : ids) {
+			last++;
+			out.write(line("E", Long.toString(last), table, id.toString(), column,
+					(value == null) ? null : value.toString()));
+			lines++;
+		}
+		out.flush();
+	}
+
+	/**
+	 * Check if the journal has grown enough to be compacted
+	 * @return true once it has COMPACT_AFTER lines
+	 */
+	synchronized boolean isFull() {
+		return lines >= COMPACT_AFTER;
+	}
+
+	/**
+	 * Mark a compaction as started
+	 * @return false if one is already running
+	 */
+	synchronized boolean beginCompaction() {
+		if(compacting) return false;
+		compacting = true;
+		return true;
+	}
+
+	/**
+	 * Mark the running compaction as finished
+	 */
+	synchronized void endCompaction() {
+		compacting = false;
+	}
+
+	/**
+	 * The sequence number of the last change appended
+	 * @return long, -1 if there has been none
+	 * @throws IOException
+	 */
+	synchronized long getLast() throws IOException {
+		open();
+		return last;
+	}
+
+	/**
+	 * Write the collection to the snapshot and drop the changes it covers from the journal.
+	 * The snapshot is written to a file of its own and renamed over the old one, so a crash
+	 * leaves either the old snapshot or the new one.
+	 * @param items - every row of the collection
+	 * @param upTo - the sequence number of the last change the rows include
+	 * @throws IOException
+	 */
+	void compact(ArrayList<Item> items, long upTo) throws IOException {
+		File temp = new File(snapshot.getPath() + ".tmp");
+		Writer w = writer(temp, false);
+		try {
+			w.write(line("S", Long.toString(upTo)));
+			for(int i = 0; i < items.size(); i++) {
+				Item item = items.get(i);
+				w.write(line("I", item.type, Integer.toString(item.id), Integer.toString(item.ihave), item.tag));
+			}
+		} finally {
+			w.close();
+		}
+		Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		synchronized(this) {
+			open();
+			out.close();
+			out = null;
+			rewrite(upTo);
+			open();
+		}
+	}
+
+	/**
+	 * Read the snapshot
+	 * @param items - the rows of the snapshot are added to it
+	 * @return the sequence number of the last change the snapshot includes, -1 if there is none
+	 * @throws IOException
+	 */
+	long readSnapshot(ArrayList<Item> items) throws IOException {
+		if(!snapshot.exists()) return -1;
+		ArrayList<String[]> records = read(snapshot);
+		if(records.isEmpty() || !records.get(0)[0].equals("S")) return -1;
+		for(int i = 1; i < records.size(); i++) {
+			String[] f = records.get(i);
+			if(f[0].equals("I") && f.length == 5) {
+				items.add(new Item(f[1], Integer.parseInt(f[2]), Integer.parseInt(f[3]), f[4]));
+			}
+		}
+		return Long.parseLong(records.get(0)[1]);
+	}
+
+	/**
+	 * The sequence number of the last change the snapshot includes, from its first line
+	 * @return long, -1 if there is no snapshot
+	 * @throws IOException
+	 */
+	private long snapshotLast() throws IOException {
+		if(!snapshot.exists()) return -1;
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(snapshot), UTF8));
+		try {
+			String[] f = fields(in.readLine());
+			return (f != null && f[0].equals("S")) ? Long.parseLong(f[1]) : -1;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Read the changes of the journal after the given one
+	 * @param after - the sequence number of the last change that is not wanted
+	 * @return the changes in the order they were made
+	 * @throws IOException
+	 */
+	synchronized ArrayList<Change> readChanges(long after) throws IOException {
+		ArrayList<Change> changes = new ArrayList<Change>();
+		if(!journal.exists()) return changes;
+		ArrayList<String[]> records = read(journal);
+		for(int i = 0; i < records.size(); i++) {
+			String[] f = records.get(i);
+			if(f[0].equals("E") && f.length == 6 && Long.parseLong(f[1]) > after) {
+				changes.add(new Change(f[2], Integer.parseInt(f[3]), f[4], f[5]));
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * Open the journal for appending the first time it is needed, finding the last sequence
+	 * number and dropping any damaged lines so new ones are not appended to a cut off line
+	 * @throws IOException
+	 */
+	private void open() throws IOException {
+		if(out != null) return;
+		if(last < 0) last = snapshotLast();
+		rewrite(-1);
+		out = writer(journal, true);
+	}
+
+	/**
+	 * Write the journal again with only its sound lines after the given change, and count them
+	 * @param after - the sequence number of the last change to drop
+	 * @throws IOException
+	 */
+	private void rewrite(long after) throws IOException {
+		lines = 0;
+		if(!journal.exists()) return;
+		ArrayList<String[]> records = read(journal);
+		File temp = new File(journal.getPath() + ".tmp");
+		Writer w = writer(temp, false);
+		try {
+			for(int i = 0; i < records.size(); i++) {
+				String[] f = records.get(i);
+				if(!f[0].equals("E") || f.length != 6) continue;
+				long seq = Long.parseLong(f[1]);
+				last = Math.max(last, seq);
+				if(seq <= after) continue;
+				w.write(line(f));
+				lines++;
+			}
+		} finally {
+			w.close();
+		}
+		Files.move(temp.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Read the lines of a journal or snapshot whose checksum matches
+	 * @param file - the file
+	 * @return the fields of each sound line
+	 * @throws IOException
+	 */
+	private static ArrayList<String[]> read(File file) throws IOException {
+		ArrayList<String[]> records = new ArrayList<String[]>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+		try {
+			String s;
+			while((s = in.readLine()) != null) {
+				String[] f = fields(s);
+				if(f != null) records.add(f);
+			}
+		} finally {
+			in.close();
+		}
+		return records;
+	}
+
+	/**
+	 * The fields of one line, if its checksum matches
+	 * @param s - the line, or null
+	 * @return the fields, null if the line is damaged or missing
+	 */
+	private static String[] fields(String s) {
+		if(s == null) return null;
+		int tab = s.lastIndexOf('\t');
+		if(tab < 0 || !s.substring(tab + 1).equals(checksum(s.substring(0, tab)))) return null;
+		String[] f = s.substring(0, tab).split("\t", -1);
+		for(int i = 0; i < f.length; i++) {
+			f[i] = unescape(f[i]);
+		}
+		return f;
+	}
+
+	/**
+	 * One line of a journal or snapshot: the fields separated by tabs, then their checksum
+	 * @param fields - the fields, which may be null
+	 * @return the line with its line break
+	 */
+	private static String line(String... fields) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < fields.length; i++) {
+			if(i > 0) sb.append('\t');
+			sb.append(escape(fields[i]));
+		}
+		String s = sb.toString();
+		return s + "\t" + checksum(s) + "\n";
+	}
+
+	/**
+	 * The CRC32 of a line's fields
+	 * @param s - the fields as written
+	 * @return the checksum in hex
+	 */
+	private static String checksum(String s) {
+		CRC32 crc = new CRC32();
+		crc.update(s.getBytes(UTF8));
+		return Long.toHexString(crc.getValue());
+	}
+
+	/**
+	 * Escape the characters that separate fields and lines
+	 * @param s - the value, or null
+	 * @return String
+	 */
+	private static String escape(String s) {
+		if(s == null) return NULL;
+		return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	/**
+	 * Undo escape
+	 * @param s - the value as written
+	 * @return the value, or null
+	 */
+	private static String unescape(String s) {
+		if(s.equals(NULL)) return null;
+		if(s.indexOf('\\') < 0) return s;
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if(c == '\\' && i + 1 < s.length()) {
+				char n = s.charAt(++i);
+				sb.append(n == 't' ? '\t' : n == 'n' ? '\n' : n == 'r' ? '\r' : n);
+			}
+			else sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * A buffered UTF-8 writer on a file
+	 * @param file - the file
+	 * @param append - true to add to the end of the file
+	 * @return Writer
+	 * @throws IOException
+	 */
+	private static Writer writer(File file, boolean append) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), UTF8));
+	}
+
+	/**
+	 * Close the journal
+	 * @throws IOException
+	 */
+	synchronized void close() throws IOException {
+		if(out != null) out.close();
+		out = null;
+	}
+}
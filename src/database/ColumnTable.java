@@ -0,0 +1,240 @@
+package database;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * ColumnTable holds a whole table in memory column by column. Columns whose values are all
+ * whole numbers are stored as int arrays, every other column as an int array of codes into a
+ * StringDictionary of its own. Rows can be looked up by their id without searching.
+ *
+ * A ColumnTable is never changed once loaded; update returns a new one that shares the
+ * columns that did not change, so readers can keep using the old one meanwhile.
+ */
+class ColumnTable {
+
+	public static final int NULL = Integer.MIN_VALUE;
+
+	private String[] columns;
+	private int[][] data;
+	private StringDictionary[] dictionaries;
+	private int rows;
+	private int[] rowOfId;
+
+	private ColumnTable(String[] columns, int[][] data, StringDictionary[] dictionaries, int rows) {
+		this.columns = columns;
+		this.data = data;
+		this.dictionaries = dictionaries;
+		this.rows = rows;
+		indexIds();
+	}
+
+	/**
+	 * Read every row of the results into a ColumnTable
+	 * @param rs - the results, read to the end and closed
+	 * @return ColumnTable
+	 * @throws SQLException
+	 */
+	static ColumnTable load(ResultSet rs) throws SQLException {
+		ResultSetMetaData meta = rs.getMetaData();
+		int count = meta.getColumnCount();
+		String[] columns = new String[count];
+		boolean[] integral = new boolean[count];
+		ArrayList<ArrayList<Object>> values = new ArrayList<ArrayList<Object>>();
+		for(int i = 0; i < count; i++) {
+			columns[i] = meta.getColumnLabel(i + 1);
+			int type = meta.getColumnType(i + 1);
+			integral[i] = type == Types.INTEGER || type == Types.SMALLINT || type == Types.TINYINT;
+			values.add(new ArrayList<Object>());
+		}
+		while(rs.next()) {
+			for(int i = 0; i < count; i++) {
+				values.get(i).add(rs.getObject(i + 1));
+			}
+		}
+		rs.close();
+		int rows = values.isEmpty() ? 0 : values.get(0).size();
+		int[][] data = new int[count][];
+		StringDictionary[] dictionaries = new StringDictionary[count];
+		for(int i = 0; i < count; i++) {
+			ArrayList<Object> column = values.get(i);
+			data[i] = new int[rows];
+			if(allIntegers(column, integral[i])) {
+				for(int r = 0; r < rows; r++) {
+					Object o = column.get(r);
+					data[i][r] = (o == null) ? NULL : ((Integer) o);
+				}
+			} else {
+				dictionaries[i] = new StringDictionary();
+				for(int r = 0; r < rows; r++) {
+					Object o = column.get(r);
+					data[i][r] = dictionaries[i].encode(o == null ? null : o.toString());
+				}
+			}
+		}
+		return new ColumnTable(columns, data, dictionaries, rows);
+	}
+
+	/**
+	 * Check if every value of the column is null or an int. A column with only nulls, such as
+	 * a tag column before anything is tagged, is left to its declared type so later updates
+	 * can still write strings into it.
+	 * @param column - the values
+	 * @param integral - true if the column is declared as an integer
+	 * @return true if the column can be stored as ints
+	 */
+	private static boolean allIntegers(ArrayList<Object> column, boolean integral) {
+		boolean any = false;
+		for(int r = 0; r < column.size(); r++) {
+			Object o = column.get(r);
+			if(o != null && !(o instanceof Integer)) return false;
+			any |= o != null;
+		}
+		return any || integral;
+	}
+
+	/**
+	 * Build the lookup from id to row, if the table has an id column
+	 */
+	private void indexIds() {
+		int id = column("id");
+		if(id < 0 || isString(id)) return;
+		int max = -1;
+		for(int r = 0; r < rows; r++) {
+			max = Math.max(max, data[id][r]);
+		}
+		rowOfId = new int[max + 1];
+		Arrays.fill(rowOfId, -1);
+		for(int r = 0; r < rows; r++) {
+			if(data[id][r] >= 0) rowOfId[data[id][r]] = r;
+		}
+	}
+
+	/**
+	 * A copy of the table with the values of the given results written over the rows
+	 * with the same id. The results need an id column; other columns they have that the
+	 * table does not are ignored.
+	 * @param rs - the new values, read to the end and closed
+	 * @return ColumnTable
+	 * @throws SQLException
+	 */
+	ColumnTable update(ResultSet rs) throws SQLException {
+		ResultSetMetaData meta = rs.getMetaData();
+		int count = meta.getColumnCount();
+		int[] target = new int[count + 1];
+		int[][] newData = data.clone();
+		StringDictionary[] newDictionaries = dictionaries.clone();
+		for(int i = 1; i <= count; i++) {
+			target[i] = column(meta.getColumnLabel(i));
+			if(target[i] >= 0 && !columns[target[i]].equals("id")) {
+				newData[target[i]] = data[target[i]].clone();
+				if(dictionaries[target[i]] != null) newDictionaries[target[i]] = dictionaries[target[i]].copy();
+			} else {
+				target[i] = -1;
+			}
+		}
+		while(rs.next()) {
+			int row = row(rs.getInt("id"));
+			if(row < 0) continue;
+			for(int i = 1; i <= count; i++) {
+				int c = target[i];
+				if(c < 0) continue;
+				Object o = rs.getObject(i);
+				if(newDictionaries[c] != null) newData[c][row] = newDictionaries[c].encode(o == null ? null : o.toString());
+				else newData[c][row] = (o instanceof Number) ? ((Number) o).intValue() : NULL;
+			}
+		}
+		rs.close();
+		return new ColumnTable(columns, newData, newDictionaries, rows);
+	}
+
+	/**
+	 * Number of rows
+	 * @return int
+	 */
+	int rows() {
+		return rows;
+	}
+
+	/**
+	 * The names of the columns in the order they were loaded
+	 * @return String[]
+	 */
+	String[] columns() {
+		return columns;
+	}
+
+	/**
+	 * The index of the column
+	 * @param name - the name of the column
+	 * @return the index, -1 if there is no such column
+	 */
+	int column(String name) {
+		for(int i = 0; i < columns.length; i++) {
+			if(columns[i].equalsIgnoreCase(name)) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Check if the column holds strings
+	 * @param column - the index of the column
+	 * @return true if it is dictionary encoded
+	 */
+	boolean isString(int column) {
+		return dictionaries[column] != null;
+	}
+
+	/**
+	 * The values of an int column, or the codes of a string column, by row
+	 * @param column - the index of the column
+	 * @return int[] that must not be changed
+	 */
+	int[] data(int column) {
+		return data[column];
+	}
+
+	/**
+	 * The dictionary of a string column
+	 * @param column - the index of the column
+	 * @return StringDictionary, null for an int column
+	 */
+	StringDictionary dictionary(int column) {
+		return dictionaries[column];
+	}
+
+	/**
+	 * The row with the id
+	 * @param id - the id
+	 * @return the row, -1 if there is none
+	 */
+	int row(int id) {
+		return (rowOfId == null || id < 0 || id >= rowOfId.length) ? -1 : rowOfId[id];
+	}
+
+	/**
+	 * The value of an int column
+	 * @param column - the index of the column, -1 gives NULL
+	 * @param row - the row
+	 * @return the value, NULL for null
+	 */
+	int getInt(int column, int row) {
+		return (column < 0 || row < 0) ? NULL : data[column][row];
+	}
+
+	/**
+	 * The value of a column as a string
+	 * @param column - the index of the column, -1 gives null
+	 * @param row - the row, -1 gives null
+	 * @return String
+	 */
+	String getString(int column, int row) {
+		if(column < 0 || row < 0) return null;
+		if(dictionaries[column] != null) return dictionaries[column].decode(data[column][row]);
+		return (data[column][row] == NULL) ? null : Integer.toString(data[column][row]);
+	}
+}
@@ -0,0 +1,181 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ConnectionPool holds the connections to the sqlite file behind the Database class:
+ * one writer that every update goes through and a few read-only readers for lookups and
+ * searches. Each connection has its own StatementCache, so a query on one connection never
+ * disturbs a ResultSet that is still being read on another.
+ *
+ * A thread is given one reader the first time it runs a query and keeps using it, so the
+ * application thread and any background threads read on separate connections.
+ * One more reader, the searcher, is kept for the thread the searches are run on, see
+ * searcherThread. Nothing else reads on it, so cancelSearch can stop a search with
+ * Statement.cancel, which stops whatever runs on the connection, without stopping anything else.
+ * The file is put in WAL mode so readers and the writer do not block each other.
+ * Every connection also has the user's collection file attached as the collection schema.
+ */
+class ConnectionPool {
+
+	private static final int SQLITE_OPEN_READONLY = 1;
+	private static final int SEARCHER = -1;
+
+	private String url;
+	private String collection;
+	private int timeout;
+	private Connection writer;
+	private StatementCache writerStatements;
+	private Connection[] readers;
+	private StatementCache[] readerStatements;
+	private Connection searcher;
+	private StatementCache searcherStatements;
+	private Statement canceller;
+	private AtomicInteger next;
+	private ThreadLocal<Integer> slot;
+
+	/**
+	 * Open the writer and the readers on the sqlite file
+	 * @param path - path to the sqlite file
+	 * @param collectionPath - path to the collection file, created if it does not exist
+	 * @param readerCount - how many read-only connections to open
+	 * @param timeout - query timeout in seconds
+	 * @throws SQLException
+	 */
+	ConnectionPool(String path, String collectionPath, int readerCount, int timeout) throws SQLException {
+		this.url = "jdbc:sqlite:" + path;
+		this.collection = collectionPath;
+		this.timeout = timeout;
+		writer = DriverManager.getConnection(url);
+		Statement pragma = writer.createStatement();
+		pragma.execute("PRAGMA journal_mode=WAL");
+		pragma.execute("PRAGMA busy_timeout=" + (timeout * 1000));
+		pragma.close();
+		attach(writer);
+		pragma = writer.createStatement();
+		pragma.execute("PRAGMA " + UserCollection.SCHEMA + ".journal_mode=WAL");
+		pragma.close();
+		writerStatements = new StatementCache(writer, timeout);
+		readers = new Connection[readerCount];
+		readerStatements = new StatementCache[readerCount];
+		for(int i = 0; i < readerCount; i++) {
+			readers[i] = openReader();
+			readerStatements[i] = new StatementCache(readers[i], timeout);
+		}
+		searcher = openReader();
+		searcherStatements = new StatementCache(searcher, timeout);
+		canceller = searcher.createStatement();
+		next = new AtomicInteger();
+		slot = new ThreadLocal<Integer>();
+	}
+
+	/**
+	 * Open a read-only connection on the file
+	 * @return Connection
+	 * @throws SQLException
+	 */
+	private Connection openReader() throws SQLException {
+		Properties props = new Properties();
+		props.setProperty("open_mode", Integer.toString(SQLITE_OPEN_READONLY));
+		Connection reader = DriverManager.getConnection(url, props);
+		Statement pragma = reader.createStatement();
+		pragma.execute("PRAGMA busy_timeout=" + (timeout * 1000));
+		pragma.close();
+		attach(reader);
+		return reader;
+	}
+
+	/**
+	 * Attach the collection file to a connection
+	 * @param connection - the connection
+	 * @throws SQLException
+	 */
+	private void attach(Connection connection) throws SQLException {
+		PreparedStatement ps = connection.prepareStatement("ATTACH DATABASE ? AS " + UserCollection.SCHEMA);
+		try {
+			ps.setString(1, collection);
+			ps.execute();
+		} finally {
+			ps.close();
+		}
+	}
+
+	/**
+	 * The statements of the reader that belongs to the calling thread
+	 * @return StatementCache
+	 */
+	StatementCache reader() {
+		Integer i = slot.get();
+		if(i == null) {
+			i = (next.getAndIncrement() & Integer.MAX_VALUE) % readers.length;
+			slot.set(i);
+		}
+		return (i == SEARCHER) ? searcherStatements : readerStatements[i];
+	}
+
+	/**
+	 * Make the calling thread read on the searcher from now on, instead of one of the readers.
+	 * Only one thread may do so.
+	 */
+	void searcherThread() {
+		slot.set(SEARCHER);
+	}
+
+	/**
+	 * Stop the query running on the searcher, if any, which then fails as interrupted
+	 * @throws SQLException
+	 */
+	void cancelSearch() throws SQLException {
+		canceller.cancel();
+	}
+
+	/**
+	 * The statements of the writer
+	 * @return StatementCache
+	 */
+	StatementCache writer() {
+		return writerStatements;
+	}
+
+	/**
+	 * The writer connection, for schema changes and transactions
+	 * @return Connection
+	 */
+	Connection getWriter() {
+		return writer;
+	}
+
+	/**
+	 * Check if results of any connection of the pool are still open
+	 * @return true if a ResultSet is not closed yet
+	 * @throws SQLException
+	 */
+	boolean isReading() throws SQLException {
+		for(int i = 0; i < readers.length; i++) {
+			if(readerStatements[i].isReading()) return true;
+		}
+		return searcherStatements.isReading() || writerStatements.isReading();
+	}
+
+	/**
+	 * Close every statement and connection in the pool
+	 * @throws SQLException
+	 */
+	void close() throws SQLException {
+		for(int i = 0; i < readers.length; i++) {
+			readerStatements[i].close();
+			readers[i].close();
+		}
+		canceller.close();
+		searcherStatements.close();
+		searcher.close();
+		writerStatements.close();
+		writer.close();
+	}
+}
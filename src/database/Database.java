@@ -6,102 +6,382 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.net.SocketException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-import org.apache.commons.io.FileUtils;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+
+import javafx.application.Platform;
 
 /**
  * This is the database class. It is a sqlite database that connects to the file
  * in the database folder called scddata.db. It contains many functions for getting
  * the required data from the database to be put on screen. It also contains a
  * function to update the database upon the user request.
+ * 
+ * Queries run on a small pool of read-only connections and updates on a single writer
+ * (see ConnectionPool), so several ResultSets can be open and read at the same time,
+ * including from background threads. The searches and lookups the screens run also have
+ * Async variants that query on a background thread and hand the results back to the
+ * application thread through a QueryCallback.
+ * 
+ * Searches go to a SearchEngine: by default the sql engine, or, once useMemoryEngine is
+ * turned on, an engine that answers them from a snapshot of the catalogue held in memory.
+ * Their results are kept in a ResultCache until the rows they were read from change.
+ * Every query is timed by a QueryLog, which logs the slow ones with their query plans.
+ * 
+ * An update that opens the file again does so while holding the write lock of swap, and
+ * queries, changes to the collection and the requests of the query threads hold its read
+ * lock, so none of them sees the connections closed or the caches half loaded under it.
+ * ResultSets are read after the lock is let go, so the connections they were read from are
+ * retired rather than closed: queries go to the new ones at once, and the old ones are closed
+ * once their results are, or RETIRE_AFTER at the latest. A file replacing the db file can
+ * only be moved in once the old connections are closed, so that waits for their results.
  */
-public class Database {
+public class Database implements SearchEngine {
+	
+	public static final int READERS = 3;
+	//how long connections of an earlier open of the file are kept for results still being read
+	public static final long RETIRE_AFTER = 60000;
 	
-	private Connection connection;
+	private ConnectionPool pool;
+	private TitleIndex titles;
+	private IndexBuilder indexes;
+	private UserCollection collection;
+	private CollectionJournal journal;
+	private SqlEngine sqlEngine;
+	private volatile Lookups lookups;
+	private MembershipIndex memberships;
+	private PersonCache people;
+	private MemoryEngine memoryEngine;
+	private boolean useMemory;
+	private ResultCache results;
+	private boolean useResults;
+	private QueryLog log;
+	private long indexBuildTime;
 	private Statement stmt;
 	private String query;
 	private File dbFile;
 	private File saveFile;
+	private File collectionFile;
 	private URL dbURL;
+	private boolean deltaUpdates;
+	private volatile Download download;
+	private ExecutorService executor;
+	//runs searchPageAsync and streamAsync, on the searcher connection of the pool
+	private ExecutorService searcher;
+	//the key of the search running on the searcher, null if none is
+	private String searching;
+	private Executor callbacks;
+	private HashMap<String, Long> generations;
+	//held for writing while the file is opened again, for reading while it is used
+	private final ReentrantReadWriteLock swap = new ReentrantReadWriteLock();
+	//the connections replaced by a reload and when, closed once nothing is read on them
+	private final LinkedHashMap<ConnectionPool, Long> retired = new LinkedHashMap<ConnectionPool, Long>();
 	
 	public Database() throws SQLException, MalformedURLException {
+		this(new File("database"));
+	}
+	
+	/**
+	 * Open the database in another folder than the database folder, eg. a copy of it
+	 * @param folder - the folder with scddata.db, where the collection files are kept too
+	 * @throws SQLException
+	 * @throws MalformedURLException
+	 */
+	public Database(File folder) throws SQLException, MalformedURLException {
 		query = "";
 		dbURL = new URL("http://media.strathspey.org/scddata/scddata-2.0.db");
-		dbFile = new File("database/scddata.db");
-		saveFile = new File("database/ihave.txt");
+		dbFile = new File(folder, "scddata.db");
+		saveFile = new File(folder, "ihave.txt");
+		collectionFile = new File(folder, "collection.db");
+		journal = new CollectionJournal(new File(folder, "collection.journal"), new File(folder, "collection.snapshot"));
+		deltaUpdates = true;
+		results = new ResultCache();
+		log = new QueryLog(this, new File(folder, "slow-queries.log"));
+		useResults = true;
+		generations = new HashMap<String, Long>();
+		executor = Executors.newFixedThreadPool(READERS - 1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "database-query");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		searcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "database-search");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		callbacks = new Executor() {
+			@Override
+			public void execute(Runnable r) {
+				Platform.runLater(r);
+			}
+		};
 		init();
 	}
 	
 	/**
-	 * Initialize the database connection
+	 * Initialize the database connections. Lookups are prepared lazily in the statement
+	 * cache of each connection the first time they are run on it. Any indexes the file does
+	 * not have yet, eg. after a download, are built here. The collection file is attached
+	 * and, the first time, filled from the collection of an older version.
 	 * @throws SQLException
 	 * @throws MalformedURLException
 	 */
 	private void init() throws SQLException, MalformedURLException {
-		connection = connect();
-		stmt = connection.createStatement();
+		pool = connect();
+		stmt = pool.getWriter().createStatement();
 		stmt.setQueryTimeout(30);
+		collection = new UserCollection(pool, journal, executor);
+		collection.ensure(saveFile);
+		titles = new TitleIndex(pool.getWriter());
+		indexes = new IndexBuilder(pool.getWriter());
+		buildIndexes();
+		loadCaches();
+		sqlEngine = new SqlEngine(this, titles);
+	}
+	
+	/**
+	 * Read the lookup tables and person names again and drop the formation and step sets,
+	 * after the file was opened or its rows changed
+	 * @throws SQLException
+	 */
+	private void loadCaches() throws SQLException {
+		lookups = Lookups.load(this);
+		synchronized(this) {
+			memberships = null;
+		}
+		people = new PersonCache(this);
+		people.preload();
+	}
+	
+	/**
+	 * Build the full-text index of the titles and the indexes on the map tables that are
+	 * missing, then ANALYZE so the query planner knows about them
+	 * @return the time the build took in milliseconds
+	 * @throws SQLException
+	 */
+	public long buildIndexes() throws SQLException {
+		long start = System.currentTimeMillis();
+		int built = titles.ensure() + indexes.ensure();
+		if(built > 0) {
+			stmt.execute("ANALYZE");
+		}
+		indexBuildTime = System.currentTimeMillis() - start;
+		if(built > 0) {
+			System.out.println("Built " + built + " indexes in " + indexBuildTime + " ms");
+		}
+		return indexBuildTime;
+	}
+	
+	/**
+	 * How long the last index build took
+	 * @return time in milliseconds
+	 */
+	public long getIndexBuildTime() {
+		return indexBuildTime;
 	}
 	
 	/** 
-	 * Connect to the local sqlite database and return the connection
+	 * Connect to the local sqlite database and return the pool of connections,
+	 * one writer and READERS read-only readers, each with the collection file attached
 	 * @return
 	 * @throws SQLException
 	 */
-	private Connection connect() throws SQLException {
-		return DriverManager.getConnection("jdbc:sqlite:database/scddata.db");
+	private ConnectionPool connect() throws SQLException {
+		return new ConnectionPool(dbFile.getPath(), collectionFile.getPath(), READERS, 30);
 	}
 	
 	/**
-	 * Close down the databases
+	 * Close down the databases and the collection journal, once no query is using them
 	 * @throws SQLException
 	 */
 	public void close() throws SQLException {
+		swap.writeLock().lock();
+		try {
+			ConnectionPool old = detach();
+			if(old != null) old.close();
+			closeRetired(true);
+		} finally {
+			swap.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Stop using the connections and close the collection journal, which is opened again by the
+	 * next change to the collection. Called while holding the write lock of swap.
+	 * @return the connections, to be closed by the caller, null if they were closed already
+	 * @throws SQLException
+	 */
+	private ConnectionPool detach() throws SQLException {
 		if(stmt != null)
 			stmt.close();
 			stmt = null;
-		if(connection != null)
-			connection.close();
-			connection = null;
+		ConnectionPool old = pool;
+		pool = null;
+		try {
+			journal.close();
+		} catch(IOException e) {
+			System.out.println("Could not close the collection journal: " + e.getMessage());
+		}
+		return old;
 	}
 	
 	/**
-	 * Remember what stuff the user has in their collection
-	 * Downloads the most recent sqlite db file from the online source
-	 * Add the ihave and tag columns back to the db
-	 * Load the stuff we saved earlier back into the db
-	 * @return 1 on success; 0 when no internet connection; -1 on error, 
-	 * 		-2 on fatal error (app needs to restart)
+	 * Close the connections that were retired once nothing is read on them any more, or they
+	 * were retired RETIRE_AFTER ago
+	 * @param all - true to close them all now
+	 */
+	private void closeRetired(boolean all) {
+		synchronized(retired) {
+			if(retired.isEmpty()) return;
+			long now = System.currentTimeMillis();
+			Iterator<Map.Entry<ConnectionPool, Long>> i = retired.entrySet().iterator();
+			while(i.hasNext()) {
+				Map.Entry<ConnectionPool, Long> e = i.next();
+				try {
+					if(!all && now - e.getValue() < RETIRE_AFTER && e.getKey().isReading()) continue;
+					e.getKey().close();
+				} catch(SQLException ex) {
+					ex.printStackTrace();
+				}
+				i.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Wait until nothing is read on the connections, or RETIRE_AFTER at the latest. The lock is
+	 * not held while waiting, so a thread reading results can still run the queries it needs
+	 * to finish.
+	 * @throws SQLException
+	 */
+	private void awaitIdle() throws SQLException {
+		long until = System.currentTimeMillis() + RETIRE_AFTER;
+		try {
+			while(System.currentTimeMillis() < until) {
+				swap.readLock().lock();
+				try {
+					if(pool == null || !pool.isReading()) return;
+				} finally {
+					swap.readLock().unlock();
+				}
+				Thread.sleep(10);
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Open the file again while no query is running, after it changed or was replaced.
+	 * Queries made meanwhile wait until the new connections and caches are ready. The old
+	 * connections are retired, or, if the file is replaced, closed once their results are.
+	 * @param replacement - a file to move in place of the db file first, or null
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	private void reload(File replacement) throws SQLException, IOException {
+		if(replacement != null) awaitIdle();
+		swap.writeLock().lock();
+		try {
+			ConnectionPool old = detach();
+			if(replacement != null) {
+				if(old != null) old.close();
+				//the old file's log would otherwise be played back onto the new file
+				new File(dbFile.getPath() + "-wal").delete();
+				new File(dbFile.getPath() + "-shm").delete();
+				Files.move(replacement.toPath(), dbFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} else if(old != null) {
+				synchronized(retired) {
+					retired.put(old, System.currentTimeMillis());
+				}
+			}
+			init();
+			if(memoryEngine != null) memoryEngine.reload();
+		} finally {
+			swap.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Update the database without reporting progress
+	 * @return see update(DownloadProgress)
 	 */
 	public int update() {
+		return update(null);
+	}
+	
+	/**
+	 * Downloads the most recent sqlite db file from the online source to a file of its own,
+	 * resuming an earlier download that broke off, while the current one stays in use
+	 * Check the download is sound
+	 * Apply only the rows that changed, or when that is not possible (or delta updates
+	 * are turned off) swap the download in for the db file and build the indexes it is missing.
+	 * The collection is in a file of its own, so it does not need saving or loading again.
+	 * @param progress - told how far the download has got, or null
+	 * @return 1 on success; 0 when no internet connection; -1 on error, 
+	 * 		-2 on fatal error (app needs to restart); -3 when cancelled
+	 */
+	public int update(DownloadProgress progress) {
 		try {
+			File staging = new File(dbFile.getPath() + ".download");
+			download = new Download(dbURL, staging);
 			try {
-				saveIHave();
-			} catch(Exception e) {
-				System.out.println("Save failed");
+				//a download that broke off is kept to resume from
+				download.fetch(progress);
+				try {
+					download.verify();
+				} catch(IOException | SQLException e) {
+					Download.discard(staging);
+					throw e;
+				}
+			} finally {
+				download = null;
 			}
-			close();
-			FileUtils.copyURLToFile(dbURL, dbFile);
-			init();
-			addIHaveTagColumns();
-			loadIHave();
+			if(!deltaUpdates || !applyDelta(staging)) {
+				replace(staging);
+			}
+			Download.discard(staging);
 			return 1;
+		} catch(CancellationException e) {
+			return -3;
 		} catch(UnknownHostException | SocketException e) {
 			try {
-				close();
-				init();
+				reopen();
 			} catch (Exception e1) {
 				return -2;
 			}
 			return 0;
 		} catch(Exception e) {
+			e.printStackTrace();
 			try {
-				close();
-				init();
+				reopen();
 			} catch (Exception e1) {
 				return -2;
 			}
@@ -110,111 +390,113 @@ public class Database {
 	}
 	
 	/**
-	 * Add the necessary columns to be able to tag dances, albums, and publications as 
-	 * having in a personal collection.
+	 * Stop a running update while it is still downloading. The part downloaded is kept
+	 * and the next update resumes from it.
+	 */
+	public void cancelUpdate() {
+		Download d = download;
+		if(d != null) d.cancel();
+	}
+	
+	/**
+	 * Open the db file again if an update failed after closing it
 	 * @throws SQLException
+	 * @throws MalformedURLException
 	 */
-	public void addIHaveTagColumns() throws SQLException {
-		stmt.execute("ALTER TABLE dance ADD ihave TINYINT(1) DEFAULT 0");
-		stmt.execute("ALTER TABLE dance ADD COLUMN tag VARCHAR(256) DEFAULT NULL");
-		stmt.execute("ALTER TABLE album ADD COLUMN ihave TINYINT(1) DEFAULT 0");
-		stmt.execute("ALTER TABLE album ADD COLUMN tag VARCHAR(256) DEFAULT NULL");
-		stmt.execute("ALTER TABLE publication ADD COLUMN ihave TINYINT(1) DEFAULT 0");
-		stmt.execute("ALTER TABLE publication ADD COLUMN tag VARCHAR(256) DEFAULT NULL");
-		stmt.execute("ALTER TABLE recording ADD COLUMN ihave TINYINT(1) DEFAULT 0");
-		stmt.execute("ALTER TABLE recording ADD COLUMN tag VARCHAR(256) DEFAULT NULL");
+	private void reopen() throws SQLException, MalformedURLException {
+		swap.writeLock().lock();
+		try {
+			if(pool == null) init();
+		} finally {
+			swap.writeLock().unlock();
+		}
 	}
 	
 	/**
-	 * Save the information for what the user has in their personal collection. 
-	 * Writes the type (table), the id, and the tag to a file. We will use this information
-	 * when we update to preserve this information.
-	 * 
+	 * Apply the rows of the downloaded file that differ from the live database to it
+	 * @param staging - the downloaded file
+	 * @return false if the tables of the download differ, in which case nothing was changed
 	 * @throws SQLException
 	 * @throws IOException
 	 */
-	public void saveIHave() throws SQLException, IOException {
-		
-		// dance
-		query = "SELECT id, tag FROM dance WHERE ihave=1";
-		ResultSet rs = stmt.executeQuery(query);
-		String info;
-		boolean append = false;
-		while(rs.next()) {
-			info = "dance " + rs.getInt("id") + " " + rs.getString("tag");
-			FileUtils.writeStringToFile(saveFile, info, append);
-			append = true;
-			FileUtils.writeStringToFile(saveFile, "\n", append);
-		}
-		
-		// album
-		query = "SELECT id, tag FROM album WHERE ihave=1";
-		rs = stmt.executeQuery(query);
-		while(rs.next()) {
-			info = "album " + rs.getInt("id") + " " + rs.getString("tag");
-			FileUtils.writeStringToFile(saveFile, info, append);
-			append = true;
-			FileUtils.writeStringToFile(saveFile, "\n", append);
-		}
-		
-		// publication
-		query = "SELECT id, tag FROM publication WHERE ihave=1";
-		rs = stmt.executeQuery(query);
-		while(rs.next()) {
-			info = "publication " + rs.getInt("id") + " " + rs.getString("tag");
-			FileUtils.writeStringToFile(saveFile, info, append);
-			append = true;
-			FileUtils.writeStringToFile(saveFile, "\n", append);
+	private boolean applyDelta(File staging) throws SQLException, IOException {
+		long start = System.currentTimeMillis();
+		DeltaUpdate delta = new DeltaUpdate(pool.getWriter(), staging);
+		//the collection is changed on the same writer, its commit would commit half the delta
+		synchronized(collection) {
+			if(!delta.apply()) {
+				System.out.println("Delta update not possible, the tables of the download differ");
+				return false;
+			}
+			for(int i = 0; i < TitleIndex.TABLES.length; i++) {
+				if(delta.getChangedTables().contains(TitleIndex.TABLES[i])) titles.refresh(TitleIndex.TABLES[i]);
+			}
+			if(!delta.getChangedTables().isEmpty()) stmt.execute("ANALYZE");
 		}
-		
-		// recording
-		query = "SELECT id, tag FROM recording WHERE ihave=1";
-		rs = stmt.executeQuery(query);
-		while(rs.next()) {
-			info = "recording " + rs.getInt("id") + " " + rs.getString("tag");
-			FileUtils.writeStringToFile(saveFile, info, append);
-			append = true;
-			FileUtils.writeStringToFile(saveFile, "\n", append);
+		if(!delta.getChangedTables().isEmpty()) {
+			//results still open on the readers would keep seeing the rows from before
+			reload(null);
+			results.invalidateCatalogue(delta.getChangedTables());
 		}
+		System.out.println("Delta update: " + delta.getInserted() + " inserted, " + delta.getUpdated()
+				+ " updated, " + delta.getDeleted() + " deleted in " + (System.currentTimeMillis() - start) + " ms");
+		return true;
 	}
 	
 	/**
-	 * After updating the database, load the collection information back into the database
-	 * @throws IOException
+	 * Swap the downloaded file in for the db file in one rename and open it
+	 * @param staging - the downloaded file
 	 * @throws SQLException
+	 * @throws IOException
 	 */
-	public void loadIHave() throws IOException, SQLException {
-		Iterator<String> iter = FileUtils.readLines(saveFile).iterator();
-		String line;
-		String[] info;
-		while(iter.hasNext()) {
-			line = iter.next();
-			info = line.split(" ");
-			if(info.length == 2 || info[2].equals("null"))
-				query = "UPDATE " + info[0] + " SET ihave=1 WHERE id=" + info[1];
-			else
-				query = "UPDATE " + info[0] + " SET ihave=1, tag='" + info[2] + "' WHERE id=" + info[1];
-			stmt.execute(query);
-		}
+	private void replace(File staging) throws SQLException, IOException {
+		reload(staging);
+		results.clear();
+	}
+	
+	/**
+	 * Turn delta updates on or off. While they are on, update only changes the rows that
+	 * differ from the download instead of replacing the whole file.
+	 * @param deltaUpdates - true to update row by row
+	 */
+	public void useDeltaUpdates(boolean deltaUpdates) {
+		this.deltaUpdates = deltaUpdates;
+	}
+	
+	/**
+	 * Set where update downloads the database from, eg. a file: URL of a local copy
+	 * @param url - the URL of the sqlite file
+	 */
+	public void setUpdateURL(URL url) {
+		dbURL = url;
 	}
 	
 	/**
-	 * Mark as having in personal collection. 
+	 * Mark as having in personal collection. Marking a publication also marks its dances
+	 * and marking an album its recordings.
 	 * @param table - the type of thing i have (can be album, recording, publication, or dance)
 	 * @param id - the id 
 	 * @throws SQLException
 	 */
 	public void iHave(String table, int id) throws SQLException {
-		query = "UPDATE " + table + " SET ihave=1 WHERE id=" + id;
-		stmt.execute(query);
-		if(table.equals("publication")) {
-			query = "UPDATE dance SET ihave=1 WHERE id in "
-					+ "(SELECT dance_id FROM dancespublicationsmap WHERE publication_id=" + id + ")";
-			stmt.execute(query);
-		} else if(table.equals("album")) {
-			query = "UPDATE recording SET ihave=1 WHERE id in "
-					+ "(SELECT recording_id FROM albumsrecordingsmap WHERE album_id=" + id + ")";
-			stmt.execute(query);
+		iHave(table, Collections.singleton(id));
+	}
+
+	/**
+	 * Mark many entries of a table as having in personal collection, in one transaction
+	 * @param table - the type (album, recording, publication, or dance)
+	 * @param ids - the ids
+	 * @return the ids marked for each type, the dances of publications and recordings of albums included
+	 * @throws SQLException
+	 */
+	public Map<String, Set<Integer>> iHave(String table, Collection<Integer> ids) throws SQLException {
+		swap.readLock().lock();
+		try {
+			Map<String, Set<Integer>> affected = collection.set(table, ids, "ihave", 1);
+			collectionChanged(affected);
+			return affected;
+		} finally {
+			swap.readLock().unlock();
 		}
 	}
 
@@ -225,16 +507,24 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public void iDontHave(String table, int id) throws SQLException {
-		query = "UPDATE " + table + " SET ihave=0 WHERE id=" +id;
-		stmt.execute(query);
-		if(table.equals("publication")) {
-			query = "UPDATE dance SET ihave=0 WHERE id in "
-					+ "(SELECT dance_id FROM dancespublicationsmap WHERE publication_id=" + id + ")";
-			stmt.execute(query);
-		} else if(table.equals("album")) {
-			query = "UPDATE recording SET ihave=0 WHERE id in "
-					+ "(SELECT recording_id FROM albumsrecordingsmap WHERE album_id=" + id + ")";
-			stmt.execute(query);
+		iDontHave(table, Collections.singleton(id));
+	}
+
+	/**
+	 * Mark many entries of a table as not having in personal collection, in one transaction
+	 * @param table - the type (album, recording, publication, or dance)
+	 * @param ids - the ids
+	 * @return the ids unmarked for each type
+	 * @throws SQLException
+	 */
+	public Map<String, Set<Integer>> iDontHave(String table, Collection<Integer> ids) throws SQLException {
+		swap.readLock().lock();
+		try {
+			Map<String, Set<Integer>> affected = collection.set(table, ids, "ihave", 0);
+			collectionChanged(affected);
+			return affected;
+		} finally {
+			swap.readLock().unlock();
 		}
 	}
 
@@ -246,16 +536,25 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public void addTag(String table, int id, String tag) throws SQLException {
-		query = "UPDATE " + table + " SET tag='" + tag + "' WHERE id=" + id;
-		stmt.execute(query);
-		if(table.equals("publication")) {
-			query = "UPDATE dance SET tag='" + tag + "' WHERE id in "
-					+ "(SELECT dance_id FROM dancespublicationsmap WHERE publication_id=" + id + ")";
-			stmt.execute(query);
-		} else if(table.equals("album")) {
-			query = "UPDATE recording SET tag='" + tag + "' WHERE id in "
-					+ "(SELECT recording_id FROM albumsrecordingsmap WHERE album_id=" + id + ")";
-			stmt.execute(query);
+		addTag(table, Collections.singleton(id), tag);
+	}
+
+	/**
+	 * Give many entries of a table the same tag, in one transaction
+	 * @param table - the type (album, recording, publication, or dance)
+	 * @param ids - the ids
+	 * @param tag - the tag string
+	 * @return the ids tagged for each type
+	 * @throws SQLException
+	 */
+	public Map<String, Set<Integer>> addTag(String table, Collection<Integer> ids, String tag) throws SQLException {
+		swap.readLock().lock();
+		try {
+			Map<String, Set<Integer>> affected = collection.set(table, ids, "tag", tag);
+			collectionChanged(affected);
+			return affected;
+		} finally {
+			swap.readLock().unlock();
 		}
 	}
 
@@ -266,19 +565,61 @@ public class Database {
 	 * @throws SQLException 
 	 */
 	public void removeTag(String table, int id) throws SQLException {
-		query = "UPDATE " + table + " SET tag=null WHERE id=" +id;
-		stmt.execute(query);
-		if(table.equals("publication")) {
-			query = "UPDATE dance SET tag=null WHERE id in "
-					+ "(SELECT dance_id FROM dancespublicationsmap WHERE publication_id=" + id + ")";
-			stmt.execute(query);
-		} else if(table.equals("album")) {
-			query = "UPDATE recording SET tag=null WHERE id in "
-					+ "(SELECT recording_id FROM albumsrecordingsmap WHERE album_id=" + id + ")";
-			stmt.execute(query);
+		removeTag(table, Collections.singleton(id));
+	}
+
+	/**
+	 * Remove the tags of many entries of a table, in one transaction
+	 * @param table - the type (album, recording, publication, or dance)
+	 * @param ids - the ids
+	 * @return the ids untagged for each type
+	 * @throws SQLException
+	 */
+	public Map<String, Set<Integer>> removeTag(String table, Collection<Integer> ids) throws SQLException {
+		swap.readLock().lock();
+		try {
+			Map<String, Set<Integer>> affected = collection.set(table, ids, "tag", null);
+			collectionChanged(affected);
+			return affected;
+		} finally {
+			swap.readLock().unlock();
 		}
 	}
 
+	/**
+	 * Mark many entries of a table as not having and remove their tags, in one transaction
+	 * @param table - the type (album, recording, publication, or dance)
+	 * @param ids - the ids
+	 * @return the ids unmarked and untagged for each type
+	 * @throws SQLException
+	 */
+	public Map<String, Set<Integer>> removeFromCollection(String table, Collection<Integer> ids) throws SQLException {
+		swap.readLock().lock();
+		try {
+			Map<String, Set<Integer>> affected = collection.set(table, ids, new String[] {"ihave", "tag"}, new Object[] {0, null});
+			collectionChanged(affected);
+			return affected;
+		} finally {
+			swap.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Copy a change to the collection into the in-memory engine, if it is loaded, and drop
+	 * the kept results of the tables it changed
+	 * @param affected - the ids whose ihave or tag changed for each table
+	 * @throws SQLException
+	 */
+	private void collectionChanged(Map<String, Set<Integer>> affected) throws SQLException {
+		ArrayList<String> tables = new ArrayList<String>();
+		for(Map.Entry<String, Set<Integer>> e : affected.entrySet()) {
+			if(!e.getValue().isEmpty()) tables.add(e.getKey());
+		}
+		//refreshing a publication or album refreshes its dances or recordings too
+		if(memoryEngine != null && !tables.isEmpty()) memoryEngine.refreshCollection(tables.get(0));
+		results.invalidate(tables);
+	}
+	
 	/**
 	 * Gets all information about a person in the database with the given id
 	 * 
@@ -287,19 +628,19 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public ResultSet getPerson(int id) throws SQLException {
-		query = "SELECT * FROM person WHERE id="+ id;
-		return stmt.executeQuery(query);
+		String sql = "SELECT * FROM person WHERE id=?";
+		return executeQuery(sql, id);
 	}
 	
 	/**
-	 * Get person's name from their id
+	 * Get person's name from their id. Names come from the person cache, which is
+	 * filled when the database is opened or updated.
 	 * @param id
 	 * @return String
 	 * @throws SQLException
 	 */
 	public String getPersonName(int id) throws SQLException {
-		query = "SELECT name FROM person WHERE id=" + id;
-		return stmt.executeQuery(query).getString("name");
+		return people.name(id);
 	}
 	
 	/**
@@ -310,57 +651,10 @@ public class Database {
 	 * @return ResultSet
 	 * @throws SQLException
 	 */
+	@Override
 	public ResultSet searchTableByName(String table, String name, boolean ihave) throws SQLException {
-		name = name.replace("'", "''");
-		if(table.equals("dance")) {
-			query = "SELECT d.*, dt.name as type, mt.description as medleytype, s.name as shape, "
-					+ "c.name as couples, p.name as progression, pb.name as publication, pn.name as devisor FROM dance d "
-					+ "LEFT OUTER JOIN dancetype dt ON d.type_id=dt.id "
-					+ "LEFT OUTER JOIN medleytype mt ON d.medleytype_id=mt.id "
-					+ "LEFT OUTER JOIN shape s ON d.shape_id=s.id "
-					+ "LEFT OUTER JOIN couples c ON d.couples_id=c.id "
-					+ "LEFT OUTER JOIN progression p ON d.progression_id=p.id "
-					+ "LEFT OUTER JOIN dancespublicationsmap dpm ON d.id=dpm.dance_id "
-					+ "LEFT OUTER JOIN publication pb ON dpm.publication_id=pb.id "
-					+ "LEFT OUTER JOIN person pn ON d.devisor_id=pn.id "
-					+ "WHERE d.name like '%" + name + "%'";
-			if(ihave) {
-				query += " AND d.ihave=1";
-			}
-			query += " ORDER by name";
-		} else if(table.equals("album")) {
-			query = "SELECT a.*, p.name as artist FROM album a "
-					+ "LEFT OUTER JOIN person p ON a.artist_id=p.id "
-					+ "WHERE a.name like '%" + name + "%'";
-			if(ihave) {
-				query += " AND a.ihave=1";
-			}
-			query += " ORDER by name";
-		} else if(table.equals("publication")) {
-			query = "SELECT pb.*, pr.name as devisor FROM publication pb "
-					+ "LEFT OUTER JOIN person pr ON pb.devisor_id=pr.id WHERE pb.name like '%" + name + "%'";
-			if(ihave) {
-				query += " AND pb.ihave=1";
-			}
-			query += " ORDER by name";
-		} else if(table.equals("recording")){
-			query = "SELECT r.*, dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist "
-					+ "FROM recording r LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
-					+ "LEFT OUTER JOIN medleytype mt ON r.medleytype_id=mt.id "
-					+ "LEFT OUTER JOIN phrasing p ON r.phrasing_id=p.id "
-					+ "LEFT OUTER JOIN person pn ON r.artist_id=pn.id "
-					+ "WHERE r.name like '%" + name + "%'";
-			if(ihave) {
-				query += " AND r.ihave=1";
-			}
-			query += " ORDER by name";
-		} else {
-			query = "SELECT * FROM " + table + " WHERE name like '%" + name + "%'";
-			if(ihave) {
-				query += " AND ihave=1";
-			}
-		}
-		return stmt.executeQuery(query);
+		if(useResults) return results.search(engine(), table, name, null, ihave);
+		return engine().searchTableByName(table, name, ihave);
 	}
 	
 	/**
@@ -372,268 +666,165 @@ public class Database {
 	 * @return ResultSet
 	 * @throws SQLException
 	 */
-	
+	@Override
 	public ResultSet advancedTableSearch(String table, String name, Map<String,String> map, boolean ihave) throws SQLException{
-		if(table.equals("dance")) {
-			query = "SELECT d.*, dt.name as type, mt.description as medleytype, s.name as shape, "
-					+ "c.name as couples, p.name as progression, pb.name as publication, pn.name as devisor "
-					+ "FROM dance d "
-					+ "LEFT OUTER JOIN dancetype dt ON d.type_id=dt.id "
-					+ "LEFT OUTER JOIN medleytype mt ON d.medleytype_id=mt.id "
-					+ "LEFT OUTER JOIN shape s ON d.shape_id=s.id "
-					+ "LEFT OUTER JOIN couples c ON d.couples_id=c.id "
-					+ "LEFT OUTER JOIN progression p ON d.progression_id=p.id "
-					+ "LEFT OUTER JOIN dancespublicationsmap dpm ON d.id=dpm.dance_id "
-					+ "LEFT OUTER JOIN publication pb ON dpm.publication_id=pb.id "
-					+ "LEFT OUTER JOIN person pn ON d.devisor_id=pn.id ";
-			if (name.length() != 0){
-				if (name.contains("'"))
-					query += "WHERE d.name like '%" + name.replace("'", "''") + "%'";
-				else
-					query += "WHERE d.name like '%" + name + "%'";
-			}
-			else
-				query += "WHERE d.name like '%%'";
-			Object[] keys = map.keySet().toArray();
-			for (int i=0; keys.length>i; i++){
-				String param = (String)keys[i];
-				String val = map.get(keys[i]);
-				if(!val.isEmpty()){
-					val.replace("'", "''");
-					if (param.equals("bars")){
-						query += " AND d.barsperrepeat"+val;
-					}
-					else if (param.equals("author")){
-						query += " AND pn.name like '%"+val+"%'";
-					}
-					else if (param.equals("type")){
-						query += " AND dt.name='"+ val +"'";
-					}
-					else if (param.equals("couples")){
-						query += " AND c.name='"+ val +"'";
-					}
-					else if (param.equals("shape")){
-						query += " AND s.name='"+ val +"'";
-					}
-					else if (param.equals("formation") && !(val.contains("*  *  *  *  *"))){
-						String[] formations = new String[5];
-						int len = val.length();
-						for (int k=0,j=0,count=0; k<len; k++){
-							if (val.substring(k,k+1).equals("~")){
-								if (val.substring(j,k).equals("and") || val.substring(j,k).equals("or")){
-									formations[count] = val.substring(j,k);
-								}
-								else if (val.substring(j,k).equals("not")){
-									formations[count] = "and " +val.substring(j,k);
-								}
-								else{
-									formations[count] = stmt.executeQuery("SELECT id FROM formation WHERE name='"+val.substring(j,k)+"'").getString(1);
-								}
-								count++;
-								j=k+1;
-							}
-							else if(val.substring(k,k+1).equals("*")){
-								j=k+2;
-								count++;
-							}
-							else if(val.substring(k,k+1).equals("'")){
-								val = val.substring(0,k) + "'" + val.substring(k+1);
-							}
-						}
-						if (formations[0] != null){
-							query += " AND (d.id IN (SELECT dfm.dance_id FROM dancesformationsmap dfm";
-							
-							query+= " WHERE dfm.formation_id='" + formations[0] +"')";
-							if (formations[1] != null && formations[2] != null){
-								query+= " " +formations[1] + " d.id IN (SELECT dfm.dance_id FROM dancesformationsmap dfm"
-										+ " WHERE dfm.formation_id='"+formations[2] +"')";
-								if (formations[3] != null && formations[4] != null)
-									query+= " "+ formations[3] + " d.id IN (SELECT dfm.dance_id FROM dancesformationsmap dfm"
-											+ " WHERE dfm.formation_id='" + formations[4] +"'))";
-								else
-									query += ")";
-							}
-							else
-								query += ")";
-						}
-						
-					}
-					else if (param.equals("steps")  && !(val.contains("*  *  *  *  *"))){
-						String[] steps = new String[5];
-						int len = val.length();
-						for (int k=0,j=0,count=0; k<len; k++){
-							if (val.substring(k,k+1).equals("~")){
-								if (val.substring(j,k).equals("and") || val.substring(j,k).equals("or")){
-									steps[count] = val.substring(j,k);
-								}
-								else if (val.substring(j,k).equals("not")){
-									steps[count] = "and " +val.substring(j,k);
-								}
-								else{
-									steps[count] = stmt.executeQuery("SELECT id FROM step WHERE name='"+val.substring(j,k)+"'").getString(1);
-								}
-								count++;
-								j=k+1;
-							}
-							else if(val.substring(k,k+1).equals("*")){
-								j=k+2;
-								count++;
-							}
-							else if(val.substring(k,k+1).equals("'")){
-								val = val.substring(0,k) + "'" + val.substring(k+1);
-							}
-						}
-						if (steps[0] != null){
-							query += " AND (d.id IN (SELECT dsm.dance_id FROM dancesstepsmap dsm";
-							
-							query+= " WHERE dsm.step_id='" + steps[0] +"')";
-							if (steps[1] != null && steps[2] != null){
-								query+= " " +steps[1] + " d.id IN (SELECT dsm.dance_id FROM dancesstepsmap dsm"
-										+ " WHERE dsm.step_id='"+steps[2] +"')";
-								if (steps[3] != null && steps[4] != null)
-									query+= " "+ steps[3] + " d.id IN (SELECT dsm.dance_id FROM dancesstepsmap dsm"
-											+ " WHERE dsm.step_id='" + steps[4] +"'))";
-								else
-									query += ")";
-							}
-							else
-								query += ")";
-						}
-					}
-					else if (param.equals("RSCDS")){
-						if (val.equals("1")){
-							query += " AND d.id IN (SELECT dpm.dance_id FROM dancespublicationsmap dpm "
-									+ "LEFT OUTER JOIN publication pb "
-									+ "WHERE dpm.publication_id=pb.id AND pb.shortname like '%RSCDS%')";
-						}
-					}
-				}
-			}
-			if(ihave) {
-				query += " AND d.ihave=1";
-			}
-			query += " GROUP by d.name, publication";
-		}
-		else if(table.equals("publication")) {
-			query = "SELECT pb.*, pr.name as devisor FROM publication pb "
-					+ "LEFT OUTER JOIN person pr ON pb.devisor_id=pr.id ";
-			if (name.length() != 0){
-				if (name.contains("'"))
-					query += "WHERE pb.name like '%" + name.replace("'", "''") + "%'";
-				else
-					query += "WHERE pb.name like '%" + name + "%'";
-			}
-			else
-				query += "WHERE pb.name like '%%'";
-			String author = map.get("author");
-			author = author.replace("'", "''");
-			String rscds = map.get("RSCDS");
-			if (!author.isEmpty())
-				query += " AND pr.name like '%"+author+"%'";
-			if (rscds.equals("1"))
-				query += " AND pb.rscds";
-			if(ihave) {
-				query += " AND pb.ihave=1";
-			}
-			query += " ORDER by name";
-		}
-		else if(table.equals("recording")){
-			query = "SELECT r.*, dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist "
-					+ "FROM recording r LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
-					+ "LEFT OUTER JOIN medleytype mt ON r.medleytype_id=mt.id "
-					+ "LEFT OUTER JOIN phrasing p ON r.phrasing_id=p.id "
-					+ "LEFT OUTER JOIN person pn ON r.artist_id=pn.id ";
-			if (name.length() != 0){
-				if (name.contains("'"))
-					query += "WHERE r.name like '%" + name.replace("'", "''") + "%'";
-				else
-					query += "WHERE r.name like '%" + name + "%'";
-			}
-			else
-				query += "WHERE r.name like '%%'";
-			String type = map.get("type");
-			type= type.replace("'", "''");
-			String medley = map.get("medley type");
-			medley = medley.replace("'", "''");
-			String repetitions = map.get("repetitions");
-			repetitions= repetitions.replace("'", "''");
-			String bars = map.get("bars");
-			bars = bars.replace("'", "''");
-			if (type != null)
-				if (!type.isEmpty())
-					query += " AND dt.name='"+type+"'";
-			if (medley != null)
-				if (!medley.isEmpty())
-					query += " AND mt.description='"+medley+"'";
-			if (repetitions != null)
-				if (!repetitions.isEmpty())
-					query += " AND r.repetitions"+repetitions;
-			if (bars != null)
-				if (!bars.isEmpty())
-					query += " AND r.barsperrepeat"+bars;
-			if(ihave) {
-				query += " AND r.ihave=1";
-			}
-			query += " ORDER by name";
-		} 
-		else if(table.equals("album")) {
-			query = "SELECT a.*, p.name as artist FROM album a "
-					+ "LEFT OUTER JOIN person p ON a.artist_id=p.id ";
-			if (name.length() != 0){
-				if (name.contains("'"))
-					query += "WHERE a.name like '%" + name.replace("'", "''") + "%'";
-				else
-					query += "WHERE a.name like '%" + name + "%'";
-			}
-			else
-				query += "WHERE a.name like '%%'";
-			String artist = map.get("artist_id");
-			artist = artist.replace("'", "''");
-			String year = map.get("productionyear");
-			year = year.replace("'", "''");
-			if (artist != null)
-				if(!artist.isEmpty())
-					query += " AND p.name like '%"+artist+"%'";
-			if (year != null)
-				if (!year.isEmpty())
-					query += " AND a.productionyear="+year;
-			if(ihave) {
-				query += " AND a.ihave=1";
-			}
-			query += " ORDER by name";
+		if(useResults) return results.search(engine(), table, name, map, ihave);
+		return engine().advancedTableSearch(table, name, map, ihave);
+	}
+	
+	/**
+	 * Read one page of a search, in order of name and id, see Keyset. Pages are always read
+	 * with sql, from the index on name, and are not kept in the result cache.
+	 * @param table - the table to search in
+	 * @param name - the name to search for
+	 * @param map - the mapping of keys and values in the advanced search, null for a search by name
+	 * @param ihave - if true only show what is marked as ihave, otherwise show all results
+	 * @param page - which page to read
+	 * @return ResultSet of the page
+	 * @throws SQLException
+	 */
+	public ResultSet searchPage(String table, String name, Map<String,String> map, boolean ihave, Keyset page) throws SQLException {
+		return sqlEngine.searchPage(table, name, map, ihave, page);
+	}
+	
+	/**
+	 * The engine searches currently go to
+	 * @return the in-memory engine if it is turned on, otherwise the sql engine
+	 * @throws SQLException
+	 */
+	private SearchEngine engine() throws SQLException {
+		return useMemory ? getMemoryEngine() : sqlEngine;
+	}
+	
+	/**
+	 * Turn the in-memory search engine on or off. While it is on, searchTableByName and
+	 * advancedTableSearch are answered from a snapshot of the catalogue held in memory.
+	 * @param useMemory - true to search in memory, false to search with sql
+	 * @throws SQLException
+	 */
+	public void useMemoryEngine(boolean useMemory) throws SQLException {
+		this.useMemory = useMemory;
+		if(useMemory) getMemoryEngine();
+		results.clear();
+	}
+	
+	/**
+	 * Check if searches are answered by the in-memory engine
+	 * @return true if the in-memory engine is on
+	 */
+	public boolean isMemoryEngine() {
+		return useMemory;
+	}
+	
+	/**
+	 * Turn the result cache on or off. While it is on, a search with the same table, title,
+	 * filters and collection flag as one made before is answered with a copy of its results,
+	 * until the rows they were read from change.
+	 * @param useResults - true to keep the results of searches
+	 */
+	public void useResultCache(boolean useResults) {
+		this.useResults = useResults;
+		results.clear();
+	}
+	
+	/**
+	 * Number of searches answered from the result cache
+	 * @return long
+	 */
+	public long getCacheHits() {
+		return results.getHits();
+	}
+	
+	/**
+	 * Number of searches that were not in the result cache and had to be run
+	 * @return long
+	 */
+	public long getCacheMisses() {
+		return results.getMisses();
+	}
+	
+	/**
+	 * Set how long a query has to take to be written to the slow query log,
+	 * slow-queries.log in the database folder, with its query plan
+	 * @param millis - the threshold in milliseconds, 0 to log every query
+	 */
+	public void setSlowQueryThreshold(long millis) {
+		log.setThreshold(millis);
+	}
+	
+	/**
+	 * The times of the queries run so far: for each, the number of runs, the mean, median,
+	 * 95th percentile and longest time of its last runs, and a histogram of them
+	 * @return String with a line for each query
+	 */
+	public String getQueryReport() {
+		return log.getReport();
+	}
+	
+	/**
+	 * The lookup tables as they were read when the database was last opened or updated
+	 * @return Lookups
+	 */
+	public Lookups getLookups() {
+		return lookups;
+	}
+	
+	/**
+	 * The dances of every formation and step as bitsets, read the first time they are asked for
+	 * @return MembershipIndex
+	 * @throws SQLException
+	 */
+	synchronized MembershipIndex getMemberships() throws SQLException {
+		if(memberships == null) {
+			memberships = MembershipIndex.load(this);
 		}
-		else {
-			query = "SELECT * FROM " + table + " WHERE name like '%" + name + "%'";
-			if(ihave) {
-				query += " AND ihave=1";
-			}
+		return memberships;
+	}
+	
+	/**
+	 * The engine that searches the database file with sql
+	 * @return SearchEngine
+	 */
+	public SearchEngine getSqlEngine() {
+		return sqlEngine;
+	}
+	
+	/**
+	 * The engine that searches a snapshot of the catalogue held in memory,
+	 * loading the snapshot the first time it is asked for
+	 * @return SearchEngine
+	 * @throws SQLException
+	 */
+	public synchronized SearchEngine getMemoryEngine() throws SQLException {
+		if(memoryEngine == null) {
+			memoryEngine = new MemoryEngine(this, sqlEngine);
 		}
-		System.out.println(query);
-		return stmt.executeQuery(query);
+		return memoryEngine;
 	}
 	
 	/**
 	 * Search the given table and return the name of the record with the given id
 	 * @param table - the table to search in
 	 * @param id - the id to find
-	 * @return ResultSet
+	 * @return ResultSet, read at once and positioned before the row
 	 * @throws SQLException
 	 */
 	public ResultSet getNameByIdFromTable(String table, int id) throws SQLException {
-		query = "SELECT name FROM '" + table +"' WHERE id=" + id;
-		return stmt.executeQuery(query);
+		String sql = "SELECT name FROM '" + table +"' WHERE id=?";
+		return executeRow(sql, id);
 	}
 	
 	/**
 	 * Search the given table and return all data for the given id
 	 * @param table - the table to search in
 	 * @param id - the id to find
-	 * @return ResultSet
+	 * @return ResultSet, read at once and positioned before the row
 	 * @throws SQLException
 	 */
 	public ResultSet getAllByIdFromTable(String table, int id) throws SQLException {
-		query = "SELECT * FROM '" + table +"' WHERE id=" + id;
-		return stmt.executeQuery(query);
+		String sql = "SELECT * FROM '" + table +"' WHERE id=?";
+		if(UserCollection.contains(table)) sql = UserCollection.select(table) + "WHERE x.id=?";
+		return executeRow(sql, id);
 	}
 	
 	/**
@@ -643,14 +834,14 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public ResultSet getRecordingsByAlbum(int album_id) throws SQLException {
-		query = "SELECT r.*, dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist, tracknumber "
-				+ "FROM recording r LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
+		String sql = "SELECT r.*, " + UserCollection.COLUMNS + ", dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist, tracknumber "
+				+ "FROM recording r " + UserCollection.join("recording", "r") + "LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
 				+ "LEFT OUTER JOIN medleytype mt ON r.medleytype_id=mt.id "
 				+ "LEFT OUTER JOIN phrasing p ON r.phrasing_id=p.id "
 				+ "LEFT OUTER JOIN albumsrecordingsmap arm ON r.id=arm.recording_id "
 				+ "LEFT OUTER JOIN person pn ON r.artist_id=pn.id "
-				+ "WHERE arm.album_id=" + album_id + " ORDER BY tracknumber";
-		return stmt.executeQuery(query);
+				+ "WHERE arm.album_id=? ORDER BY tracknumber";
+		return executeQuery(sql, album_id);
 	}
 	
 	/**
@@ -660,14 +851,14 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public ResultSet getRecordingsByDance(int dance_id) throws SQLException {
-		query = "SELECT r.*, dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist "
-				+ "FROM recording r LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
+		String sql = "SELECT r.*, " + UserCollection.COLUMNS + ", dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist "
+				+ "FROM recording r " + UserCollection.join("recording", "r") + "LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
 				+ "LEFT OUTER JOIN medleytype mt ON r.medleytype_id=mt.id "
 				+ "LEFT OUTER JOIN phrasing p ON r.phrasing_id=p.id "
 				+ "LEFT OUTER JOIN person pn ON r.artist_id=pn.id "
 				+ "LEFT OUTER JOIN dancesrecordingsmap drm ON r.id=drm.recording_id "
-				+ "WHERE drm.dance_id=" + dance_id + " ORDER BY r.name";
-		return stmt.executeQuery(query);
+				+ "WHERE drm.dance_id=? ORDER BY r.name";
+		return executeQuery(sql, dance_id);
 	}
 
 	/** 
@@ -677,14 +868,14 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public ResultSet getRecordingsByTune(int tune_id) throws SQLException {
-		query = "SELECT r.*, dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist "
-				+ "FROM recording r LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
+		String sql = "SELECT r.*, " + UserCollection.COLUMNS + ", dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist "
+				+ "FROM recording r " + UserCollection.join("recording", "r") + "LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
 				+ "LEFT OUTER JOIN medleytype mt ON r.medleytype_id=mt.id "
 				+ "LEFT OUTER JOIN phrasing p ON r.phrasing_id=p.id "
 				+ "LEFT OUTER JOIN person pn ON r.artist_id=pn.id "
 				+ "LEFT OUTER JOIN tunesrecordingsmap trm ON r.id=trm.recording_id "
-				+ "WHERE trm.tune_id=" + tune_id + " ORDER BY r.name";
-		return stmt.executeQuery(query);
+				+ "WHERE trm.tune_id=? ORDER BY r.name";
+		return executeQuery(sql, tune_id);
 	}
 
 	/**
@@ -694,13 +885,13 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public ResultSet getRecordingsByPerson(int person_id) throws SQLException {
-		query = "SELECT r.*, dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist "
-				+ "FROM recording r LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
+		String sql = "SELECT r.*, " + UserCollection.COLUMNS + ", dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist "
+				+ "FROM recording r " + UserCollection.join("recording", "r") + "LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
 				+ "LEFT OUTER JOIN medleytype mt ON r.medleytype_id=mt.id "
 				+ "LEFT OUTER JOIN phrasing p ON r.phrasing_id=p.id "
 				+ "LEFT OUTER JOIN person pn ON r.artist_id=pn.id "
-				+ "WHERE pn.id=" + person_id + " ORDER BY r.name";
-		return stmt.executeQuery(query);
+				+ "WHERE pn.id=? ORDER BY r.name";
+		return executeQuery(sql, person_id);
 	}
 
 	/**
@@ -710,9 +901,9 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public ResultSet getStepsByDance(int dance_id) throws SQLException {
-		query = "SELECT s.* FROM step s LEFT OUTER JOIN dancesstepsmap dsm "
-				+ "ON s.id=dsm.step_id WHERE dsm.dance_id=" + dance_id + " ORDER BY s.name";
-		return stmt.executeQuery(query);
+		String sql = "SELECT s.* FROM step s LEFT OUTER JOIN dancesstepsmap dsm "
+				+ "ON s.id=dsm.step_id WHERE dsm.dance_id=? ORDER BY s.name";
+		return executeQuery(sql, dance_id);
 	}
 	
 	/**
@@ -722,9 +913,9 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public ResultSet getTunesByDance(int dance_id) throws SQLException {
-		query = "SELECT t.*, p.name as composer FROM tune t LEFT OUTER JOIN dancestunesmap dtm ON t.id=dtm.tune_id "
-				+ "LEFT OUTER JOIN person p ON t.composer_id=p.id WHERE dtm.dance_id=" + dance_id + " ORDER BY t.name";
-		return stmt.executeQuery(query);
+		String sql = "SELECT t.*, p.name as composer FROM tune t LEFT OUTER JOIN dancestunesmap dtm ON t.id=dtm.tune_id "
+				+ "LEFT OUTER JOIN person p ON t.composer_id=p.id WHERE dtm.dance_id=? ORDER BY t.name";
+		return executeQuery(sql, dance_id);
 	}
 	
 	/**
@@ -734,10 +925,10 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public ResultSet getTunesByPublication(int publication_id) throws SQLException {
-		query = "SELECT t.*, p.name as composer FROM tune t LEFT OUTER JOIN tunespublicationsmap tpm "
+		String sql = "SELECT t.*, p.name as composer FROM tune t LEFT OUTER JOIN tunespublicationsmap tpm "
 				+ "ON t.id=tpm.tune_id LEFT OUTER JOIN person p ON t.composer_id=p.id "
-				+ "WHERE tpm.publication_id=" + publication_id + " ORDER BY t.name";
-		return stmt.executeQuery(query);
+				+ "WHERE tpm.publication_id=? ORDER BY t.name";
+		return executeQuery(sql, publication_id);
 	}
 
 	/**
@@ -747,10 +938,10 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public ResultSet getTunesByPerson(int person_id) throws SQLException {
-		query = "SELECT t.*, p.name as composer FROM tune t "
+		String sql = "SELECT t.*, p.name as composer FROM tune t "
 				+ "LEFT OUTER JOIN person p ON t.composer_id=p.id "
-				+ "WHERE p.id=" + person_id + " ORDER BY t.name";
-		return stmt.executeQuery(query);
+				+ "WHERE p.id=? ORDER BY t.name";
+		return executeQuery(sql, person_id);
 	}
 
 	/**
@@ -760,9 +951,9 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public ResultSet getTunesByRecording(int recording_id) throws SQLException {
-		query = "SELECT t.*, p.name as composer FROM tune t LEFT OUTER JOIN tunesrecordingsmap trm ON t.id=trm.tune_id "
-				+ "LEFT OUTER JOIN person p ON t.composer_id=p.id WHERE trm.recording_id=" + recording_id + " ORDER BY t.name";
-		return stmt.executeQuery(query);
+		String sql = "SELECT t.*, p.name as composer FROM tune t LEFT OUTER JOIN tunesrecordingsmap trm ON t.id=trm.tune_id "
+				+ "LEFT OUTER JOIN person p ON t.composer_id=p.id WHERE trm.recording_id=? ORDER BY t.name";
+		return executeQuery(sql, recording_id);
 	}
 	
 	/**
@@ -772,9 +963,10 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public ResultSet getAlbumByRecording(int recording_id) throws SQLException {
-		query = "SELECT a.*, p.name as artist FROM album a LEFT OUTER JOIN albumsrecordingsmap arm ON a.id=arm.album_id "
-				+ "LEFT OUTER JOIN person p ON a.artist_id=p.id WHERE arm.recording_id=" + recording_id + " ORDER BY a.name";
-		return stmt.executeQuery(query);
+		String sql = "SELECT a.*, " + UserCollection.COLUMNS + ", p.name as artist FROM album a "
+				+ UserCollection.join("album", "a") + "LEFT OUTER JOIN albumsrecordingsmap arm ON a.id=arm.album_id "
+				+ "LEFT OUTER JOIN person p ON a.artist_id=p.id WHERE arm.recording_id=? ORDER BY a.name";
+		return executeQuery(sql, recording_id);
 	}
 	
 	/**
@@ -784,10 +976,11 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public ResultSet getAlbumsByPerson(int person_id) throws SQLException {
-		query = "SELECT a.*, p.name as artist FROM album a "
+		String sql = "SELECT a.*, " + UserCollection.COLUMNS + ", p.name as artist FROM album a "
+				+ UserCollection.join("album", "a")
 				+ "LEFT OUTER JOIN person p ON a.artist_id=p.id "
-				+ "WHERE p.id=" + person_id + " ORDER BY a.name";
-		return stmt.executeQuery(query);
+				+ "WHERE p.id=? ORDER BY a.name";
+		return executeQuery(sql, person_id);
 	}
 
 	/**
@@ -797,8 +990,9 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public ResultSet getDancesByPublication(int publication_id) throws SQLException {
-		query = "SELECT d.*, dt.name as type, mt.description as medleytype, s.name as shape, "
+		String sql = "SELECT d.*, " + UserCollection.COLUMNS + ", dt.name as type, mt.description as medleytype, s.name as shape, "
 				+ "c.name as couples, p.name as progression, pb.name as publication, pn.name as devisor FROM dance d "
+				+ UserCollection.join("dance", "d")
 				+ "LEFT OUTER JOIN dancetype dt ON d.type_id=dt.id "
 				+ "LEFT OUTER JOIN medleytype mt ON d.medleytype_id=mt.id "
 				+ "LEFT OUTER JOIN shape s ON d.shape_id=s.id "
@@ -807,8 +1001,8 @@ public class Database {
 				+ "LEFT OUTER JOIN dancespublicationsmap dpm ON d.id=dpm.dance_id "
 				+ "LEFT OUTER JOIN publication pb ON dpm.publication_id=pb.id "
 				+ "LEFT OUTER JOIN person pn ON d.devisor_id=pn.id "
-				+ "WHERE dpm.publication_id=" + publication_id + " ORDER BY d.name";
-		return stmt.executeQuery(query);
+				+ "WHERE dpm.publication_id=? ORDER BY d.name";
+		return executeQuery(sql, publication_id);
 	}
 	
 	/**
@@ -818,8 +1012,9 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public ResultSet getDancesByTune(int tune_id) throws SQLException {
-		query = "SELECT d.*, dt.name as type, mt.description as medleytype, s.name as shape, "
+		String sql = "SELECT d.*, " + UserCollection.COLUMNS + ", dt.name as type, mt.description as medleytype, s.name as shape, "
 				+ "c.name as couples, p.name as progression, pb.name as publication, pn.name as devisor FROM dance d "
+				+ UserCollection.join("dance", "d")
 				+ "LEFT OUTER JOIN dancetype dt ON d.type_id=dt.id "
 				+ "LEFT OUTER JOIN medleytype mt ON d.medleytype_id=mt.id "
 				+ "LEFT OUTER JOIN shape s ON d.shape_id=s.id "
@@ -829,8 +1024,8 @@ public class Database {
 				+ "LEFT OUTER JOIN publication pb ON dpm.publication_id=pb.id "
 				+ "LEFT OUTER JOIN person pn ON d.devisor_id=pn.id "
 				+ "LEFT OUTER JOIN dancestunesmap dtm ON d.id=dtm.dance_id "
-				+ "WHERE dtm.tune_id=" + tune_id + " ORDER BY d.name";
-		return stmt.executeQuery(query);
+				+ "WHERE dtm.tune_id=? ORDER BY d.name";
+		return executeQuery(sql, tune_id);
 	}
 	
 	/**
@@ -840,8 +1035,9 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public ResultSet getDancesByPerson(int person_id) throws SQLException {
-		query = "SELECT d.*, dt.name as type, mt.description as medleytype, s.name as shape, "
+		String sql = "SELECT d.*, " + UserCollection.COLUMNS + ", dt.name as type, mt.description as medleytype, s.name as shape, "
 				+ "c.name as couples, p.name as progression, pb.name as publication, pn.name as devisor FROM dance d "
+				+ UserCollection.join("dance", "d")
 				+ "LEFT OUTER JOIN dancetype dt ON d.type_id=dt.id "
 				+ "LEFT OUTER JOIN medleytype mt ON d.medleytype_id=mt.id "
 				+ "LEFT OUTER JOIN shape s ON d.shape_id=s.id "
@@ -850,8 +1046,8 @@ public class Database {
 				+ "LEFT OUTER JOIN dancespublicationsmap dpm ON d.id=dpm.dance_id "
 				+ "LEFT OUTER JOIN publication pb ON dpm.publication_id=pb.id "
 				+ "LEFT OUTER JOIN person pn ON d.devisor_id=pn.id "
-				+ "WHERE pn.id=" + person_id + " ORDER BY d.name";
-		return stmt.executeQuery(query);
+				+ "WHERE pn.id=? ORDER BY d.name";
+		return executeQuery(sql, person_id);
 	}
 	
 	/**
@@ -861,10 +1057,11 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public ResultSet getPublicationsByPerson(int person_id) throws SQLException {
-		query = "SELECT p.*, pn.name as devisor FROM publication p "
+		String sql = "SELECT p.*, " + UserCollection.COLUMNS + ", pn.name as devisor FROM publication p "
+				+ UserCollection.join("publication", "p")
 				+ "LEFT OUTER JOIN person pn ON p.devisor_id=pn.id "
-				+ "WHERE pn.id=" + person_id + " ORDER BY p.name";
-		return stmt.executeQuery(query);
+				+ "WHERE pn.id=? ORDER BY p.name";
+		return executeQuery(sql, person_id);
 	}
 	
 	/**
@@ -874,11 +1071,12 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public ResultSet getPublicationsByDance(int dance_id) throws SQLException {
-		query = "SELECT p.*, pn.name as devisor FROM publication p "
+		String sql = "SELECT p.*, " + UserCollection.COLUMNS + ", pn.name as devisor FROM publication p "
+				+ UserCollection.join("publication", "p")
 				+ "LEFT OUTER JOIN person pn ON p.devisor_id=pn.id "
 				+ "LEFT OUTER JOIN dancespublicationsmap dpm ON p.id=dpm.publication_id "
-				+ "WHERE dpm.dance_id=" + dance_id + " ORDER BY p.name";
-		return stmt.executeQuery(query);
+				+ "WHERE dpm.dance_id=? ORDER BY p.name";
+		return executeQuery(sql, dance_id);
 	}
 	
 	/**
@@ -888,14 +1086,354 @@ public class Database {
 	 * @throws SQLException
 	 */
 	public ResultSet getFormationsByDance(int dance_id) throws SQLException {
-		query = "SELECT f.* FROM formation f LEFT OUTER JOIN dancesformationsmap dfm "
-				+ "ON f.id=dfm.formation_id WHERE dfm.dance_id=" + dance_id + " ORDER BY f.name";
-		return stmt.executeQuery(query);
+		String sql = "SELECT f.* FROM formation f LEFT OUTER JOIN dancesformationsmap dfm "
+				+ "ON f.id=dfm.formation_id WHERE dfm.dance_id=? ORDER BY f.name";
+		return executeQuery(sql, dance_id);
 	}
 
+	/**
+	 * Search the table by name on the query thread and hand the results to the callback
+	 * @param table - the table to search in
+	 * @param name - the name to search for
+	 * @param ihave - if true only show what is marked as ihave, otherwise show all results
+	 * @param callback - reads the results and receives them on the application thread
+	 * @return Future of the request
+	 */
+	public <T> Future<?> searchTableByNameAsync(final String table, final String name, final boolean ihave, QueryCallback<T> callback) {
+		return submit(new Callable<ResultSet>() {
+			@Override
+			public ResultSet call() throws SQLException {
+				return searchTableByName(table, name, ihave);
+			}
+		}, callback);
+	}
+	
+	/**
+	 * Run the advanced search on the query thread and hand the results to the callback
+	 * @param table - the table to search in
+	 * @param name - the name to search for
+	 * @param map - the mapping of keys and values in the advanced search, copied as it is now
+	 * @param ihave - if true only show what is marked as ihave, otherwise show all results
+	 * @param callback - reads the results and receives them on the application thread
+	 * @return Future of the request
+	 */
+	public <T> Future<?> advancedTableSearchAsync(final String table, final String name, Map<String,String> map, 
+			final boolean ihave, QueryCallback<T> callback) {
+		final Map<String,String> filters = new LinkedHashMap<String,String>(map);
+		return submit(new Callable<ResultSet>() {
+			@Override
+			public ResultSet call() throws SQLException {
+				return advancedTableSearch(table, name, filters, ihave);
+			}
+		}, callback);
+	}
+	
+	/**
+	 * Read one page of a search on the search thread and hand it to the callback. The search
+	 * thread runs one search at a time on a connection of its own, so a search superseded while
+	 * it is still running is cancelled instead of read to the end, see submitSearch.
+	 * @param table - the table to search in
+	 * @param name - the name to search for
+	 * @param map - the mapping of keys and values in the advanced search, copied as it is now, or null
+	 * @param ihave - if true only show what is marked as ihave, otherwise show all results
+	 * @param page - which page to read
+	 * @param callback - reads the results and receives them on the application thread
+	 * @return Future of the request
+	 */
+	public <T> Future<?> searchPageAsync(final String table, final String name, Map<String,String> map, 
+			final boolean ihave, final Keyset page, QueryCallback<T> callback) {
+		final Map<String,String> filters = (map == null) ? null : new LinkedHashMap<String,String>(map);
+		return submitSearch(new Callable<ResultSet>() {
+			@Override
+			public ResultSet call() throws SQLException {
+				return searchPage(table, name, filters, ihave, page);
+			}
+		}, callback);
+	}
+	
+	/**
+	 * Run the search by name, or the advanced search if there is a map, on the search thread and
+	 * hand the results to the callback, eg. one that reads every row of a large search as it goes.
+	 * The results are read from the engine as they are found, not kept in the result cache,
+	 * which would read them all before handing any over. Like searchPageAsync, a newer search
+	 * with the same key cancels it while it is read.
+	 * @param table - the table to search in
+	 * @param name - the name to search for
+	 * @param map - the mapping of keys and values in the advanced search, copied as it is now, or null
+	 * @param ihave - if true only show what is marked as ihave, otherwise show all results
+	 * @param callback - reads the results and receives them on the application thread
+	 * @return Future of the request
+	 */
+	public <T> Future<?> streamAsync(final String table, final String name, Map<String,String> map, 
+			final boolean ihave, QueryCallback<T> callback) {
+		final Map<String,String> filters = (map == null) ? null : new LinkedHashMap<String,String>(map);
+		return submitSearch(new Callable<ResultSet>() {
+			@Override
+			public ResultSet call() throws SQLException {
+				return (filters == null) ? engine().searchTableByName(table, name, ihave)
+						: engine().advancedTableSearch(table, name, filters, ihave);
+			}
+		}, callback);
+	}
+	
+	/**
+	 * Look up all data for the id on the query thread and hand it to the callback
+	 * @param table - the table to search in
+	 * @param id - the id to find
+	 * @param callback - reads the results and receives them on the application thread
+	 * @return Future of the request
+	 */
+	public <T> Future<?> getAllByIdFromTableAsync(final String table, final int id, QueryCallback<T> callback) {
+		return submit(new Callable<ResultSet>() {
+			@Override
+			public ResultSet call() throws SQLException {
+				return getAllByIdFromTable(table, id);
+			}
+		}, callback);
+	}
+	
+	/**
+	 * Run any query on the query thread. The callback maps the results there and is then given
+	 * them on the application thread, unless a newer request with the same key was made meanwhile.
+	 * @param query - runs the query
+	 * @param callback - reads the results and receives them on the application thread
+	 * @return Future of the request
+	 */
+	public <T> Future<?> submit(final Callable<ResultSet> query, final QueryCallback<T> callback) {
+		final String key = callback.getKey();
+		final long generation = next(key);
+		return executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				if(isStale(key, generation)) return;
+				deliver(query, callback, generation);
+			}
+		});
+	}
+	
+	/**
+	 * Run a search on the search thread, like submit. If the search running there has the same 
+	 * key it is superseded, and cancelled with Statement.cancel so the search thread is free for
+	 * this one at once. Its callback is not told, as with any superseded request.
+	 * @param query - runs the query
+	 * @param callback - reads the results and receives them on the application thread
+	 * @return Future of the request
+	 */
+	<T> Future<?> submitSearch(final Callable<ResultSet> query, final QueryCallback<T> callback) {
+		final String key = callback.getKey();
+		final long generation = next(key);
+		synchronized(searcher) {
+			if(key.equals(searching)) {
+				swap.readLock().lock();
+				try {
+					pool.cancelSearch();
+				} catch (SQLException e) {
+					e.printStackTrace();
+				} finally {
+					swap.readLock().unlock();
+				}
+			}
+		}
+		return searcher.submit(new Runnable() {
+			@Override
+			public void run() {
+				//the search is marked as running before it is checked, so it is either dropped or can be cancelled
+				synchronized(searcher) {
+					searching = key;
+				}
+				//each pool opened has its own searcher
+				swap.readLock().lock();
+				try {
+					if(isStale(key, generation)) return;
+					pool.searcherThread();
+					deliver(query, callback, generation);
+				} finally {
+					swap.readLock().unlock();
+					synchronized(searcher) {
+						searching = null;
+					}
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Give a request with the key the next number, which makes every older one stale
+	 * @param key - the key of the request
+	 * @return the number of the request
+	 */
+	private long next(String key) {
+		synchronized(generations) {
+			Long last = generations.get(key);
+			long generation = (last == null) ? 1 : last + 1;
+			generations.put(key, generation);
+			return generation;
+		}
+	}
+	
+	/**
+	 * Run the query and map its results on the calling thread, then hand them to the callback
+	 * on the application thread unless the request has been superseded meanwhile
+	 * @param query - runs the query
+	 * @param callback - reads the results and receives them on the application thread
+	 * @param generation - the number the request was given
+	 */
+	private <T> void deliver(Callable<ResultSet> query, final QueryCallback<T> callback, final long generation) {
+		final String key = callback.getKey();
+		//the results are read while the file cannot be opened again under them
+		swap.readLock().lock();
+		try {
+			final T result = callback.map(query.call());
+			callbacks.execute(new Runnable() {
+				@Override
+				public void run() {
+					if(!isStale(key, generation)) callback.done(result);
+				}
+			});
+		} catch(final Exception e) {
+			callbacks.execute(new Runnable() {
+				@Override
+				public void run() {
+					if(!isStale(key, generation)) callback.failed(e);
+				}
+			});
+		} finally {
+			swap.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Checks if a newer request with the key has been made since the given one
+	 * @param key - the key of the request
+	 * @param generation - the number the request was given
+	 * @return true if the request has been superseded
+	 */
+	private boolean isStale(String key, long generation) {
+		synchronized(generations) {
+			return generations.get(key) != generation;
+		}
+	}
+	
+	/**
+	 * Set where callbacks are run, the JavaFX application thread by default
+	 * @param callbacks - runs the done and failed methods of the callbacks
+	 */
+	public void setCallbackExecutor(Executor callbacks) {
+		this.callbacks = callbacks;
+	}
+	
+	/*
+	 * Single rows are read at once and their results closed, so a caller that
+	 * reads the row and drops the ResultSet does not keep a cached statement busy
+	 */
+	private ResultSet executeRow(String sql, Object... params) throws SQLException {
+		ResultSet set = executeQuery(sql, params);
+		try {
+			return materialize(set);
+		}
+		finally {
+			set.close();
+		}
+	}
+	
+	/**
+	 * Read the whole ResultSet into memory so it can be passed between threads and read after
+	 * the statement behind it has been reused
+	 * @param set - the results to copy
+	 * @return CachedRowSet positioned before the first row
+	 * @throws SQLException
+	 */
+	public CachedRowSet materialize(ResultSet set) throws SQLException {
+		CachedRowSet copy = RowSetProvider.newFactory().createCachedRowSet();
+		copy.populate(set);
+		return copy;
+	}
+	
 	public ResultSet doQuery(String s) throws SQLException {
-		query = s;
-		return stmt.executeQuery(query);
+		return executeQuery(s);
+	}
+	
+	/**
+	 * Run a query on the calling thread's reader, binding the params in order.
+	 * Every query gets its own statement and ResultSet, so results that are still
+	 * being read are not closed by the next lookup.
+	 * @param sql - the query with a ? for every param
+	 * @param params - the values to bind
+	 * @return ResultSet
+	 * @throws SQLException
+	 */
+	ResultSet executeQuery(String sql, Object... params) throws SQLException {
+		query = sql;
+		long start = System.nanoTime();
+		ResultSet rs;
+		swap.readLock().lock();
+		try {
+			rs = pool.reader().executeQuery(sql, params);
+		} finally {
+			swap.readLock().unlock();
+		}
+		closeRetired(false);
+		log.record(sql, params, System.nanoTime() - start);
+		return rs;
+	}
+	
+	/**
+	 * Run a query on the calling thread's reader without keeping its compiled statement,
+	 * for queries whose text changes from one run to the next
+	 * @param sql - the query with a ? for every param
+	 * @param params - the values to bind
+	 * @return ResultSet
+	 * @throws SQLException
+	 */
+	ResultSet executeQueryOnce(String sql, Object... params) throws SQLException {
+		query = sql;
+		long start = System.nanoTime();
+		ResultSet rs;
+		swap.readLock().lock();
+		try {
+			rs = pool.reader().executeQueryOnce(sql, params);
+		} finally {
+			swap.readLock().unlock();
+		}
+		closeRetired(false);
+		log.record(sql, params, System.nanoTime() - start);
+		return rs;
+	}
+	
+	/**
+	 * The plan sqlite makes for a query, eg. to find out why it is slow. It is not timed.
+	 * @param sql - the query with a ? for every param
+	 * @param params - the values to bind
+	 * @return the steps of the plan separated by " | ", indented by their depth
+	 * @throws SQLException
+	 */
+	String explain(String sql, Object... params) throws SQLException {
+		ResultSet rs;
+		swap.readLock().lock();
+		try {
+			rs = pool.reader().executeQueryOnce("EXPLAIN QUERY PLAN " + sql, params);
+		} finally {
+			swap.readLock().unlock();
+		}
+		//newer versions of sqlite give each step and the step it belongs to, older ones a flat list
+		boolean tree = rs.getMetaData().getColumnName(1).equals("id");
+		HashMap<Integer, Integer> depth = new HashMap<Integer, Integer>();
+		StringBuilder plan = new StringBuilder();
+		while(rs.next()) {
+			int d = 0;
+			if(tree) {
+				Integer parent = depth.get(rs.getInt(2));
+				d = (parent == null) ? 0 : parent + 1;
+				depth.put(rs.getInt(1), d);
+			}
+			if(plan.length() > 0) plan.append(" | ");
+			for(int i = 0; i < d; i++) {
+				plan.append("  ");
+			}
+			plan.append(rs.getString(rs.getMetaData().getColumnCount()));
+		}
+		rs.close();
+		return plan.toString();
 	}
 	
 	public String getQuery() {
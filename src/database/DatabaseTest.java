@@ -2,12 +2,28 @@ package database;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 
 public class DatabaseTest {
@@ -52,35 +68,6 @@ public class DatabaseTest {
 				System.out.println(e);
 			}
 			
-			//test iHave database alterations
-			try {
-				System.out.print("altering tables for iHave...");
-				db.addIHaveTagColumns();
-				System.out.println("IHAVE ALTERING SUCCESSFUL");
-			}
-			catch (SQLException e){
-				System.out.println("iHave columns already created! Continuing...");
-				//System.out.println(e);
-			}
-			catch(Exception e){
-				System.out.println("Error altering tables for iHave");
-				System.out.println(e);
-			}
-			
-			//test saving to db file/ loading to tables
-			try {
-				System.out.print("saving iHave info to file...");
-				db.saveIHave();
-				System.out.println("IHAVE SAVE SUCESSFUL");
-				System.out.print("loading to tables ...");
-				db.loadIHave();
-				System.out.println("IHAVE LOADING SUCCESSFUL\n");
-			}
-			catch(Exception e){
-				System.out.println("Error saving/loading tables for iHave");
-				System.out.println(e);
-			}
-			
 			//test SQL queries
 			try {
 				System.out.println("Testing SQL functions...\n");
@@ -90,10 +77,10 @@ public class DatabaseTest {
 				System.out.println("DONE");
 				
 				System.out.print("Testing searchByTableName function... ");
-
+
 				currentMethod = "searchByTableName";
 				ResultSet searchTableByNameTest = db.searchTableByName("dance", searchByTableNameTestValue, false);
-
+
 				while (searchTableByNameTest.next()){
 					//System.out.println(searchTableByNameTest.getString("name"));
 					assertTrue(searchTableByNameTest.getString("name").toLowerCase().contains(searchByTableNameTestValue));
@@ -102,13 +89,13 @@ public class DatabaseTest {
 				
 				System.out.print("Testing getNameByIdFromTable function... ");
 				currentMethod = "getNameByIdFromTable";
-				assertTrue(db.getNameByIdFromTable("dance", getNameByIdFromTableTestValue).getString("name").equals(getNameByIdFromTableTestEquals));
+				assertTrue(field(db.getNameByIdFromTable("dance", getNameByIdFromTableTestValue), "name").equals(getNameByIdFromTableTestEquals));
 				System.out.println("DONE");
 				
 				System.out.print("Testing getAllByIdFromTable function... ");
 				currentMethod = "getAllByIdFromTable";
-				assertTrue(db.getAllByIdFromTable("dance", getAllByIdFromTableTestValue).getString("name").equals(getAllByIdFromTableTestEquals1));
-				assertTrue(db.getAllByIdFromTable("dance", getAllByIdFromTableTestValue).getString("shape_id").equals(getAllByIdFromTableTestEquals2));
+				assertTrue(field(db.getAllByIdFromTable("dance", getAllByIdFromTableTestValue), "name").equals(getAllByIdFromTableTestEquals1));
+				assertTrue(field(db.getAllByIdFromTable("dance", getAllByIdFromTableTestValue), "shape_id").equals(getAllByIdFromTableTestEquals2));
 				System.out.println("DONE");
 				
 				System.out.print("Testing getRecordingsByAlbum function... ");
@@ -125,18 +112,26 @@ public class DatabaseTest {
 				currentMethod = "iHave";
 				db.iHave("recording", iHaveTestTagValue);
 				ResultSet haveNoTag = db.getAllByIdFromTable("recording", iHaveTestTagValue);
+				haveNoTag.next();
 				//System.out.println(haveNoTag.getString("iHave"));
 				assertTrue(haveNoTag.getString("iHave").equals("1"));
+				haveNoTag.close();
 				db.iDontHave("recording", iHaveTestTagValue);
 				ResultSet donthaveNoTag = db.getAllByIdFromTable("recording", iHaveTestTagValue);
+				donthaveNoTag.next();
 				assertTrue(donthaveNoTag.getString("iHave").equals("0"));
+				donthaveNoTag.close();
 				db.iHave("recording", iHaveTestNoTagValue);
 				db.addTag("recording", iHaveTestNoTagValue, "fav");
 				ResultSet haveWithTag = db.getAllByIdFromTable("recording", iHaveTestNoTagValue);
+				haveWithTag.next();
 				assertTrue(haveWithTag.getString("iHave").equals("1"));
+				haveWithTag.close();
 				db.iDontHave("recording", iHaveTestNoTagValue);
 				ResultSet donthaveWithTag = db.getAllByIdFromTable("recording", iHaveTestNoTagValue);
+				donthaveWithTag.next();
 				assertTrue(donthaveWithTag.getString("iHave").equals("0"));
+				donthaveWithTag.close();
 				db.close();
 				System.out.println("DONE");	
 			}
@@ -166,7 +161,7 @@ public class DatabaseTest {
 				assertTrue(formation_ids.contains(Integer.parseInt(rs.getString("id"))));
 			}
 			String expectQ = "SELECT f.* FROM formation f LEFT OUTER JOIN dancesformationsmap dfm "
-					+ "ON f.id=dfm.formation_id WHERE dfm.dance_id=" + dance_id + " ORDER BY f.name";
+					+ "ON f.id=dfm.formation_id WHERE dfm.dance_id=? ORDER BY f.name";
 			assertEquals(expectQ, db.getQuery());
 			db.close();
 			System.out.print("DONE\n");
@@ -188,10 +183,11 @@ public class DatabaseTest {
 			while(rs.next()) {
 				assertTrue(publication_ids.contains(Integer.parseInt(rs.getString("id"))));
 			}
-			String expectQ = "SELECT p.*, pn.name as devisor FROM publication p "
+			String expectQ = "SELECT p.*, COALESCE(ci.ihave, 0) as ihave, ci.tag as tag, pn.name as devisor FROM publication p "
+					+ "LEFT OUTER JOIN collection.item ci ON ci.type='publication' AND ci.id=p.id "
 					+ "LEFT OUTER JOIN person pn ON p.devisor_id=pn.id "
 					+ "LEFT OUTER JOIN dancespublicationsmap dpm ON p.id=dpm.publication_id "
-					+ "WHERE dpm.dance_id=" + dance_id + " ORDER BY p.name";
+					+ "WHERE dpm.dance_id=? ORDER BY p.name";
 			assertEquals(expectQ, db.getQuery());
 			db.close();
 			System.out.print("DONE\n");
@@ -213,9 +209,10 @@ public class DatabaseTest {
 			while(rs.next()) {
 				assertTrue(publication_ids.contains(Integer.parseInt(rs.getString("id"))));
 			}
-			String expectQ = "SELECT p.*, pn.name as devisor FROM publication p "
+			String expectQ = "SELECT p.*, COALESCE(ci.ihave, 0) as ihave, ci.tag as tag, pn.name as devisor FROM publication p "
+					+ "LEFT OUTER JOIN collection.item ci ON ci.type='publication' AND ci.id=p.id "
 					+ "LEFT OUTER JOIN person pn ON p.devisor_id=pn.id "
-					+ "WHERE pn.id=" + person_id + " ORDER BY p.name";
+					+ "WHERE pn.id=? ORDER BY p.name";
 			assertEquals(expectQ, db.getQuery());
 			db.close();
 			System.out.print("DONE\n");
@@ -237,8 +234,9 @@ public class DatabaseTest {
 			while(rs.next()) {
 				assertTrue(dance_ids.contains(Integer.parseInt(rs.getString("id"))));
 			}
-			String expectQ = "SELECT d.*, dt.name as type, mt.description as medleytype, s.name as shape, "
+			String expectQ = "SELECT d.*, COALESCE(ci.ihave, 0) as ihave, ci.tag as tag, dt.name as type, mt.description as medleytype, s.name as shape, "
 					+ "c.name as couples, p.name as progression, pb.name as publication, pn.name as devisor FROM dance d "
+					+ "LEFT OUTER JOIN collection.item ci ON ci.type='dance' AND ci.id=d.id "
 					+ "LEFT OUTER JOIN dancetype dt ON d.type_id=dt.id "
 					+ "LEFT OUTER JOIN medleytype mt ON d.medleytype_id=mt.id "
 					+ "LEFT OUTER JOIN shape s ON d.shape_id=s.id "
@@ -247,7 +245,7 @@ public class DatabaseTest {
 					+ "LEFT OUTER JOIN dancespublicationsmap dpm ON d.id=dpm.dance_id "
 					+ "LEFT OUTER JOIN publication pb ON dpm.publication_id=pb.id "
 					+ "LEFT OUTER JOIN person pn ON d.devisor_id=pn.id "
-					+ "WHERE pn.id=" + person_id + " ORDER BY d.name";
+					+ "WHERE pn.id=? ORDER BY d.name";
 			assertEquals(expectQ, db.getQuery());
 			db.close();
 			System.out.print("DONE\n");
@@ -269,8 +267,9 @@ public class DatabaseTest {
 			while(rs.next()) {
 				assertTrue(dance_ids.contains(Integer.parseInt(rs.getString("id"))));
 			}
-			String expectQ = "SELECT d.*, dt.name as type, mt.description as medleytype, s.name as shape, "
+			String expectQ = "SELECT d.*, COALESCE(ci.ihave, 0) as ihave, ci.tag as tag, dt.name as type, mt.description as medleytype, s.name as shape, "
 					+ "c.name as couples, p.name as progression, pb.name as publication, pn.name as devisor FROM dance d "
+					+ "LEFT OUTER JOIN collection.item ci ON ci.type='dance' AND ci.id=d.id "
 					+ "LEFT OUTER JOIN dancetype dt ON d.type_id=dt.id "
 					+ "LEFT OUTER JOIN medleytype mt ON d.medleytype_id=mt.id "
 					+ "LEFT OUTER JOIN shape s ON d.shape_id=s.id "
@@ -280,7 +279,7 @@ public class DatabaseTest {
 					+ "LEFT OUTER JOIN publication pb ON dpm.publication_id=pb.id "
 					+ "LEFT OUTER JOIN person pn ON d.devisor_id=pn.id "
 					+ "LEFT OUTER JOIN dancestunesmap dtm ON d.id=dtm.dance_id "
-					+ "WHERE dtm.tune_id=" + tune_id + " ORDER BY d.name";
+					+ "WHERE dtm.tune_id=? ORDER BY d.name";
 			assertEquals(expectQ, db.getQuery());
 			db.close();
 			System.out.print("DONE\n");
@@ -302,8 +301,9 @@ public class DatabaseTest {
 			while(rs.next()) {
 				assertTrue(dance_ids.contains(Integer.parseInt(rs.getString("id"))));
 			}
-			String expectQ = "SELECT d.*, dt.name as type, mt.description as medleytype, s.name as shape, "
+			String expectQ = "SELECT d.*, COALESCE(ci.ihave, 0) as ihave, ci.tag as tag, dt.name as type, mt.description as medleytype, s.name as shape, "
 					+ "c.name as couples, p.name as progression, pb.name as publication, pn.name as devisor FROM dance d "
+					+ "LEFT OUTER JOIN collection.item ci ON ci.type='dance' AND ci.id=d.id "
 					+ "LEFT OUTER JOIN dancetype dt ON d.type_id=dt.id "
 					+ "LEFT OUTER JOIN medleytype mt ON d.medleytype_id=mt.id "
 					+ "LEFT OUTER JOIN shape s ON d.shape_id=s.id "
@@ -312,7 +312,7 @@ public class DatabaseTest {
 					+ "LEFT OUTER JOIN dancespublicationsmap dpm ON d.id=dpm.dance_id "
 					+ "LEFT OUTER JOIN publication pb ON dpm.publication_id=pb.id "
 					+ "LEFT OUTER JOIN person pn ON d.devisor_id=pn.id "
-					+ "WHERE dpm.publication_id=" + publication_id + " ORDER BY d.name";
+					+ "WHERE dpm.publication_id=? ORDER BY d.name";
 			assertEquals(expectQ, db.getQuery());
 			db.close();
 			System.out.print("DONE\n");
@@ -334,9 +334,10 @@ public class DatabaseTest {
 			while(rs.next()) {
 				assertTrue(album_ids.contains(Integer.parseInt(rs.getString("id"))));
 			}
-			String expectQ = "SELECT a.*, p.name as artist FROM album a "
+			String expectQ = "SELECT a.*, COALESCE(ci.ihave, 0) as ihave, ci.tag as tag, p.name as artist FROM album a "
+					+ "LEFT OUTER JOIN collection.item ci ON ci.type='album' AND ci.id=a.id "
 					+ "LEFT OUTER JOIN person p ON a.artist_id=p.id "
-					+ "WHERE p.id=" + person_id + " ORDER BY a.name";
+					+ "WHERE p.id=? ORDER BY a.name";
 			assertEquals(expectQ, db.getQuery());
 			db.close();
 			System.out.print("DONE\n");
@@ -358,8 +359,9 @@ public class DatabaseTest {
 			while(rs.next()) {
 				assertTrue(album_ids.contains(Integer.parseInt(rs.getString("id"))));
 			}
-			String expectQ = "SELECT a.*, p.name as artist FROM album a LEFT OUTER JOIN albumsrecordingsmap arm ON a.id=arm.album_id "
-					+ "LEFT OUTER JOIN person p ON a.artist_id=p.id WHERE arm.recording_id=" + recording_id + " ORDER BY a.name";
+			String expectQ = "SELECT a.*, COALESCE(ci.ihave, 0) as ihave, ci.tag as tag, p.name as artist FROM album a "
+					+ "LEFT OUTER JOIN collection.item ci ON ci.type='album' AND ci.id=a.id LEFT OUTER JOIN albumsrecordingsmap arm ON a.id=arm.album_id "
+					+ "LEFT OUTER JOIN person p ON a.artist_id=p.id WHERE arm.recording_id=? ORDER BY a.name";
 			assertEquals(expectQ, db.getQuery());
 			db.close();
 			System.out.print("DONE\n");
@@ -382,7 +384,7 @@ public class DatabaseTest {
 				assertTrue(tune_ids.contains(Integer.parseInt(rs.getString("id"))));
 			}
 			String expectQ = "SELECT t.*, p.name as composer FROM tune t LEFT OUTER JOIN tunesrecordingsmap trm ON t.id=trm.tune_id "
-					+ "LEFT OUTER JOIN person p ON t.composer_id=p.id WHERE trm.recording_id=" + recording_id + " ORDER BY t.name";
+					+ "LEFT OUTER JOIN person p ON t.composer_id=p.id WHERE trm.recording_id=? ORDER BY t.name";
 			assertEquals(expectQ, db.getQuery());
 			db.close();
 			System.out.print("DONE\n");
@@ -406,7 +408,7 @@ public class DatabaseTest {
 			}
 			String expectQ = "SELECT t.*, p.name as composer FROM tune t "
 					+ "LEFT OUTER JOIN person p ON t.composer_id=p.id "
-					+ "WHERE p.id=" + person_id + " ORDER BY t.name";
+					+ "WHERE p.id=? ORDER BY t.name";
 			assertEquals(expectQ, db.getQuery());
 			db.close();
 			System.out.print("DONE\n");
@@ -430,7 +432,7 @@ public class DatabaseTest {
 			}
 			String expectQ = "SELECT t.*, p.name as composer FROM tune t LEFT OUTER JOIN tunespublicationsmap tpm "
 					+ "ON t.id=tpm.tune_id LEFT OUTER JOIN person p ON t.composer_id=p.id "
-					+ "WHERE tpm.publication_id=" + publication_id + " ORDER BY t.name";
+					+ "WHERE tpm.publication_id=? ORDER BY t.name";
 			assertEquals(expectQ, db.getQuery());
 			db.close();
 			System.out.print("DONE\n");
@@ -453,7 +455,7 @@ public class DatabaseTest {
 				assertTrue(tune_ids.contains(Integer.parseInt(rs.getString("id"))));
 			}
 			String expectQ = "SELECT t.*, p.name as composer FROM tune t LEFT OUTER JOIN dancestunesmap dtm ON t.id=dtm.tune_id "
-					+ "LEFT OUTER JOIN person p ON t.composer_id=p.id WHERE dtm.dance_id=" + dance_id + " ORDER BY t.name";
+					+ "LEFT OUTER JOIN person p ON t.composer_id=p.id WHERE dtm.dance_id=? ORDER BY t.name";
 			assertEquals(expectQ, db.getQuery());
 			db.close();
 			System.out.print("DONE\n");
@@ -476,7 +478,7 @@ public class DatabaseTest {
 				assertTrue(step_ids.contains(Integer.parseInt(rs.getString("id"))));
 			}
 			String expectQ = "SELECT s.* FROM step s LEFT OUTER JOIN dancesstepsmap dsm "
-					+ "ON s.id=dsm.step_id WHERE dsm.dance_id=" + dance_id + " ORDER BY s.name";
+					+ "ON s.id=dsm.step_id WHERE dsm.dance_id=? ORDER BY s.name";
 			assertEquals(expectQ, db.getQuery());
 			db.close();
 			System.out.print("DONE\n");
@@ -498,12 +500,13 @@ public class DatabaseTest {
 			while(rs.next()) {
 				assertTrue(recording_ids.contains(Integer.parseInt(rs.getString("id"))));
 			}
-			String expectQ = "SELECT r.*, dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist "
-					+ "FROM recording r LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
+			String expectQ = "SELECT r.*, COALESCE(ci.ihave, 0) as ihave, ci.tag as tag, dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist "
+					+ "FROM recording r LEFT OUTER JOIN collection.item ci ON ci.type='recording' AND ci.id=r.id "
+					+ "LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
 					+ "LEFT OUTER JOIN medleytype mt ON r.medleytype_id=mt.id "
 					+ "LEFT OUTER JOIN phrasing p ON r.phrasing_id=p.id "
 					+ "LEFT OUTER JOIN person pn ON r.artist_id=pn.id "
-					+ "WHERE pn.id=" + person_id + " ORDER BY r.name";
+					+ "WHERE pn.id=? ORDER BY r.name";
 			assertEquals(expectQ, db.getQuery());
 			db.close();
 			System.out.print("DONE\n");
@@ -525,13 +528,14 @@ public class DatabaseTest {
 			while(rs.next()) {
 				assertTrue(recording_ids.contains(Integer.parseInt(rs.getString("id"))));
 			}
-			String expectQ = "SELECT r.*, dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist "
-					+ "FROM recording r LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
+			String expectQ = "SELECT r.*, COALESCE(ci.ihave, 0) as ihave, ci.tag as tag, dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist "
+					+ "FROM recording r LEFT OUTER JOIN collection.item ci ON ci.type='recording' AND ci.id=r.id "
+					+ "LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
 					+ "LEFT OUTER JOIN medleytype mt ON r.medleytype_id=mt.id "
 					+ "LEFT OUTER JOIN phrasing p ON r.phrasing_id=p.id "
 					+ "LEFT OUTER JOIN person pn ON r.artist_id=pn.id "
 					+ "LEFT OUTER JOIN tunesrecordingsmap trm ON r.id=trm.recording_id "
-					+ "WHERE trm.tune_id=" + tune_id + " ORDER BY r.name";
+					+ "WHERE trm.tune_id=? ORDER BY r.name";
 			assertEquals(expectQ, db.getQuery());
 			db.close();
 			System.out.print("DONE\n");
@@ -553,13 +557,14 @@ public class DatabaseTest {
 			while(rs.next()) {
 				assertTrue(recording_ids.contains(Integer.parseInt(rs.getString("id"))));
 			}
-			String expectQ = "SELECT r.*, dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist "
-					+ "FROM recording r LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
+			String expectQ = "SELECT r.*, COALESCE(ci.ihave, 0) as ihave, ci.tag as tag, dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist "
+					+ "FROM recording r LEFT OUTER JOIN collection.item ci ON ci.type='recording' AND ci.id=r.id "
+					+ "LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
 					+ "LEFT OUTER JOIN medleytype mt ON r.medleytype_id=mt.id "
 					+ "LEFT OUTER JOIN phrasing p ON r.phrasing_id=p.id "
 					+ "LEFT OUTER JOIN person pn ON r.artist_id=pn.id "
 					+ "LEFT OUTER JOIN dancesrecordingsmap drm ON r.id=drm.recording_id "
-					+ "WHERE drm.dance_id=" + dance_id + " ORDER BY r.name";
+					+ "WHERE drm.dance_id=? ORDER BY r.name";
 			assertEquals(expectQ, db.getQuery());
 			db.close();
 			System.out.print("DONE\n");
@@ -581,13 +586,14 @@ public class DatabaseTest {
 			while(rs.next()) {
 				assertTrue(recording_ids.contains(Integer.parseInt(rs.getString("id"))));
 			}
-			String expectQ = "SELECT r.*, dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist, tracknumber "
-					+ "FROM recording r LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
+			String expectQ = "SELECT r.*, COALESCE(ci.ihave, 0) as ihave, ci.tag as tag, dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist, tracknumber "
+					+ "FROM recording r LEFT OUTER JOIN collection.item ci ON ci.type='recording' AND ci.id=r.id "
+					+ "LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
 					+ "LEFT OUTER JOIN medleytype mt ON r.medleytype_id=mt.id "
 					+ "LEFT OUTER JOIN phrasing p ON r.phrasing_id=p.id "
 					+ "LEFT OUTER JOIN albumsrecordingsmap arm ON r.id=arm.recording_id "
 					+ "LEFT OUTER JOIN person pn ON r.artist_id=pn.id "
-					+ "WHERE arm.album_id=" + album_id + " ORDER BY tracknumber";
+					+ "WHERE arm.album_id=? ORDER BY tracknumber";
 			assertEquals(expectQ, db.getQuery());
 			db.close();
 			System.out.print("DONE\n");
@@ -597,4 +603,555 @@ public class DatabaseTest {
 			e.printStackTrace();
 		}
 	}
+	
+	@Test
+	public void testDeltaUpdate() {
+		try {
+			System.out.print("Testing delta update... ");
+			//a copy of its own, so the update does not change the database of the other tests
+			File folder = Files.createTempDirectory("scddata").toFile();
+			FileUtils.copyFileToDirectory(new File("database/scddata.db"), folder);
+			Database db = new Database(folder);
+			int dance_id = 11;
+			String name = field(db.getNameByIdFromTable("dance", dance_id), "name");
+			//a copy of the database with one dance renamed stands in for the online source
+			File upstream = File.createTempFile("scddata", ".db");
+			FileUtils.copyFile(new File("database/scddata.db"), upstream);
+			Connection c = DriverManager.getConnection("jdbc:sqlite:" + upstream.getPath());
+			c.createStatement().execute("UPDATE dance SET name='" + name.replace("'", "''") + " (revised)' WHERE id=" + dance_id);
+			c.close();
+			db.setUpdateURL(upstream.toURI().toURL());
+			assertEquals(1, db.update());
+			assertEquals(name + " (revised)", field(db.getNameByIdFromTable("dance", dance_id), "name"));
+			//and back again
+			c = DriverManager.getConnection("jdbc:sqlite:" + upstream.getPath());
+			c.createStatement().execute("UPDATE dance SET name='" + name.replace("'", "''") + "' WHERE id=" + dance_id);
+			c.close();
+			assertEquals(1, db.update());
+			assertEquals(name, field(db.getNameByIdFromTable("dance", dance_id), "name"));
+			db.close();
+			upstream.delete();
+			FileUtils.deleteDirectory(folder);
+			System.out.print("DONE\n");
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	@Test
+	public void testCollectionSurvivesUpdate() {
+		try {
+			System.out.print("Testing the collection through an update... ");
+			//a copy of its own, so neither the update nor the collection touch those of the other tests
+			File folder = Files.createTempDirectory("scddata").toFile();
+			FileUtils.copyFileToDirectory(new File("database/scddata.db"), folder);
+			Database db = new Database(folder);
+			int recording_id = 134;
+			db.iHave("recording", recording_id);
+			db.addTag("recording", recording_id, "fav");
+			//a copy of the database stands in for the online source and replaces the file
+			File upstream = File.createTempFile("scddata", ".db");
+			FileUtils.copyFile(new File("database/scddata.db"), upstream);
+			db.setUpdateURL(upstream.toURI().toURL());
+			db.useDeltaUpdates(false);
+			assertEquals(1, db.update());
+			ResultSet rs = db.getAllByIdFromTable("recording", recording_id);
+			rs.next();
+			assertEquals("1", rs.getString("ihave"));
+			assertEquals("fav", rs.getString("tag"));
+			rs.close();
+			db.removeTag("recording", recording_id);
+			db.iDontHave("recording", recording_id);
+			assertEquals("0", field(db.getAllByIdFromTable("recording", recording_id), "ihave"));
+			db.close();
+			upstream.delete();
+			FileUtils.deleteDirectory(folder);
+			System.out.print("DONE\n");
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	@Test
+	public void testBulkCollection() {
+		try {
+			System.out.print("Testing marking many albums at once... ");
+			//a folder of its own, so the marks do not go to the collection of the other tests
+			File folder = Files.createTempDirectory("scddata").toFile();
+			FileUtils.copyFileToDirectory(new File("database/scddata.db"), folder);
+			Database db = new Database(folder);
+			List<Integer> albums = Arrays.asList(1, 2);
+			Map<String, Set<Integer>> marked = db.iHave("album", albums);
+			assertEquals(new TreeSet<Integer>(albums), marked.get("album"));
+			assertFalse(marked.get("recording").isEmpty());
+			for(int id : marked.get("recording")) {
+				ResultSet rs = db.getAllByIdFromTable("recording", id);
+				rs.next();
+				assertEquals("1", rs.getString("ihave"));
+				rs.close();
+			}
+			assertEquals(marked, db.iDontHave("album", albums));
+			for(int id : marked.get("recording")) {
+				ResultSet rs = db.getAllByIdFromTable("recording", id);
+				rs.next();
+				assertEquals("0", rs.getString("ihave"));
+				rs.close();
+			}
+			//marks and tags are taken off together
+			db.iHave("album", albums);
+			db.addTag("album", albums, "fav");
+			assertEquals(marked, db.removeFromCollection("album", albums));
+			for(int id : marked.get("recording")) {
+				ResultSet rs = db.getAllByIdFromTable("recording", id);
+				rs.next();
+				assertEquals("0", rs.getString("ihave"));
+				assertNull(rs.getString("tag"));
+				rs.close();
+			}
+			db.close();
+			FileUtils.deleteDirectory(folder);
+			System.out.print("DONE\n");
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	@Test
+	public void testResultCache() {
+		try {
+			System.out.print("Testing the result cache... ");
+			//a folder of its own, so no collection is there before the test marks an album
+			File folder = Files.createTempDirectory("scddata").toFile();
+			FileUtils.copyFileToDirectory(new File("database/scddata.db"), folder);
+			Database db = new Database(folder);
+			db.searchTableByName("album", "", true).close();
+			db.searchTableByName("album", "", true).close();
+			assertEquals(1, db.getCacheHits());
+			assertEquals(1, db.getCacheMisses());
+			db.iHave("album", 1);
+			ResultSet rs = db.searchTableByName("album", "", true);
+			assertEquals(2, db.getCacheMisses());
+			assertTrue(rs.next());
+			assertEquals(1, rs.getInt("id"));
+			rs.close();
+			db.iDontHave("album", 1);
+			assertFalse(db.searchTableByName("album", "", true).next());
+			db.close();
+			FileUtils.deleteDirectory(folder);
+			System.out.print("DONE\n");
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	@Test
+	public void testSearchPage() {
+		try {
+			System.out.print("Testing keyset pages... ");
+			Database db = new Database();
+			ArrayList<Integer> all = new ArrayList<Integer>();
+			ResultSet rs = db.executeQuery("SELECT id FROM recording ORDER BY name, id");
+			while(rs.next()) all.add(rs.getInt(1));
+			rs.close();
+			//forwards, each page after the last row of the one before
+			ArrayList<Integer> forwards = new ArrayList<Integer>();
+			Keyset page = Keyset.first(37);
+			while(true) {
+				rs = db.searchPage("recording", "", null, false, page);
+				String name = null;
+				int id = 0, n = 0;
+				while(rs.next()) {
+					name = rs.getString("name");
+					id = rs.getInt("id");
+					forwards.add(id);
+					n++;
+				}
+				rs.close();
+				if(n < 37) break;
+				page = Keyset.after(name, id, 37);
+			}
+			assertEquals(all, forwards);
+			//backwards from the end, each page in order before the first row of the one after
+			ArrayList<Integer> backwards = new ArrayList<Integer>();
+			page = Keyset.before("\uffff", 0, 37);
+			while(true) {
+				rs = db.searchPage("recording", "", null, false, page);
+				ArrayList<Integer> rows = new ArrayList<Integer>();
+				String name = null;
+				int id = 0;
+				while(rs.next()) {
+					if(rows.isEmpty()) {
+						name = rs.getString("name");
+						id = rs.getInt("id");
+					}
+					rows.add(rs.getInt("id"));
+				}
+				rs.close();
+				backwards.addAll(0, rows);
+				if(rows.size() < 37) break;
+				page = Keyset.before(name, id, 37);
+			}
+			assertEquals(all, backwards);
+			db.close();
+			System.out.print("DONE\n");
+		} catch (MalformedURLException e) {
+			e.printStackTrace();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Test
+	public void testSupersededSearch() {
+		try {
+			System.out.print("Testing superseded searches... ");
+			final Database db = new Database();
+			db.setCallbackExecutor(new Executor() {
+				@Override
+				public void execute(Runnable r) {
+					r.run();
+				}
+			});
+			ArrayList<String> done = new ArrayList<String>();
+			//a search that would run for minutes, cancelled by the one after it once it runs
+			Future<?> slow = db.submitSearch(new Callable<ResultSet>() {
+				@Override
+				public ResultSet call() throws SQLException {
+					return db.executeQueryOnce("WITH RECURSIVE c(x) AS (SELECT 1 UNION ALL SELECT x + 1 FROM c) "
+							+ "SELECT x FROM c LIMIT 1 OFFSET 1000000000");
+				}
+			}, new Search("slow", done));
+			Thread.sleep(200);
+			long start = System.currentTimeMillis();
+			Future<?> page = db.searchPageAsync("recording", "", null, false, Keyset.first(10), new Search("page", done));
+			slow.get();
+			page.get();
+			assertTrue(System.currentTimeMillis() - start < 5000);
+			assertEquals(Arrays.asList("page 10"), done);
+			db.close();
+			System.out.print("DONE\n");
+		} catch (MalformedURLException e) {
+			e.printStackTrace();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	@Test
+	public void testEngineParity() {
+		try {
+			System.out.print("Testing the in-memory engine against sql... ");
+			//a folder of its own, so the marks and tags do not go to the collection of the other tests
+			File folder = Files.createTempDirectory("scddata").toFile();
+			FileUtils.copyFileToDirectory(new File("database/scddata.db"), folder);
+			Database db = new Database(folder);
+			db.iHave("publication", 3);
+			db.iHave("album", 2);
+			db.iHave("dance", 7);
+			db.addTag("dance", 7, "fav");
+			SearchEngine sql = db.getSqlEngine();
+			SearchEngine memory = db.getMemoryEngine();
+			//changes after the snapshot is loaded have to reach it too
+			db.iHave("recording", 11);
+			db.iDontHave("dance", 7);
+			String[] tables = {"dance", "album", "publication", "recording"};
+			String[] names = {"", "a", "castle", "Castle Gay", "zzz", "50%", "_a"};
+			for(String table : tables) {
+				for(String name : names) {
+					for(boolean ihave : new boolean[] {false, true}) {
+						assertEquals(table + " '" + name + "' " + ihave, rows(sql.searchTableByName(table, name, ihave)),
+								rows(memory.searchTableByName(table, name, ihave)));
+					}
+				}
+			}
+			String none = "*  *  *  *  *";
+			String[][] dances = {
+					{"type", "Reel", "bars", "32", "formation", none, "steps", none},
+					{"type", "", "bars", "<=32", "couples", "3 couples", "formation", "Form 1~or~Form 3~not~Form 4~", "steps", none},
+					{"shape", "Longwise - 4", "author", "a", "formation", none, "steps", "Step 1~or~Step 2~", "RSCDS", "1"},
+					{"type", "Jig", "bars", ">16", "formation", "Form 2~and~Form 5~", "steps", none, "RSCDS", "0"}};
+			for(String[] values : dances) {
+				Map<String, String> map = new LinkedHashMap<String, String>();
+				for(int i = 0; i < values.length; i += 2) {
+					map.put(values[i], values[i + 1]);
+				}
+				for(boolean ihave : new boolean[] {false, true}) {
+					assertEquals("dance " + map + " " + ihave, rows(sql.advancedTableSearch("dance", "", map, ihave)),
+							rows(memory.advancedTableSearch("dance", "", map, ihave)));
+					assertEquals("dance a " + map + " " + ihave, rows(sql.advancedTableSearch("dance", "a", map, ihave)),
+							rows(memory.advancedTableSearch("dance", "a", map, ihave)));
+				}
+			}
+			Map<String, String> publication = new LinkedHashMap<String, String>();
+			publication.put("author", "e");
+			publication.put("RSCDS", "1");
+			Map<String, String> recording = new LinkedHashMap<String, String>();
+			recording.put("type", "Reel");
+			recording.put("medley type", "");
+			recording.put("repetitions", ">2");
+			recording.put("bars", "32");
+			Map<String, String> album = new LinkedHashMap<String, String>();
+			album.put("artist_id", "o");
+			album.put("productionyear", "");
+			for(boolean ihave : new boolean[] {false, true}) {
+				assertEquals(rows(sql.advancedTableSearch("publication", "", publication, ihave)),
+						rows(memory.advancedTableSearch("publication", "", publication, ihave)));
+				assertEquals(rows(sql.advancedTableSearch("recording", "", recording, ihave)),
+						rows(memory.advancedTableSearch("recording", "", recording, ihave)));
+				assertEquals(rows(sql.advancedTableSearch("album", "", album, ihave)),
+						rows(memory.advancedTableSearch("album", "", album, ihave)));
+			}
+			db.close();
+			FileUtils.deleteDirectory(folder);
+			System.out.print("DONE\n");
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	@Test
+	public void testLongFormationFilter() {
+		try {
+			System.out.print("Testing formation filters of many terms... ");
+			Database db = new Database();
+			//the formations most dances have, so the terms match something
+			ArrayList<String> formations = new ArrayList<String>();
+			ResultSet rs = db.executeQuery("SELECT f.name FROM formation f JOIN dancesformationsmap m ON m.formation_id=f.id "
+					+ "GROUP BY f.id ORDER BY count(*) DESC, f.id LIMIT 5");
+			while(rs.next()) formations.add(rs.getString(1));
+			rs.close();
+			assertEquals(5, formations.size());
+			//and binds tighter than or, and "not" is and not, as in sql
+			String[][] filters = {
+					{"0", "or", "1", "and", "2", "or", "3", "not", "4"},
+					{"0", "and", "1", "or", "2", "not", "3", "and", "4"},
+					{"0", "not", "1", "not", "2", "or", "3"}};
+			for(String[] filter : filters) {
+				String val = "", where = "";
+				ArrayList<Object> params = new ArrayList<Object>();
+				for(int i = 0; i < filter.length; i++) {
+					if(i % 2 == 0) {
+						val += formations.get(Integer.parseInt(filter[i])) + "~";
+						where += "d.id IN (SELECT dance_id FROM dancesformationsmap WHERE formation_id="
+								+ "(SELECT id FROM formation WHERE name=?))";
+						params.add(formations.get(Integer.parseInt(filter[i])));
+					} else {
+						val += filter[i] + "~";
+						where += filter[i].equals("not") ? " AND NOT " : " " + filter[i].toUpperCase() + " ";
+					}
+				}
+				TreeSet<Integer> expected = new TreeSet<Integer>();
+				rs = db.executeQuery("SELECT id FROM dance d WHERE " + where, params.toArray());
+				while(rs.next()) expected.add(rs.getInt(1));
+				rs.close();
+				if(filter == filters[0]) assertFalse(expected.isEmpty());
+				Map<String, String> map = new LinkedHashMap<String, String>();
+				map.put("formation", val);
+				for(SearchEngine engine : new SearchEngine[] {db.getSqlEngine(), db.getMemoryEngine()}) {
+					TreeSet<Integer> found = new TreeSet<Integer>();
+					rs = engine.advancedTableSearch("dance", "", map, false);
+					while(rs.next()) found.add(rs.getInt("id"));
+					rs.close();
+					assertEquals(val, expected, found);
+				}
+			}
+			db.close();
+			System.out.print("DONE\n");
+		} catch (MalformedURLException e) {
+			e.printStackTrace();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	@Test
+	public void testCollectionRestore() {
+		try {
+			System.out.print("Testing restoring the collection from its journal... ");
+			File folder = Files.createTempDirectory("scddata").toFile();
+			FileUtils.copyFileToDirectory(new File("database/scddata.db"), folder);
+			File journal = new File(folder, "collection.journal");
+			Database db = new Database(folder);
+			db.iHave("publication", 3);
+			db.addTag("dance", 5, "tab\there");
+			db.iHave("album", 2);
+			db.addTag("album", 2, "cd");
+			db.iDontHave("dance", 7);
+			db.removeTag("album", 2);
+			db.close();
+			List<String> items = items(folder);
+			lose(folder);
+			db = new Database(folder);
+			db.close();
+			assertEquals(items, items(folder));
+			//enough changes to compact the journal into the snapshot, and some after it
+			db = new Database(folder);
+			ArrayList<Integer> dances = new ArrayList<Integer>();
+			for(int id = 1; id <= CollectionJournal.COMPACT_AFTER + 100; id++) {
+				dances.add(id);
+			}
+			db.iHave("dance", dances);
+			for(int i = 0; i < 50 && FileUtils.readLines(journal).size() >= CollectionJournal.COMPACT_AFTER; i++) {
+				Thread.sleep(100);
+			}
+			assertTrue(FileUtils.readLines(journal).size() < CollectionJournal.COMPACT_AFTER);
+			db.iDontHave("dance", Arrays.asList(1, 2, 3));
+			db.addTag("dance", 10, "first");
+			db.addTag("dance", 10, "last");
+			db.close();
+			items = items(folder);
+			assertTrue(items.contains("dance 10 1 last"));
+			lose(folder);
+			db = new Database(folder);
+			db.close();
+			assertEquals(items, items(folder));
+			//a line that does not match its checksum is left out
+			List<String> lines = FileUtils.readLines(journal);
+			String damaged = lines.get(lines.size() - 1).replace("\tlast\t", "\tlost\t");
+			assertFalse(damaged.equals(lines.get(lines.size() - 1)));
+			lines.set(lines.size() - 1, damaged);
+			FileUtils.writeLines(journal, lines, "\n");
+			lose(folder);
+			db = new Database(folder);
+			db.close();
+			items.set(items.indexOf("dance 10 1 last"), "dance 10 1 first");
+			assertEquals(items, items(folder));
+			FileUtils.deleteDirectory(folder);
+			System.out.print("DONE\n");
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/*
+	 * The rows of the collection file of the folder, read straight from it
+	 */
+	private static List<String> items(File folder) throws SQLException {
+		ArrayList<String> items = new ArrayList<String>();
+		Connection c = DriverManager.getConnection("jdbc:sqlite:" + new File(folder, "collection.db").getPath());
+		try {
+			ResultSet rs = c.createStatement().executeQuery("SELECT type, id, ihave, tag FROM item ORDER BY type, id");
+			while(rs.next()) {
+				items.add(rs.getString(1) + " " + rs.getInt(2) + " " + rs.getInt(3) + " " + rs.getString(4));
+			}
+			rs.close();
+		} finally {
+			c.close();
+		}
+		return items;
+	}
+	
+	/*
+	 * Lose the collection file of the folder, so it has to be restored from the journal
+	 */
+	private static void lose(File folder) {
+		new File(folder, "collection.db").delete();
+		new File(folder, "collection.db-wal").delete();
+		new File(folder, "collection.db-shm").delete();
+	}
+	
+	/*
+	 * Every column of every row, in order, and close the results
+	 */
+	private static List<String> rows(ResultSet rs) throws SQLException {
+		ArrayList<String> rows = new ArrayList<String>();
+		ResultSetMetaData meta = rs.getMetaData();
+		while(rs.next()) {
+			StringBuilder row = new StringBuilder();
+			for(int i = 1; i <= meta.getColumnCount(); i++) {
+				row.append(meta.getColumnLabel(i)).append('=').append(rs.getString(i)).append('|');
+			}
+			rows.add(row.toString());
+		}
+		rs.close();
+		return rows;
+	}
+	
+	/*
+	 * Read one column of the single row a getter returns, and close it
+	 */
+	private static String field(ResultSet row, String column) throws SQLException {
+		try {
+			row.next();
+			return row.getString(column);
+		}
+		finally {
+			row.close();
+		}
+	}
+	
+	/**
+	 * Counts the rows of a search and notes what it was told
+	 */
+	private static class Search extends QueryCallback<Integer> {
+		
+		private String name;
+		private List<String> told;
+		
+		Search(String name, List<String> told) {
+			super("test:search");
+			this.name = name;
+			this.told = told;
+		}
+		
+		@Override
+		public Integer map(ResultSet set) throws SQLException {
+			int rows = 0;
+			while(set.next()) rows++;
+			set.close();
+			return rows;
+		}
+		
+		@Override
+		public void done(Integer result) {
+			told.add(name + " " + result);
+		}
+		
+		@Override
+		public void failed(Exception e) {
+			told.add(name + " failed");
+		}
+	}
+
+	@Test
+	public void testSlowQueryLog() {
+		try {
+			System.out.print("Testing the slow query log... ");
+			File log = new File("database/slow-queries.log");
+			log.delete();
+			Database db = new Database();
+			db.setSlowQueryThreshold(0);
+			db.getDancesByPublication(3).close();
+			assertTrue(db.getQueryReport().contains("Database.getDancesByPublication dance: 1 runs"));
+			String logged = FileUtils.readFileToString(log);
+			assertTrue(logged.contains("Database.getDancesByPublication"));
+			//the plan reads "SEARCH TABLE x" before sqlite 3.36 and "SEARCH x" since
+			assertTrue(logged.contains("SEARCH "));
+			db.close();
+			log.delete();
+			System.out.print("DONE\n");
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
 }
@@ -0,0 +1,358 @@
+package database;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/**
+ * DeltaUpdate brings the live database up to date with a newly downloaded copy by changing
+ * only the rows that differ, instead of replacing the whole file.
+ *
+ *  -	Every table of the new copy is compared with the live one row by row. Rows are matched
+ * 		by id and compared by a hash of their values, so only ids and hashes are held in memory.
+ *
+ * 	-	The inserted, updated and deleted rows are then applied to the live database in one
+ * 		transaction. Tables without an id column are replaced whole when their hashes differ.
+ *
+ * Virtual tables such as the full-text index are rebuilt rather than copied. When the tables
+ * or columns of the new copy are not the same as the live ones the update cannot be made row
+ * by row, and apply reports it so the caller can replace the file instead.
+ */
+class DeltaUpdate {
+
+	private Connection writer;
+	private File staging;
+	private LinkedHashMap<String, ArrayList<String>> columns;
+	private int inserted, updated, deleted;
+	private ArrayList<String> changedTables;
+
+	/**
+	 * Constructor for a DeltaUpdate
+	 * @param writer - the connection to the live database
+	 * @param staging - the newly downloaded copy
+	 */
+	DeltaUpdate(Connection writer, File staging) {
+		this.writer = writer;
+		this.staging = staging;
+		columns = new LinkedHashMap<String, ArrayList<String>>();
+		changedTables = new ArrayList<String>();
+	}
+
+	/**
+	 * Compare the new copy with the live database and apply the differences
+	 * @return false if the tables or columns differ, in which case nothing was changed
+	 * @throws SQLException
+	 */
+	boolean apply() throws SQLException {
+		Statement s = writer.createStatement();
+		try {
+			s.execute("ATTACH DATABASE '" + staging.getPath().replace("'", "''") + "' AS staging");
+			try {
+				if(!sameSchema()) return false;
+				boolean autoCommit = writer.getAutoCommit();
+				writer.setAutoCommit(false);
+				try {
+					for(String table : columns.keySet()) {
+						if(columns.get(table).contains("id")) applyRows(table);
+						else applyTable(table);
+					}
+					writer.commit();
+				} catch(SQLException e) {
+					writer.rollback();
+					throw e;
+				} finally {
+					writer.setAutoCommit(autoCommit);
+				}
+				return true;
+			} finally {
+				s.execute("DETACH DATABASE staging");
+			}
+		} finally {
+			s.close();
+		}
+	}
+
+	/**
+	 * Read the columns of every table of the new copy and check the live database has the
+	 * same tables with the same columns
+	 * @return true if the schemas match
+	 * @throws SQLException
+	 */
+	private boolean sameSchema() throws SQLException {
+		ArrayList<String> tables = new ArrayList<String>();
+		ArrayList<String> virtual = new ArrayList<String>();
+		Statement s = writer.createStatement();
+		try {
+			ResultSet rs = s.executeQuery("SELECT name, sql FROM staging.sqlite_master WHERE type='table' "
+					+ "AND name NOT LIKE 'sqlite_%' ORDER BY name");
+			while(rs.next()) {
+				String sql = rs.getString(2);
+				if(sql != null && sql.toUpperCase().startsWith("CREATE VIRTUAL")) virtual.add(rs.getString(1));
+				else tables.add(rs.getString(1));
+			}
+			rs.close();
+		} finally {
+			s.close();
+		}
+		for(int i = 0; i < tables.size(); i++) {
+			if(derived(tables.get(i), virtual)) continue;
+			ArrayList<String> fresh = columns("staging", tables.get(i));
+			ArrayList<String> live = columns("main", tables.get(i));
+			if(!fresh.equals(live)) return false;
+			columns.put(tables.get(i), fresh);
+		}
+		return true;
+	}
+
+	/**
+	 * Check if a table holds the data of a virtual table, such as the full-text index of
+	 * the titles, which is built from the other tables rather than copied
+	 * @param table - the table
+	 * @param virtual - the virtual tables
+	 * @return true if the table belongs to one of them
+	 */
+	private boolean derived(String table, ArrayList<String> virtual) {
+		for(int i = 0; i < virtual.size(); i++) {
+			if(table.startsWith(virtual.get(i) + "_")) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The columns of a table
+	 * @param schema - main or staging
+	 * @param table - the table
+	 * @return the names of the columns in order, empty if there is no such table
+	 * @throws SQLException
+	 */
+	private ArrayList<String> columns(String schema, String table) throws SQLException {
+		ArrayList<String> cols = new ArrayList<String>();
+		Statement s = writer.createStatement();
+		try {
+			ResultSet rs = s.executeQuery("PRAGMA " + schema + ".table_info(" + quote(table) + ")");
+			while(rs.next()) {
+				cols.add(rs.getString("name"));
+			}
+			rs.close();
+		} finally {
+			s.close();
+		}
+		return cols;
+	}
+
+	/**
+	 * Apply the rows of a table with an id that were inserted, updated or deleted
+	 * @param table - the table
+	 * @throws SQLException
+	 */
+	private void applyRows(String table) throws SQLException {
+		ArrayList<String> cols = columns.get(table);
+		String list = columnList(cols);
+		ArrayList<Integer> inserts = new ArrayList<Integer>();
+		ArrayList<Integer> updates = new ArrayList<Integer>();
+		ArrayList<Integer> deletes = new ArrayList<Integer>();
+		Statement liveStmt = writer.createStatement();
+		Statement freshStmt = writer.createStatement();
+		try {
+			String order = " WHERE id IS NOT NULL ORDER BY id";
+			ResultSet live = liveStmt.executeQuery("SELECT " + list + " FROM main." + quote(table) + order);
+			ResultSet fresh = freshStmt.executeQuery("SELECT " + list + " FROM staging." + quote(table) + order);
+			int id = cols.indexOf("id") + 1;
+			boolean hasLive = live.next(), hasFresh = fresh.next();
+			while(hasLive || hasFresh) {
+				long liveId = hasLive ? live.getLong(id) : Long.MAX_VALUE;
+				long freshId = hasFresh ? fresh.getLong(id) : Long.MAX_VALUE;
+				if(liveId < freshId) {
+					deletes.add((int) liveId);
+					hasLive = live.next();
+				} else if(freshId < liveId) {
+					inserts.add((int) freshId);
+					hasFresh = fresh.next();
+				} else {
+					if(hash(live, cols.size()) != hash(fresh, cols.size())) updates.add((int) liveId);
+					hasLive = live.next();
+					hasFresh = fresh.next();
+				}
+			}
+			live.close();
+			fresh.close();
+		} finally {
+			liveStmt.close();
+			freshStmt.close();
+		}
+		String t = quote(table);
+		run("DELETE FROM main." + t + " WHERE id=?", deletes);
+		run("INSERT INTO main." + t + "(" + list + ") SELECT " + list + " FROM staging." + t + " WHERE id=?", inserts);
+		StringBuilder set = new StringBuilder();
+		for(int i = 0; i < cols.size(); i++) {
+			if(cols.get(i).equals("id")) continue;
+			if(set.length() > 0) set.append(", ");
+			String c = quote(cols.get(i));
+			set.append(c).append("=(SELECT ").append(c).append(" FROM staging.").append(t)
+					.append(" s WHERE s.id=main.").append(t).append(".id)");
+		}
+		if(set.length() > 0) run("UPDATE main." + t + " SET " + set + " WHERE id=?", updates);
+		deleted += deletes.size();
+		inserted += inserts.size();
+		updated += updates.size();
+		if(!inserts.isEmpty() || !updates.isEmpty() || !deletes.isEmpty()) changedTables.add(table);
+	}
+
+	/**
+	 * Replace a table without an id column whole when any of its rows differ
+	 * @param table - the table
+	 * @throws SQLException
+	 */
+	private void applyTable(String table) throws SQLException {
+		String list = columnList(columns.get(table));
+		String t = quote(table);
+		long[] live = hashes("SELECT " + list + " FROM main." + t, columns.get(table).size());
+		long[] fresh = hashes("SELECT " + list + " FROM staging." + t, columns.get(table).size());
+		if(Arrays.equals(live, fresh)) return;
+		Statement s = writer.createStatement();
+		try {
+			s.execute("DELETE FROM main." + t);
+			s.execute("INSERT INTO main." + t + "(" + list + ") SELECT " + list + " FROM staging." + t);
+		} finally {
+			s.close();
+		}
+		deleted += live.length;
+		inserted += fresh.length;
+		changedTables.add(table);
+	}
+
+	/**
+	 * The sorted hashes of every row of a query
+	 * @param sql - the query
+	 * @param count - the number of columns
+	 * @return long[]
+	 * @throws SQLException
+	 */
+	private long[] hashes(String sql, int count) throws SQLException {
+		ArrayList<Long> list = new ArrayList<Long>();
+		Statement s = writer.createStatement();
+		try {
+			ResultSet rs = s.executeQuery(sql);
+			while(rs.next()) {
+				list.add(hash(rs, count));
+			}
+			rs.close();
+		} finally {
+			s.close();
+		}
+		long[] hashes = new long[list.size()];
+		for(int i = 0; i < hashes.length; i++) {
+			hashes[i] = list.get(i);
+		}
+		Arrays.sort(hashes);
+		return hashes;
+	}
+
+	/**
+	 * A 64 bit FNV-1a hash of the values of the current row, the type of each value included
+	 * @param rs - the results, on the row
+	 * @param count - the number of columns
+	 * @return long
+	 * @throws SQLException
+	 */
+	private static long hash(ResultSet rs, int count) throws SQLException {
+		long h = 0xcbf29ce484222325L;
+		for(int i = 1; i <= count; i++) {
+			Object o = rs.getObject(i);
+			String value;
+			if(o == null) value = "n";
+			else if(o instanceof byte[]) value = "b" + Arrays.toString((byte[]) o);
+			else if(o instanceof Number) value = ((o instanceof Double || o instanceof Float) ? "r" : "i") + o;
+			else value = "s" + o;
+			for(int k = 0; k < value.length(); k++) {
+				h ^= value.charAt(k);
+				h *= 0x100000001b3L;
+			}
+			//separate the values so "ab","c" and "a","bc" differ
+			h ^= 0x1f;
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	/**
+	 * Run a statement once for every id in one batch
+	 * @param sql - the statement with one ? for the id
+	 * @param ids - the ids
+	 * @throws SQLException
+	 */
+	private void run(String sql, ArrayList<Integer> ids) throws SQLException {
+		if(ids.isEmpty()) return;
+		PreparedStatement ps = writer.prepareStatement(sql);
+		try {
+			for(int i = 0; i < ids.size(); i++) {
+				ps.setInt(1, ids.get(i));
+				ps.addBatch();
+			}
+			ps.executeBatch();
+		} finally {
+			ps.close();
+		}
+	}
+
+	/**
+	 * The quoted names of the columns separated by commas
+	 * @param cols - the columns
+	 * @return String
+	 */
+	private static String columnList(ArrayList<String> cols) {
+		StringBuilder list = new StringBuilder();
+		for(int i = 0; i < cols.size(); i++) {
+			if(i > 0) list.append(", ");
+			list.append(quote(cols.get(i)));
+		}
+		return list.toString();
+	}
+
+	/**
+	 * Quote a table or column name for sql
+	 * @param name - the name
+	 * @return the quoted name
+	 */
+	private static String quote(String name) {
+		return "\"" + name.replace("\"", "\"\"") + "\"";
+	}
+
+	/**
+	 * Number of rows inserted by the last apply
+	 * @return int
+	 */
+	int getInserted() {
+		return inserted;
+	}
+
+	/**
+	 * Number of rows updated by the last apply
+	 * @return int
+	 */
+	int getUpdated() {
+		return updated;
+	}
+
+	/**
+	 * Number of rows deleted by the last apply
+	 * @return int
+	 */
+	int getDeleted() {
+		return deleted;
+	}
+
+	/**
+	 * The tables the last apply changed
+	 * @return the names of the tables
+	 */
+	ArrayList<String> getChangedTables() {
+		return changedTables;
+	}
+}
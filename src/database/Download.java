@@ -0,0 +1,267 @@
+package database;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Scanner;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Download fetches a new copy of the database into a file of its own while the live one
+ * keeps being used, and checks the copy before anything replaces the live file.
+ *
+ *  -	The file is streamed through NIO channels in blocks, telling a DownloadProgress after
+ * 		each one. A download that broke off is resumed with an HTTP range request the next
+ * 		time, as long as the server supports them; otherwise it starts again.
+ *
+ * 	-	The ETag or Last-Modified date the server sent with the file is kept next to it and
+ * 		sent as If-Range, so a part of a file that changed on the server since is never
+ * 		resumed with the rest of the new one: the server sends the whole file instead.
+ *
+ * 	-	When the server has a SHA-256 checksum next to the file (the URL with .sha256 added),
+ * 		the copy has to match it. The copy also has to be as long as the server said and
+ * 		pass sqlite's PRAGMA integrity_check.
+ */
+class Download {
+
+	private static final int BLOCK = 64 * 1024;
+	private static final int TIMEOUT = 30000;
+
+	private URL url;
+	private File target;
+	private volatile boolean cancelled;
+
+	/**
+	 * Constructor for a Download
+	 * @param url - where the database is downloaded from
+	 * @param target - the file it is downloaded to, and resumed from if it exists
+	 */
+	Download(URL url, File target) {
+		this.url = url;
+		this.target = target;
+	}
+
+	/**
+	 * Delete a downloaded file, or the part of it, along with what is kept to resume it
+	 * @param target - the file it was downloaded to
+	 */
+	static void discard(File target) {
+		target.delete();
+		validatorFile(target).delete();
+	}
+
+	/**
+	 * The file the validator of the file being downloaded is kept in
+	 * @param target - the file it is downloaded to
+	 * @return File
+	 */
+	private static File validatorFile(File target) {
+		return new File(target.getPath() + ".validator");
+	}
+
+	/**
+	 * Stop the download after the block it is on. The part downloaded is kept to resume from.
+	 */
+	void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Download the file, resuming what an earlier try left if the server allows it
+	 * @param progress - told how far the download has got, or null
+	 * @throws IOException if the download fails or ends early
+	 * @throws CancellationException if cancel was called
+	 */
+	void fetch(DownloadProgress progress) throws IOException {
+		long have = target.exists() ? target.length() : 0;
+		URLConnection conn = url.openConnection();
+		conn.setConnectTimeout(TIMEOUT);
+		conn.setReadTimeout(TIMEOUT);
+		boolean resumed = false;
+		if(conn instanceof HttpURLConnection) {
+			HttpURLConnection http = (HttpURLConnection) conn;
+			//without a validator there is no telling whether the part is of the file the server has now
+			String validator = (have > 0) ? readValidator() : null;
+			if(validator != null) {
+				http.setRequestProperty("Range", "bytes=" + have + "-");
+				http.setRequestProperty("If-Range", validator);
+			}
+			int code = http.getResponseCode();
+			if(code == 416) {
+				//the part we have is no use with the file the server has now
+				http.disconnect();
+				discard(target);
+				fetch(progress);
+				return;
+			}
+			//a 200 is the whole file, eg. because it changed since the part was downloaded
+			resumed = validator != null && code == HttpURLConnection.HTTP_PARTIAL;
+			if(!resumed) writeValidator(http);
+		}
+		if(!resumed) have = 0;
+		long length = conn.getContentLengthLong();
+		long total = (length < 0) ? -1 : have + length;
+		ReadableByteChannel in = Channels.newChannel(conn.getInputStream());
+		FileOutputStream out = new FileOutputStream(target, resumed);
+		try {
+			FileChannel channel = out.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK);
+			long done = have;
+			while(in.read(buffer) >= 0) {
+				buffer.flip();
+				while(buffer.hasRemaining()) {
+					done += channel.write(buffer);
+				}
+				buffer.clear();
+				if(progress != null) progress.progress(done, total);
+				if(cancelled) throw new CancellationException("Download cancelled");
+			}
+			channel.force(true);
+			if(total >= 0 && done != total) {
+				throw new IOException("Download ended after " + done + " of " + total + " bytes");
+			}
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+
+	/**
+	 * The validator kept for the part downloaded
+	 * @return the ETag or Last-Modified date, null if none was kept
+	 */
+	private String readValidator() {
+		File file = validatorFile(target);
+		if(!file.exists()) return null;
+		try {
+			Scanner scanner = new Scanner(file, "UTF-8");
+			try {
+				return scanner.hasNextLine() ? scanner.nextLine() : null;
+			} finally {
+				scanner.close();
+			}
+		} catch(IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Keep the validator of the file the server is sending, a strong ETag if it has one and
+	 * else its Last-Modified date, so the download can be resumed if it breaks off
+	 * @param http - the connection the file is sent on
+	 * @throws IOException
+	 */
+	private void writeValidator(HttpURLConnection http) throws IOException {
+		String validator = http.getHeaderField("ETag");
+		//weak ETags may not be used in If-Range
+		if(validator == null || validator.startsWith("W/")) validator = http.getHeaderField("Last-Modified");
+		File file = validatorFile(target);
+		if(validator == null) {
+			file.delete();
+			return;
+		}
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(validator.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Check the downloaded file against the server's checksum, if it has one, and
+	 * with sqlite's integrity check
+	 * @throws IOException if the checksum does not match
+	 * @throws SQLException if the file is not a sound sqlite database
+	 */
+	void verify() throws IOException, SQLException {
+		String expected = checksum();
+		if(expected != null && !expected.equalsIgnoreCase(sha256(target))) {
+			throw new IOException("Downloaded database does not match its checksum");
+		}
+		Connection c = DriverManager.getConnection("jdbc:sqlite:" + target.getPath());
+		try {
+			Statement s = c.createStatement();
+			ResultSet rs = s.executeQuery("PRAGMA integrity_check");
+			String result = rs.next() ? rs.getString(1) : null;
+			rs.close();
+			s.close();
+			if(!"ok".equals(result)) {
+				throw new SQLException("Downloaded database failed the integrity check: " + result);
+			}
+		} finally {
+			c.close();
+		}
+	}
+
+	/**
+	 * The SHA-256 checksum the server publishes next to the file
+	 * @return the checksum in hex, null if there is none
+	 */
+	private String checksum() {
+		try {
+			URLConnection conn = new URL(url.toString() + ".sha256").openConnection();
+			conn.setConnectTimeout(TIMEOUT);
+			conn.setReadTimeout(TIMEOUT);
+			InputStream in = conn.getInputStream();
+			try {
+				//the file sha256sum writes: the checksum, then the name of the file
+				Scanner scanner = new Scanner(in, "UTF-8");
+				return scanner.hasNext() ? scanner.next() : null;
+			} finally {
+				in.close();
+			}
+		} catch(IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * The SHA-256 checksum of a file
+	 * @param file - the file
+	 * @return the checksum in hex
+	 * @throws IOException
+	 */
+	static String sha256(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK);
+			while(channel.read(buffer) >= 0) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		} finally {
+			in.close();
+		}
+		StringBuilder hex = new StringBuilder();
+		byte[] bytes = digest.digest();
+		for(int i = 0; i < bytes.length; i++) {
+			hex.append(String.format("%02x", bytes[i]));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,15 @@
+package database;
+
+/**
+ * DownloadProgress is told how far the download of a new database has got, so the
+ * screen that started the update can show it.
+ */
+public interface DownloadProgress {
+
+	/**
+	 * Called after every block of the download is written, on the thread running the update
+	 * @param done - the number of bytes downloaded, including any resumed from an earlier try
+	 * @param total - the size of the file in bytes, -1 if the server did not say
+	 */
+	void progress(long done, long total);
+}
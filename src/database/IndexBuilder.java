@@ -0,0 +1,145 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+
+/**
+ * IndexBuilder makes sure the downloaded database has indexes on the columns the lookups
+ * join and filter on. The file comes without them, so every join through a map table would
+ * otherwise scan the whole map table.
+ *
+ * Every map table gets an index on its two id columns in both orders, so a join from
+ * either side finds the other id in the index without reading the table.
+ * The tables the record tables show get an index on name, which ends in the id as every
+ * sqlite index does, so a page of them in order of name and id is read from the index.
+ * An index is only created when no index on the table already starts with the same columns.
+ */
+class IndexBuilder {
+
+	public static final String[] MAP_TABLES = {"dancespublicationsmap", "dancesrecordingsmap",
+			"dancestunesmap", "albumsrecordingsmap", "dancesformationsmap", "dancesstepsmap",
+			"tunesrecordingsmap", "tunespublicationsmap"};
+	public static final String[] NAMED_TABLES = {"dance", "album", "publication", "recording"};
+
+	private Connection writer;
+
+	/**
+	 * Constructor for an IndexBuilder
+	 * @param writer - the connection the indexes are created on
+	 */
+	IndexBuilder(Connection writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * Create every index that is missing
+	 * @return the number of indexes created
+	 * @throws SQLException
+	 */
+	int ensure() throws SQLException {
+		int built = 0;
+		for(int i = 0; i < MAP_TABLES.length; i++) {
+			ArrayList<String> ids = idColumns(MAP_TABLES[i]);
+			if(ids.size() != 2) continue;
+			if(create(MAP_TABLES[i], ids.get(0), ids.get(1))) built++;
+			if(create(MAP_TABLES[i], ids.get(1), ids.get(0))) built++;
+		}
+		for(int i = 0; i < NAMED_TABLES.length; i++) {
+			if(columns(NAMED_TABLES[i]).contains("name") && create(NAMED_TABLES[i], "name", null)) built++;
+		}
+		return built;
+	}
+
+	/**
+	 * Create an index on the columns unless one already starts with them
+	 * @param table - the table to index
+	 * @param first - the first column of the index
+	 * @param second - the second column of the index, or null for an index on one column
+	 * @return true if the index was created
+	 * @throws SQLException
+	 */
+	private boolean create(String table, String first, String second) throws SQLException {
+		if(indexed(table, first, second)) return false;
+		String name = table + "_" + first + (second == null ? "" : "_" + second);
+		String cols = first + (second == null ? "" : ", " + second);
+		Statement s = writer.createStatement();
+		try {
+			s.execute("CREATE INDEX IF NOT EXISTS " + name + " ON " + table + "(" + cols + ")");
+		} finally {
+			s.close();
+		}
+		return true;
+	}
+
+	/**
+	 * Check if an index on the table starts with the columns
+	 * @param table - the table
+	 * @param first - the first column
+	 * @param second - the second column, or null to only check the first
+	 * @return true if there is such an index
+	 * @throws SQLException
+	 */
+	private boolean indexed(String table, String first, String second) throws SQLException {
+		ArrayList<String> indexes = new ArrayList<String>();
+		Statement s = writer.createStatement();
+		try {
+			ResultSet rs = s.executeQuery("PRAGMA index_list(" + table + ")");
+			while(rs.next()) {
+				indexes.add(rs.getString("name"));
+			}
+			rs.close();
+			for(int i = 0; i < indexes.size(); i++) {
+				ArrayList<String> cols = new ArrayList<String>();
+				rs = s.executeQuery("PRAGMA index_info(" + indexes.get(i) + ")");
+				while(rs.next()) {
+					cols.add(rs.getString("name"));
+				}
+				rs.close();
+				if(!cols.isEmpty() && cols.get(0).equals(first)
+						&& (second == null || (cols.size() > 1 && cols.get(1).equals(second)))) return true;
+			}
+		} finally {
+			s.close();
+		}
+		return false;
+	}
+
+	/**
+	 * The columns of the table that refer to another table's id
+	 * @param table - the table
+	 * @return the names of the columns ending in _id
+	 * @throws SQLException
+	 */
+	private ArrayList<String> idColumns(String table) throws SQLException {
+		ArrayList<String> ids = new ArrayList<String>();
+		ArrayList<String> cols = columns(table);
+		for(int i = 0; i < cols.size(); i++) {
+			if(cols.get(i).endsWith("_id")) ids.add(cols.get(i));
+		}
+		return ids;
+	}
+
+	/**
+	 * The columns of the table
+	 * @param table - the table
+	 * @return the names of the columns, empty if there is no such table
+	 * @throws SQLException
+	 */
+	private ArrayList<String> columns(String table) throws SQLException {
+		ArrayList<String> cols = new ArrayList<String>();
+		Statement s = writer.createStatement();
+		try {
+			ResultSet rs = s.executeQuery("PRAGMA table_info(" + table + ")");
+			while(rs.next()) {
+				cols.add(rs.getString("name"));
+			}
+			rs.close();
+		} finally {
+			s.close();
+		}
+		return cols;
+	}
+}
@@ -0,0 +1,92 @@
+package database;
+
+/**
+ * Keyset says which page of a search to read. The rows of a page are in order of name and
+ * then id, and a page is found by the name and id of the row next to it rather than by how
+ * many rows come before it, so reading a page deep in the results costs no more than
+ * reading the first one.
+ *
+ *  -	first reads the first rows of the results.
+ *
+ * 	-	after reads the rows that follow a row and before the rows that come before it.
+ * 		Either way the rows of the page are given in order of name and id.
+ *
+ * Rows without a name are in no page.
+ */
+public final class Keyset {
+
+	private final String name;
+	private final int id;
+	private final boolean before;
+	private final int limit;
+
+	private Keyset(String name, int id, boolean before, int limit) {
+		this.name = name;
+		this.id = id;
+		this.before = before;
+		this.limit = limit;
+	}
+
+	/**
+	 * The first page of the results
+	 * @param limit - the most rows the page has
+	 * @return Keyset
+	 */
+	public static Keyset first(int limit) {
+		return new Keyset(null, 0, false, limit);
+	}
+
+	/**
+	 * The page after a row
+	 * @param name - the name of the last row of the page before
+	 * @param id - the id of that row
+	 * @param limit - the most rows the page has
+	 * @return Keyset
+	 */
+	public static Keyset after(String name, int id, int limit) {
+		return new Keyset(name, id, false, limit);
+	}
+
+	/**
+	 * The page before a row
+	 * @param name - the name of the first row of the page after
+	 * @param id - the id of that row
+	 * @param limit - the most rows the page has
+	 * @return Keyset
+	 */
+	public static Keyset before(String name, int id, int limit) {
+		return new Keyset(name, id, true, limit);
+	}
+
+	/**
+	 * The name of the row the page is next to
+	 * @return String, null for the first page
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * The id of the row the page is next to
+	 * @return int
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Check which side of the row the page is on
+	 * @return true if the page comes before the row
+	 */
+	public boolean isBefore() {
+		return before;
+	}
+
+	/**
+	 * The most rows the page has
+	 * @return int
+	 */
+	public int getLimit() {
+		return limit;
+	}
+}
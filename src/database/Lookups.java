@@ -0,0 +1,110 @@
+package database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Lookups holds the small tables the filters choose from, such as the dance types, shapes,
+ * formations and steps, with their names and ids mapped both ways. They are read once after
+ * the database is opened or updated, so neither the filters' combo boxes nor the advanced
+ * search have to query them again. A Lookups is never changed once loaded.
+ */
+public class Lookups {
+
+	public static final String[] TABLES = {"dancetype", "medleytype", "shape", "couples",
+			"progression", "phrasing", "formation", "step"};
+
+	private HashMap<String, Table> tables;
+
+	/**
+	 * The names and ids of one lookup table
+	 */
+	private static final class Table {
+
+		final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		final HashMap<Integer, String> names = new HashMap<Integer, String>();
+		final List<String> sorted;
+
+		Table(ResultSet rs) throws SQLException {
+			ArrayList<String> list = new ArrayList<String>();
+			while(rs.next()) {
+				int id = rs.getInt(1);
+				String name = rs.getString(2);
+				if(name == null) continue;
+				names.put(id, name);
+				//the first id with the name, as a sql lookup by name would find
+				if(!ids.containsKey(name)) {
+					ids.put(name, id);
+					list.add(name);
+				}
+			}
+			rs.close();
+			Collections.sort(list);
+			sorted = Collections.unmodifiableList(list);
+		}
+	}
+
+	private Lookups(HashMap<String, Table> tables) {
+		this.tables = tables;
+	}
+
+	/**
+	 * Read every lookup table that exists in the database
+	 * @param db - the database
+	 * @return Lookups
+	 * @throws SQLException
+	 */
+	static Lookups load(Database db) throws SQLException {
+		HashMap<String, Table> tables = new HashMap<String, Table>();
+		for(int i = 0; i < TABLES.length; i++) {
+			//medleytype names its types in the description column
+			String name = TABLES[i].equals("medleytype") ? "description" : "name";
+			ResultSet rs;
+			try {
+				rs = db.executeQuery("SELECT id, " + name + " FROM " + TABLES[i]);
+			} catch(SQLException e) {
+				//not in this version of the database
+				continue;
+			}
+			tables.put(TABLES[i], new Table(rs));
+		}
+		return new Lookups(tables);
+	}
+
+	/**
+	 * The names in the table, sorted
+	 * @param table - the lookup table
+	 * @return the names, empty if there is no such table
+	 */
+	public List<String> names(String table) {
+		Table t = tables.get(table);
+		return (t == null) ? Collections.<String>emptyList() : t.sorted;
+	}
+
+	/**
+	 * The id of the name in the table
+	 * @param table - the lookup table
+	 * @param name - the name
+	 * @return the id, -1 if the table does not have the name
+	 */
+	public int id(String table, String name) {
+		Table t = tables.get(table);
+		Integer id = (t == null || name == null) ? null : t.ids.get(name);
+		return (id == null) ? -1 : id;
+	}
+
+	/**
+	 * The name of the id in the table
+	 * @param table - the lookup table
+	 * @param id - the id
+	 * @return the name, null if the table does not have the id
+	 */
+	public String name(String table, int id) {
+		Table t = tables.get(table);
+		return (t == null) ? null : t.names.get(id);
+	}
+}
@@ -0,0 +1,106 @@
+package database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * MembershipIndex holds, for every formation and every step, the set of dances that have it
+ * as a bitset of dance ids. A formation or step filter of any length is then answered with
+ * and, or and and not on whole words of the bitsets instead of a subquery per term.
+ *
+ * The sets are read from dancesformationsmap and dancesstepsmap when the index is made and
+ * never changed afterwards; a new index is made after every update.
+ */
+class MembershipIndex {
+
+	private HashMap<String, HashMap<Integer, BitSet>> sets;
+
+	private MembershipIndex(HashMap<String, HashMap<Integer, BitSet>> sets) {
+		this.sets = sets;
+	}
+
+	/**
+	 * Read the dances of every formation and step
+	 * @param db - the database
+	 * @return MembershipIndex
+	 * @throws SQLException
+	 */
+	static MembershipIndex load(Database db) throws SQLException {
+		HashMap<String, HashMap<Integer, BitSet>> sets = new HashMap<String, HashMap<Integer, BitSet>>();
+		sets.put("formation", read(db, "dancesformationsmap", "formation_id"));
+		sets.put("step", read(db, "dancesstepsmap", "step_id"));
+		return new MembershipIndex(sets);
+	}
+
+	/**
+	 * Read a map table into a bitset of dance ids per id of its other column
+	 * @param db - the database
+	 * @param mapTable - the map table
+	 * @param column - the column of the formation or step id
+	 * @return the dances of each id, empty if there is no such table
+	 * @throws SQLException
+	 */
+	private static HashMap<Integer, BitSet> read(Database db, String mapTable, String column) throws SQLException {
+		HashMap<Integer, BitSet> dances = new HashMap<Integer, BitSet>();
+		ResultSet rs;
+		try {
+			rs = db.executeQuery("SELECT " + column + ", dance_id FROM " + mapTable);
+		} catch(SQLException e) {
+			//not in this version of the database
+			return dances;
+		}
+		while(rs.next()) {
+			int dance = rs.getInt(2);
+			if(dance < 0) continue;
+			BitSet set = dances.get(rs.getInt(1));
+			if(set == null) {
+				set = new BitSet();
+				dances.put(rs.getInt(1), set);
+			}
+			set.set(dance);
+		}
+		rs.close();
+		return dances;
+	}
+
+	/**
+	 * The dances that have the formation or step
+	 * @param lookup - formation or step
+	 * @param id - the id of the formation or step
+	 * @return the dance ids, which must not be changed
+	 */
+	private BitSet dances(String lookup, int id) {
+		HashMap<Integer, BitSet> byId = sets.get(lookup);
+		BitSet set = (byId == null) ? null : byId.get(id);
+		return (set == null) ? new BitSet() : set;
+	}
+
+	/**
+	 * The dances matching the ~ delimited formation or step string from the dance filters,
+	 * eg. "Poussette~and~Reel of three~or~Allemande~". And and and not are applied before
+	 * or, as sql would, and the terms stop at the first operator without a name after it.
+	 * @param lookup - formation or step
+	 * @param val - the encoded filter string
+	 * @param lookups - the lookup tables the names are found in
+	 * @return the matching dance ids, null if the filter has no terms
+	 */
+	BitSet evaluate(String lookup, String val, Lookups lookups) {
+		String[] terms = SearchTerms.membership(val);
+		if(terms.length == 0 || terms[0] == null) return null;
+		BitSet result = new BitSet();
+		BitSet group = (BitSet) dances(lookup, lookups.id(lookup, terms[0])).clone();
+		for(int i = 1; i + 1 < terms.length && terms[i] != null && terms[i + 1] != null; i += 2) {
+			BitSet next = dances(lookup, lookups.id(lookup, terms[i + 1]));
+			if(terms[i].equals("or")) {
+				result.or(group);
+				group = (BitSet) next.clone();
+			}
+			else if(terms[i].equals("and not")) group.andNot(next);
+			else group.and(next);
+		}
+		result.or(group);
+		return result;
+	}
+}
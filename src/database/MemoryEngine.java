@@ -0,0 +1,654 @@
+package database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * MemoryEngine answers searches from a snapshot of the catalogue held in memory as
+ * ColumnTables, so a search never goes through JDBC. The snapshot holds dance, recording,
+ * album, publication, person, the small lookup tables and the map tables; it is loaded once
+ * and reloaded after an update. Changes to the collection are copied into it as they are made.
+ *
+ * Results have the same columns, rows and order as the sql engine's, except that rows the
+ * sql leaves in no particular order are ordered by id. Tables that are not in the snapshot
+ * are searched by the fallback engine.
+ */
+class MemoryEngine implements SearchEngine {
+
+	public static final String[] TABLES = {"dance", "recording", "album", "publication", "person",
+			"dancetype", "medleytype", "shape", "couples", "progression", "phrasing"};
+	public static final String[] SEARCHED = {"dance", "recording", "album", "publication"};
+
+	private Database db;
+	private SearchEngine fallback;
+	private volatile Snapshot snapshot;
+
+	/**
+	 * The tables as they were at one moment, never changed once built
+	 */
+	private static final class Snapshot {
+
+		final HashMap<String, ColumnTable> tables;
+		final Links danceToPublications;
+
+		Snapshot(HashMap<String, ColumnTable> tables) {
+			this.tables = tables;
+			danceToPublications = new Links(tables.get("dancespublicationsmap"), "dance_id", "publication_id");
+		}
+
+		/**
+		 * The same snapshot with one table replaced
+		 */
+		Snapshot with(String name, ColumnTable table) {
+			HashMap<String, ColumnTable> copy = new HashMap<String, ColumnTable>(tables);
+			copy.put(name, table);
+			return new Snapshot(copy);
+		}
+	}
+
+	/**
+	 * The ids one column of a map table links each id of its other column to,
+	 * kept as one array of targets and an offset into it per id
+	 */
+	private static final class Links {
+
+		private int[] start;
+		private int[] to;
+
+		Links(ColumnTable map, String fromColumn, String toColumn) {
+			int f = (map == null) ? -1 : map.column(fromColumn);
+			int t = (map == null) ? -1 : map.column(toColumn);
+			if(f < 0 || t < 0 || map.isString(f) || map.isString(t)) {
+				start = new int[1];
+				to = new int[0];
+				return;
+			}
+			int[] from = map.data(f);
+			int[] target = map.data(t);
+			int max = -1;
+			for(int r = 0; r < from.length; r++) {
+				max = Math.max(max, from[r]);
+			}
+			start = new int[max + 2];
+			for(int r = 0; r < from.length; r++) {
+				if(from[r] >= 0) start[from[r] + 1]++;
+			}
+			for(int i = 1; i < start.length; i++) {
+				start[i] += start[i - 1];
+			}
+			to = new int[start[start.length - 1]];
+			int[] next = Arrays.copyOf(start, start.length);
+			for(int r = 0; r < from.length; r++) {
+				if(from[r] >= 0) to[next[from[r]]++] = target[r];
+			}
+		}
+
+		int count(int id) {
+			return (id < 0 || id + 1 >= start.length) ? 0 : start[id + 1] - start[id];
+		}
+
+		int get(int id, int i) {
+			return to[start[id] + i];
+		}
+	}
+
+	/**
+	 * Load the snapshot
+	 * @param db - the database the snapshot is loaded from
+	 * @param fallback - the engine that searches tables that are not in the snapshot
+	 * @throws SQLException
+	 */
+	MemoryEngine(Database db, SearchEngine fallback) throws SQLException {
+		this.db = db;
+		this.fallback = fallback;
+		reload();
+	}
+
+	/**
+	 * Load every table of the snapshot again, eg. after an update
+	 * @throws SQLException
+	 */
+	void reload() throws SQLException {
+		HashMap<String, ColumnTable> tables = new HashMap<String, ColumnTable>();
+		load(tables, TABLES);
+		load(tables, IndexBuilder.MAP_TABLES);
+		snapshot = new Snapshot(tables);
+	}
+
+	/**
+	 * Load the tables that exist into the map
+	 * @param tables - the map to load into
+	 * @param names - the tables to load
+	 * @throws SQLException
+	 */
+	private void load(HashMap<String, ColumnTable> tables, String[] names) throws SQLException {
+		for(int i = 0; i < names.length; i++) {
+			//the searched tables are loaded with their ihave and tag, as the sql engine returns them
+			String sql = UserCollection.contains(names[i]) ? UserCollection.select(names[i]) : "SELECT * FROM " + names[i];
+			ResultSet rs;
+			try {
+				rs = db.executeQuery(sql);
+			} catch(SQLException e) {
+				//not in this version of the database
+				continue;
+			}
+			tables.put(names[i], ColumnTable.load(rs));
+		}
+	}
+
+	/**
+	 * Copy the ihave and tag of every row of the table into the snapshot again after the
+	 * collection changed. Marking a publication also marks its dances and marking an
+	 * album its recordings.
+	 * @param table - the table whose collection changed
+	 * @throws SQLException
+	 */
+	synchronized void refreshCollection(String table) throws SQLException {
+		if(table.equals("publication")) refreshCollection("dance");
+		else if(table.equals("album")) refreshCollection("recording");
+		Snapshot s = snapshot;
+		ColumnTable t = s.tables.get(table);
+		if(t == null) return;
+		snapshot = s.with(table, t.update(db.executeQuery("SELECT x.id, " + UserCollection.COLUMNS + " FROM " + table + " x "
+				+ UserCollection.join(table, "x"))));
+	}
+
+	@Override
+	public ResultSet searchTableByName(String table, String name, boolean ihave) throws SQLException {
+		if(!searched(table)) return fallback.searchTableByName(table, name, ihave);
+		return search(snapshot, table, name, null, ihave);
+	}
+
+	@Override
+	public ResultSet advancedTableSearch(String table, String name, Map<String, String> map, boolean ihave) throws SQLException {
+		if(!searched(table)) return fallback.advancedTableSearch(table, name, map, ihave);
+		return search(snapshot, table, name, map, ihave);
+	}
+
+	/**
+	 * Check if the table is one the snapshot answers searches for
+	 * @param table - the table
+	 * @return true if it is
+	 */
+	private boolean searched(String table) {
+		for(int i = 0; i < SEARCHED.length; i++) {
+			if(SEARCHED[i].equals(table)) return snapshot.tables.containsKey(table);
+		}
+		return false;
+	}
+
+	/**
+	 * Run a search on the snapshot
+	 * @param s - the snapshot
+	 * @param table - the table to search in
+	 * @param name - the name to search for
+	 * @param map - the advanced search values, null for a search by name
+	 * @param ihave - if true only show what is marked as ihave
+	 * @return ResultSet
+	 * @throws SQLException
+	 */
+	private ResultSet search(Snapshot s, String table, String name, Map<String, String> map, boolean ihave) throws SQLException {
+		ColumnTable t = s.tables.get(table);
+		Filter f = new Filter(t);
+		f.like(t.column("name"), "%" + name + "%");
+		if(table.equals("dance")) {
+			if(map != null) danceFilters(s, f, map);
+			if(ihave) f.equal(t.column("ihave"), 1);
+			return dances(s, f.rows(), map != null);
+		}
+		ColumnTable person = s.tables.get("person");
+		if(table.equals("publication")) {
+			if(map != null) {
+				String author = map.get("author");
+				String rscds = map.get("RSCDS");
+				if(author != null && !author.isEmpty()) f.joinedLike(t.column("devisor_id"), person, "name", "%" + author + "%");
+				if(rscds != null && rscds.equals("1")) f.truthy(t.column("rscds"));
+			}
+			if(ihave) f.equal(t.column("ihave"), 1);
+			Output out = new Output(t, "devisor");
+			int[] rows = sortByName(t, f.rows());
+			for(int i = 0; i < rows.length; i++) {
+				out.add(t, rows[i], joined(person, "name", t, "devisor_id", rows[i]));
+			}
+			return out.finish();
+		}
+		if(table.equals("recording")) {
+			if(map != null) {
+				String type = map.get("type");
+				String medley = map.get("medley type");
+				String repetitions = map.get("repetitions");
+				String bars = map.get("bars");
+				if(type != null && !type.isEmpty()) f.joinedEqual(t.column("type_id"), s.tables.get("dancetype"), "name", type);
+				if(medley != null && !medley.isEmpty()) f.joinedEqual(t.column("medleytype_id"), s.tables.get("medleytype"), "description", medley);
+				if(repetitions != null && !repetitions.isEmpty()) f.compare(t.column("repetitions"), SearchTerms.compare(repetitions));
+				if(bars != null && !bars.isEmpty()) f.compare(t.column("barsperrepeat"), SearchTerms.compare(bars));
+			}
+			if(ihave) f.equal(t.column("ihave"), 1);
+			Output out = new Output(t, "type", "medleytype", "phrasing", "artist");
+			int[] rows = sortByName(t, f.rows());
+			for(int i = 0; i < rows.length; i++) {
+				out.add(t, rows[i],
+						joined(s.tables.get("dancetype"), "name", t, "type_id", rows[i]),
+						joined(s.tables.get("medleytype"), "description", t, "medleytype_id", rows[i]),
+						joined(s.tables.get("phrasing"), "name", t, "phrasing_id", rows[i]),
+						joined(person, "name", t, "artist_id", rows[i]));
+			}
+			return out.finish();
+		}
+		//album
+		if(map != null) {
+			String artist = map.get("artist_id");
+			String year = map.get("productionyear");
+			if(artist != null && !artist.isEmpty()) f.joinedLike(t.column("artist_id"), person, "name", "%" + artist + "%");
+			if(year != null && !year.isEmpty()) f.compare(t.column("productionyear"), SearchTerms.compare("=" + year));
+		}
+		if(ihave) f.equal(t.column("ihave"), 1);
+		Output out = new Output(t, "artist");
+		int[] rows = sortByName(t, f.rows());
+		for(int i = 0; i < rows.length; i++) {
+			out.add(t, rows[i], joined(person, "name", t, "artist_id", rows[i]));
+		}
+		return out.finish();
+	}
+
+	/**
+	 * Apply the advanced search values of the dance filters
+	 * @param s - the snapshot
+	 * @param f - the filter on the dance table
+	 * @param map - the advanced search values
+	 * @throws SQLException
+	 */
+	private void danceFilters(Snapshot s, Filter f, Map<String, String> map) throws SQLException {
+		ColumnTable t = f.table;
+		Iterator<String> keys = map.keySet().iterator();
+		while(keys.hasNext()) {
+			String param = keys.next();
+			String val = map.get(param);
+			if(val == null || val.isEmpty()) continue;
+			if(param.equals("bars")) {
+				f.compare(t.column("barsperrepeat"), SearchTerms.compare(val));
+			}
+			else if(param.equals("author")) {
+				f.joinedLike(t.column("devisor_id"), s.tables.get("person"), "name", "%" + val + "%");
+			}
+			else if(param.equals("type")) {
+				f.joinedEqual(t.column("type_id"), s.tables.get("dancetype"), "name", val);
+			}
+			else if(param.equals("couples")) {
+				f.joinedEqual(t.column("couples_id"), s.tables.get("couples"), "name", val);
+			}
+			else if(param.equals("shape")) {
+				f.joinedEqual(t.column("shape_id"), s.tables.get("shape"), "name", val);
+			}
+			else if(param.equals("formation")) {
+				membership(f, val, "formation");
+			}
+			else if(param.equals("steps")) {
+				membership(f, val, "step");
+			}
+			else if(param.equals("RSCDS") && val.equals("1")) {
+				rscds(s, f);
+			}
+		}
+	}
+
+	/**
+	 * Keep the dances that match the ~ delimited formation or step string, worked out
+	 * on the MembershipIndex
+	 * @param f - the filter on the dance table
+	 * @param val - the encoded filter string
+	 * @param lookup - formation or step
+	 * @throws SQLException
+	 */
+	private void membership(Filter f, String val, String lookup) throws SQLException {
+		BitSet dances = db.getMemberships().evaluate(lookup, val, db.getLookups());
+		if(dances == null) return;
+		int id = f.table.column("id");
+		for(int r = 0; r < f.keep.length; r++) {
+			if(f.keep[r]) {
+				int d = f.table.getInt(id, r);
+				f.keep[r] = d >= 0 && dances.get(d);
+			}
+		}
+	}
+
+	/**
+	 * Keep the dances published in an RSCDS publication
+	 * @param s - the snapshot
+	 * @param f - the filter on the dance table
+	 */
+	private void rscds(Snapshot s, Filter f) {
+		ColumnTable pub = s.tables.get("publication");
+		int col = (pub == null) ? -1 : pub.column("shortname");
+		if(col < 0 || !pub.isString(col)) {
+			Arrays.fill(f.keep, false);
+			return;
+		}
+		boolean[] matches = pub.dictionary(col).matching(SearchTerms.like("%RSCDS%"));
+		int idCol = f.table.column("id");
+		for(int r = 0; r < f.keep.length; r++) {
+			if(!f.keep[r]) continue;
+			int id = f.table.getInt(idCol, r);
+			boolean found = false;
+			for(int i = 0; i < s.danceToPublications.count(id) && !found; i++) {
+				int row = pub.row(s.danceToPublications.get(id, i));
+				int code = (row < 0) ? -1 : pub.data(col)[row];
+				found = code >= 0 && matches[code];
+			}
+			f.keep[r] = found;
+		}
+	}
+
+	/**
+	 * Build the dance results: one row for every publication of every dance, or a single row
+	 * with no publication, ordered by name. When grouped, only the first dance of each name
+	 * and publication is kept and rows of the same name are ordered by publication.
+	 * @param s - the snapshot
+	 * @param rows - the dance rows that passed the filters
+	 * @param grouped - if true group by name and publication as the advanced search does
+	 * @return ResultSet
+	 * @throws SQLException
+	 */
+	private ResultSet dances(Snapshot s, int[] rows, boolean grouped) throws SQLException {
+		ColumnTable t = s.tables.get("dance");
+		ColumnTable pub = s.tables.get("publication");
+		int idCol = t.column("id");
+		int pubName = (pub == null) ? -1 : pub.column("name");
+		int[] pubRanks = (pubName < 0 || !pub.isString(pubName)) ? new int[0] : pub.dictionary(pubName).ranks();
+		Output out = new Output(t, "type", "medleytype", "shape", "couples", "progression", "publication", "devisor");
+		rows = sortByName(t, rows);
+		int nameCol = t.column("name");
+		int[] names = t.data(nameCol);
+		int start = 0;
+		while(start < rows.length) {
+			//rows of the same name
+			int end = start + 1;
+			while(end < rows.length && names[rows[end]] == names[rows[start]]) end++;
+			ArrayList<long[]> entries = new ArrayList<long[]>();
+			for(int i = start; i < end; i++) {
+				int id = t.getInt(idCol, rows[i]);
+				int count = s.danceToPublications.count(id);
+				if(count == 0) entries.add(new long[] {rows[i], -1});
+				//the publications of a dance by name, no name first, as the sql orders them
+				long[] keys = new long[count];
+				for(int k = 0; k < count; k++) {
+					int pubRow = (pub == null) ? -1 : pub.row(s.danceToPublications.get(id, k));
+					int code = (pubRow < 0 || pubName < 0) ? -1 : pub.data(pubName)[pubRow];
+					long rank = (code < 0 || code >= pubRanks.length) ? 0 : pubRanks[code] + 1;
+					keys[k] = (rank << 32) | (pubRow & 0xffffffffL);
+				}
+				Arrays.sort(keys);
+				for(int k = 0; k < count; k++) {
+					entries.add(new long[] {rows[i], (int) keys[k]});
+				}
+			}
+			if(grouped) entries = groupByPublication(entries, pub, pubName, pubRanks);
+			for(int i = 0; i < entries.size(); i++) {
+				int row = (int) entries.get(i)[0];
+				int pubRow = (int) entries.get(i)[1];
+				out.add(t, row,
+						joined(s.tables.get("dancetype"), "name", t, "type_id", row),
+						joined(s.tables.get("medleytype"), "description", t, "medleytype_id", row),
+						joined(s.tables.get("shape"), "name", t, "shape_id", row),
+						joined(s.tables.get("couples"), "name", t, "couples_id", row),
+						joined(s.tables.get("progression"), "name", t, "progression_id", row),
+						(pub == null) ? null : pub.getString(pubName, pubRow),
+						joined(s.tables.get("person"), "name", t, "devisor_id", row));
+			}
+			start = end;
+		}
+		return out.finish();
+	}
+
+	/**
+	 * Keep the first dance of each publication and order them by publication name,
+	 * with no publication first
+	 * @param entries - dance row and publication row of one name
+	 * @param pub - the publication table
+	 * @param pubName - the name column of the publication table
+	 * @param pubRanks - the sort place of each publication name code
+	 * @return the grouped entries
+	 */
+	private ArrayList<long[]> groupByPublication(ArrayList<long[]> entries, ColumnTable pub, int pubName, int[] pubRanks) {
+		HashMap<Integer, long[]> groups = new HashMap<Integer, long[]>();
+		for(int i = 0; i < entries.size(); i++) {
+			int pubRow = (int) entries.get(i)[1];
+			int code = (pubRow < 0 || pubName < 0) ? -1 : pub.data(pubName)[pubRow];
+			Integer key = (code < 0 || code >= pubRanks.length) ? -1 : pubRanks[code];
+			if(!groups.containsKey(key)) groups.put(key, entries.get(i));
+		}
+		Integer[] keys = groups.keySet().toArray(new Integer[groups.size()]);
+		Arrays.sort(keys);
+		ArrayList<long[]> grouped = new ArrayList<long[]>();
+		for(int i = 0; i < keys.length; i++) {
+			grouped.add(groups.get(keys[i]));
+		}
+		return grouped;
+	}
+
+	/**
+	 * Order the rows by name, null names first, then by the order they were loaded
+	 * @param t - the table
+	 * @param rows - the rows
+	 * @return the rows in order
+	 */
+	private int[] sortByName(ColumnTable t, int[] rows) {
+		int nameCol = t.column("name");
+		if(nameCol < 0 || !t.isString(nameCol)) return rows;
+		int[] ranks = t.dictionary(nameCol).ranks();
+		int[] names = t.data(nameCol);
+		long[] keys = new long[rows.length];
+		for(int i = 0; i < rows.length; i++) {
+			int code = names[rows[i]];
+			long rank = (code < 0) ? 0 : ranks[code] + 1;
+			keys[i] = (rank << 32) | rows[i];
+		}
+		Arrays.sort(keys);
+		int[] sorted = new int[rows.length];
+		for(int i = 0; i < keys.length; i++) {
+			sorted[i] = (int) keys[i];
+		}
+		return sorted;
+	}
+
+	/**
+	 * Look up a column of the row another table's column refers to, as a left outer join does
+	 * @param other - the table referred to
+	 * @param column - the column of the table referred to
+	 * @param t - the table referring
+	 * @param fk - the column holding the id of the row referred to
+	 * @param row - the row referring
+	 * @return the value, null if there is no such row
+	 */
+	private String joined(ColumnTable other, String column, ColumnTable t, String fk, int row) {
+		if(other == null) return null;
+		int id = t.getInt(t.column(fk), row);
+		return other.getString(other.column(column), (id == ColumnTable.NULL) ? -1 : other.row(id));
+	}
+
+	/**
+	 * Which rows of a table pass the conditions applied so far
+	 */
+	private static final class Filter {
+
+		final ColumnTable table;
+		final boolean[] keep;
+
+		Filter(ColumnTable table) {
+			this.table = table;
+			keep = new boolean[table.rows()];
+			Arrays.fill(keep, true);
+		}
+
+		/**
+		 * Keep the rows whose column is like the pattern
+		 */
+		void like(int column, String like) {
+			Pattern pattern = SearchTerms.like(like);
+			if(column < 0) {
+				Arrays.fill(keep, false);
+				return;
+			}
+			if(table.isString(column)) {
+				boolean[] matches = table.dictionary(column).matching(pattern);
+				int[] codes = table.data(column);
+				for(int r = 0; r < keep.length; r++) {
+					keep[r] &= codes[r] >= 0 && matches[codes[r]];
+				}
+			} else {
+				for(int r = 0; r < keep.length; r++) {
+					String v = table.getString(column, r);
+					keep[r] &= v != null && pattern.matcher(v).matches();
+				}
+			}
+		}
+
+		/**
+		 * Keep the rows whose column equals the number
+		 */
+		void equal(int column, int value) {
+			for(int r = 0; r < keep.length; r++) {
+				String v = table.getString(column, r);
+				keep[r] &= v != null && v.equals(Integer.toString(value));
+			}
+		}
+
+		/**
+		 * Keep the rows whose column is neither null nor 0
+		 */
+		void truthy(int column) {
+			for(int r = 0; r < keep.length; r++) {
+				String v = table.getString(column, r);
+				keep[r] &= v != null && !v.equals("0");
+			}
+		}
+
+		/**
+		 * Keep the rows whose number column passes the comparison, none if there is no comparison
+		 */
+		void compare(int column, SearchTerms.Comparison c) {
+			for(int r = 0; r < keep.length; r++) {
+				int v = table.getInt(column, r);
+				keep[r] &= c != null && column >= 0 && !table.isString(column) && v != ColumnTable.NULL && c.matches(v);
+			}
+		}
+
+		/**
+		 * Keep the rows whose referenced row has a column like the pattern
+		 */
+		void joinedLike(int fk, ColumnTable other, String column, String pattern) {
+			joined(fk, other, column, SearchTerms.like(pattern), null);
+		}
+
+		/**
+		 * Keep the rows whose referenced row has a column equal to the value
+		 */
+		void joinedEqual(int fk, ColumnTable other, String column, String value) {
+			joined(fk, other, column, null, value);
+		}
+
+		private void joined(int fk, ColumnTable other, String column, Pattern pattern, String value) {
+			int col = (other == null) ? -1 : other.column(column);
+			if(fk < 0 || col < 0) {
+				Arrays.fill(keep, false);
+				return;
+			}
+			for(int r = 0; r < keep.length; r++) {
+				if(!keep[r]) continue;
+				int id = table.getInt(fk, r);
+				String v = other.getString(col, (id == ColumnTable.NULL) ? -1 : other.row(id));
+				keep[r] = v != null && (pattern != null ? pattern.matcher(v).matches() : v.equals(value));
+			}
+		}
+
+		/**
+		 * The rows still kept
+		 */
+		int[] rows() {
+			int count = 0;
+			for(int r = 0; r < keep.length; r++) {
+				if(keep[r]) count++;
+			}
+			int[] rows = new int[count];
+			for(int r = 0, i = 0; r < keep.length; r++) {
+				if(keep[r]) rows[i++] = r;
+			}
+			return rows;
+		}
+	}
+
+	/**
+	 * Builds the results as a CachedRowSet: every column of the table followed by the
+	 * joined columns, which are all strings
+	 */
+	private static final class Output {
+
+		private CachedRowSet set;
+		private int columns;
+
+		Output(ColumnTable table, String... joined) throws SQLException {
+			String[] names = table.columns();
+			columns = names.length;
+			RowSetMetaDataImpl meta = new RowSetMetaDataImpl();
+			meta.setColumnCount(names.length + joined.length);
+			for(int i = 0; i < names.length; i++) {
+				meta.setColumnName(i + 1, names[i]);
+				meta.setColumnLabel(i + 1, names[i]);
+				meta.setColumnType(i + 1, table.isString(i) ? Types.VARCHAR : Types.INTEGER);
+			}
+			for(int i = 0; i < joined.length; i++) {
+				meta.setColumnName(names.length + i + 1, joined[i]);
+				meta.setColumnLabel(names.length + i + 1, joined[i]);
+				meta.setColumnType(names.length + i + 1, Types.VARCHAR);
+			}
+			set = RowSetProvider.newFactory().createCachedRowSet();
+			set.setMetaData(meta);
+		}
+
+		/**
+		 * Add a row of the table followed by the joined values
+		 */
+		void add(ColumnTable table, int row, String... joined) throws SQLException {
+			//insert after the last row so the rows keep their order
+			set.afterLast();
+			set.moveToInsertRow();
+			for(int i = 0; i < columns; i++) {
+				if(table.isString(i)) {
+					String v = table.getString(i, row);
+					if(v == null) set.updateNull(i + 1);
+					else set.updateString(i + 1, v);
+				} else {
+					int v = table.getInt(i, row);
+					if(v == ColumnTable.NULL) set.updateNull(i + 1);
+					else set.updateInt(i + 1, v);
+				}
+			}
+			for(int i = 0; i < joined.length; i++) {
+				if(joined[i] == null) set.updateNull(columns + i + 1);
+				else set.updateString(columns + i + 1, joined[i]);
+			}
+			set.insertRow();
+			set.moveToCurrentRow();
+		}
+
+		/**
+		 * The results, positioned before the first row
+		 */
+		ResultSet finish() throws SQLException {
+			set.beforeFirst();
+			return set;
+		}
+	}
+}
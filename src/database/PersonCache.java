@@ -0,0 +1,86 @@
+package database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * PersonCache keeps the names of the people the entries refer to as devisor, artist or
+ * composer, so showing an entry does not need a query per person. It is filled in one query
+ * when the database is opened and a new one is made after every update. People that did not
+ * fit are looked up when they are first asked for, and the least recently used names are
+ * dropped once it holds CAPACITY of them.
+ */
+class PersonCache {
+
+	public static final int CAPACITY = 20000;
+
+	private Database db;
+	private LinkedHashMap<Integer, String> names;
+
+	/**
+	 * Constructor for an empty PersonCache
+	 * @param db - the database the names are read from
+	 */
+	PersonCache(Database db) {
+		this.db = db;
+		names = new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+				return size() > CAPACITY;
+			}
+		};
+	}
+
+	/**
+	 * Read the names of up to CAPACITY people in one query
+	 * @throws SQLException
+	 */
+	void preload() throws SQLException {
+		ResultSet rs;
+		try {
+			rs = db.executeQuery("SELECT id, name FROM person LIMIT ?", CAPACITY);
+		} catch(SQLException e) {
+			//not in this version of the database
+			return;
+		}
+		LinkedHashMap<Integer, String> loaded = new LinkedHashMap<Integer, String>();
+		while(rs.next()) {
+			loaded.put(rs.getInt(1), rs.getString(2));
+		}
+		rs.close();
+		synchronized(this) {
+			names.putAll(loaded);
+		}
+	}
+
+	/**
+	 * The name of the person, read from the database if it is not cached
+	 * @param id - the person's id
+	 * @return the name, null if there is no such person
+	 * @throws SQLException
+	 */
+	String name(int id) throws SQLException {
+		synchronized(this) {
+			if(names.containsKey(id)) return names.get(id);
+		}
+		ResultSet rs = db.executeQuery("SELECT name FROM person WHERE id=?", id);
+		String name = rs.next() ? rs.getString(1) : null;
+		rs.close();
+		synchronized(this) {
+			names.put(id, name);
+		}
+		return name;
+	}
+
+	/**
+	 * Number of names cached
+	 * @return int
+	 */
+	synchronized int size() {
+		return names.size();
+	}
+}
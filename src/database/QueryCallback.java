@@ -0,0 +1,60 @@
+package database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * QueryCallback receives the results of one of the asynchronous Database methods.
+ *
+ *  -	map is called on the query thread with the open ResultSet and should read everything
+ * 		it needs out of it, so the application thread never has to touch the database.
+ *
+ * 	-	done is then called on the JavaFX application thread with whatever map returned.
+ *
+ * Callbacks with the same key supersede each other: once a newer request has been made with a
+ * key, the results of every older request with that key are dropped instead of delivered.
+ *
+ * @param <T> what the results are turned into
+ */
+public abstract class QueryCallback<T> {
+
+	private String key;
+
+	/**
+	 * Constructor for a QueryCallback
+	 * @param key - requests with the same key supersede each other, eg. the table they fill
+	 */
+	public QueryCallback(String key) {
+		this.key = key;
+	}
+
+	/**
+	 * Read the results of the query, called on the query thread
+	 * @param set - the results of the query
+	 * @return what done should be given
+	 * @throws SQLException
+	 */
+	public abstract T map(ResultSet set) throws SQLException;
+
+	/**
+	 * Use the results, called on the application thread
+	 * @param result - what map returned
+	 */
+	public abstract void done(T result);
+
+	/**
+	 * Called on the application thread instead of done when the query or map failed
+	 * @param e - the exception thrown
+	 */
+	public void failed(Exception e) {
+		e.printStackTrace();
+	}
+
+	/**
+	 * The key requests are superseded by
+	 * @return String
+	 */
+	public String getKey() {
+		return key;
+	}
+}
@@ -0,0 +1,236 @@
+package database;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * QueryLog times the queries Database runs and keeps the times of the last WINDOW runs of
+ * each of them, so their spread can be read with getReport.
+ *
+ *  -	Queries are told apart by their sql, with lists of ids taken out, and named after
+ * 		the method that ran them and the table they read, eg. "SqlEngine.advancedTableSearch
+ * 		dance" or "Database.getRecordingsByAlbum recording". The time is from running the
+ * 		query until its first row is ready, which for sqlite includes any sorting or grouping.
+ *
+ * 	-	A query that takes longer than the threshold is written to the slow query log with
+ * 		its parameters, and the first time, with the plan sqlite's EXPLAIN QUERY PLAN gives
+ * 		for it, so scans of whole tables can be found.
+ *
+ * The log is a tab separated file with a header line: time, name, milliseconds, sql,
+ * parameters and plan, the steps of the plan separated by " | ".
+ */
+class QueryLog {
+
+	public static final int WINDOW = 256;
+	public static final long DEFAULT_THRESHOLD = 100;
+	//upper bounds of the buckets of the histogram, in milliseconds
+	public static final long[] BUCKETS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000};
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final Pattern FROM = Pattern.compile("(?i)\\bFROM\\s+'?(\\w+)");
+
+	private Database db;
+	private File file;
+	private long threshold;
+	private HashMap<String, Stats> stats;
+	private HashSet<String> explained;
+
+	/**
+	 * The times of the last runs of one query
+	 */
+	static final class Stats {
+		final String name;
+		final long[] recent;
+		long count;
+		long max;
+
+		Stats(String name) {
+			this.name = name;
+			recent = new long[WINDOW];
+		}
+
+		/**
+		 * Add the time of a run, replacing the oldest once WINDOW are kept
+		 */
+		void add(long nanos) {
+			recent[(int) (count % WINDOW)] = nanos;
+			count++;
+			max = Math.max(max, nanos);
+		}
+
+		/**
+		 * The times kept, sorted
+		 */
+		long[] sorted() {
+			long[] times = Arrays.copyOf(recent, (int) Math.min(count, WINDOW));
+			Arrays.sort(times);
+			return times;
+		}
+	}
+
+	/**
+	 * Constructor for a QueryLog
+	 * @param db - the database the plans of slow queries are asked for
+	 * @param file - the slow query log
+	 */
+	QueryLog(Database db, File file) {
+		this.db = db;
+		this.file = file;
+		threshold = DEFAULT_THRESHOLD;
+		stats = new HashMap<String, Stats>();
+		explained = new HashSet<String>();
+	}
+
+	/**
+	 * Record a run of a query, and log it if it was slow
+	 * @param sql - the query
+	 * @param params - the values bound to it
+	 * @param nanos - how long it took
+	 */
+	void record(String sql, Object[] params, long nanos) {
+		String key = normalize(sql);
+		String name;
+		boolean explain;
+		synchronized(this) {
+			Stats s = stats.get(key);
+			if(s == null) {
+				s = new Stats(name(sql));
+				stats.put(key, s);
+			}
+			s.add(nanos);
+			name = s.name;
+			if(nanos < threshold * 1000000) return;
+			explain = explained.add(key);
+		}
+		String plan = null;
+		if(explain) {
+			try {
+				plan = db.explain(sql, params);
+			} catch(SQLException e) {
+				plan = "could not explain: " + e.getMessage();
+			}
+		}
+		write(name, sql, params, nanos, plan);
+	}
+
+	/**
+	 * Set how long a query has to take to be logged
+	 * @param millis - the threshold in milliseconds, 0 to log every query
+	 */
+	synchronized void setThreshold(long millis) {
+		threshold = millis;
+		explained.clear();
+	}
+
+	/**
+	 * The times of the queries run so far, one line for each: its name, the number of runs,
+	 * the mean, median, 95th percentile and longest of the last WINDOW runs in milliseconds,
+	 * and how many of them fall in each bucket of the histogram
+	 * @return String
+	 */
+	synchronized String getReport() {
+		TreeMap<String, String> lines = new TreeMap<String, String>();
+		for(Map.Entry<String, Stats> e : stats.entrySet()) {
+			Stats s = e.getValue();
+			long[] times = s.sorted();
+			long total = 0;
+			int[] histogram = new int[BUCKETS.length + 1];
+			for(int i = 0; i < times.length; i++) {
+				total += times[i];
+				int b = 0;
+				while(b < BUCKETS.length && times[i] > BUCKETS[b] * 1000000) b++;
+				histogram[b]++;
+			}
+			StringBuilder line = new StringBuilder();
+			line.append(s.name).append(": ").append(s.count).append(" runs, mean ")
+					.append(ms(total / times.length)).append(" p50 ").append(ms(times[times.length / 2]))
+					.append(" p95 ").append(ms(times[(int) (times.length * 0.95)])).append(" max ").append(ms(s.max))
+					.append(" ms, histogram");
+			for(int b = 0; b < histogram.length; b++) {
+				line.append(' ').append((b < BUCKETS.length) ? "<=" + BUCKETS[b] : ">" + BUCKETS[b - 1]).append(':').append(histogram[b]);
+			}
+			//queries of the same name with different sql are told apart by the sql
+			lines.put(s.name + "\t" + e.getKey(), line.toString());
+		}
+		StringBuilder report = new StringBuilder();
+		for(String line : lines.values()) {
+			report.append(line).append('\n');
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Append a slow query to the log
+	 */
+	private synchronized void write(String name, String sql, Object[] params, long nanos, String plan) {
+		try {
+			boolean header = !file.exists();
+			Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), UTF8));
+			try {
+				if(header) out.write("time\tname\tms\tsql\tparams\tplan\n");
+				out.write(System.currentTimeMillis() + "\t" + clean(name) + "\t" + ms(nanos) + "\t" + clean(sql)
+						+ "\t" + clean(Arrays.toString(params)) + "\t" + ((plan == null) ? "" : clean(plan)) + "\n");
+			} finally {
+				out.close();
+			}
+		} catch(IOException e) {
+			System.out.println("Could not write the slow query log: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * The sql with lists of ids and runs of spaces taken out, so the runs of a query whose
+	 * text lists ids count as one query
+	 * @param sql - the query
+	 * @return String
+	 */
+	static String normalize(String sql) {
+		return sql.replaceAll("IN \\(\\d+(,\\d+)*\\)", "IN (?)").replaceAll("\\s+", " ").trim();
+	}
+
+	/**
+	 * Name a query after the method that ran it and the first table it reads from
+	 * @param sql - the query
+	 * @return String
+	 */
+	private static String name(String sql) {
+		String caller = "?";
+		StackTraceElement[] stack = Thread.currentThread().getStackTrace();
+		for(int i = 1; i < stack.length; i++) {
+			String c = stack[i].getClassName();
+			String m = stack[i].getMethodName();
+			if(c.equals(QueryLog.class.getName()) || (c.equals(Database.class.getName()) && m.startsWith("executeQuery"))) continue;
+			caller = c.substring(c.lastIndexOf('.') + 1) + "." + m;
+			break;
+		}
+		Matcher from = FROM.matcher(sql);
+		return from.find() ? caller + " " + from.group(1) : caller;
+	}
+
+	/**
+	 * Put the value on one line of the log
+	 */
+	private static String clean(String s) {
+		return s.replaceAll("[\\t\\r\\n]+", " ");
+	}
+
+	/**
+	 * Nanoseconds as milliseconds with one decimal
+	 */
+	private static String ms(long nanos) {
+		return String.format("%.1f", nanos / 1000000.0);
+	}
+}
@@ -0,0 +1,223 @@
+package database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * ResultCache keeps the results of the latest searches, so searching the same table with
+ * the same title, filters and collection flag again, eg. on switching tabs or pressing
+ * Reset, does not run the search again.
+ *
+ *  -	Results are kept as CachedRowSets and every search is given a copy of its own to
+ * 		read and close. The least recently used results are dropped once there are more than
+ * 		CAPACITY of them or they hold more than ROWS rows between them.
+ *
+ * 	-	The results of a table are dropped when its rows change: its collection when an
+ * 		entry is marked or tagged, and the catalogue tables its search reads when an
+ * 		update changes them.
+ */
+class ResultCache {
+
+	public static final int CAPACITY = 32;
+	public static final int ROWS = 100000;
+
+	//the catalogue tables the search of each table reads, see SqlEngine
+	private static final Map<String, String[]> READS = new LinkedHashMap<String, String[]>();
+	static {
+		READS.put("dance", new String[] {"dance", "dancetype", "medleytype", "shape", "couples", "progression",
+				"dancespublicationsmap", "publication", "person", "dancesformationsmap", "formation",
+				"dancesstepsmap", "step"});
+		READS.put("album", new String[] {"album", "person"});
+		READS.put("publication", new String[] {"publication", "person"});
+		READS.put("recording", new String[] {"recording", "dancetype", "medleytype", "phrasing", "person"});
+	}
+
+	private LinkedHashMap<String, CachedRowSet> results;
+	private int rows;
+	private long generation;
+	private long hits, misses;
+
+	/**
+	 * Constructor for an empty ResultCache
+	 */
+	ResultCache() {
+		results = new LinkedHashMap<String, CachedRowSet>(16, 0.75f, true);
+	}
+
+	/**
+	 * Search the table, or give a copy of the results of the same search if they are kept
+	 * @param engine - the engine that runs the search if it is not kept
+	 * @param table - the table to search in
+	 * @param name - the name to search for
+	 * @param map - the mapping of keys and values in the advanced search, null for a search by name
+	 * @param ihave - if true only show what is marked as ihave, otherwise show all results
+	 * @return ResultSet of its own, positioned before the first row
+	 * @throws SQLException
+	 */
+	ResultSet search(SearchEngine engine, String table, String name, Map<String, String> map, boolean ihave) throws SQLException {
+		String key = key(table, name, map, ihave);
+		CachedRowSet kept;
+		long started;
+		synchronized(this) {
+			kept = results.get(key);
+			started = generation;
+			if(kept != null) hits++;
+			else misses++;
+		}
+		if(kept != null) return copy(kept);
+		ResultSet rs = (map == null) ? engine.searchTableByName(table, name, ihave)
+				: engine.advancedTableSearch(table, name, map, ihave);
+		if(rs == null) return null;
+		CachedRowSet found;
+		if(rs instanceof CachedRowSet) found = (CachedRowSet) rs;
+		else {
+			found = RowSetProvider.newFactory().createCachedRowSet();
+			found.populate(rs);
+			rs.close();
+		}
+		synchronized(this) {
+			//results read before the rows changed are not kept
+			if(started == generation && found.size() <= ROWS) {
+				CachedRowSet old = results.put(key, found);
+				if(old != null) rows -= old.size();
+				rows += found.size();
+				evict();
+			}
+		}
+		return copy(found);
+	}
+
+	/**
+	 * Drop the least recently used results until the limits are kept
+	 */
+	private void evict() {
+		Iterator<CachedRowSet> i = results.values().iterator();
+		while(i.hasNext() && (results.size() > CAPACITY || rows > ROWS)) {
+			rows -= i.next().size();
+			i.remove();
+		}
+	}
+
+	/**
+	 * Drop the results of the tables whose collection changed
+	 * @param tables - dance, album, publication or recording
+	 */
+	synchronized void invalidate(Collection<String> tables) {
+		generation++;
+		Iterator<Map.Entry<String, CachedRowSet>> i = results.entrySet().iterator();
+		while(i.hasNext()) {
+			Map.Entry<String, CachedRowSet> e = i.next();
+			if(tables.contains(table(e.getKey()))) {
+				rows -= e.getValue().size();
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Drop the results of the searches that read any of the catalogue tables that changed
+	 * @param changed - the catalogue tables an update changed
+	 */
+	synchronized void invalidateCatalogue(Collection<String> changed) {
+		LinkedHashMap<String, Boolean> tables = new LinkedHashMap<String, Boolean>();
+		for(Map.Entry<String, String[]> e : READS.entrySet()) {
+			for(int i = 0; i < e.getValue().length; i++) {
+				if(changed.contains(e.getValue()[i])) tables.put(e.getKey(), true);
+			}
+		}
+		invalidate(tables.keySet());
+	}
+
+	/**
+	 * Drop all the results
+	 */
+	synchronized void clear() {
+		generation++;
+		results.clear();
+		rows = 0;
+	}
+
+	/**
+	 * Number of searches answered from the cache
+	 * @return long
+	 */
+	synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Number of searches that had to be run
+	 * @return long
+	 */
+	synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Number of results kept
+	 * @return int
+	 */
+	synchronized int size() {
+		return results.size();
+	}
+
+	/**
+	 * A copy of kept results with a cursor of its own
+	 * @param kept - the results
+	 * @return CachedRowSet positioned before the first row
+	 * @throws SQLException
+	 */
+	private static CachedRowSet copy(CachedRowSet kept) throws SQLException {
+		CachedRowSet copy = RowSetProvider.newFactory().createCachedRowSet();
+		synchronized(kept) {
+			kept.beforeFirst();
+			copy.populate(kept);
+		}
+		copy.beforeFirst();
+		return copy;
+	}
+
+	/**
+	 * The key of a search. Filters are sorted and the empty ones left out, as the
+	 * searches ignore them, so the same search gives the same key whichever screen runs it.
+	 * @param table - the table to search in
+	 * @param name - the name to search for
+	 * @param map - the mapping of keys and values in the advanced search, or null
+	 * @param ihave - the collection flag
+	 * @return String starting with the table and a tab
+	 */
+	static String key(String table, String name, Map<String, String> map, boolean ihave) {
+		StringBuilder key = new StringBuilder();
+		key.append(table).append('\t').append(ihave ? '1' : '0').append('\t').append(name);
+		if(map != null) {
+			key.append('\t');
+			TreeMap<String, String> sorted = new TreeMap<String, String>();
+			for(Map.Entry<String, String> e : map.entrySet()) {
+				String v = e.getValue();
+				//a formation or step combination with every ComboBox empty
+				if(v != null && !v.replace(" * ", "").isEmpty()) sorted.put(e.getKey(), v);
+			}
+			for(Map.Entry<String, String> e : sorted.entrySet()) {
+				key.append('\t').append(e.getKey()).append('=').append(e.getValue());
+			}
+		}
+		return key.toString();
+	}
+
+	/**
+	 * The table of a key
+	 * @param key - the key
+	 * @return the table it searches
+	 */
+	private static String table(String key) {
+		return key.substring(0, key.indexOf('\t'));
+	}
+}
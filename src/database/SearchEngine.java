@@ -0,0 +1,34 @@
+package database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * SearchEngine answers the searches behind the record tables. Database has one engine that
+ * searches the file with sql and one that searches a snapshot held in memory; both return
+ * the same columns so either can fill the tables and their results can be compared.
+ */
+public interface SearchEngine {
+
+	/**
+	 * Search the table and return all records where name contains the param name
+	 * @param table - the table to search in
+	 * @param name - the name to search for
+	 * @param ihave - if true only show what is marked as ihave, otherwise show all results
+	 * @return ResultSet
+	 * @throws SQLException
+	 */
+	public ResultSet searchTableByName(String table, String name, boolean ihave) throws SQLException;
+
+	/**
+	 * Search the table with specified advanced search params
+	 * @param table - the table to search in
+	 * @param name - the name to search for
+	 * @param map - the mapping of keys and values in the advanced search
+	 * @param ihave - if true only show what is marked as ihave, otherwise show all results
+	 * @return ResultSet
+	 * @throws SQLException
+	 */
+	public ResultSet advancedTableSearch(String table, String name, Map<String,String> map, boolean ihave) throws SQLException;
+}
@@ -0,0 +1,122 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+
+/**
+ * SearchTerms reads the values the advanced search filters put in their maps, so the sql and
+ * in-memory search engines understand them the same way.
+ */
+final class SearchTerms {
+
+	private static final String[] OPERATORS = {"<=", ">=", "<>", "!=", "<", ">", "="};
+
+	private SearchTerms() {
+	}
+
+	/**
+	 * A comparison of a number column against a value, eg. "<=32"
+	 */
+	static final class Comparison {
+
+		final String op;
+		final int value;
+
+		Comparison(String op, int value) {
+			this.op = op;
+			this.value = value;
+		}
+
+		/**
+		 * Check if the number passes the comparison
+		 * @param x - the number from the column
+		 * @return true if it passes
+		 */
+		boolean matches(int x) {
+			if(op.equals("<=")) return x <= value;
+			if(op.equals(">=")) return x >= value;
+			if(op.equals("<>") || op.equals("!=")) return x != value;
+			if(op.equals("<")) return x < value;
+			if(op.equals(">")) return x > value;
+			return x == value;
+		}
+	}
+
+	/**
+	 * Read a filter value such as "<=32" as an operator followed by a number,
+	 * a number alone is compared for equality
+	 * @param val - the operator and number from the filter
+	 * @return the Comparison, or null if the value is not an operator and a number
+	 */
+	static Comparison compare(String val) {
+		String op = "=";
+		String num = val.trim();
+		for(int i = 0; i < OPERATORS.length; i++) {
+			if(num.startsWith(OPERATORS[i])) {
+				op = OPERATORS[i];
+				num = num.substring(OPERATORS[i].length()).trim();
+				break;
+			}
+		}
+		try {
+			return new Comparison(op, Integer.parseInt(num));
+		} catch(NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Split the ~ delimited formation or step string from the dance filters into its terms,
+	 * eg. "Poussette~and~Reel of three~". Names and the operators "and", "or" and "and not"
+	 * alternate, and a slot is left null when the filter has nothing in it.
+	 * @param val - the encoded filter string
+	 * @return the terms, one slot per box of the filter
+	 */
+	static String[] membership(String val) {
+		ArrayList<String> terms = new ArrayList<String>();
+		int len = val.length();
+		for (int k=0,j=0; k<len; k++){
+			if (val.substring(k,k+1).equals("~")){
+				String term = val.substring(j,k);
+				if (term.equals("not")){
+					terms.add("and not");
+				}
+				else{
+					terms.add(term);
+				}
+				j=k+1;
+			}
+			else if(val.substring(k,k+1).equals("*")){
+				j=k+2;
+				terms.add(null);
+			}
+		}
+		return terms.toArray(new String[terms.size()]);
+	}
+
+	/**
+	 * Check if a membership term is an operator rather than a name
+	 * @param term - the term
+	 * @return true for "and", "or" and "and not"
+	 */
+	static boolean isOperator(String term) {
+		return term.equals("and") || term.equals("or") || term.equals("and not");
+	}
+
+	/**
+	 * Compile a sql like pattern: % matches any text, _ any one character and
+	 * ascii letters match either case
+	 * @param like - the like pattern
+	 * @return Pattern matching the same strings
+	 */
+	static Pattern like(String like) {
+		StringBuilder regex = new StringBuilder();
+		for(int i = 0; i < like.length(); i++) {
+			char c = like.charAt(i);
+			if(c == '%') regex.append(".*");
+			else if(c == '_') regex.append('.');
+			else regex.append(Pattern.quote(String.valueOf(c)));
+		}
+		return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+	}
+}
@@ -0,0 +1,450 @@
+package database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * SqlEngine answers searches with sql on the database file. Titles are looked up through
+ * the TitleIndex when it can be used, everything else is filtered in the where clause with
+ * the values bound as parameters.
+ */
+class SqlEngine implements SearchEngine {
+
+	//how many names in order a page of a search by name is looked for in before the full-text index is used
+	public static final int WINDOW = 2000;
+
+	private Database db;
+	private TitleIndex titles;
+
+	/**
+	 * The sql of a search, without its order
+	 */
+	private static final class Query {
+		String sql;
+		//the GROUP BY clause, if any, which goes after anything added to the where clause
+		String group = "";
+		//the alias of the table searched, null for a table that is not one of the four
+		String alias;
+		final ArrayList<Object> params = new ArrayList<Object>();
+	}
+
+	/**
+	 * Constructor for a SqlEngine
+	 * @param db - the database the queries are run on
+	 * @param titles - the full-text index of the titles
+	 */
+	SqlEngine(Database db, TitleIndex titles) {
+		this.db = db;
+		this.titles = titles;
+	}
+	
+	/**
+	 * Search the table and return all records where name contains the param name
+	 * @param table - the table to search in
+	 * @param name - the name to search for
+	 * @param ihave - if true only show what is marked as ihave, otherwise show all results
+	 * @return ResultSet
+	 * @throws SQLException
+	 */
+	@Override
+	public ResultSet searchTableByName(String table, String name, boolean ihave) throws SQLException {
+		Query q = byName(table, name, ihave, true);
+		return run(q, order(q));
+	}
+	
+	/**
+	 * Search the table with specified advanced search params
+	 * @param table - the table to search in
+	 * @param name - the name to search for
+	 * @param map - the mapping of keys and values in the advanced search
+	 * @param ihave - if true only show what is marked as ihave, otherwise show all results
+	 * @return ResultSet
+	 * @throws SQLException
+	 */
+	@Override
+	public ResultSet advancedTableSearch(String table, String name, Map<String,String> map, boolean ihave) throws SQLException{
+		Query q = advanced(table, name, map, ihave);
+		return run(q, order(q));
+	}
+	
+	/**
+	 * Read one page of a search by name or an advanced search, in order of name and id. A
+	 * table that is not one of the four the record tables show is searched as a whole.
+	 * @param table - the table to search in
+	 * @param name - the name to search for
+	 * @param map - the mapping of keys and values in the advanced search, null for a search by name
+	 * @param ihave - if true only show what is marked as ihave, otherwise show all results
+	 * @param page - which page to read
+	 * @return ResultSet of the page
+	 * @throws SQLException
+	 */
+	ResultSet searchPage(String table, String name, Map<String,String> map, boolean ihave, Keyset page) throws SQLException {
+		Query q = null;
+		if(map == null && !ihave && titles.indexes(table, name)) q = window(table, name, page);
+		if(q == null) q = (map == null) ? byName(table, name, ihave, true) : advanced(table, name, map, ihave);
+		if(q.alias == null) return run(q, "");
+		String n = q.alias + ".name", id = q.alias + ".id";
+		String order = page.isBefore() ? " DESC" : "";
+		keyset(q, page);
+		String sql = q.sql + q.group + " ORDER BY " + n + order + ", " + id + order + " LIMIT ?";
+		q.params.add(page.getLimit());
+		if(page.isBefore()) sql = "SELECT * FROM (" + sql + ") ORDER BY name, id";
+		return db.executeQuery(sql, q.params.toArray());
+	}
+	
+	/**
+	 * Restrict a query to the rows on the side of the page of the row the page is next to
+	 * @param q - the query, which has an alias
+	 * @param page - which page to read
+	 */
+	private void keyset(Query q, Keyset page) {
+		String n = q.alias + ".name", id = q.alias + ".id";
+		String op = page.isBefore() ? "<" : ">";
+		//a range on the name on its own lets sqlite read the index on name from the row on
+		//instead of sorting every row, rows without a name are left out of the pages
+		if(page.getName() != null) {
+			q.sql += " AND " + n + op + "=? AND (" + n + op + "? OR " + id + op + "?)";
+			q.params.add(page.getName());
+			q.params.add(page.getName());
+			q.params.add(page.getId());
+		}
+		else q.sql += " AND " + n + ">=''";
+	}
+	
+	/**
+	 * The search by name of a page without the full-text index, limited to the next WINDOW names
+	 * in order, if the page is among them. The index finds every name with the text before any
+	 * is ordered, which takes long when the text is common, while the index on name reads the
+	 * names in order and soon has a page of them then.
+	 * @param table - the table to search in
+	 * @param name - the name to search for
+	 * @param page - which page to read
+	 * @return Query, or null if the page is not within the window and the index should be used
+	 * @throws SQLException
+	 */
+	private Query window(String table, String name, Keyset page) throws SQLException {
+		Query q = byName(table, name, false, false);
+		if(q.alias == null) return null;
+		String n = q.alias + ".name", id = q.alias + ".id";
+		String order = page.isBefore() ? " DESC" : "";
+		//the name WINDOW rows on, if there are that many
+		Query last = new Query();
+		last.alias = q.alias;
+		last.sql = "SELECT " + n + " FROM " + table + " " + q.alias + " WHERE 1";
+		keyset(last, page);
+		ResultSet rs = db.executeQuery(last.sql + " ORDER BY " + n + order + ", " + id + order + " LIMIT 1 OFFSET " + WINDOW, 
+				last.params.toArray());
+		String bound = rs.next() ? rs.getString(1) : null;
+		rs.close();
+		//otherwise the window holds the rest of the rows, and so the page
+		if(bound == null) return q;
+		Query found = new Query();
+		found.alias = q.alias;
+		found.sql = "SELECT 1 FROM " + table + " " + q.alias + " WHERE " + titles.like(q.alias, name, found.params);
+		keyset(found, page);
+		found.sql += " AND " + n + (page.isBefore() ? ">=" : "<=") + "?";
+		found.params.add(bound);
+		found.params.add(page.getLimit());
+		rs = db.executeQuery("SELECT count(*) FROM (" + found.sql + " LIMIT ?)", found.params.toArray());
+		int count = rs.next() ? rs.getInt(1) : 0;
+		rs.close();
+		if(count < page.getLimit()) return null;
+		q.sql += " AND " + n + (page.isBefore() ? ">=" : "<=") + "?";
+		q.params.add(bound);
+		return q;
+	}
+	
+	/**
+	 * The sql of a search by name
+	 * @param table - the table to search in
+	 * @param name - the name to search for
+	 * @param ihave - if true only show what is marked as ihave, otherwise show all results
+	 * @param indexed - false to match the names without the full-text index
+	 * @return Query, not yet ordered
+	 * @throws SQLException
+	 */
+	private Query byName(String table, String name, boolean ihave, boolean indexed) throws SQLException {
+		Query q = new Query();
+		ArrayList<Object> params = q.params;
+		String sql;
+		if(table.equals("dance")) {
+			sql = "SELECT d.*, " + UserCollection.COLUMNS + ", dt.name as type, mt.description as medleytype, s.name as shape, "
+					+ "c.name as couples, p.name as progression, pb.name as publication, pn.name as devisor FROM dance d "
+					+ UserCollection.join("dance", "d")
+					+ "LEFT OUTER JOIN dancetype dt ON d.type_id=dt.id "
+					+ "LEFT OUTER JOIN medleytype mt ON d.medleytype_id=mt.id "
+					+ "LEFT OUTER JOIN shape s ON d.shape_id=s.id "
+					+ "LEFT OUTER JOIN couples c ON d.couples_id=c.id "
+					+ "LEFT OUTER JOIN progression p ON d.progression_id=p.id "
+					+ "LEFT OUTER JOIN dancespublicationsmap dpm ON d.id=dpm.dance_id "
+					+ "LEFT OUTER JOIN publication pb ON dpm.publication_id=pb.id "
+					+ "LEFT OUTER JOIN person pn ON d.devisor_id=pn.id "
+					+ "WHERE " + filter("dance", "d", name, params, indexed);
+			if(ihave) {
+				sql += " AND ci.ihave=1";
+			}
+			q.alias = "d";
+		} else if(table.equals("album")) {
+			sql = "SELECT a.*, " + UserCollection.COLUMNS + ", p.name as artist FROM album a "
+					+ UserCollection.join("album", "a")
+					+ "LEFT OUTER JOIN person p ON a.artist_id=p.id "
+					+ "WHERE " + filter("album", "a", name, params, indexed);
+			if(ihave) {
+				sql += " AND ci.ihave=1";
+			}
+			q.alias = "a";
+		} else if(table.equals("publication")) {
+			sql = "SELECT pb.*, " + UserCollection.COLUMNS + ", pr.name as devisor FROM publication pb "
+					+ UserCollection.join("publication", "pb")
+					+ "LEFT OUTER JOIN person pr ON pb.devisor_id=pr.id WHERE " + filter("publication", "pb", name, params, indexed);
+			if(ihave) {
+				sql += " AND ci.ihave=1";
+			}
+			q.alias = "pb";
+		} else if(table.equals("recording")){
+			sql = "SELECT r.*, " + UserCollection.COLUMNS + ", dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist "
+					+ "FROM recording r " + UserCollection.join("recording", "r") + "LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
+					+ "LEFT OUTER JOIN medleytype mt ON r.medleytype_id=mt.id "
+					+ "LEFT OUTER JOIN phrasing p ON r.phrasing_id=p.id "
+					+ "LEFT OUTER JOIN person pn ON r.artist_id=pn.id "
+					+ "WHERE " + filter("recording", "r", name, params, indexed);
+			if(ihave) {
+				sql += " AND ci.ihave=1";
+			}
+			q.alias = "r";
+		} else {
+			sql = "SELECT * FROM " + table + " WHERE name like ?";
+			params.add("%" + name + "%");
+			if(ihave) {
+				sql += " AND ihave=1";
+			}
+		}
+		q.sql = sql;
+		return q;
+	}
+	
+	/**
+	 * The condition on the names of a table, see TitleIndex.filter
+	 * @param indexed - false to match the names without the full-text index
+	 */
+	private String filter(String table, String alias, String name, ArrayList<Object> params, boolean indexed) {
+		return indexed ? titles.filter(table, alias, name, params) : titles.like(alias, name, params);
+	}
+	
+	/**
+	 * The sql of an advanced search
+	 * @param table - the table to search in
+	 * @param name - the name to search for
+	 * @param map - the mapping of keys and values in the advanced search
+	 * @param ihave - if true only show what is marked as ihave, otherwise show all results
+	 * @return Query, not yet ordered
+	 * @throws SQLException
+	 */
+	private Query advanced(String table, String name, Map<String,String> map, boolean ihave) throws SQLException{
+		Query q = new Query();
+		ArrayList<Object> params = q.params;
+		String sql;
+		if(table.equals("dance")) {
+			sql = "SELECT d.*, " + UserCollection.COLUMNS + ", dt.name as type, mt.description as medleytype, s.name as shape, "
+					+ "c.name as couples, p.name as progression, pb.name as publication, pn.name as devisor "
+					+ "FROM dance d "
+					+ UserCollection.join("dance", "d")
+					+ "LEFT OUTER JOIN dancetype dt ON d.type_id=dt.id "
+					+ "LEFT OUTER JOIN medleytype mt ON d.medleytype_id=mt.id "
+					+ "LEFT OUTER JOIN shape s ON d.shape_id=s.id "
+					+ "LEFT OUTER JOIN couples c ON d.couples_id=c.id "
+					+ "LEFT OUTER JOIN progression p ON d.progression_id=p.id "
+					+ "LEFT OUTER JOIN dancespublicationsmap dpm ON d.id=dpm.dance_id "
+					+ "LEFT OUTER JOIN publication pb ON dpm.publication_id=pb.id "
+					+ "LEFT OUTER JOIN person pn ON d.devisor_id=pn.id "
+					+ "WHERE " + titles.filter("dance", "d", name, params);
+			Object[] keys = map.keySet().toArray();
+			for (int i=0; keys.length>i; i++){
+				String param = (String)keys[i];
+				String val = map.get(keys[i]);
+				if(!val.isEmpty()){
+					if (param.equals("bars")){
+						sql += compare("d.barsperrepeat", val, params);
+					}
+					else if (param.equals("author")){
+						sql += " AND pn.name like ?";
+						params.add("%" + val + "%");
+					}
+					else if (param.equals("type")){
+						sql += " AND dt.name=?";
+						params.add(val);
+					}
+					else if (param.equals("couples")){
+						sql += " AND c.name=?";
+						params.add(val);
+					}
+					else if (param.equals("shape")){
+						sql += " AND s.name=?";
+						params.add(val);
+					}
+					else if (param.equals("formation")){
+						sql += membership(val, "formation", params);
+					}
+					else if (param.equals("steps")){
+						sql += membership(val, "step", params);
+					}
+					else if (param.equals("RSCDS")){
+						if (val.equals("1")){
+							sql += " AND d.id IN (SELECT dpm.dance_id FROM dancespublicationsmap dpm "
+									+ "LEFT OUTER JOIN publication pb "
+									+ "WHERE dpm.publication_id=pb.id AND pb.shortname like '%RSCDS%')";
+						}
+					}
+				}
+			}
+			if(ihave) {
+				sql += " AND ci.ihave=1";
+			}
+			q.group = " GROUP by d.name, publication";
+			q.alias = "d";
+		}
+		else if(table.equals("publication")) {
+			sql = "SELECT pb.*, " + UserCollection.COLUMNS + ", pr.name as devisor FROM publication pb "
+					+ UserCollection.join("publication", "pb")
+					+ "LEFT OUTER JOIN person pr ON pb.devisor_id=pr.id "
+					+ "WHERE " + titles.filter("publication", "pb", name, params);
+			String author = map.get("author");
+			String rscds = map.get("RSCDS");
+			if (!author.isEmpty()) {
+				sql += " AND pr.name like ?";
+				params.add("%" + author + "%");
+			}
+			if (rscds.equals("1"))
+				sql += " AND pb.rscds";
+			if(ihave) {
+				sql += " AND ci.ihave=1";
+			}
+			q.alias = "pb";
+		}
+		else if(table.equals("recording")){
+			sql = "SELECT r.*, " + UserCollection.COLUMNS + ", dt.name as type, mt.description as medleytype, p.name as phrasing, pn.name as artist "
+					+ "FROM recording r " + UserCollection.join("recording", "r") + "LEFT OUTER JOIN dancetype dt ON r.type_id=dt.id "
+					+ "LEFT OUTER JOIN medleytype mt ON r.medleytype_id=mt.id "
+					+ "LEFT OUTER JOIN phrasing p ON r.phrasing_id=p.id "
+					+ "LEFT OUTER JOIN person pn ON r.artist_id=pn.id "
+					+ "WHERE " + titles.filter("recording", "r", name, params);
+			String type = map.get("type");
+			String medley = map.get("medley type");
+			String repetitions = map.get("repetitions");
+			String bars = map.get("bars");
+			if (type != null)
+				if (!type.isEmpty()) {
+					sql += " AND dt.name=?";
+					params.add(type);
+				}
+			if (medley != null)
+				if (!medley.isEmpty()) {
+					sql += " AND mt.description=?";
+					params.add(medley);
+				}
+			if (repetitions != null)
+				if (!repetitions.isEmpty())
+					sql += compare("r.repetitions", repetitions, params);
+			if (bars != null)
+				if (!bars.isEmpty())
+					sql += compare("r.barsperrepeat", bars, params);
+			if(ihave) {
+				sql += " AND ci.ihave=1";
+			}
+			q.alias = "r";
+		} 
+		else if(table.equals("album")) {
+			sql = "SELECT a.*, " + UserCollection.COLUMNS + ", p.name as artist FROM album a "
+					+ UserCollection.join("album", "a")
+					+ "LEFT OUTER JOIN person p ON a.artist_id=p.id "
+					+ "WHERE " + titles.filter("album", "a", name, params);
+			String artist = map.get("artist_id");
+			String year = map.get("productionyear");
+			if (artist != null)
+				if(!artist.isEmpty()) {
+					sql += " AND p.name like ?";
+					params.add("%" + artist + "%");
+				}
+			if (year != null)
+				if (!year.isEmpty())
+					sql += compare("a.productionyear", "=" + year, params);
+			if(ihave) {
+				sql += " AND ci.ihave=1";
+			}
+			q.alias = "a";
+		}
+		else {
+			sql = "SELECT * FROM " + table + " WHERE name like ?";
+			params.add("%" + name + "%");
+			if(ihave) {
+				sql += " AND ihave=1";
+			}
+		}
+		q.sql = sql;
+		return q;
+	}
+	
+	/**
+	 * Run a search
+	 * @param q - the search
+	 * @param order - the ORDER BY clause, or empty
+	 * @return ResultSet
+	 * @throws SQLException
+	 */
+	/**
+	 * The order of a whole search: by name, then id, and the rows of a dance by publication, the
+	 * same order the in-memory engine gives. A grouped search keeps the order of its groups.
+	 * @param q - the search
+	 * @return the ORDER BY clause, or empty
+	 */
+	private String order(Query q) {
+		if(q.alias == null || !q.group.isEmpty()) return "";
+		String order = " ORDER by name, " + q.alias + ".id";
+		if(q.alias.equals("d")) order += ", publication, pb.id";
+		return order;
+	}
+
+	private ResultSet run(Query q, String order) throws SQLException {
+		String sql = q.sql + q.group + order;
+		return db.executeQuery(sql, q.params.toArray());
+	}
+	
+	/**
+	 * Turn a filter value such as "<=32" into a bound comparison on the column. Values
+	 * that are not an operator followed by a number match nothing.
+	 * @param column - the column to compare
+	 * @param val - the operator and number from the filter
+	 * @param params - the parameter list the number is added to
+	 * @return the sql to append to the where clause
+	 */
+	private String compare(String column, String val, ArrayList<Object> params) {
+		SearchTerms.Comparison c = SearchTerms.compare(val);
+		if(c == null) {
+			return " AND 0";
+		}
+		params.add(c.value);
+		return " AND " + column + c.op + "?";
+	}
+	
+	/**
+	 * Turn the ~ delimited formation or step string from the dance filters into a test
+	 * on the dance id, eg. "Poussette~and~Reel of three~". The matching dances are worked
+	 * out on the MembershipIndex, however many terms the filter has, and bound as an IdSet,
+	 * so the text of the query is the same whichever dances match, see StatementCache.
+	 * @param val - the encoded filter string
+	 * @param lookup - the table the names are looked up in (formation or step)
+	 * @param params - the parameter list the dances are added to
+	 * @return the sql to append to the where clause, empty if the filter has no terms
+	 * @throws SQLException
+	 */
+	private String membership(String val, String lookup, ArrayList<Object> params) throws SQLException {
+		BitSet dances = db.getMemberships().evaluate(lookup, val, db.getLookups());
+		if(dances == null) return "";
+		if(dances.isEmpty()) return " AND 0";
+		params.add(new StatementCache.IdSet(dances));
+		return " AND d.id IN (SELECT id FROM temp.idset WHERE number=?)";
+	}
+}
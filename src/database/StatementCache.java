@@ -0,0 +1,305 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * StatementCache keeps the compiled PreparedStatements for every distinct SQL string that
+ * has been run on a connection. The first call for a query prepares it; later calls hand
+ * back a statement that is already compiled so SQLite does not have to re-parse and re-plan it.
+ *
+ * Re-executing a statement invalidates the ResultSet it returned last time, so a statement
+ * is only reused once the caller has read its previous results to the end. While those are
+ * still being iterated a second statement is prepared for the same SQL, up to
+ * MAX_PER_QUERY. When all of them are still being read, eg. by a table that streams its
+ * rows, the query is run on a statement of its own instead, so no reader loses its cursor.
+ * Queries that are not expected to be run again, such as ones with a list of ids in their
+ * text, are run on a statement of their own too. Those are closed once their results are
+ * closed, which is checked whenever the cache is used.
+ * A set of ids, eg. the dances that match a formation filter, is bound as an IdSet: the ids
+ * are put in the temporary table temp.idset of the connection, under a number that is bound
+ * in their place, so the query can join them with "id IN (SELECT id FROM temp.idset WHERE
+ * number=?)" and keep the same text whatever the ids. The last MAX_ID_SETS sets are kept.
+ * The cache lives exactly as long as its connection.
+ */
+class StatementCache {
+
+	public static final int MAX_PER_QUERY = 4;
+	public static final int MAX_ID_SETS = 16;
+
+	/**
+	 * A set of ids to bind as the number of its rows in temp.idset
+	 */
+	static final class IdSet {
+		final BitSet ids;
+
+		IdSet(BitSet ids) {
+			this.ids = ids;
+		}
+
+		@Override
+		public String toString() {
+			//the ids could fill the slow query log
+			return ids.cardinality() + " ids";
+		}
+	}
+
+	private Connection connection;
+	private HashMap<String, ArrayList<PreparedStatement>> statements;
+	private IdentityHashMap<PreparedStatement, ResultSet> results;
+	private IdentityHashMap<PreparedStatement, ResultSet> once;
+	//the numbers the id sets in temp.idset are kept under, least recently used first
+	private LinkedHashMap<BitSet, Integer> idSets;
+	private int nextIdSet;
+	private int timeout;
+
+	/**
+	 * Constructor for a StatementCache on the given connection
+	 * @param connection - the open connection the statements are prepared on
+	 * @param timeout - query timeout in seconds given to every statement
+	 * @throws SQLException
+	 */
+	StatementCache(Connection connection, int timeout) throws SQLException {
+		this.connection = connection;
+		this.timeout = timeout;
+		statements = new HashMap<String, ArrayList<PreparedStatement>>();
+		results = new IdentityHashMap<PreparedStatement, ResultSet>();
+		once = new IdentityHashMap<PreparedStatement, ResultSet>();
+		idSets = new LinkedHashMap<BitSet, Integer>(16, 0.75f, true);
+		//made before any query that joins it is prepared, temporary tables can be written on a read-only connection
+		Statement s = connection.createStatement();
+		try {
+			s.execute("CREATE TEMP TABLE IF NOT EXISTS idset(number INTEGER, id INTEGER, PRIMARY KEY(number, id)) WITHOUT ROWID");
+		} finally {
+			s.close();
+		}
+	}
+
+	/**
+	 * Run a query, binding the params in order
+	 * @param sql - the query with a ? for every param
+	 * @param params - the values to bind
+	 * @return ResultSet
+	 * @throws SQLException
+	 */
+	synchronized ResultSet executeQuery(String sql, Object... params) throws SQLException {
+		closeRead();
+		PreparedStatement ps = prepare(sql);
+		if(ps == null) return executeQueryOnce(sql, params);
+		bind(ps, params);
+		ResultSet rs = ps.executeQuery();
+		results.put(ps, rs);
+		return rs;
+	}
+
+	/**
+	 * Run a query without caching its statement, binding the params in order
+	 * @param sql - the query with a ? for every param
+	 * @param params - the values to bind
+	 * @return ResultSet
+	 * @throws SQLException
+	 */
+	synchronized ResultSet executeQueryOnce(String sql, Object... params) throws SQLException {
+		closeRead();
+		PreparedStatement ps = connection.prepareStatement(sql);
+		ps.setQueryTimeout(timeout);
+		bind(ps, params);
+		ResultSet rs = ps.executeQuery();
+		once.put(ps, rs);
+		return rs;
+	}
+
+	/**
+	 * Check if any results of the statements are still open, eg. being read
+	 * @return true if a ResultSet of the cache is not closed yet
+	 * @throws SQLException
+	 */
+	synchronized boolean isReading() throws SQLException {
+		for(ResultSet rs : results.values()) {
+			if(!rs.isClosed()) return true;
+		}
+		for(ResultSet rs : once.values()) {
+			if(!rs.isClosed()) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Close the statements of executeQueryOnce whose results have been read
+	 * @throws SQLException
+	 */
+	private void closeRead() throws SQLException {
+		Iterator<PreparedStatement> i = once.keySet().iterator();
+		while(i.hasNext()) {
+			PreparedStatement ps = i.next();
+			if(once.get(ps).isClosed()) {
+				ps.close();
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Run an update, binding the params in order
+	 * @param sql - the statement with a ? for every param
+	 * @param params - the values to bind
+	 * @return the number of rows changed
+	 * @throws SQLException
+	 */
+	synchronized int executeUpdate(String sql, Object... params) throws SQLException {
+		closeRead();
+		PreparedStatement ps = prepare(sql);
+		if(ps == null) {
+			ps = connection.prepareStatement(sql);
+			try {
+				ps.setQueryTimeout(timeout);
+				bind(ps, params);
+				return ps.executeUpdate();
+			} finally {
+				ps.close();
+			}
+		}
+		bind(ps, params);
+		return ps.executeUpdate();
+	}
+
+	/**
+	 * Return a compiled statement for the sql whose last results have been read,
+	 * preparing a new one when every cached statement is still in use
+	 * @param sql - the query with ? placeholders for every parameter
+	 * @return PreparedStatement, or null if MAX_PER_QUERY are cached and all still in use
+	 * @throws SQLException
+	 */
+	synchronized PreparedStatement prepare(String sql) throws SQLException {
+		ArrayList<PreparedStatement> list = statements.get(sql);
+		if(list == null) {
+			list = new ArrayList<PreparedStatement>();
+			statements.put(sql, list);
+		}
+		for(int i = 0; i < list.size(); i++) {
+			PreparedStatement ps = list.get(i);
+			ResultSet rs = results.get(ps);
+			if(rs == null || rs.isClosed()) {
+				list.remove(i);
+				try {
+					ps.clearParameters();
+				} catch(SQLException e) {
+					//the driver lets go of a statement whose query was cancelled
+					results.remove(ps);
+					i--;
+					continue;
+				}
+				//move to the back so the front holds the least recently used
+				list.add(ps);
+				return ps;
+			}
+		}
+		//recycling one would close the cursor of whoever still reads it
+		if(list.size() >= MAX_PER_QUERY) return null;
+		PreparedStatement ps = connection.prepareStatement(sql);
+		ps.setQueryTimeout(timeout);
+		list.add(ps);
+		return ps;
+	}
+
+	/**
+	 * Bind the params to the statement in order
+	 * @param ps - the statement
+	 * @param params - the values to bind
+	 * @throws SQLException
+	 */
+	private void bind(PreparedStatement ps, Object... params) throws SQLException {
+		for(int i = 0; i < params.length; i++) {
+			if(params[i] instanceof IdSet) ps.setInt(i + 1, idSet(((IdSet) params[i]).ids));
+			else ps.setObject(i + 1, params[i]);
+		}
+	}
+
+	/**
+	 * Put a set of ids in temp.idset, unless it is there already, dropping the least
+	 * recently used set if there are more than MAX_ID_SETS
+	 * @param ids - the ids
+	 * @return the number the ids are kept under
+	 * @throws SQLException
+	 */
+	private int idSet(BitSet ids) throws SQLException {
+		Integer number = idSets.get(ids);
+		if(number != null) return number;
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		PreparedStatement ps = connection.prepareStatement("INSERT INTO temp.idset(number, id) VALUES(?, ?)");
+		try {
+			if(idSets.size() >= MAX_ID_SETS) {
+				Iterator<Integer> eldest = idSets.values().iterator();
+				PreparedStatement delete = connection.prepareStatement("DELETE FROM temp.idset WHERE number=?");
+				try {
+					delete.setInt(1, eldest.next());
+					delete.executeUpdate();
+				} finally {
+					delete.close();
+				}
+				eldest.remove();
+			}
+			number = nextIdSet++;
+			for(int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+				ps.setInt(1, number);
+				ps.setInt(2, id);
+				ps.addBatch();
+			}
+			ps.executeBatch();
+			connection.commit();
+		} catch(SQLException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			ps.close();
+			connection.setAutoCommit(autoCommit);
+		}
+		//a copy, so changing the set given does not change the key
+		idSets.put((BitSet) ids.clone(), number);
+		return number;
+	}
+
+	/**
+	 * Number of compiled statements currently held
+	 * @return int
+	 */
+	synchronized int size() {
+		int size = 0;
+		Iterator<ArrayList<PreparedStatement>> i = statements.values().iterator();
+		while(i.hasNext()) {
+			size += i.next().size();
+		}
+		return size;
+	}
+
+	/**
+	 * Close every statement in the cache
+	 * @throws SQLException
+	 */
+	synchronized void close() throws SQLException {
+		Iterator<ArrayList<PreparedStatement>> i = statements.values().iterator();
+		while(i.hasNext()) {
+			Iterator<PreparedStatement> j = i.next().iterator();
+			while(j.hasNext()) {
+				j.next().close();
+			}
+		}
+		Iterator<PreparedStatement> k = once.keySet().iterator();
+		while(k.hasNext()) {
+			k.next().close();
+		}
+		statements.clear();
+		results.clear();
+		once.clear();
+	}
+}
@@ -0,0 +1,115 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.regex.Pattern;
+
+/**
+ * StringDictionary gives every distinct string of a column a small int code, so the column
+ * itself can be stored as an int array and a test on the strings, such as a like, only has to
+ * be run once per distinct value instead of once per row. Null is code -1.
+ */
+class StringDictionary {
+
+	private ArrayList<String> values;
+	private HashMap<String, Integer> codes;
+	private int[] ranks;
+
+	StringDictionary() {
+		values = new ArrayList<String>();
+		codes = new HashMap<String, Integer>();
+	}
+
+	/**
+	 * A copy of the dictionary that can be added to without changing this one
+	 * @return StringDictionary
+	 */
+	StringDictionary copy() {
+		StringDictionary copy = new StringDictionary();
+		copy.values.addAll(values);
+		copy.codes.putAll(codes);
+		return copy;
+	}
+
+	/**
+	 * The code of the string, adding it if it is new
+	 * @param value - the string
+	 * @return the code, -1 for null
+	 */
+	int encode(String value) {
+		if(value == null) return -1;
+		Integer code = codes.get(value);
+		if(code == null) {
+			code = values.size();
+			values.add(value);
+			codes.put(value, code);
+		}
+		return code;
+	}
+
+	/**
+	 * The code of the string without adding it
+	 * @param value - the string
+	 * @return the code, -1 if the string is not in the dictionary
+	 */
+	int find(String value) {
+		Integer code = (value == null) ? null : codes.get(value);
+		return (code == null) ? -1 : code;
+	}
+
+	/**
+	 * The string of the code
+	 * @param code - the code
+	 * @return the string, null for -1
+	 */
+	String decode(int code) {
+		return (code < 0) ? null : values.get(code);
+	}
+
+	/**
+	 * Test every distinct string against the pattern
+	 * @param pattern - the pattern the whole string has to match
+	 * @return for every code whether its string matches
+	 */
+	boolean[] matching(Pattern pattern) {
+		boolean[] matches = new boolean[values.size()];
+		for(int i = 0; i < matches.length; i++) {
+			matches[i] = pattern.matcher(values.get(i)).matches();
+		}
+		return matches;
+	}
+
+	/**
+	 * The place of every string when they are sorted, so rows can be sorted by the codes
+	 * @return for every code the place of its string
+	 */
+	synchronized int[] ranks() {
+		if(ranks == null || ranks.length != values.size()) {
+			ArrayList<Integer> order = new ArrayList<Integer>();
+			for(int i = 0; i < values.size(); i++) {
+				order.add(i);
+			}
+			Collections.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return values.get(a).compareTo(values.get(b));
+				}
+			});
+			ranks = new int[values.size()];
+			for(int i = 0; i < ranks.length; i++) {
+				ranks[order.get(i)] = i;
+			}
+		}
+		return ranks;
+	}
+
+	/**
+	 * Number of distinct strings
+	 * @return int
+	 */
+	int size() {
+		return values.size();
+	}
+}
@@ -0,0 +1,230 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+
+/**
+ * TitleIndex keeps an FTS5 full-text index over the names of the dance, recording, album and
+ * publication tables so title searches look names up in the index instead of scanning the
+ * whole table with name like '%x%'.
+ *
+ *  -	With the trigram tokenizer the index finds every name containing the search text, the
+ * 		same rows the like does, as long as the text is at least 3 characters long.
+ *
+ * 	-	Without it the index is built with the default tokenizer and prefix indexes, and a
+ * 		search only finds names where each word of the text starts a word of the name.
+ *
+ * The like is always kept on the rows the index returns, so the index only narrows the search
+ * and never adds results. When the sqlite library has no FTS5 at all, or the search text
+ * cannot be used with the index, titles are searched with the like alone.
+ *
+ * FTS5 needs sqlite-jdbc 3.9 or newer and the trigram tokenizer 3.34 or newer; the project is
+ * set up with 3.36.0.3. On older drivers, such as the 3.8.11.2 it used before, there is no
+ * index and every title search is the like.
+ *
+ * The index tables live in the database file itself and are built the first time the file
+ * is opened without them, which includes right after every download.
+ */
+class TitleIndex {
+
+	public static final String[] TABLES = {"dance", "recording", "album", "publication"};
+
+	private static final String TRIGRAM = "tokenize='trigram'";
+	private static final String PREFIX = "prefix='2 3'";
+
+	private Connection writer;
+	private String options;
+
+	/**
+	 * Find out which kind of index the sqlite library can build
+	 * @param writer - the connection the index tables are built on
+	 * @throws SQLException
+	 */
+	TitleIndex(Connection writer) throws SQLException {
+		this.writer = writer;
+		if(supports(TRIGRAM)) options = TRIGRAM;
+		else if(supports(PREFIX)) options = PREFIX;
+		else options = null;
+	}
+
+	/**
+	 * Check if an FTS5 table with the given options can be created
+	 * @param option - the options of the FTS5 table
+	 * @return true if it can
+	 * @throws SQLException
+	 */
+	private boolean supports(String option) throws SQLException {
+		Statement s = writer.createStatement();
+		try {
+			s.execute("CREATE VIRTUAL TABLE temp.title_probe USING fts5(name, " + option + ")");
+			s.execute("DROP TABLE temp.title_probe");
+			return true;
+		} catch(SQLException e) {
+			return false;
+		} finally {
+			s.close();
+		}
+	}
+
+	/**
+	 * Build the index of every table that does not have an up to date one yet
+	 * @return the number of tables indexed
+	 * @throws SQLException
+	 */
+	int ensure() throws SQLException {
+		if(options == null) return 0;
+		int built = 0;
+		for(int i = 0; i < TABLES.length; i++) {
+			String existing = definitionOf(TABLES[i] + "_fts");
+			if(!definition(TABLES[i]).equals(existing)) {
+				build(TABLES[i], existing != null);
+				built++;
+			}
+		}
+		return built;
+	}
+
+	/**
+	 * Fill the index of the table again from the names after rows of the table changed
+	 * @param table - the table whose rows changed
+	 * @throws SQLException
+	 */
+	void refresh(String table) throws SQLException {
+		if(options == null || definitionOf(table + "_fts") == null) return;
+		Statement s = writer.createStatement();
+		try {
+			s.execute("INSERT INTO " + table + "_fts(" + table + "_fts) VALUES('rebuild')");
+		} finally {
+			s.close();
+		}
+	}
+
+	/**
+	 * Create the index table of the table and fill it from the names
+	 * @param table - the table to index
+	 * @param drop - if true an old index table is dropped first
+	 * @throws SQLException
+	 */
+	private void build(String table, boolean drop) throws SQLException {
+		Statement s = writer.createStatement();
+		try {
+			if(drop) s.execute("DROP TABLE " + table + "_fts");
+			s.execute(definition(table));
+			s.execute("INSERT INTO " + table + "_fts(" + table + "_fts) VALUES('rebuild')");
+		} finally {
+			s.close();
+		}
+	}
+
+	/**
+	 * The statement that creates the index table of the table
+	 * @param table - the table to index
+	 * @return String
+	 */
+	private String definition(String table) {
+		return "CREATE VIRTUAL TABLE " + table + "_fts USING fts5(name, content='" + table
+				+ "', content_rowid='id', " + options + ")";
+	}
+
+	/**
+	 * The statement a table was created with
+	 * @param name - the name of the table
+	 * @return the statement, or null if there is no such table
+	 * @throws SQLException
+	 */
+	private String definitionOf(String name) throws SQLException {
+		Statement s = writer.createStatement();
+		try {
+			ResultSet rs = s.executeQuery("SELECT sql FROM sqlite_master WHERE type='table' AND name='" + name + "'");
+			String sql = rs.next() ? rs.getString("sql") : null;
+			rs.close();
+			return sql;
+		} finally {
+			s.close();
+		}
+	}
+
+	/**
+	 * Build the where clause that matches names of the table containing the text,
+	 * through the index when it can be used
+	 * @param table - the table searched
+	 * @param alias - the alias of the table in the query
+	 * @param name - the text to search for
+	 * @param params - the parameter list the values are added to
+	 * @return the sql of the condition
+	 */
+	String filter(String table, String alias, String name, ArrayList<Object> params) {
+		String match = match(table, name);
+		if(match == null) return like(alias, name, params);
+		params.add(match);
+		return alias + ".id IN (SELECT rowid FROM " + table + "_fts WHERE " + table + "_fts MATCH ?) AND " + like(alias, name, params);
+	}
+
+	/**
+	 * Build the where clause that matches names containing the text without the index
+	 * @param alias - the alias of the table in the query
+	 * @param name - the text to search for
+	 * @param params - the parameter list the value is added to
+	 * @return the sql of the condition
+	 */
+	String like(String alias, String name, ArrayList<Object> params) {
+		params.add("%" + name + "%");
+		return alias + ".name like ?";
+	}
+
+	/**
+	 * Check if filter looks the text up through the index
+	 * @param table - the table searched
+	 * @param name - the text to search for
+	 * @return true if the index is used
+	 */
+	boolean indexes(String table, String name) {
+		return match(table, name) != null;
+	}
+
+	/**
+	 * Turn the search text into an FTS5 query
+	 * @param table - the table searched
+	 * @param name - the text to search for
+	 * @return the query, or null if the index cannot be used for the text
+	 */
+	private String match(String table, String name) {
+		if(options == null || !indexed(table)) return null;
+		//like wildcards typed by the user cannot be matched
+		if(name.indexOf('%') >= 0 || name.indexOf('_') >= 0) return null;
+		if(options.equals(TRIGRAM)) {
+			if(name.length() < 3) return null;
+			return phrase(name);
+		}
+		String query = "";
+		String[] words = name.split("[^\\p{L}\\p{N}]+");
+		for(int i = 0; i < words.length; i++) {
+			if(!words[i].isEmpty()) query += phrase(words[i]) + "* ";
+		}
+		return query.isEmpty() ? null : query.trim();
+	}
+
+	/**
+	 * Quote the text as an FTS5 phrase
+	 * @param text - the text
+	 * @return String
+	 */
+	private String phrase(String text) {
+		return "\"" + text.replace("\"", "\"\"") + "\"";
+	}
+
+	/**
+	 * Check if the table is one that has an index
+	 * @param table - the table
+	 * @return true if it is indexed
+	 */
+	private boolean indexed(String table) {
+		for(int i = 0; i < TABLES.length; i++) {
+			if(TABLES[i].equals(table)) return true;
+		}
+		return false;
+	}
+}
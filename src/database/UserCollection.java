@@ -0,0 +1,496 @@
+package database;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * UserCollection keeps what the user has and the tags they gave it in a sqlite file of its
+ * own, attached to every connection as the collection schema, so the downloaded catalogue
+ * is never changed by the user and an update can swap it for a new file as it is.
+ *
+ *  -	The collection is one table, collection.item, with a row for every dance, album,
+ * 		publication or recording that is marked or tagged. Queries add join() to a table
+ * 		and select COLUMNS for ihave and tag, which used to be columns of the tables.
+ *
+ * 	-	Every change is also appended to a CollectionJournal. If the file has to be made
+ * 		again, the collection is restored from the journal in one transaction.
+ *
+ * 	-	The changes are made on the writer of the pool while synchronized on the UserCollection,
+ * 		which anything else that runs a transaction on the writer, eg. a delta update, has to be
+ * 		too, or committing one would commit the other half done.
+ *
+ * 	-	The first time the file is made without a journal, the collection is copied from the
+ * 		ihave and tag columns older versions added to the catalogue, or else from the ihave.txt
+ * 		they saved it to before an update. The old columns are then taken out of the catalogue.
+ */
+class UserCollection {
+
+	public static final String SCHEMA = "collection";
+	public static final String[] TABLES = {"dance", "album", "publication", "recording"};
+	public static final String COLUMNS = "COALESCE(ci.ihave, 0) as ihave, ci.tag as tag";
+
+	private ConnectionPool pool;
+	private CollectionJournal journal;
+	private Executor executor;
+
+	/**
+	 * Constructor for a UserCollection
+	 * @param pool - the connections the collection file is attached to
+	 * @param journal - the journal every change is appended to
+	 * @param executor - runs the compaction of the journal in the background
+	 */
+	UserCollection(ConnectionPool pool, CollectionJournal journal, Executor executor) {
+		this.pool = pool;
+		this.journal = journal;
+		this.executor = executor;
+	}
+
+	/**
+	 * The join of the collection onto a table, for the ihave and tag of COLUMNS
+	 * @param table - the table, dance, album, publication or recording
+	 * @param alias - the alias of the table in the query
+	 * @return the sql to add after the from clause
+	 */
+	static String join(String table, String alias) {
+		return "LEFT OUTER JOIN " + SCHEMA + ".item ci ON ci.type='" + table + "' AND ci.id=" + alias + ".id ";
+	}
+
+	/**
+	 * Every row of a table with its ihave and tag
+	 * @param table - the table, dance, album, publication or recording
+	 * @return the query, with x as the alias of the table
+	 */
+	static String select(String table) {
+		return "SELECT x.*, " + COLUMNS + " FROM " + table + " x " + join(table, "x");
+	}
+
+	/**
+	 * Check if the table's rows can be in the collection
+	 * @param table - the table
+	 * @return true for dance, album, publication and recording
+	 */
+	static boolean contains(String table) {
+		for(int i = 0; i < TABLES.length; i++) {
+			if(TABLES[i].equals(table)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Create the collection table if the file does not have it yet, filling it from the
+	 * journal or from the collection of an older version
+	 * @param legacy - the file older versions saved the collection to before an update
+	 * @throws SQLException
+	 */
+	void ensure(File legacy) throws SQLException {
+		Connection writer = pool.getWriter();
+		Statement s = writer.createStatement();
+		try {
+			ResultSet rs = s.executeQuery("SELECT count(*) FROM " + SCHEMA + ".sqlite_master WHERE name='item'");
+			boolean exists = rs.next() && rs.getInt(1) > 0;
+			rs.close();
+			if(!exists) {
+				s.execute("CREATE TABLE " + SCHEMA + ".item(type TEXT NOT NULL, id INTEGER NOT NULL, "
+						+ "ihave TINYINT(1) NOT NULL DEFAULT 0, tag VARCHAR(256) DEFAULT NULL, PRIMARY KEY(type, id))");
+				if(journal.exists()) restore();
+				else if(hasLegacyColumns()) copyLegacyColumns();
+				else if(legacy.exists()) {
+					try {
+						load(legacy);
+					} catch(IOException e) {
+						System.out.println("Could not read the saved collection: " + e.getMessage());
+					}
+				}
+			}
+		} finally {
+			s.close();
+		}
+		if(hasLegacyColumns()) dropLegacyColumns();
+		if(!journal.hasSnapshot()) compact();
+	}
+
+	/**
+	 * Fill the collection from the snapshot and changes of the journal, in one transaction
+	 * @throws SQLException
+	 */
+	private void restore() throws SQLException {
+		ArrayList<CollectionJournal.Item> items = new ArrayList<CollectionJournal.Item>();
+		ArrayList<CollectionJournal.Change> changes;
+		try {
+			changes = journal.readChanges(journal.readSnapshot(items));
+		} catch(IOException e) {
+			System.out.println("Could not read the collection journal: " + e.getMessage());
+			return;
+		}
+		Connection writer = pool.getWriter();
+		boolean autoCommit = writer.getAutoCommit();
+		writer.setAutoCommit(false);
+		try {
+			PreparedStatement ps = writer.prepareStatement("INSERT OR REPLACE INTO " + SCHEMA
+					+ ".item(type, id, ihave, tag) VALUES(?, ?, ?, ?)");
+			try {
+				for(int i = 0; i < items.size(); i++) {
+					CollectionJournal.Item item = items.get(i);
+					ps.setString(1, item.type);
+					ps.setInt(2, item.id);
+					ps.setInt(3, item.ihave);
+					ps.setString(4, item.tag);
+					ps.addBatch();
+				}
+				ps.executeBatch();
+			} finally {
+				ps.close();
+			}
+			for(int i = 0; i < changes.size(); i++) {
+				CollectionJournal.Change c = changes.get(i);
+				Object value = (c.value != null && c.column.equals("ihave")) ? (Object) Integer.valueOf(c.value) : c.value;
+				apply(c.table, Collections.singleton(c.id), c.column, value);
+			}
+			pool.writer().executeUpdate("DELETE FROM " + SCHEMA + ".item WHERE ihave=0 AND tag IS NULL");
+			writer.commit();
+		} catch(SQLException e) {
+			writer.rollback();
+			throw e;
+		} finally {
+			writer.setAutoCommit(autoCommit);
+		}
+		System.out.println("Restored " + items.size() + " entries and " + changes.size() + " changes of the collection");
+	}
+
+	/**
+	 * Check if the catalogue still has the ihave and tag columns of an older version
+	 * @return true if any of the tables has them
+	 * @throws SQLException
+	 */
+	private boolean hasLegacyColumns() throws SQLException {
+		for(int i = 0; i < TABLES.length; i++) {
+			if(columns(TABLES[i]).contains("ihave")) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Copy the collection from the ihave and tag columns of the catalogue
+	 * @throws SQLException
+	 */
+	private void copyLegacyColumns() throws SQLException {
+		for(int i = 0; i < TABLES.length; i++) {
+			ArrayList<String> cols = columns(TABLES[i]);
+			if(!cols.contains("ihave")) continue;
+			String tag = cols.contains("tag") ? "tag" : "NULL";
+			pool.writer().executeUpdate("INSERT OR REPLACE INTO " + SCHEMA + ".item(type, id, ihave, tag) "
+					+ "SELECT ?, id, COALESCE(ihave, 0), " + tag + " FROM main." + TABLES[i]
+					+ " WHERE ihave=1 OR " + tag + " IS NOT NULL", TABLES[i]);
+		}
+	}
+
+	/**
+	 * Load the collection from the lines of type, id and tag older versions saved it as,
+	 * in one transaction
+	 * @param file - the saved collection
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	private void load(File file) throws SQLException, IOException {
+		Iterator<String> lines = FileUtils.readLines(file).iterator();
+		Connection writer = pool.getWriter();
+		boolean autoCommit = writer.getAutoCommit();
+		writer.setAutoCommit(false);
+		try {
+			PreparedStatement ps = writer.prepareStatement("INSERT OR REPLACE INTO " + SCHEMA
+					+ ".item(type, id, ihave, tag) VALUES(?, ?, 1, ?)");
+			try {
+				while(lines.hasNext()) {
+					String[] info = lines.next().split(" ", 3);
+					if(info.length < 2 || !contains(info[0])) continue;
+					String tag = (info.length == 2 || info[2].equals("null")) ? null : info[2];
+					ps.setString(1, info[0]);
+					ps.setInt(2, Integer.parseInt(info[1]));
+					ps.setString(3, tag);
+					ps.addBatch();
+				}
+				ps.executeBatch();
+			} finally {
+				ps.close();
+			}
+			writer.commit();
+		} catch(SQLException | RuntimeException e) {
+			writer.rollback();
+			throw e;
+		} finally {
+			writer.setAutoCommit(autoCommit);
+		}
+	}
+
+	/**
+	 * Make the tables older versions added ihave and tag columns to again without them, so
+	 * the columns of COLUMNS are the only ones by those names. sqlite cannot drop a column,
+	 * so in the order its documentation gives, each table is copied to new_table made from its
+	 * definition with the columns taken out, the old one is dropped, the new one renamed to its
+	 * name and its indexes and triggers are made again.
+	 * @throws SQLException
+	 */
+	private void dropLegacyColumns() throws SQLException {
+		Connection writer = pool.getWriter();
+		boolean autoCommit = writer.getAutoCommit();
+		writer.setAutoCommit(false);
+		Statement s = writer.createStatement();
+		try {
+			for(int i = 0; i < TABLES.length; i++) {
+				String table = TABLES[i];
+				ArrayList<String> cols = columns(table);
+				if(!cols.contains("ihave")) continue;
+				String definition = null;
+				ArrayList<String> dependents = new ArrayList<String>();
+				PreparedStatement ps = writer.prepareStatement("SELECT type, sql FROM main.sqlite_master "
+						+ "WHERE tbl_name=? AND sql IS NOT NULL");
+				ps.setString(1, table);
+				ResultSet rs = ps.executeQuery();
+				while(rs.next()) {
+					String sql = rs.getString(2);
+					if(rs.getString(1).equals("table")) definition = sql;
+					else if(!sql.toLowerCase().matches("(?s).*\\b(ihave|tag)\\b.*")) dependents.add(sql);
+				}
+				rs.close();
+				ps.close();
+				//the columns as ALTER TABLE added them to the end of the definition
+				String stripped = definition.replaceAll("(?i),\\s*\"?(ihave|tag)\"?\\s+\\w+(\\s*\\(\\d+\\))?(\\s+DEFAULT\\s+\\w+)?", "");
+				//a definition that was changed some other way is left as it is
+				if(stripped.toLowerCase().matches("(?s).*\\b(ihave|tag)\\b.*")) continue;
+				cols.remove("ihave");
+				cols.remove("tag");
+				StringBuilder list = new StringBuilder();
+				for(int c = 0; c < cols.size(); c++) {
+					if(c > 0) list.append(", ");
+					list.append('"').append(cols.get(c)).append('"');
+				}
+				s.execute(stripped.replaceFirst("(?is)^\\s*CREATE\\s+TABLE\\s+(\\w+\\.)?(\"[^\"]+\"|'[^']+'|\\[[^\\]]+\\]|`[^`]+`|\\w+)",
+						"CREATE TABLE main.new_" + table));
+				s.execute("INSERT INTO main.new_" + table + "(" + list + ") SELECT " + list + " FROM main." + table);
+				s.execute("DROP TABLE main." + table);
+				s.execute("ALTER TABLE main.new_" + table + " RENAME TO " + table);
+				for(int k = 0; k < dependents.size(); k++) {
+					s.execute(dependents.get(k));
+				}
+			}
+			writer.commit();
+		} catch(SQLException e) {
+			writer.rollback();
+			throw e;
+		} finally {
+			s.close();
+			writer.setAutoCommit(autoCommit);
+		}
+	}
+
+	/**
+	 * Set ihave or tag of entries, in one transaction. Setting it on a publication also sets it
+	 * on its dances, and on an album on its recordings. Entries left neither marked nor tagged
+	 * are removed.
+	 * @param table - the type (album, recording, publication, or dance)
+	 * @param ids - the ids
+	 * @param column - ihave or tag
+	 * @param value - the value to set
+	 * @return the ids that were set for each type, the dances or recordings of a publication or album included
+	 * @throws SQLException
+	 */
+	synchronized Map<String, Set<Integer>> set(String table, Collection<Integer> ids, String column, Object value) throws SQLException {
+		return set(table, ids, new String[] {column}, new Object[] {value});
+	}
+
+	/**
+	 * Set several columns of entries in one transaction, eg. to unmark and untag them at once
+	 * @param table - the type (album, recording, publication, or dance)
+	 * @param ids - the ids
+	 * @param columns - ihave or tag, for each value
+	 * @param values - the values to set
+	 * @return the ids that were set for each type, the dances or recordings of a publication or album included
+	 * @throws SQLException
+	 */
+	synchronized Map<String, Set<Integer>> set(String table, Collection<Integer> ids, String[] columns, Object[] values) throws SQLException {
+		Map<String, Set<Integer>> affected = null;
+		Connection writer = pool.getWriter();
+		boolean autoCommit = writer.getAutoCommit();
+		writer.setAutoCommit(false);
+		try {
+			for(int i = 0; i < columns.length; i++) {
+				affected = apply(table, ids, columns[i], values[i]);
+			}
+			pool.writer().executeUpdate("DELETE FROM " + SCHEMA + ".item WHERE ihave=0 AND tag IS NULL");
+			writer.commit();
+		} catch(SQLException e) {
+			writer.rollback();
+			throw e;
+		} finally {
+			writer.setAutoCommit(autoCommit);
+		}
+		try {
+			for(int i = 0; i < columns.length; i++) {
+				journal.append(table, ids, columns[i], values[i]);
+			}
+		} catch(IOException e) {
+			System.out.println("Could not write the collection journal: " + e.getMessage());
+		}
+		if(journal.isFull()) compactLater();
+		return affected;
+	}
+
+	/**
+	 * Make a change of set within the caller's transaction
+	 * @param table - the type (album, recording, publication, or dance)
+	 * @param ids - the ids
+	 * @param column - ihave or tag
+	 * @param value - the value to set
+	 * @return the ids that were set for each type
+	 * @throws SQLException
+	 */
+	private Map<String, Set<Integer>> apply(String table, Collection<Integer> ids, String column, Object value) throws SQLException {
+		Map<String, Set<Integer>> affected = new LinkedHashMap<String, Set<Integer>>();
+		affected.put(table, new TreeSet<Integer>(ids));
+		String part = null, contents = null;
+		if(table.equals("publication")) {
+			part = "dance";
+			contents = "SELECT dance_id FROM main.dancespublicationsmap WHERE publication_id=?";
+		} else if(table.equals("album")) {
+			part = "recording";
+			contents = "SELECT recording_id FROM main.albumsrecordingsmap WHERE album_id=?";
+		}
+		if(part != null) {
+			Set<Integer> parts = new TreeSet<Integer>();
+			PreparedStatement ps = pool.getWriter().prepareStatement(contents);
+			try {
+				for(Integer id : ids) {
+					ps.setInt(1, id);
+					ResultSet rs = ps.executeQuery();
+					while(rs.next()) {
+						parts.add(rs.getInt(1));
+					}
+					rs.close();
+				}
+			} finally {
+				ps.close();
+			}
+			affected.put(part, parts);
+		}
+		for(Map.Entry<String, Set<Integer>> e : affected.entrySet()) {
+			mark(e.getKey(), e.getValue(), column, value);
+		}
+		return affected;
+	}
+
+	/**
+	 * Set ihave or tag of entries of one type, with one batch to add the missing entries
+	 * and one to set the value
+	 * @param type - the type (album, recording, publication, or dance)
+	 * @param ids - the ids
+	 * @param column - ihave or tag
+	 * @param value - the value to set
+	 * @throws SQLException
+	 */
+	private void mark(String type, Set<Integer> ids, String column, Object value) throws SQLException {
+		if(ids.isEmpty()) return;
+		Connection writer = pool.getWriter();
+		PreparedStatement insert = writer.prepareStatement("INSERT OR IGNORE INTO " + SCHEMA + ".item(type, id) VALUES(?, ?)");
+		PreparedStatement update = writer.prepareStatement("UPDATE " + SCHEMA + ".item SET " + column + "=? WHERE type=? AND id=?");
+		try {
+			for(Integer id : ids) {
+				insert.setString(1, type);
+				insert.setInt(2, id);
+				insert.addBatch();
+				update.setObject(1, value);
+				update.setString(2, type);
+				update.setInt(3, id);
+				update.addBatch();
+			}
+			insert.executeBatch();
+			update.executeBatch();
+		} finally {
+			insert.close();
+			update.close();
+		}
+	}
+
+	/**
+	 * Compact the journal on the executor, unless a compaction is already running
+	 */
+	private void compactLater() {
+		if(!journal.beginCompaction()) return;
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					compact();
+				} catch(Exception e) {
+					System.out.println("Could not compact the collection journal: " + e.getMessage());
+				} finally {
+					journal.endCompaction();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Write the whole collection to the journal's snapshot
+	 * @throws SQLException
+	 */
+	private void compact() throws SQLException {
+		ArrayList<CollectionJournal.Item> items = new ArrayList<CollectionJournal.Item>();
+		try {
+			long upTo;
+			//no change can be made between reading the rows and the last change they include
+			synchronized(this) {
+				Statement s = pool.getWriter().createStatement();
+				try {
+					ResultSet rs = s.executeQuery("SELECT type, id, ihave, tag FROM " + SCHEMA + ".item");
+					while(rs.next()) {
+						items.add(new CollectionJournal.Item(rs.getString(1), rs.getInt(2), rs.getInt(3), rs.getString(4)));
+					}
+					rs.close();
+				} finally {
+					s.close();
+				}
+				upTo = journal.getLast();
+			}
+			journal.compact(items, upTo);
+		} catch(IOException e) {
+			System.out.println("Could not write the collection snapshot: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * The columns of a catalogue table
+	 * @param table - the table
+	 * @return the names of the columns, empty if there is no such table
+	 * @throws SQLException
+	 */
+	private ArrayList<String> columns(String table) throws SQLException {
+		ArrayList<String> cols = new ArrayList<String>();
+		Statement s = pool.getWriter().createStatement();
+		try {
+			ResultSet rs = s.executeQuery("PRAGMA main.table_info(" + table + ")");
+			while(rs.next()) {
+				cols.add(rs.getString("name"));
+			}
+			rs.close();
+		} finally {
+			s.close();
+		}
+		return cols;
+	}
+}
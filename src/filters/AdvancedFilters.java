@@ -6,11 +6,16 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 
 import database.Database;
+import database.Lookups;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
+import javafx.event.Event;
 import javafx.event.EventHandler;
 import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 import javafx.scene.input.KeyCode;
@@ -213,6 +218,31 @@ public abstract class AdvancedFilters {
 		titleField.setText(text);
 	}
 	
+	/**
+	 * Create a ComboBox of the names in a lookup table with a blank option first. The names
+	 * come from the database's Lookups and are read again when the list is opened after an update.
+	 * @param lookup - the lookup table, eg. "dancetype"
+	 * @return the ComboBox
+	 */
+	public ComboBox<String> lookupOptions(final String lookup){
+		final ObservableList<String> items = FXCollections.observableArrayList("");
+		items.addAll(db.getLookups().names(lookup));
+		final ComboBox<String> options = new ComboBox<String>(items);
+		options.setOnShowing(new EventHandler<Event>() {
+			private Lookups shown = db.getLookups();
+			@Override
+			public void handle(Event arg0) {
+				if(db.getLookups() == shown) return;
+				shown = db.getLookups();
+				String value = options.getValue();
+				items.setAll("");
+				items.addAll(shown.names(lookup));
+				if(value != null && !value.equals(options.getValue())) options.setValue(value);
+			}
+		});
+		return options;
+	}
+	
 	/**
 	 * Checks if a given string is numeric
 	 * @param str
@@ -1,7 +1,6 @@
 package filters;
 
 import java.net.MalformedURLException;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Iterator;
 
@@ -109,16 +108,11 @@ public class AlbumFilters extends AdvancedFilters {
 	 * Album table is showing and everything else is hidden
 	 */
 	public void callQuery(){
-		try {
-			ResultSet data = db.advancedTableSearch("album", titleField.getText(), map, SearchCollection.isCollection());
-			RecordTable albumTable = SearchCollection.getAlbumTable();
-			albumTable.setTableData(albumTable.populate(data));
-			albumTable.getCellInfo().setVisible(false);
-			albumTable.getCellInfo().setVis(false);
-			albumTable.getTable().setVisible(true);
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+		RecordTable albumTable = SearchCollection.getAlbumTable();
+		albumTable.advancedSearch(titleField.getText(), map, SearchCollection.isCollection());
+		albumTable.getCellInfo().setVisible(false);
+		albumTable.getCellInfo().setVis(false);
+		albumTable.getTable().setVisible(true);
 	}
 
 	@Override
@@ -143,13 +137,6 @@ public class AlbumFilters extends AdvancedFilters {
 		}
 
 		//reset table
-		ResultSet data;
-		try {
-			data = db.searchTableByName("album", "", SearchCollection.isCollection());
-			RecordTable albumTable = SearchCollection.getAlbumTable();
-			albumTable.setTableData(albumTable.populate(data));
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+		SearchCollection.getAlbumTable().searchByName("", SearchCollection.isCollection());
 	}
 }
\ No newline at end of file
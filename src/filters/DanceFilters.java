@@ -1,16 +1,12 @@
 package filters;
 
 import java.net.MalformedURLException;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Collections;
 import java.util.Iterator;
 
 import database.Database;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.scene.control.CheckBox;
@@ -32,14 +28,10 @@ public class DanceFilters extends AdvancedFilters {
 
 
 	private ComboBox<String> typeOptions, couplesOptions, setShapeOptions;
-	private ComboBox<String> formationOptions1, formationOptions2, formationOptions3, formationBool1, formationBool2;
-	private ComboBox<String> stepOptions1, stepOptions2, stepOptions3, stepBool1, stepBool2;
+	private MembershipOptions formationOptions, stepOptions;
 	private TextField barsField, authorField;
 	private CheckBox RSCDSCB;
 
-	private String[] formationStringArray = {"", "", "", "", ""};
-	private String[] stepsStringArray = {"", "", "", "", ""};
-
 	/**
 	 * Create the VBox which will contain the filters for a dance search
 	 * @throws SQLException
@@ -68,18 +60,11 @@ public class DanceFilters extends AdvancedFilters {
 
 	/**
 	 * Sets up the Type options for Dance
-	 * @throws SQLException
 	 */
-	public void type() throws SQLException{
+	public void type(){
 		map.put("type", "");
-		ResultSet typesSet = db.doQuery("SELECT name FROM dancetype");
-		ObservableList<String> typesList = FXCollections.observableArrayList("");
-		while(typesSet.next()) {
-			typesList.add(typesSet.getString(1));
-		}
-		Collections.sort(typesList);
 		Label type = new Label("Type");
-		typeOptions = new ComboBox<String>(typesList);
+		typeOptions = lookupOptions("dancetype");
 		typeOptions.setOnAction(new EventHandler<ActionEvent>() {
 			@Override
 			public void handle(ActionEvent arg0) {
@@ -143,20 +128,12 @@ public class DanceFilters extends AdvancedFilters {
 
 	/**
 	 * Sets up the Couples options for Dance
-	 * @throws SQLException
 	 */
-	public void couples() throws SQLException{
+	public void couples(){
 		map.put("couples", "");
 		// Couples
-		ResultSet couplesSet;
-		couplesSet = db.doQuery("SELECT name FROM couples");
-		ObservableList<String> couplesList = FXCollections.observableArrayList("");
-		while(couplesSet.next()) {
-			couplesList.add(couplesSet.getString(1));
-		}
-		Collections.sort(couplesList);
 		Label couples = new Label("Couples");
-		couplesOptions = new ComboBox<String>(couplesList);
+		couplesOptions = lookupOptions("couples");
 		couplesOptions.setOnAction(new EventHandler<ActionEvent>() {
 			@Override
 			public void handle(ActionEvent arg0) {
@@ -170,20 +147,12 @@ public class DanceFilters extends AdvancedFilters {
 
 	/**
 	 * Sets up the Set Shape options for Dance
-	 * @throws SQLException
 	 */
-	public void setShape() throws SQLException{
+	public void setShape(){
 		map.put("shape", "");
 		// Set Shape
-		ResultSet setShapeSet;
-		setShapeSet = db.doQuery("SELECT name FROM shape");
-		ObservableList<String> setShapeList = FXCollections.observableArrayList("");
-		while(setShapeSet.next()) {
-			setShapeList.add(setShapeSet.getString(1));
-		}
-		Collections.sort(setShapeList);
 		Label setShape = new Label("Set Shape");
-		setShapeOptions = new ComboBox<String>(setShapeList);
+		setShapeOptions = lookupOptions("shape");
 		setShapeOptions.setOnAction(new EventHandler<ActionEvent>() {
 			@Override
 			public void handle(ActionEvent arg0) {
@@ -223,187 +192,38 @@ public class DanceFilters extends AdvancedFilters {
 
 	/**
 	 * Sets up the Formations options for Dance
-	 * @throws SQLException
 	 */
-	public void formations() throws SQLException{
-		map.put("formation", "");
+	public void formations(){
 		// Formations
-		ResultSet formationSet;
-		formationSet = db.doQuery("SELECT name FROM formation");
-		ObservableList<String> formationList = FXCollections.observableArrayList("");
-		while(formationSet.next()) {
-			formationList.add(formationSet.getString(1));
-		}
-		Collections.sort(formationList);
 		Label formations = new Label("Formations");
-
-		formationOptions1 = new ComboBox<String>(formationList);
-		formationOptions1.setTooltip(new Tooltip("Fill out formations in order. \n"
+		formationOptions = new MembershipOptions(this, "formation", "formation", "Fill out formations in order. \n"
 				+ "If you need to indicate more than one formation, \n"
 				+ "indicate whether you want both formations (and), \n"
 				+ "one or the other or both (or), \n"
-				+ "or whether you do not want the second formation (not). \n"
-				+ "Choose the blank line to clear the formation or combination"));
-		Tooltip.install(formationOptions1, formationOptions1.getTooltip());
-		formationOptions1.setOnAction(new EventHandler<ActionEvent>() {
-			@Override
-			public void handle(ActionEvent arg0) {
-				updateString(formationStringArray, formationOptions1.getValue(), 0);
-				map.put("formation", arrayToString(formationStringArray));
-			}
-		});
-
-		formationBool1 = new ComboBox<String>();
-		formationBool1.getItems().addAll("", "and", "or", "not");
-		formationBool1.setOnAction(new EventHandler<ActionEvent>() {
-			@Override
-			public void handle(ActionEvent arg0) {
-				updateString(formationStringArray, formationBool1.getValue(), 1);
-				map.put("formation", arrayToString(formationStringArray));
-			}
-		});
-
-		formationOptions2 = new ComboBox<String>(formationList);
-		formationOptions2.setOnAction(new EventHandler<ActionEvent>() {
-			@Override
-			public void handle(ActionEvent arg0) {
-				updateString(formationStringArray, formationOptions2.getValue(), 2);
-				map.put("formation", arrayToString(formationStringArray));
-			}
-		});
-
-		formationBool2 = new ComboBox<String>();
-		formationBool2.getItems().addAll("", "and", "or", "not");
-		formationBool2.setOnAction(new EventHandler<ActionEvent>() {
-			@Override
-			public void handle(ActionEvent arg0) {
-				updateString(formationStringArray, formationBool2.getValue(), 3);
-				map.put("formation", arrayToString(formationStringArray));
-			}
-		});
-
-		formationOptions3 = new ComboBox<String>(formationList);
-		formationOptions3.setOnAction(new EventHandler<ActionEvent>() {
-			@Override
-			public void handle(ActionEvent arg0) {
-				updateString(formationStringArray, formationOptions3.getValue(), 4);
-				map.put("formation", arrayToString(formationStringArray));
-			}
-		});
+				+ "or whether you do not want the next formation (not). \n"
+				+ "Choosing one on the last line adds another formation. \n"
+				+ "Choose the blank line to clear the formation or combination");
 		gridY++;
 		grid.add(formations, 0, gridY);
-		grid.add(formationOptions1, 1, gridY);
-		grid.add(formationBool1, 2, gridY);
-		gridY++;
-		grid.add(formationOptions2, 1, gridY);
-		grid.add(formationBool2, 2, gridY);
-		gridY++;
-		grid.add(formationOptions3, 1, gridY);
+		grid.add(formationOptions.getRows(), 1, gridY, 2, 1);
 	}
 
 	/**
 	 * Sets up the Steps options for Dance
-	 * @throws SQLException
 	 */
-	public void steps() throws SQLException{
-		map.put("steps", "");
+	public void steps(){
 		// Steps
-		ResultSet stepSet;
-		stepSet = db.doQuery("SELECT name FROM step");
-		ObservableList<String> stepList = FXCollections.observableArrayList("");
-		while(stepSet.next()) {
-			stepList.add(stepSet.getString(1));
-		}
-		Collections.sort(stepList);
 		Label steps = new Label("Steps");
-		stepOptions1 = new ComboBox<String>(stepList);
-		stepOptions1.setTooltip(new Tooltip("Fill out steps in order. \n"
+		stepOptions = new MembershipOptions(this, "step", "steps", "Fill out steps in order. \n"
 				+ "If you need to indicate more than one step, \n"
 				+ "indicate whether you want both steps (and), \n"
 				+ "one or the other or both (or), \n"
-				+ "or whether you do not want the second step (not). \n"
-				+ "Choose the blank line to clear the step or combination"));
-		Tooltip.install(stepOptions1, stepOptions1.getTooltip());
-		stepOptions1.setOnAction(new EventHandler<ActionEvent>() {
-			@Override
-			public void handle(ActionEvent arg0) {
-				updateString(stepsStringArray, stepOptions1.getValue(), 0);
-				map.put("steps", arrayToString(stepsStringArray));
-			}
-		});
-
-		stepBool1 = new ComboBox<String>();
-		stepBool1.getItems().addAll("", "and", "or", "not");
-		stepBool1.setOnAction(new EventHandler<ActionEvent>() {
-			@Override
-			public void handle(ActionEvent arg0) {
-				updateString(stepsStringArray, stepBool1.getValue(), 1);
-				map.put("steps", arrayToString(stepsStringArray));
-			}
-		});
-
-		stepOptions2 = new ComboBox<String>(stepList);
-		stepOptions2.setOnAction(new EventHandler<ActionEvent>() {
-			@Override
-			public void handle(ActionEvent arg0) {
-				updateString(stepsStringArray, stepOptions2.getValue(), 2);
-				map.put("steps", arrayToString(stepsStringArray));
-			}
-		});
-
-		stepBool2 = new ComboBox<String>();
-		stepBool2.getItems().addAll("", "and", "or", "not");
-		stepBool2.setOnAction(new EventHandler<ActionEvent>() {
-			@Override
-			public void handle(ActionEvent arg0) {
-				updateString(stepsStringArray, stepBool2.getValue(), 3);
-				map.put("steps", arrayToString(stepsStringArray));
-			}
-		});
-
-		stepOptions3 = new ComboBox<String>(stepList);
-		stepOptions3.setOnAction(new EventHandler<ActionEvent>() {
-			@Override
-			public void handle(ActionEvent arg0) {
-				updateString(stepsStringArray, stepOptions3.getValue(), 4);
-				map.put("steps", arrayToString(stepsStringArray));
-			}
-		});
+				+ "or whether you do not want the next step (not). \n"
+				+ "Choosing one on the last line adds another step. \n"
+				+ "Choose the blank line to clear the step or combination");
 		gridY++;
 		grid.add(steps, 0, gridY);
-		grid.add(stepOptions1, 1, gridY);
-		grid.add(stepBool1, 2, gridY);
-		gridY++;
-		grid.add(stepOptions2, 1, gridY);
-		grid.add(stepBool2, 2, gridY);
-		gridY++;
-		grid.add(stepOptions3, 1, gridY);
-	}
-
-	/**
-	 * Place the value in the array at the index
-	 * @param array - array to update
-	 * @param value - value to put in array
-	 * @param i - index or array to put value
-	 */
-	public void updateString(String[] array, String value, int i){
-		array[i] = value;
-	}
-
-	/**
-	 * Convert the array to a string with symbols to help database parse formations
-	 * @param array - array to turn into a string
-	 * @return
-	 */
-	public String arrayToString(String[] array){
-		String sb = "";
-		for(int i=0; i < array.length; i++){
-			if (array[i].length() !=0)
-				sb+=array[i]+"~";
-			else
-				sb+=" * ";
-		}
-		return sb;
+		grid.add(stepOptions.getRows(), 1, gridY, 2, 1);
 	}
 
 	/**
@@ -431,16 +251,11 @@ public class DanceFilters extends AdvancedFilters {
 	 * Dance table is showing and everything else is hidden
 	 */
 	public void callQuery(){
-		try {
-			ResultSet data = db.advancedTableSearch("dance", titleField.getText(), map, SearchCollection.isCollection());
-			RecordTable danceTable = SearchCollection.getDanceTable();
-			danceTable.setTableData(danceTable.populate(data));
-			danceTable.getCellInfo().setVisible(false);
-			danceTable.getCellInfo().setVis(false);
-			danceTable.getTable().setVisible(true);
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+		RecordTable danceTable = SearchCollection.getDanceTable();
+		danceTable.advancedSearch(titleField.getText(), map, SearchCollection.isCollection());
+		danceTable.getCellInfo().setVisible(false);
+		danceTable.getCellInfo().setVis(false);
+		danceTable.getTable().setVisible(true);
 	}
 
 	@Override
@@ -455,16 +270,8 @@ public class DanceFilters extends AdvancedFilters {
 		couplesOptions.setValue("");
 		setShapeOptions.setValue("");
 		authorField.clear();
-		formationOptions1.setValue("");
-		formationOptions2.setValue("");
-		formationOptions3.setValue("");
-		formationBool1.setValue("");
-		formationBool2.setValue("");
-		stepOptions1.setValue("");
-		stepOptions2.setValue("");
-		stepOptions3.setValue("");
-		stepBool1.setValue("");
-		stepBool2.setValue("");
+		formationOptions.clear();
+		stepOptions.clear();
 		RSCDSCB.setSelected(false);
 
 		SearchCollection.setDanceTitle("");
@@ -479,13 +286,6 @@ public class DanceFilters extends AdvancedFilters {
 		}
 
 		//reset table
-		ResultSet data;
-		try {
-			data = db.searchTableByName("dance", "", SearchCollection.isCollection());
-			RecordTable danceTable = SearchCollection.getDanceTable();
-			danceTable.setTableData(danceTable.populate(data));
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+		SearchCollection.getDanceTable().searchByName("", SearchCollection.isCollection());
 	}
 }
\ No newline at end of file
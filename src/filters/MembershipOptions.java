@@ -0,0 +1,118 @@
+package filters;
+
+import java.util.ArrayList;
+
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.GridPane;
+
+/**
+ * MembershipOptions is the set of ComboBoxes the dance filters use to combine formations or
+ * steps with and, or and not. Each row holds a name and the operator to the next row; choosing
+ * an operator on the last row adds another row, so a combination can have as many terms as
+ * needed. The choices are kept in the filters' map as a ~ delimited string.
+ */
+public class MembershipOptions {
+
+	public static final int ROWS = 3;
+
+	private AdvancedFilters filters;
+	private String lookup, key;
+	private GridPane rows;
+	private ArrayList<ComboBox<String>> options, bools;
+
+	/**
+	 * Create the rows of ComboBoxes for a formation or step combination
+	 * @param filters - the filters the combination belongs to
+	 * @param lookup - the lookup table the names come from, formation or step
+	 * @param key - the key of the combination in the filters' map
+	 * @param tooltip - the tooltip of the first ComboBox
+	 */
+	public MembershipOptions(AdvancedFilters filters, String lookup, String key, String tooltip){
+		this.filters = filters;
+		this.lookup = lookup;
+		this.key = key;
+		rows = new GridPane();
+		rows.setHgap(10);
+		rows.setVgap(10);
+		options = new ArrayList<ComboBox<String>>();
+		bools = new ArrayList<ComboBox<String>>();
+		filters.map.put(key, "");
+		for(int i = 0; i < ROWS; i++) addRow();
+		options.get(0).setTooltip(new Tooltip(tooltip));
+		Tooltip.install(options.get(0), options.get(0).getTooltip());
+	}
+
+	/**
+	 * Add a row with a name and an operator ComboBox
+	 */
+	private void addRow(){
+		ComboBox<String> option = filters.lookupOptions(lookup);
+		final ComboBox<String> bool = new ComboBox<String>();
+		bool.getItems().addAll("", "and", "or", "not");
+		option.setOnAction(new EventHandler<ActionEvent>() {
+			@Override
+			public void handle(ActionEvent arg0) {
+				filters.map.put(key, toFilterString());
+			}
+		});
+		bool.setOnAction(new EventHandler<ActionEvent>() {
+			@Override
+			public void handle(ActionEvent arg0) {
+				//an operator on the last row needs another row to go with it
+				if(bool == bools.get(bools.size() - 1) && bool.getValue() != null && !bool.getValue().isEmpty()) addRow();
+				filters.map.put(key, toFilterString());
+			}
+		});
+		rows.add(option, 0, options.size());
+		rows.add(bool, 1, bools.size());
+		options.add(option);
+		bools.add(bool);
+	}
+
+	/**
+	 * Convert the choices to a string with symbols to help database parse formations
+	 * @return the ~ delimited string, with " * " for every empty ComboBox
+	 */
+	public String toFilterString(){
+		String sb = "";
+		for(int i = 0; i < options.size(); i++){
+			sb += slot(options.get(i).getValue());
+			sb += slot(bools.get(i).getValue());
+		}
+		return sb;
+	}
+
+	/**
+	 * One ComboBox's part of the filter string
+	 * @param value - the value of the ComboBox
+	 * @return the value followed by ~, or " * " if it is empty
+	 */
+	private String slot(String value){
+		if(value == null || value.length() == 0) return " * ";
+		return value + "~";
+	}
+
+	/**
+	 * Remove the rows that were added and empty the rest
+	 */
+	public void clear(){
+		while(options.size() > ROWS){
+			rows.getChildren().removeAll(options.remove(options.size() - 1), bools.remove(bools.size() - 1));
+		}
+		for(int i = 0; i < options.size(); i++){
+			options.get(i).setValue("");
+			bools.get(i).setValue("");
+		}
+	}
+
+	/**
+	 * Get the rows of ComboBoxes
+	 * @return GridPane
+	 */
+	public GridPane getRows(){
+		return rows;
+	}
+}
@@ -1,7 +1,6 @@
 package filters;
 
 import java.net.MalformedURLException;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Iterator;
 
@@ -101,16 +100,11 @@ public class PublicationFilters extends AdvancedFilters {
 	 * Publication table is showing and everything else is hidden
 	 */
 	public void callQuery(){
-		try {
-			ResultSet data = db.advancedTableSearch("publication", titleField.getText(), map, SearchCollection.isCollection());
-			RecordTable publicationTable = SearchCollection.getPublicationTable();
-			publicationTable.setTableData(publicationTable.populate(data));
-			publicationTable.getCellInfo().setVisible(false);
-			publicationTable.getCellInfo().setVis(false);
-			publicationTable.getTable().setVisible(true);
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+		RecordTable publicationTable = SearchCollection.getPublicationTable();
+		publicationTable.advancedSearch(titleField.getText(), map, SearchCollection.isCollection());
+		publicationTable.getCellInfo().setVisible(false);
+		publicationTable.getCellInfo().setVis(false);
+		publicationTable.getTable().setVisible(true);
 	}
 
 	@Override
@@ -135,13 +129,6 @@ public class PublicationFilters extends AdvancedFilters {
 		}
 
 		//reset table
-		ResultSet data;
-		try {
-			data = db.searchTableByName("publication", "", SearchCollection.isCollection());
-			RecordTable publicationTable = SearchCollection.getPublicationTable();
-			publicationTable.setTableData(publicationTable.populate(data));
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+		SearchCollection.getPublicationTable().searchByName("", SearchCollection.isCollection());
 	}
 }
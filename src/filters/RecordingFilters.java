@@ -1,16 +1,12 @@
 package filters;
 
 import java.net.MalformedURLException;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Collections;
 import java.util.Iterator;
 
 import database.Database;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.scene.control.ComboBox;
@@ -56,19 +52,11 @@ public class RecordingFilters extends AdvancedFilters {
 
 	/**
 	 * Sets up the Type options for Recording
-	 * @throws SQLException
 	 */
-	public void type() throws SQLException{
+	public void type(){
 		map.put("type", "");
-		ResultSet typeSet;
-		typeSet = db.doQuery("SELECT name FROM dancetype");
-		ObservableList<String> typeList = FXCollections.observableArrayList("");
-		while(typeSet.next()) {
-			typeList.add(typeSet.getString(1));
-		}
-		Collections.sort(typeList);
 		Label type = new Label("Type");
-		typeOptions = new ComboBox<String>(typeList);
+		typeOptions = lookupOptions("dancetype");
 		typeOptions.setOnAction(new EventHandler<ActionEvent>() {
 			@Override
 			public void handle(ActionEvent arg0) {
@@ -82,19 +70,11 @@ public class RecordingFilters extends AdvancedFilters {
 
 	/**
 	 * Sets up the Medley Type options for Recording
-	 * @throws SQLException
 	 */
-	public void medley() throws SQLException{
+	public void medley(){
 		map.put("medleytype", "");
-		ResultSet medleyTypeSet;
-		medleyTypeSet = db.doQuery("SELECT description FROM medleytype");
-		ObservableList<String> medleyTypeList = FXCollections.observableArrayList("");
-		while(medleyTypeSet.next()) {
-			medleyTypeList.add(medleyTypeSet.getString(1));
-		}
-		Collections.sort(medleyTypeList);
 		Label medleyType = new Label("Medley Type");
-		medleyTypeOptions = new ComboBox<String>(medleyTypeList);
+		medleyTypeOptions = lookupOptions("medleytype");
 		medleyTypeOptions.setOnAction(new EventHandler<ActionEvent>() {
 			@Override
 			public void handle(ActionEvent arg0) {
@@ -206,16 +186,11 @@ public class RecordingFilters extends AdvancedFilters {
 	 * Recording table is showing and everything else is hidden
 	 */
 	public void callQuery(){
-		try {
-			ResultSet data = db.advancedTableSearch("recording", titleField.getText(), map, SearchCollection.isCollection());
-			RecordTable recordingTable = SearchCollection.getRecordingTable();
-			recordingTable.setTableData(recordingTable.populate(data));
-			recordingTable.getCellInfo().setVisible(false);
-			recordingTable.getCellInfo().setVis(false);
-			recordingTable.getTable().setVisible(true);
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+		RecordTable recordingTable = SearchCollection.getRecordingTable();
+		recordingTable.advancedSearch(titleField.getText(), map, SearchCollection.isCollection());
+		recordingTable.getCellInfo().setVisible(false);
+		recordingTable.getCellInfo().setVis(false);
+		recordingTable.getTable().setVisible(true);
 	}
 
 	@Override
@@ -242,13 +217,6 @@ public class RecordingFilters extends AdvancedFilters {
 		}
 
 		//reset table
-		ResultSet data;
-		try {
-			data = db.searchTableByName("recording", "", SearchCollection.isCollection());
-			RecordTable recordingTable = SearchCollection.getRecordingTable();
-			recordingTable.setTableData(recordingTable.populate(data));
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+		SearchCollection.getRecordingTable().searchByName("", SearchCollection.isCollection());
 	}
 }
@@ -2,11 +2,17 @@ package tables;
 
 import java.net.MalformedURLException;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 import database.Database;
+import database.QueryCallback;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.event.ActionEvent;
@@ -24,6 +30,9 @@ import javafx.scene.layout.VBox;
 /**
  * CellInfo is a VBOw that holds the information needed to display individual information about a cell link in the table
  * as well as controlling the ability to link through all of the other cell Links in each CellInfo.
+ * 
+ * load reads the entry, its lists and the names of its people on the database's query thread and only
+ * builds the display once everything has been read, so following a link never blocks the screen.
  * @author lisaketcham
  *
  */
@@ -32,6 +41,8 @@ public class CellInfo extends VBox{
 	private TableView<Record> table;
 	private String type;
 	private ResultSet set; 
+	private LinkedHashMap<String, ResultSet> lists;
+	private HashMap<Integer, String> people;
 	private GridPane grid;
 	private int gridY, gridX, rscdsY, id, linkId;
 	private Database db;
@@ -70,6 +81,34 @@ public class CellInfo extends VBox{
 				"-fx-border-color: #cfcfcf;");
 	}
 
+	/**
+	 * Reads the entry with the given id and everything shown with it in the background, 
+	 * then sets the content of the VBox to it
+	 * @param type - a String representing the type of cell
+	 * @param id - the id of the entry to show
+	 */
+	public void load(final String type, final int id){
+		format();
+		db.getAllByIdFromTableAsync(type, id, new QueryCallback<Object[]>(rt.getKey() + ":cellinfo") {
+			@Override
+			public Object[] map(ResultSet row) throws SQLException {
+				row.next();
+				return new Object[] {row, fetchLists(type, id), fetchPeople(row)};
+			}
+			
+			@SuppressWarnings("unchecked")
+			@Override
+			public void done(Object[] result) {
+				try {
+					show((ResultSet) result[0], type, (LinkedHashMap<String, ResultSet>) result[1], 
+							(HashMap<Integer, String>) result[2]);
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+	}
+	
 	/**
 	 * Sets the content of the VBox according to the ResultSet and type of cell
 	 * @param set - ResultSet fields of the row that corresponds to the CellInfo
@@ -77,8 +116,24 @@ public class CellInfo extends VBox{
 	 * @throws SQLException
 	 */
 	public void set(ResultSet set, String type) throws SQLException{
+		int id = Integer.parseInt(set.getString("id"));
+		show(set, type, fetchLists(type, id), fetchPeople(set));
+	}
+	
+	/**
+	 * Sets the content of the VBox to the entry and the lists already read for it
+	 * @param set - ResultSet fields of the row that corresponds to the CellInfo
+	 * @param type - a String representing the type of cell 
+	 * @param lists - the lists shown with the entry by their column name
+	 * @param people - the names of the people the entry refers to by their id
+	 * @throws SQLException
+	 */
+	private void show(ResultSet set, String type, LinkedHashMap<String, ResultSet> lists, 
+			HashMap<Integer, String> people) throws SQLException{
 		format();
 		this.set = set;
+		this.lists = lists;
+		this.people = people;
 		id = Integer.parseInt(set.getString("id"));
 		this.type = type;
 		gridY = 0;
@@ -95,6 +150,66 @@ public class CellInfo extends VBox{
 		returnButton();
 	}
 
+	/**
+	 * Reads every list shown with an entry of the given type, keyed by the column they are shown in
+	 * @param type - a String representing the type of cell
+	 * @param id - the id of the entry
+	 * @return the lists in the order they are shown
+	 * @throws SQLException
+	 */
+	private LinkedHashMap<String, ResultSet> fetchLists(String type, int id) throws SQLException{
+		LinkedHashMap<String, ResultSet> lists = new LinkedHashMap<String, ResultSet>();
+		if(type.equals("album")) {
+			lists.put("Recordings: ", db.materialize(db.getRecordingsByAlbum(id)));
+		}
+		else if(type.equals("dance")) {
+			lists.put("Formations: ", db.materialize(db.getFormationsByDance(id)));
+			lists.put("Steps: ", db.materialize(db.getStepsByDance(id)));
+			lists.put("Publications: ", db.materialize(db.getPublicationsByDance(id)));
+			lists.put("Tunes: ", db.materialize(db.getTunesByDance(id)));
+			lists.put("Recordings: ", db.materialize(db.getRecordingsByDance(id)));
+		}
+		else if(type.equals("person")) {
+			lists.put("Dances: ", db.materialize(db.getDancesByPerson(id)));
+			lists.put("Publications: ", db.materialize(db.getPublicationsByPerson(id)));
+			lists.put("Tunes: ", db.materialize(db.getTunesByPerson(id)));
+			lists.put("Recordings: ", db.materialize(db.getRecordingsByPerson(id)));
+			lists.put("Albums: ", db.materialize(db.getAlbumsByPerson(id)));
+		}
+		else if(type.equals("publication")) {
+			lists.put("Dances: ", db.materialize(db.getDancesByPublication(id)));
+			lists.put("Tunes: ", db.materialize(db.getTunesByPublication(id)));
+		}
+		else if(type.equals("recording")) {
+			lists.put("Album: ", db.materialize(db.getAlbumByRecording(id)));
+			lists.put("Tunes: ", db.materialize(db.getTunesByRecording(id)));
+		}
+		else {
+			lists.put("Dances: ", db.materialize(db.getDancesByTune(id)));
+			lists.put("Recordings: ", db.materialize(db.getRecordingsByTune(id)));
+		}
+		return lists;
+	}
+	
+	/**
+	 * Looks up the names of the people the entry refers to
+	 * @param set - ResultSet fields of the entry
+	 * @return map of person id to name
+	 * @throws SQLException
+	 */
+	private HashMap<Integer, String> fetchPeople(ResultSet set) throws SQLException{
+		HashMap<Integer, String> people = new HashMap<Integer, String>();
+		ResultSetMetaData meta = set.getMetaData();
+		for(int i = 1; i <= meta.getColumnCount(); i++){
+			String info = set.getString(i);
+			if(info != null && isPerson(meta.getColumnLabel(i))){
+				int person = Integer.parseInt(info);
+				people.put(person, db.getPersonName(person));
+			}
+		}
+		return people;
+	}
+
 	/**
 	 * sets the contents of the VBox according to the type
 	 * @throws SQLException
@@ -131,7 +246,7 @@ public class CellInfo extends VBox{
 			//Person Link
 			if(info != null && isPerson(cellInfo.get(col))){
 				linkId = Integer.parseInt(info);
-				personLink(infoCol, db.getPersonName(linkId));
+				personLink(infoCol, people.containsKey(linkId) ? people.get(linkId) : db.getPersonName(linkId));
 			}
 			//1/0 to Yes/No
 			if(info != null && isYesOrNo(cellInfo.get(col))){
@@ -157,6 +272,7 @@ public class CellInfo extends VBox{
 	 * @throws SQLException
 	 */
 	public void iterateLists(String colName, String linkType, ResultSet list) throws SQLException{
+		if(list == null) return;
 		boolean firstTime = true;
 		boolean stepformcol = true;
 		int track = 1;
@@ -230,7 +346,7 @@ public class CellInfo extends VBox{
 		albumInfo.put("Artist: ", "artist_id");		
 		iHaveAndTag();
 		iterateInfo(albumInfo);
-		iterateLists("Recordings: ", "recording", db.getRecordingsByAlbum(id));
+		iterateLists("Recordings: ", "recording", lists.get("Recordings: "));
 	}
 	
 	/**
@@ -244,12 +360,12 @@ public class CellInfo extends VBox{
 		danceInfo.put("Devisor: ", "devisor_id");
 		iHaveAndTag();
 		iterateInfo(danceInfo);
-		iterateLists("Formations: ", "", db.getFormationsByDance(id));
-		iterateLists("Steps: ", "", db.getStepsByDance(id));
+		iterateLists("Formations: ", "", lists.get("Formations: "));
+		iterateLists("Steps: ", "", lists.get("Steps: "));
 		rscdsY = gridY;
-		iterateLists("Publications: ", "publication", db.getPublicationsByDance(id));
-		iterateLists("Tunes: ", "tune", db.getTunesByDance(id));
-		iterateLists("Recordings: ", "recording", db.getRecordingsByDance(id));
+		iterateLists("Publications: ", "publication", lists.get("Publications: "));
+		iterateLists("Tunes: ", "tune", lists.get("Tunes: "));
+		iterateLists("Recordings: ", "recording", lists.get("Recordings: "));
 		grid.add(new Label("RSCDS: "), 0, rscdsY);
 		if(rscds) grid.add(new Label("Yes"), 1, rscdsY);
 		else grid.add(new Label("No"), 1, rscdsY);
@@ -282,11 +398,11 @@ public class CellInfo extends VBox{
 		grid.add(titleCol, 0, gridY++);
 		grid.add(infoCol, 1, gridY-1);
 
-		iterateLists("Dances: ", "dance", db.getDancesByPerson(id));
-		iterateLists("Publications: ", "publication", db.getPublicationsByPerson(id));
-		iterateLists("Tunes: ", "tune", db.getTunesByPerson(id));
-		iterateLists("Recordings: ", "recording", db.getRecordingsByPerson(id));
-		iterateLists("Albums: ", "album", db.getAlbumsByPerson(id));
+		iterateLists("Dances: ", "dance", lists.get("Dances: "));
+		iterateLists("Publications: ", "publication", lists.get("Publications: "));
+		iterateLists("Tunes: ", "tune", lists.get("Tunes: "));
+		iterateLists("Recordings: ", "recording", lists.get("Recordings: "));
+		iterateLists("Albums: ", "album", lists.get("Albums: "));
 	}
 	
 	/**
@@ -324,8 +440,8 @@ public class CellInfo extends VBox{
 		
 		iHaveAndTag();
 		iterateInfo(publicationInfo);
-		iterateLists("Dances: ", "dance", db.getDancesByPublication(id));
-		iterateLists("Tunes: ", "tune", db.getTunesByPublication(id));
+		iterateLists("Dances: ", "dance", lists.get("Dances: "));
+		iterateLists("Tunes: ", "tune", lists.get("Tunes: "));
 	}
 
 	/**
@@ -339,8 +455,8 @@ public class CellInfo extends VBox{
 		iHaveAndTag();
 		iterateInfo(recordingInfo);
 		
-		iterateLists("Album: ", "album", db.getAlbumByRecording(id));
-		iterateLists("Tunes: ", "tune", db.getTunesByRecording(id));
+		iterateLists("Album: ", "album", lists.get("Album: "));
+		iterateLists("Tunes: ", "tune", lists.get("Tunes: "));
 	}
 
 	/**
@@ -352,8 +468,8 @@ public class CellInfo extends VBox{
 		tuneInfo.put("Name: ", "name");
 		tuneInfo.put("Composer: ", "composer_id");		
 		iterateInfo(tuneInfo);
-		iterateLists("Dances: ", "dance", db.getDancesByTune(id));
-		iterateLists("Recordings: ", "recording", db.getRecordingsByTune(id));
+		iterateLists("Dances: ", "dance", lists.get("Dances: "));
+		iterateLists("Recordings: ", "recording", lists.get("Recordings: "));
 	}
 	
 	/**
@@ -381,13 +497,15 @@ public class CellInfo extends VBox{
 		cb.selectedProperty().addListener(new ChangeListener<Boolean>() {
 			public void changed(ObservableValue<? extends Boolean> ov,Boolean old_val, Boolean new_val) {
 				try {
-					if(!old_val && new_val) db.iHave(type, id);
+					//the dances of a publication or recordings of an album are marked with it
+					Map<String, Set<Integer>> marked = null;
+					if(!old_val && new_val) marked = db.iHave(type, Collections.singleton(id));
 					else if(old_val && !new_val) {
-						db.iDontHave(type, id);
+						marked = db.iDontHave(type, Collections.singleton(id));
 						db.removeTag(type, id);
 						tag.clear();
 					}
-					rt.refresh(type);
+					if(marked != null) rt.getSC().getStore().setOwned(marked, new_val);
 				} catch (NumberFormatException e) {
 					e.printStackTrace();
 				} catch (SQLException e) {
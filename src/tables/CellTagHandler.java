@@ -1,6 +1,9 @@
 package tables;
 
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
 
 import database.Database;
 import javafx.event.ActionEvent;
@@ -38,13 +41,14 @@ public class CellTagHandler implements EventHandler<ActionEvent> {
 	
 	@Override
 	/**
-	 * add or remove tag of given entry and refresh the table
+	 * add or remove tag of given entry, and of the entries tagged with it, in every table
 	 */
 	public void handle(ActionEvent arg0) {
 		try {
-			if(!tag.getText().equals("")) db.addTag(type, id, tag.getText());
-			else db.removeTag(type, id);
-			rt.refresh(type);
+			Map<String, Set<Integer>> tagged;
+			if(!tag.getText().equals("")) tagged = db.addTag(type, Collections.singleton(id), tag.getText());
+			else tagged = db.removeTag(type, Collections.singleton(id));
+			rt.getSC().getStore().setTag(tagged, tag.getText());
 		} catch (NumberFormatException e) {
 			e.printStackTrace();
 		} catch (SQLException e) {
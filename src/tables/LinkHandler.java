@@ -1,8 +1,5 @@
 package tables;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
-
 import database.Database;
 import javafx.event.EventHandler;
 import javafx.scene.input.MouseEvent;
@@ -39,12 +36,7 @@ public class LinkHandler implements EventHandler<MouseEvent>{
 	 */
 	public void handle(MouseEvent event) {
 		if (event.getClickCount() > 1) {
-			try {
-				ResultSet set = db.getAllByIdFromTable(table, linkId);
-				c.set(set, table);
-			} catch (SQLException e) {
-				e.printStackTrace();
-			}
+			c.load(table, linkId);
 		}
 	}
 }
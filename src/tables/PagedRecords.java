@@ -0,0 +1,439 @@
+package tables;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import javax.sql.rowset.CachedRowSet;
+
+import database.Database;
+import database.Keyset;
+import database.QueryCallback;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.control.TableRow;
+import javafx.scene.control.TableView;
+import javafx.util.Callback;
+
+/**
+ * PagedRecords is where a RecordTable gets its rows from. Instead of reading every result of
+ * a search before showing any, it reads them a page of PAGE rows at a time, in order of
+ * name and id, see Keyset, so the first rows of even the largest table are shown at once.
+ *
+ *  -	The next page is read when the rows near the end of the list are shown, and the page
+ * 		before when the rows near its start are shown, by a row factory that sees which rows
+ * 		the table shows.
+ *
+ * 	-	At most WINDOW pages are kept. When another page is read, the page at the other end
+ * 		of the list is dropped and the table is scrolled so the same rows stay in view.
+ *
+ * 	-	A page that is full may end in the middle of the rows of one dance, one for each of
+ * 		its publications, so those rows are left for the next page to read.
+ *
+ * Searches and pages are read on the query thread with the key of the table, so a new
+ * search drops any page of an older one that has not been read yet.
+ *
+ * When every result has to be shown, eg. in the Collection, the Records can be streamed
+ * instead: the whole search is read on the search thread, which adds them to the list in
+ * chunks of CHUNK rows as it goes, with its progress to show. Another search of the table
+ * cancels it like any superseded search, see Database.streamAsync.
+ *
+ * The Records read are the ones of the RecordStore, so a row shown by both the Search and the
+ * Collection is one Record. When the search is of what is marked as ihave, the rows marked as
+ * not ihave are taken out of the list, and rows marked as ihave are put in order into it if the
+ * search shows everything that is ihave, all without reading the search again.
+ */
+public class PagedRecords {
+
+	public static final int PAGE = 100;
+	public static final int WINDOW = 5;
+	public static final int CHUNK = 250;
+
+	private Database db;
+	private RecordStore store;
+	private String table, key;
+	private Collection<String> fields;
+	private TableView<Record> view;
+	private Runnable loaded;
+	private ObservableList<Record> items;
+	//the number of rows of each page kept, in order
+	private LinkedList<Integer> pages;
+	private boolean atStart, atEnd, loading;
+	private String title;
+	private Map<String, String> map;
+	private boolean ihave;
+	//the number of searches started, so the rows of an earlier one are not shown or read
+	private volatile int searches;
+	private boolean streaming;
+	private SimpleDoubleProperty progress;
+	private SimpleBooleanProperty running;
+
+	/**
+	 * The rows of a page as Records
+	 */
+	private static final class Page {
+		final ArrayList<Record> rows;
+		//true if the query returned as many rows as it was asked for, so there may be more
+		final boolean full;
+
+		Page(ArrayList<Record> rows, boolean full) {
+			this.rows = rows;
+			this.full = full;
+		}
+	}
+
+	/**
+	 * Constructor for PagedRecords, which become the rows of the TableView
+	 * @param db - the database the pages are read from
+	 * @param store - the RecordStore the Records are shared through
+	 * @param table - the table searched
+	 * @param key - the key the searches are made with, see QueryCallback
+	 * @param fields - the field names of the Records, see RecordTable.columns
+	 * @param view - the TableView the Records are shown in
+	 * @param loaded - run on the application thread once the first page of a search is shown
+	 */
+	public PagedRecords(Database db, RecordStore store, String table, String key, Collection<String> fields, TableView<Record> view, Runnable loaded) {
+		this.db = db;
+		this.store = store;
+		this.table = table;
+		this.key = key;
+		this.fields = fields;
+		this.view = view;
+		this.loaded = loaded;
+		items = FXCollections.observableArrayList();
+		pages = new LinkedList<Integer>();
+		atStart = true;
+		atEnd = true;
+		progress = new SimpleDoubleProperty(0);
+		running = new SimpleBooleanProperty(false);
+		view.setItems(items);
+		view.setRowFactory(new Callback<TableView<Record>, TableRow<Record>>() {
+			@Override
+			public TableRow<Record> call(TableView<Record> v) {
+				return new TableRow<Record>() {
+					@Override
+					public void updateIndex(int i) {
+						super.updateIndex(i);
+						shown(i);
+					}
+				};
+			}
+		});
+		store.addListener(table, new RecordStore.Listener() {
+			@Override
+			public void owned(List<Record> records, boolean ihave) {
+				PagedRecords.this.owned(records, ihave);
+			}
+		});
+	}
+
+	/**
+	 * Search again, from the first page or, when streaming, from the first row. A page or a
+	 * stream of an earlier search that is still being read is cancelled.
+	 * @param title - String to search the names for
+	 * @param map - mapping of advanced search fields to their values, null for a search by name
+	 * @param ihave - if true only show what is marked as ihave
+	 * @return Future of the first page or of the stream
+	 */
+	public Future<?> search(String title, Map<String, String> map, boolean ihave) {
+		this.title = title;
+		this.map = map;
+		this.ihave = ihave;
+		searches++;
+		running.set(false);
+		if(streaming) return stream();
+		loading = true;
+		Keyset page = Keyset.first(PAGE);
+		return db.searchPageAsync(table, title, map, ihave, page, new PageCallback(page) {
+			@Override
+			void show(Page result) {
+				items.setAll(result.rows);
+				pages.clear();
+				pages.add(result.rows.size());
+				atStart = true;
+				atEnd = !result.full;
+				loading = false;
+				view.scrollTo(0);
+				loaded.run();
+			}
+		});
+	}
+
+	/**
+	 * Read every result of the search on the search thread, in chunks of CHUNK rows that
+	 * are added to the list as they are read
+	 * @return Future of the stream
+	 */
+	private Future<?> stream() {
+		final int search = searches;
+		final long generation = store.getGeneration();
+		//every row is read, so there are no pages to read on scrolling
+		loading = false;
+		atStart = true;
+		atEnd = true;
+		progress.set(0);
+		running.set(true);
+		return db.streamAsync(table, title, map, ihave, new QueryCallback<Integer>(key) {
+			private boolean first = true;
+
+			@Override
+			public Integer map(ResultSet set) throws SQLException {
+				//results held in memory know their size, the rows of a statement are shown as of unknown length
+				int total = (set instanceof CachedRowSet) ? ((CachedRowSet) set).size() : -1;
+				int read = 0;
+				ArrayList<Record> chunk = new ArrayList<Record>();
+				try {
+					RecordMapper mapper = null;
+					//a newer search cancels the statement, but not the reading of cached results
+					while(search == searches && set.next()) {
+						if(mapper == null) mapper = new RecordMapper(set, fields);
+						chunk.add(store.intern(table, mapper.map(set), generation));
+						read++;
+						if(chunk.size() == CHUNK) {
+							append(chunk, (total < 0) ? -1 : (double) read / total);
+							chunk = new ArrayList<Record>();
+						}
+					}
+				} finally {
+					set.close();
+				}
+				append(chunk, 1);
+				return read;
+			}
+
+			/**
+			 * Add a chunk to the list on the application thread, in place of the rows of the
+			 * search before for the first one
+			 */
+			private void append(final List<Record> chunk, final double done) {
+				final boolean replace = first;
+				first = false;
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						if(search != searches) return;
+						if(replace) {
+							items.setAll(chunk);
+							pages.clear();
+							view.scrollTo(0);
+							loaded.run();
+						}
+						else items.addAll(chunk);
+						progress.set(done);
+					}
+				});
+			}
+
+			@Override
+			public void done(Integer read) {
+				if(search == searches) running.set(false);
+			}
+
+			@Override
+			public void failed(Exception e) {
+				if(search == searches) running.set(false);
+				super.failed(e);
+			}
+		});
+	}
+
+	/**
+	 * Show every result of a search, read in chunks, instead of reading a page at a time
+	 * @param streaming - true to read every result of the searches from now on
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	/**
+	 * How much of the results the running stream has read, -1 if it cannot tell
+	 * @return ReadOnlyDoubleProperty from 0 to 1
+	 */
+	public ReadOnlyDoubleProperty progressProperty() {
+		return progress;
+	}
+
+	/**
+	 * Whether a stream is reading the results of a search
+	 * @return ReadOnlyBooleanProperty
+	 */
+	public ReadOnlyBooleanProperty runningProperty() {
+		return running;
+	}
+
+	/**
+	 * Read more rows if a row near either end of the list is shown
+	 * @param index - the index of the row shown
+	 */
+	private void shown(int index) {
+		if(index < 0 || index >= items.size() || loading) return;
+		if(!atEnd && index >= items.size() - RecordTable.rowsPerPage) next(index);
+		else if(!atStart && index < RecordTable.rowsPerPage) previous(index);
+	}
+
+	/**
+	 * Read the page after the last row, and drop the first page if there are too many
+	 * @param index - the index of the row shown, the last one in view
+	 */
+	private void next(final int index) {
+		Record last = items.get(items.size() - 1);
+		loading = true;
+		Keyset page = Keyset.after(name(last), last.getId(), PAGE);
+		db.searchPageAsync(table, title, map, ihave, page, new PageCallback(page) {
+			@Override
+			void show(Page result) {
+				items.addAll(result.rows);
+				pages.addLast(result.rows.size());
+				atEnd = !result.full;
+				if(pages.size() > WINDOW) {
+					int dropped = pages.removeFirst();
+					items.remove(0, dropped);
+					atStart = false;
+					view.scrollTo(Math.max(0, index - dropped - RecordTable.rowsPerPage + 1));
+				}
+				loading = false;
+			}
+		});
+	}
+
+	/**
+	 * Read the page before the first row, and drop the last page if there are too many
+	 * @param index - the index of the row shown, the first one in view
+	 */
+	private void previous(final int index) {
+		Record first = items.get(0);
+		loading = true;
+		Keyset page = Keyset.before(name(first), first.getId(), PAGE);
+		db.searchPageAsync(table, title, map, ihave, page, new PageCallback(page) {
+			@Override
+			void show(Page result) {
+				items.addAll(0, result.rows);
+				pages.addFirst(result.rows.size());
+				atStart = !result.full;
+				if(pages.size() > WINDOW) {
+					int dropped = pages.removeLast();
+					items.remove(items.size() - dropped, items.size());
+					atEnd = false;
+				}
+				view.scrollTo(index + result.rows.size());
+				loading = false;
+			}
+		});
+	}
+
+	/**
+	 * Follow Records being marked as ihave or not, if the search is of what is ihave
+	 * @param records - the Records marked
+	 * @param ihave - true if they are ihave now
+	 */
+	private void owned(List<Record> records, boolean ihave) {
+		if(!this.ihave) return;
+		if(!ihave) {
+			items.removeAll(records);
+			return;
+		}
+		//only a search of everything that is ihave surely has them, and a stream may still bring them
+		if(map != null || (title != null && !title.isEmpty()) || running.get() || !atStart || !atEnd) return;
+		for(Record r : records) {
+			if(items.contains(r)) continue;
+			int i = 0;
+			while(i < items.size() && compare(items.get(i), r) <= 0) i++;
+			items.add(i, r);
+		}
+	}
+
+	/**
+	 * Compare Records in the order the rows are read, by name and id
+	 */
+	private static int compare(Record a, Record b) {
+		int c = name(a).compareTo(name(b));
+		return (c != 0) ? c : Integer.compare(a.getId(), b.getId());
+	}
+
+	/**
+	 * The Records shown, the rows of the pages kept
+	 * @return ObservableList of Records
+	 */
+	public ObservableList<Record> getItems() {
+		return items;
+	}
+
+	/**
+	 * The name of a Record as the pages are ordered by it, sqlite puts rows without a name first
+	 */
+	private static String name(Record r) {
+		return (r.getName() == null) ? "" : r.getName();
+	}
+
+	/**
+	 * Reads a page into Records on the query thread
+	 */
+	private abstract class PageCallback extends QueryCallback<Page> {
+
+		private Keyset page;
+		private int search;
+		private long generation;
+
+		PageCallback(Keyset page) {
+			super(key);
+			this.page = page;
+			search = searches;
+			generation = store.getGeneration();
+		}
+
+		/**
+		 * Show the page, called on the application thread if no other search was started since
+		 * @param result - the page
+		 */
+		abstract void show(Page result);
+
+		@Override
+		public void done(Page result) {
+			if(search == searches) show(result);
+		}
+
+		@Override
+		public Page map(ResultSet set) throws SQLException {
+			ArrayList<Record> rows = new ArrayList<Record>();
+			try {
+				RecordMapper mapper = null;
+				while(set.next()) {
+					if(mapper == null) mapper = new RecordMapper(set, fields);
+					rows.add(store.intern(table, mapper.map(set), generation));
+				}
+			} finally {
+				//also when the search is cancelled while it is read
+				set.close();
+			}
+			boolean full = rows.size() >= page.getLimit();
+			if(full) {
+				//the rows of the dance at the edge the next page is read from, unless they are all there is
+				int edge = page.isBefore() ? 0 : rows.size() - 1;
+				int step = page.isBefore() ? 1 : -1;
+				int i = edge;
+				while(i >= 0 && i < rows.size() && rows.get(i).getId() == rows.get(edge).getId()) i += step;
+				if(i >= 0 && i < rows.size()) {
+					if(page.isBefore()) rows.subList(0, i).clear();
+					else rows.subList(i + 1, rows.size()).clear();
+				}
+			}
+			return new Page(rows, full);
+		}
+
+		@Override
+		public void failed(Exception e) {
+			if(search == searches) loading = false;
+			super.failed(e);
+		}
+	}
+}
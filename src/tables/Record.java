@@ -3,8 +3,12 @@ package tables;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collection;
-import java.lang.reflect.*;
-import javafx.scene.control.CheckBox;
+import java.util.Objects;
+
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
 
 /**
  * 
@@ -14,7 +18,8 @@ import javafx.scene.control.CheckBox;
  *  - 	The fields of this class must be all of the fields desired to be shown in any of the columns of any table,
  * 		even if the fields are shared by multiple tables. 
  * 
- * 	-	The names of the fields must be identical to the fields of the query that is populating the table.
+ * 	-	The names of the fields must be identical to the fields of the query that is populating the table,
+ * 		and each field must have a setter in RecordMapper.
  * 
  * 	-	Each field must be used by a getter that returns the value of that field, 
  * 		whose name must also match the format getField_name() for any field field_name.
@@ -22,52 +27,39 @@ import javafx.scene.control.CheckBox;
  * To change the columns of the Table, one must change the fields of this class according to the constraints above
  * as well as the colNameField mapping of column to field in the mapColumnNametoId() method in RecordTable.
  * 
+ * The Records of the tables are shared through a RecordStore, so the ihave and tag of a Record can change while 
+ * it is shown and are observable for that.
+ * 
  */
 public class Record {
 	
-	private int id;
+	//fields are set by RecordMapper
+	int id;
 	//string fields based on schema field names of any type of Record
-	private String name, barsperrepeat, type, artist_id, artist, devisor, repetitions, publication;
+	String name, barsperrepeat, type, artist_id, artist, devisor, repetitions, publication;
 	//special cases
-	private CheckBox ihave;
-	private String tag;
+	boolean ihave;
+	String tag;
+	//only made for the rows the table shows, see ihaveProperty()
+	private BooleanProperty ihaveProperty;
+	private StringProperty tagProperty;
+
+	/**
+	 * Creates an empty Record for RecordMapper to set the fields of
+	 */
+	Record() {
+	}
 
 	/**
 	 * Creates a Record based on the given ResultSet pointer and the collection of field names
-	 * that should be set for the particular Record. Fields ihave and tag are special cases that should not be set by Reflection.
+	 * that should be set for the particular Record. This looks the columns up for the one row,
+	 * to make the Records of many rows use one RecordMapper.
 	 * @param set - ResultSet containing the pointer of the row to be made into a record
 	 * @param fieldNames - Collection of Strings that represent which fields should be set for the Record
 	 * @throws SQLException
 	 */
 	public Record(ResultSet set, Collection<String> fieldNames) throws SQLException {
-		try {
-			Class<?> c = Class.forName(this.getClass().getCanonicalName());
-			Field[] fieldList = c.getDeclaredFields();
-
-			for(Field f : fieldList){
-				if(f.getType() == Integer.TYPE){
-					f.set(this, set.getInt(f.getName()));
-				}
-				else if (f.getType().isAssignableFrom(String.class)){
-					if(fieldNames.contains(f.getName())){
-						if(f.getName().equals("tag")) tag = (set.getString("tag") != null) ? set.getString("tag") : "";
-						else f.set(this, set.getString(f.getName()));
-					}
-				}
-				else{
-					ihave = new CheckBox();
-					if(set.getString("ihave").equals("1")) {
-						ihave.setSelected(true);
-					}
-				}
-			}
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
-		} catch (IllegalArgumentException e) {
-			e.printStackTrace();
-		} catch (IllegalAccessException e) {
-			e.printStackTrace();
-		}
+		new RecordMapper(set, fieldNames).set(this, set);
 	}
 	
 	//GETTERS USED IN PROPERTY VALUE FACTORY IN RecordTable METHOD initializeTable()
@@ -100,16 +92,41 @@ public class Record {
 		return barsperrepeat;
 	}
 	
-	public CheckBox getIhave() {
-		return ihave;
+	public boolean getIhave() {
+		return (ihaveProperty != null) ? ihaveProperty.get() : ihave;
+	}
+	
+	public void setIhave(boolean ihave) {
+		if(ihaveProperty != null) ihaveProperty.set(ihave);
+		else this.ihave = ihave;
+	}
+	
+	/**
+	 * returns the property of the ihave field that the I Have column shows. It is made the first time
+	 * it is asked for, so Records of rows that are never shown only hold a boolean.
+	 * @return BooleanProperty
+	 */
+	public BooleanProperty ihaveProperty() {
+		if(ihaveProperty == null) ihaveProperty = new SimpleBooleanProperty(this, "ihave", ihave);
+		return ihaveProperty;
 	}
 	
 	public void setTag(String tag){
-		this.tag = tag;
+		if(tagProperty != null) tagProperty.set(tag);
+		else this.tag = tag;
 	}
 
 	public String getTag() {
-		return tag;
+		return (tagProperty != null) ? tagProperty.get() : tag;
+	}
+	
+	/**
+	 * returns the property of the tag field that the Tag column shows, made the first time it is asked for
+	 * @return StringProperty
+	 */
+	public StringProperty tagProperty() {
+		if(tagProperty == null) tagProperty = new SimpleStringProperty(this, "tag", tag);
+		return tagProperty;
 	}
 	
 	public String getArtist(){
@@ -119,4 +136,35 @@ public class Record {
 	public String getPublication() {
 		return publication;
 	}
+	
+	/**
+	 * Check if another Record was made of the same row, with the same values
+	 * @param r - the other Record
+	 * @return true if every field of both is the same
+	 */
+	boolean sameRow(Record r) {
+		return id == r.id && Objects.equals(name, r.name) && Objects.equals(barsperrepeat, r.barsperrepeat)
+				&& Objects.equals(type, r.type) && Objects.equals(artist_id, r.artist_id) && Objects.equals(artist, r.artist)
+				&& Objects.equals(devisor, r.devisor) && Objects.equals(repetitions, r.repetitions)
+				&& Objects.equals(publication, r.publication) && getIhave() == r.getIhave() && Objects.equals(getTag(), r.getTag());
+	}
+
+	/**
+	 * Take the values of a newer Record of the same row, eg. after an update changed it, so this
+	 * Record stays the one shown and marked. Called on the application thread, which shows it.
+	 * @param r - the newer Record
+	 * @param collection - false to keep the ihave and tag, if the collection changed since r was read
+	 */
+	void update(Record r, boolean collection) {
+		name = r.name;
+		barsperrepeat = r.barsperrepeat;
+		type = r.type;
+		artist_id = r.artist_id;
+		artist = r.artist;
+		devisor = r.devisor;
+		repetitions = r.repetitions;
+		if(!collection) return;
+		setIhave(r.getIhave());
+		setTag(r.getTag());
+	}
 }
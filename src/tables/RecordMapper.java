@@ -0,0 +1,128 @@
+package tables;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * RecordMapper makes Records from the rows of a ResultSet. The columns of the fields are
+ * looked up once, when the mapper is made for the ResultSet, and each field is then set by
+ * a setter of its own, so making a Record reads each column by its index and does no
+ * reflection or lookup by name.
+ *
+ *  -	The id and ihave fields are always set, the other fields only if they are among the
+ * 		field names given, see RecordTable.columns. A null tag is set as an empty String.
+ *
+ * 	-	To add a field to Record, add a setter for it to SETTERS.
+ */
+public class RecordMapper {
+
+	/**
+	 * Sets one field of a Record from a column of the current row
+	 */
+	private interface Setter {
+		void set(Record r, ResultSet set, int column) throws SQLException;
+	}
+
+	private static final Map<String, Setter> SETTERS = new HashMap<String, Setter>();
+	static {
+		SETTERS.put("id", new Setter() {
+			@Override
+			public void set(Record r, ResultSet set, int column) throws SQLException { r.id = set.getInt(column); }
+		});
+		SETTERS.put("name", new Setter() {
+			@Override
+			public void set(Record r, ResultSet set, int column) throws SQLException { r.name = set.getString(column); }
+		});
+		SETTERS.put("barsperrepeat", new Setter() {
+			@Override
+			public void set(Record r, ResultSet set, int column) throws SQLException { r.barsperrepeat = set.getString(column); }
+		});
+		SETTERS.put("type", new Setter() {
+			@Override
+			public void set(Record r, ResultSet set, int column) throws SQLException { r.type = set.getString(column); }
+		});
+		SETTERS.put("artist_id", new Setter() {
+			@Override
+			public void set(Record r, ResultSet set, int column) throws SQLException { r.artist_id = set.getString(column); }
+		});
+		SETTERS.put("artist", new Setter() {
+			@Override
+			public void set(Record r, ResultSet set, int column) throws SQLException { r.artist = set.getString(column); }
+		});
+		SETTERS.put("devisor", new Setter() {
+			@Override
+			public void set(Record r, ResultSet set, int column) throws SQLException { r.devisor = set.getString(column); }
+		});
+		SETTERS.put("repetitions", new Setter() {
+			@Override
+			public void set(Record r, ResultSet set, int column) throws SQLException { r.repetitions = set.getString(column); }
+		});
+		SETTERS.put("publication", new Setter() {
+			@Override
+			public void set(Record r, ResultSet set, int column) throws SQLException { r.publication = set.getString(column); }
+		});
+		SETTERS.put("tag", new Setter() {
+			@Override
+			public void set(Record r, ResultSet set, int column) throws SQLException {
+				String tag = set.getString(column);
+				r.tag = (tag != null) ? tag : "";
+			}
+		});
+		SETTERS.put("ihave", new Setter() {
+			@Override
+			public void set(Record r, ResultSet set, int column) throws SQLException { r.ihave = "1".equals(set.getString(column)); }
+		});
+	}
+
+	private Setter[] setters;
+	private int[] columns;
+
+	/**
+	 * Constructor for a RecordMapper, looking up the column of each field in the ResultSet
+	 * @param set - the ResultSet the Records are made from
+	 * @param fieldNames - Collection of Strings that represent which fields should be set for the Records
+	 * @throws SQLException if the ResultSet has no column for one of the fields
+	 */
+	public RecordMapper(ResultSet set, Collection<String> fieldNames) throws SQLException {
+		ArrayList<String> fields = new ArrayList<String>();
+		fields.add("id");
+		fields.add("ihave");
+		for(String f : fieldNames) {
+			if(SETTERS.containsKey(f) && !fields.contains(f)) fields.add(f);
+		}
+		setters = new Setter[fields.size()];
+		columns = new int[fields.size()];
+		for(int i = 0; i < setters.length; i++) {
+			setters[i] = SETTERS.get(fields.get(i));
+			columns[i] = set.findColumn(fields.get(i));
+		}
+	}
+
+	/**
+	 * Make a Record of the current row
+	 * @param set - the ResultSet the mapper was made for, positioned on a row
+	 * @return Record
+	 * @throws SQLException
+	 */
+	public Record map(ResultSet set) throws SQLException {
+		Record r = new Record();
+		set(r, set);
+		return r;
+	}
+
+	/**
+	 * Set the fields of a Record from the current row
+	 * @param r - the Record
+	 * @param set - the ResultSet the mapper was made for, positioned on a row
+	 * @throws SQLException
+	 */
+	void set(Record r, ResultSet set) throws SQLException {
+		for(int i = 0; i < setters.length; i++) {
+			setters[i].set(r, set, columns[i]);
+		}
+	}
+}
@@ -0,0 +1,261 @@
+package tables;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javafx.application.Platform;
+
+/**
+ * RecordStore holds one Record for each row of each table that is shown, so the Search and the
+ * Collection show the same Record of a row instead of one each, and marking it as ihave or not
+ * in either shows in both at once without reading it again.
+ *
+ *  -	intern gives the Record already held for a row, after giving it the values read if the
+ * 		row changed since, so the Record shown is never let go of while it is shown. A dance has
+ * 		a row for each of its publications, so the Records are held by id and publication.
+ * 		The values are given on the application thread, which shows the Record. The ihave and
+ * 		tag read are left out if the collection was changed through the store since the search
+ * 		started, see getGeneration, as the row may have been read before the change.
+ *
+ * 	-	setOwned sets ihave on every Record held with the id and tells the listeners of the
+ * 		table, eg. so the Collection can take out the rows that are no longer in it.
+ *
+ * 	-	setTag gives every Record held with the ids the tag, eg. the dances of a publication
+ * 		tagged with it, so the tag shows in every table without reading them again.
+ *
+ * 	-	The Records are held weakly, a Record no longer shown by any table is let go.
+ *
+ * intern is called on the threads the rows are read on, setOwned on the application thread.
+ */
+public class RecordStore {
+
+	/**
+	 * Told when Records are marked as ihave or not
+	 */
+	public interface Listener {
+		/**
+		 * Called on the thread setOwned is called on
+		 * @param records - the Records held with the id, all of which have the new ihave
+		 * @param ihave - true if they are now ihave
+		 */
+		void owned(List<Record> records, boolean ihave);
+	}
+
+	/**
+	 * A Record held for a table, weakly
+	 */
+	private static final class Entry extends WeakReference<Record> {
+		final String table;
+		final int id;
+
+		Entry(String table, Record r, ReferenceQueue<Record> queue) {
+			super(r, queue);
+			this.table = table;
+			this.id = r.id;
+		}
+	}
+
+	//the Records held for each table by id
+	private final HashMap<String, HashMap<Integer, ArrayList<Entry>>> tables;
+	private final HashMap<String, ArrayList<Listener>> listeners;
+	private final ReferenceQueue<Record> released;
+	//the number of changes to the collection made through the store
+	private long generation;
+
+	public RecordStore() {
+		tables = new HashMap<String, HashMap<Integer, ArrayList<Entry>>>();
+		listeners = new HashMap<String, ArrayList<Listener>>();
+		released = new ReferenceQueue<Record>();
+	}
+
+	/**
+	 * The number of changes to the collection made through the store so far, to be taken
+	 * before a search is started and given to intern with its rows
+	 * @return long
+	 */
+	public synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * The Record held for the row a Record was read from
+	 * @param table - the table the row is from
+	 * @param r - the Record just read
+	 * @param generation - getGeneration as it was when the search started
+	 * @return the Record held for the row, given the values of r, or r if none was held, which is held from now on
+	 */
+	public synchronized Record intern(String table, final Record r, final long generation) {
+		purge();
+		HashMap<Integer, ArrayList<Entry>> ids = tables.get(table);
+		if(ids == null) {
+			ids = new HashMap<Integer, ArrayList<Entry>>();
+			tables.put(table, ids);
+		}
+		ArrayList<Entry> entries = ids.get(r.id);
+		if(entries == null) {
+			entries = new ArrayList<Entry>(1);
+			ids.put(r.id, entries);
+		}
+		for(int i = 0; i < entries.size(); i++) {
+			Record held = entries.get(i).get();
+			if(held == null || !Objects.equals(held.publication, r.publication)) continue;
+			//the row changed since, eg. by an update
+			if(!held.sameRow(r)) {
+				final Record shown = held;
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						shown.update(r, getGeneration() == generation);
+					}
+				});
+			}
+			return held;
+		}
+		entries.add(new Entry(table, r, released));
+		return r;
+	}
+
+	/**
+	 * Make the Records of the rows of a table Records held by the store
+	 * @param table - the table the rows are from
+	 * @param records - the Records just read, replaced by the ones held
+	 * @param generation - getGeneration as it was when the search started
+	 */
+	public synchronized void intern(String table, List<Record> records, long generation) {
+		for(int i = 0; i < records.size(); i++) {
+			records.set(i, intern(table, records.get(i), generation));
+		}
+	}
+
+	/**
+	 * Mark the Records with an id as ihave or not, taking their tag away if not. This does not
+	 * change the collection, only what is shown of it.
+	 * @param table - the table of the id
+	 * @param id - the id
+	 * @param ihave - true if they are ihave now
+	 */
+	public void setOwned(String table, int id, boolean ihave) {
+		setOwned(table, Collections.singletonList(id), ihave);
+	}
+
+	/**
+	 * Mark the Records with any of the ids as ihave or not, see setOwned(String, int, boolean)
+	 * @param table - the table of the ids
+	 * @param ids - the ids
+	 * @param ihave - true if they are ihave now
+	 */
+	public void setOwned(String table, Collection<Integer> ids, boolean ihave) {
+		ArrayList<Record> records = new ArrayList<Record>();
+		ArrayList<Listener> told;
+		synchronized(this) {
+			generation++;
+			purge();
+			HashMap<Integer, ArrayList<Entry>> held = tables.get(table);
+			for(Integer id : ids) {
+				ArrayList<Entry> entries = (held != null) ? held.get(id) : null;
+				if(entries == null) continue;
+				for(Entry e : entries) {
+					Record r = e.get();
+					if(r != null) records.add(r);
+				}
+			}
+			told = listeners.containsKey(table) ? new ArrayList<Listener>(listeners.get(table)) : new ArrayList<Listener>();
+		}
+		for(Record r : records) {
+			r.setIhave(ihave);
+			if(!ihave) r.setTag("");
+		}
+		if(records.isEmpty()) return;
+		for(Listener l : told) {
+			l.owned(records, ihave);
+		}
+	}
+
+	/**
+	 * Mark the Records of the ids of each table as ihave or not, eg. the ids a change to the
+	 * collection affected, which include the dances of a publication and the recordings of an album
+	 * @param ids - the ids of each table
+	 * @param ihave - true if they are ihave now
+	 */
+	public void setOwned(Map<String, ? extends Collection<Integer>> ids, boolean ihave) {
+		for(Map.Entry<String, ? extends Collection<Integer>> e : ids.entrySet()) {
+			setOwned(e.getKey(), e.getValue(), ihave);
+		}
+	}
+
+	/**
+	 * Give the Records of the ids of each table a tag, eg. the ids a change to the tags of the
+	 * collection affected. This does not change the collection, only what is shown of it.
+	 * @param ids - the ids of each table
+	 * @param tag - the tag, empty if they have none now
+	 */
+	public void setTag(Map<String, ? extends Collection<Integer>> ids, String tag) {
+		ArrayList<Record> records = new ArrayList<Record>();
+		synchronized(this) {
+			generation++;
+			purge();
+			for(Map.Entry<String, ? extends Collection<Integer>> e : ids.entrySet()) {
+				HashMap<Integer, ArrayList<Entry>> held = tables.get(e.getKey());
+				if(held == null) continue;
+				for(Integer id : e.getValue()) {
+					ArrayList<Entry> entries = held.get(id);
+					if(entries == null) continue;
+					for(Entry entry : entries) {
+						Record r = entry.get();
+						if(r != null) records.add(r);
+					}
+				}
+			}
+		}
+		for(Record r : records) {
+			r.setTag(tag);
+		}
+	}
+
+	/**
+	 * Tell a listener whenever Records of a table are marked as ihave or not
+	 * @param table - the table
+	 * @param l - the Listener
+	 */
+	public synchronized void addListener(String table, Listener l) {
+		if(!listeners.containsKey(table)) listeners.put(table, new ArrayList<Listener>());
+		listeners.get(table).add(l);
+	}
+
+	/**
+	 * The number of Records held for a table
+	 * @param table - the table
+	 * @return int
+	 */
+	public synchronized int size(String table) {
+		purge();
+		int size = 0;
+		HashMap<Integer, ArrayList<Entry>> ids = tables.get(table);
+		if(ids == null) return 0;
+		for(ArrayList<Entry> entries : ids.values()) {
+			size += entries.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Forget the Records that were let go
+	 */
+	private void purge() {
+		Entry e;
+		while((e = (Entry) released.poll()) != null) {
+			HashMap<Integer, ArrayList<Entry>> ids = tables.get(e.table);
+			ArrayList<Entry> entries = (ids != null) ? ids.get(e.id) : null;
+			if(entries == null) continue;
+			entries.remove(e);
+			if(entries.isEmpty()) ids.remove(e.id);
+		}
+	}
+}
@@ -3,17 +3,26 @@ package tables;
 import java.net.MalformedURLException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
 
 import database.Database;
 import javafx.beans.binding.Bindings;
-import javafx.beans.value.ChangeListener;
-import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.scene.control.CheckBox;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.SelectionMode;
 import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
@@ -35,6 +44,15 @@ import views.SearchDataView;
  * 
  * The state is one of "d", "p", "r" or "a" representing a Dance, Publication, Recording, or Album respectively.
  * 
+ * Searches run on the database's query thread and the rows are filled in once they are read, so the
+ * screen stays responsive. Only the latest search of a table is shown, older ones still running are dropped.
+ * The rows are read a page at a time as the table is scrolled, see PagedRecords. The tables of the
+ * Collection show every result instead, added in chunks as they are read with a progress bar below them.
+ * 
+ * Several rows can be selected at once and marked or unmarked together from the table's context menu.
+ * Marking rows goes through the RecordStore the Records are shared through, so the Search and the Collection both
+ * show it at once without searching again.
+ * 
  * To change the columns of the Table, one must change colNameField mapping of column to field in the mapColumnNametoId() method 
  * as well as the fields of the Record class.
  *
@@ -45,8 +63,10 @@ public class RecordTable {
 	private TableView<Record> table;
 	private CellInfo cellInfo;
 	private LinkedHashMap<String, String> colNameField;
-	private String tableString, state;
+	private String tableString, state, key;
 	private SearchDataView sc;
+	private PagedRecords pages;
+	private ProgressBar progress;
 	
 	public static final int rowsPerPage = 18;
 	
@@ -62,6 +82,7 @@ public class RecordTable {
 		this.sc = sc;
 		this.state = state;
 		this.db = db;
+		key = tableString + (sc.isCollection() ? ":collection" : ":search");
 		table = new TableView<Record>();
 		cellInfo = new CellInfo(db, table, this);
 		cellInfo.setVisible(false);
@@ -76,6 +97,16 @@ public class RecordTable {
 	 * the second to last should refer to I Have and the last column should refer to tag.
 	 */
 	public void mapColumnNameToId(){
+		colNameField.putAll(columns(state));
+	}
+	
+	/**
+	 * returns the mapping of column names in the TableView to field names of the Record for a state
+	 * @param state String "d", "p", "r" or "a"
+	 * @return LinkedHashMap of column name to field name in the order of the columns
+	 */
+	public static LinkedHashMap<String, String> columns(String state){
+		LinkedHashMap<String, String> colNameField = new LinkedHashMap<String, String>();
 		colNameField.put("Name", "name");
 		//Dance
 		if(state.equals("d")){
@@ -99,6 +130,7 @@ public class RecordTable {
 		}
 		colNameField.put("I Have", "ihave");
 		colNameField.put("Tag", "tag");
+		return colNameField;
 	}
 
 	/**
@@ -110,7 +142,6 @@ public class RecordTable {
 	public void initializeTable() throws SQLException, MalformedURLException{
 		table.minWidthProperty().bind(Main.sceneWidthProp.subtract(75));
 		table.setEditable(true);
-		ResultSet set = db.searchTableByName(tableString, "", false);
 		
 		//set up columns
 		Iterator<String> i = colNameField.keySet().iterator();
@@ -118,8 +149,8 @@ public class RecordTable {
 			String colName = i.next();
 			String field = colNameField.get(colName);
 			if(colName.equals("I Have")) {
-				TableColumn<Record, CheckBox> col = new TableColumn<Record, CheckBox>(colName);
-				col.setCellValueFactory(new PropertyValueFactory<Record, CheckBox>(field));
+				TableColumn<Record, Boolean> col = new TableColumn<Record, Boolean>(colName);
+				col.setCellValueFactory(new PropertyValueFactory<Record, Boolean>(field));
 				table.getColumns().add(col);
 			}
 			else {
@@ -129,9 +160,20 @@ public class RecordTable {
 			}
 		}
 		
-		//add rows to table
-		table.setItems(populate(set));
+		//add rows to table, a page at a time
+		pages = new PagedRecords(db, sc.getStore(), tableString, key, colNameField.values(), table, new Runnable() {
+			@Override
+			public void run() {
+				setTableHeight();
+			}
+		});
+		pages.setStreaming(sc.isCollection());
+		progress = new ProgressBar();
+		progress.progressProperty().bind(pages.progressProperty());
+		progress.visibleProperty().bind(pages.runningProperty().and(table.visibleProperty()));
+		progress.prefWidthProperty().bind(table.widthProperty());
 		setTableHeight();
+		searchByName("", sc.isCollection());
 			
 		//CELL INFO
 		final TableColumn<Record, String> RecordCol = (TableColumn<Record, String>) table.getColumns().get(0);
@@ -159,20 +201,13 @@ public class RecordTable {
 		        	 public void handle(MouseEvent event) {
 		        		 if (event.getClickCount() > 1) {
 		        			 final Record r = (Record) ((cell.getTableRow()!=null) ? cell.getTableRow().getItem() : null);
-		        			 ResultSet set;
-		        			 try {
-		        				 if(cell.getItem()!=null) {
-		        					 set = db.getAllByIdFromTable(tableString, r.getId());
-		        					 cellInfo.set(set, tableString);
-		        					 cellInfo.setVis(true);
-		        					 sc.getReset().setVisible(false);
-		        				 }
-		        				 else cellInfo.set(null, tableString);
-		        			 } catch (SQLException e) {
-		        				 e.printStackTrace();
+		        			 if(cell.getItem()!=null && r!=null) {
+		        				 cellInfo.load(tableString, r.getId());
+		        				 cellInfo.setVis(true);
+		        				 sc.getReset().setVisible(false);
+		        				 table.setVisible(false);
+		        				 cellInfo.setVisible(true);
 		        			 }
-		        			 table.setVisible(false);
-		        			 cellInfo.setVisible(true);
 		        		 }
 		        	 }
 		         });
@@ -181,39 +216,50 @@ public class RecordTable {
 		});
 		
 		//I HAVE COLUMN
-		final TableColumn<Record, CheckBox> iHaveCol = (TableColumn<Record, CheckBox>) table.getColumns().get(table.getColumns().size()-2);
+		//the table only makes cells for the rows it shows, and each cell keeps its CheckBox for whichever row it shows
+		final TableColumn<Record, Boolean> iHaveCol = (TableColumn<Record, Boolean>) table.getColumns().get(table.getColumns().size()-2);
 
-		iHaveCol.setCellFactory(new Callback<TableColumn<Record, CheckBox>, TableCell<Record, CheckBox>>() {
+		iHaveCol.setCellFactory(new Callback<TableColumn<Record, Boolean>, TableCell<Record, Boolean>>() {
 			@Override
-			public TableCell<Record, CheckBox> call(TableColumn<Record, CheckBox> arg0) {
-				final TableCell<Record, CheckBox> cell = new TableCell<Record, CheckBox>() {
+			public TableCell<Record, Boolean> call(TableColumn<Record, Boolean> arg0) {
+				final CheckBox cBox = new CheckBox();
+				final TableCell<Record, Boolean> cell = new TableCell<Record, Boolean>() {
 					@Override
-					public void updateItem(CheckBox cBox, boolean empty) {
-						super.updateItem(cBox, empty);
-						if(empty){
-							setText(null);
+					public void updateItem(Boolean ihave, boolean empty) {
+						super.updateItem(ihave, empty);
+						setText(null);
+						if(empty || ihave == null){
 							setGraphic(null);
 						}
 						else{
-							final Record r = (Record) ((this.getTableRow()!=null) ? this.getTableRow().getItem() : null);
-							cBox.selectedProperty().addListener(new ChangeListener<Boolean>() {
-								public void changed(ObservableValue<? extends Boolean> ov,Boolean old_val, Boolean new_val) {
-									try {
-										if(r!=null && !old_val && new_val) db.iHave(tableString, r.getId());
-										else if(r!=null && old_val && !new_val) {
-											db.iDontHave(tableString, r.getId());
-											db.removeTag(tableString, r.getId());
-											refresh(tableString);
-										}
-									} catch (SQLException e) {
-										e.printStackTrace();
-									}
-								}
-							});
+							cBox.setSelected(ihave);
 							setGraphic(cBox);
 						}
 					}
 				};
+				//only a click changes the collection, not showing another row in the cell
+				cBox.setOnAction(new EventHandler<ActionEvent>() {
+					@Override
+					public void handle(ActionEvent event) {
+						final Record r = (Record) ((cell.getTableRow()!=null) ? cell.getTableRow().getItem() : null);
+						if(r == null) return;
+						boolean ihave = cBox.isSelected();
+						r.setIhave(ihave);
+						try {
+							//the dances of a publication or recordings of an album are marked with it
+							Collection<Integer> id = Collections.singleton(r.getId());
+							Map<String, Set<Integer>> marked;
+							if(ihave) marked = db.iHave(tableString, id);
+							else {
+								marked = db.iDontHave(tableString, id);
+								db.removeTag(tableString, id);
+							}
+							sc.getStore().setOwned(marked, ihave);
+						} catch (SQLException e) {
+							e.printStackTrace();
+						}
+					}
+				});
 				return cell;
 			}
 		});		
@@ -242,18 +288,71 @@ public class RecordTable {
             public void handle(TableColumn.CellEditEvent<Record, String> t) {
             	Record r = ((Record)t.getTableView().getItems().get(t.getTablePosition().getRow()));
             	try {
-            		if(!t.getNewValue().equals("")) db.addTag(tableString, r.getId(), t.getNewValue());
-            		else db.removeTag(tableString, r.getId());
-            		r.setTag(t.getNewValue());
+            		//the dances of a publication or recordings of an album are tagged with it
+            		Collection<Integer> id = Collections.singleton(r.getId());
+            		Map<String, Set<Integer>> tagged;
+            		if(!t.getNewValue().equals("")) tagged = db.addTag(tableString, id, t.getNewValue());
+            		else tagged = db.removeTag(tableString, id);
+            		sc.getStore().setTag(tagged, t.getNewValue());
 				} catch (SQLException e) {
 					e.printStackTrace();
 				}
             }
         });
 		indexCol.setStyle("-fx-alignment: CENTER;");
+
+		//SELECTION
+		table.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+		table.setContextMenu(selectionMenu());
 		table.setId("table");
 	}
 	
+	/**
+	 * creates the menu that marks every selected row at once, so many records can be added to
+	 * or taken out of the collection in one transaction
+	 * @return ContextMenu of the table
+	 */
+	private ContextMenu selectionMenu(){
+		MenuItem have = new MenuItem("I Have Selected");
+		have.setOnAction(new EventHandler<ActionEvent>() {
+			@Override
+			public void handle(ActionEvent event) {
+				try {
+					ArrayList<Integer> ids = getSelectedIds();
+					sc.getStore().setOwned(db.iHave(tableString, ids), true);
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		MenuItem dontHave = new MenuItem("I Don't Have Selected");
+		dontHave.setOnAction(new EventHandler<ActionEvent>() {
+			@Override
+			public void handle(ActionEvent event) {
+				try {
+					ArrayList<Integer> ids = getSelectedIds();
+					Map<String, Set<Integer>> removed = db.removeFromCollection(tableString, ids);
+					sc.getStore().setOwned(removed, false);
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		return new ContextMenu(have, dontHave);
+	}
+	
+	/**
+	 * returns the ids of the selected rows
+	 * @return ArrayList of the ids of the selected Records
+	 */
+	public ArrayList<Integer> getSelectedIds(){
+		ArrayList<Integer> ids = new ArrayList<Integer>();
+		for(Record r : table.getSelectionModel().getSelectedItems()){
+			if(r != null) ids.add(r.getId());
+		}
+		return ids;
+	}
+	
 	/**
 	 * takes the given database query result set and adds each result to the rows of the table as a Record
 	 * according to what table and what state.
@@ -262,11 +361,25 @@ public class RecordTable {
 	 * @throws SQLException
 	 */
 	public ObservableList<Record> populate(ResultSet set) throws SQLException{
-		ObservableList<Record> data = FXCollections.observableArrayList();
+		return populate(set, colNameField.values());
+	}
+	
+	/**
+	 * takes the given database query result set and makes each result into a Record with the given fields.
+	 * The columns of the fields are looked up once, on the first row, by a RecordMapper.
+	 * @param set ResultSet of the query to populate the database with
+	 * @param fields Collection of the field names of the Records, see columns
+	 * @return ObservableList of Records containing all Records to be added to the rows of the table
+	 * @throws SQLException
+	 */
+	public static ObservableList<Record> populate(ResultSet set, Collection<String> fields) throws SQLException{
+		ArrayList<Record> data = new ArrayList<Record>();
+		RecordMapper mapper = null;
 		while(set.next()){
-			data.add(new Record(set, colNameField.values()));
+			if(mapper == null) mapper = new RecordMapper(set, fields);
+			data.add(mapper.map(set));
 		}
-		return data;
+		return FXCollections.observableArrayList(data);
 	}
 	
 	/**
@@ -282,26 +395,44 @@ public class RecordTable {
 	}
 	
 	/**
-	 * sets the given list to be the rows of the table
-	 * @param data ObservableList of Records that should be the rows of the table
+	 * searches the table by name in the background and shows the first page of results once it is read
+	 * @param title String to search the names for
+	 * @param ihave if true only show what is marked as ihave
+	 * @return Future of the search
 	 */
-	public void setTableData(ObservableList<Record> data){
-		table.setItems(data);
-		setTableHeight();
+	public Future<?> searchByName(String title, boolean ihave){
+		return pages.search(title, null, ihave);
+	}
+	
+	/**
+	 * runs the advanced search in the background and shows the first page of results once it is read
+	 * @param title String to search the names for
+	 * @param map mapping of advanced search fields to their values
+	 * @param ihave if true only show what is marked as ihave
+	 * @return Future of the search
+	 */
+	public Future<?> advancedSearch(String title, Map<String, String> map, boolean ihave){
+		return pages.search(title, new LinkedHashMap<String, String>(map), ihave);
 	}
 	
 	/**
 	 * refreshes the table
 	 * @param table
-	 * @throws SQLException
 	 */
-	public void refresh(String table) throws SQLException{		
-		ResultSet set = null;
-		if(state.equals("d")) set = db.searchTableByName(table, sc.getDanceTitle(), sc.isCollection());
-		else if(state.equals("a")) set = db.searchTableByName(table, sc.getAlbumTitle(), sc.isCollection());
-		else if(state.equals("p")) set = db.searchTableByName(table, sc.getPublicationTitle(), sc.isCollection());
-		else if(state.equals("r")) set = db.searchTableByName(table, sc.getRecordingTitle(), sc.isCollection());
-		setTableData(populate(set));
+	public void refresh(String table){
+		if(state.equals("d")) searchByName(sc.getDanceTitle(), sc.isCollection());
+		else if(state.equals("a")) searchByName(sc.getAlbumTitle(), sc.isCollection());
+		else if(state.equals("p")) searchByName(sc.getPublicationTitle(), sc.isCollection());
+		else if(state.equals("r")) searchByName(sc.getRecordingTitle(), sc.isCollection());
+	}
+	
+	/**
+	 * returns the key the searches of this table are made with, later searches with the same key
+	 * replace earlier ones that have not finished yet
+	 * @return String key of this table
+	 */
+	public String getKey(){
+		return key;
 	}
 	
 	/**
@@ -312,6 +443,14 @@ public class RecordTable {
 		return table;
 	}
 	
+	/**
+	 * returns the ProgressBar shown while the rows of a search are streamed into the table
+	 * @return ProgressBar of this class
+	 */
+	public ProgressBar getProgress(){
+		return progress;
+	}
+	
 	/**
 	 * returns the VBox CellInfo of this class
 	 * @return VBox CellInfo of this class
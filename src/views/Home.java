@@ -7,13 +7,16 @@ import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.sql.SQLException;
 import database.Database;
+import database.DownloadProgress;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.geometry.Pos;
-import javafx.scene.control.Alert;
-import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
@@ -72,27 +75,71 @@ public class Home {
 		updateVBox.getChildren().add(date);
 		
 		//Update Button
-		Button updateBtn = new Button("UPDATE");
+		final Button updateBtn = new Button("UPDATE");
 		updateBtn.setId("update");
 		updateVBox.getChildren().add(updateBtn);
+		//Download progress and cancel, shown while an update runs
+		final ProgressBar progressBar = new ProgressBar(0);
+		final Button cancelBtn = new Button("Cancel");
+		final HBox progressHBox = new HBox(10, progressBar, cancelBtn);
+		progressHBox.setAlignment(Pos.CENTER);
+		progressHBox.setVisible(false);
+		progressHBox.setManaged(false);
+		updateVBox.getChildren().add(progressHBox);
 		final Label status = new Label();
 		status.setVisible(false);
 		updateVBox.getChildren().add(status);
 		this.getHomeVBox().getChildren().add(updateVBox);
+		cancelBtn.setOnAction(new EventHandler<ActionEvent>() {
+			@Override
+			public void handle(ActionEvent arg0) {
+				db.cancelUpdate();
+				cancelBtn.setDisable(true);
+			}
+		});
 		updateBtn.setOnAction(new EventHandler<ActionEvent>() {
 			@Override
 			public void handle(ActionEvent arg0) {
-				int result = db.update();
-				// Create an alert to notify the user of the update status
-				Alert alert = new Alert(AlertType.INFORMATION);
-				alert.setTitle("Status of Database Update");
-				alert.setHeaderText(null);
-				if(result == 1) status.setText("Update Successful!");
-				else if(result == 0) status.setText("Cannot Update. Please connect to Internet and try again.");
-				else if(result == -1) status.setText("An error has occured on update.");
-				else if(result == -2) status.setText("A fatal error has occured. Please restart Ghillie Tracks 2.0");
+				// Download and apply the update off the JavaFX thread so the app stays usable
+				final Task<Integer> update = new Task<Integer>() {
+					@Override
+					protected Integer call() {
+						return db.update(new DownloadProgress() {
+							@Override
+							public void progress(long done, long total) {
+								updateProgress(done, total);
+								if(total > 0 && done >= total) updateMessage("Applying update...");
+							}
+						});
+					}
+				};
+				progressBar.progressProperty().bind(update.progressProperty());
+				status.textProperty().bind(update.messageProperty());
 				status.setVisible(true);
-				date.setText("It has been 0 days since the database was last updated.");
+				updateBtn.setDisable(true);
+				cancelBtn.setDisable(false);
+				progressHBox.setVisible(true);
+				progressHBox.setManaged(true);
+				update.setOnSucceeded(new EventHandler<WorkerStateEvent>() {
+					@Override
+					public void handle(WorkerStateEvent arg0) {
+						int result = update.getValue();
+						status.textProperty().unbind();
+						progressBar.progressProperty().unbind();
+						progressHBox.setVisible(false);
+						progressHBox.setManaged(false);
+						updateBtn.setDisable(false);
+						if(result == 1) status.setText("Update Successful!");
+						else if(result == 0) status.setText("Cannot Update. Please connect to Internet and try again.");
+						else if(result == -1) status.setText("An error has occured on update.");
+						else if(result == -2) status.setText("A fatal error has occured. Please restart Ghillie Tracks 2.0");
+						else if(result == -3) status.setText("Update cancelled. The next update will continue the download.");
+						if(result == 1) date.setText("It has been 0 days since the database was last updated.");
+					}
+				});
+				Thread thread = new Thread(update, "database-update");
+				thread.setDaemon(true);
+				thread.start();
 			}
 		});
 	}
@@ -1,9 +1,12 @@
 package views;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.MalformedURLException;
 import java.sql.SQLException;
 
 import database.Database;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyDoubleProperty;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
@@ -22,43 +25,53 @@ import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
+import tables.RecordStore;
 
 /**
  * Main runs the entire application and holds information regarding the three main screens
  * which are represented as VBoxes for the classes Home and SearchDataView (which represent
  * the home screen, search screen, and collections screen).
  * 
+ * Only the home screen is set up before the window is shown. The search and collections screens are
+ * set up the first time they are opened, or while the home screen is shown if they are prewarmed, 
+ * which they are unless the application is run with -Dprewarm=false. The time it took to show the 
+ * window is printed once it is shown.
+ * 
+ * Both screens show the Records of one RecordStore, so a row marked in one is marked in the other.
+ * 
  */
 public class Main extends Application {
 	
 	private GridPane grid;
 	private int gridY;
-	private VBox home, search, collection;
+	private VBox home;
 	public SearchDataView s, c;
 	private ScrollPane homeSP, searchSP, collectionSP;
 	private Scene scene;
 	private Database db;
+	private RecordStore store;
+	//when the application was constructed, in ms
+	private long launched;
 	
 	public static ReadOnlyDoubleProperty sceneWidthProp;
 	
 	/**
-	 * constructor for Main initializes Grid, Home, Search, and Collection 
-	 * and sets this classes VBoxes respectively
+	 * constructor for Main initializes Grid and Home and sets this classes VBoxes respectively,
+	 * Search and Collection are set up once they are needed
 	 * @throws SQLException
 	 * @throws IOException 
 	 */
 	public Main() throws SQLException, IOException {
+		launched = System.currentTimeMillis();
 		db = new Database();
+		store = new RecordStore();
 		grid = new GridPane();
 		gridY = 0;
 		scene = new Scene(grid);
 		sceneWidthProp = scene.widthProperty();
 		Home h = new Home(db);
 		home = h.getHomeVBox();
-		s = new SearchDataView(db, this, false);
-		search = s.getVBox();
-		c = new SearchDataView(db, this, true);
-		collection = c.getVBox();
 		homeSP = new ScrollPane();
 		searchSP = new ScrollPane();
 		collectionSP = new ScrollPane();
@@ -77,15 +90,83 @@ public class Main extends Application {
 		setUpHeader();
 		navigationButtons();
 		scrollPaneVBox(homeSP, home, true);
-		scrollPaneVBox(searchSP, search, false);
-		scrollPaneVBox(collectionSP, collection, false);
+		scrollPaneVBox(searchSP, null, false);
+		scrollPaneVBox(collectionSP, null, false);
 		
 		stg.getIcons().add(new Image(Main.class.getResourceAsStream("ghillie.png")));
 
 		stg.setScene(scene);
 		scene.getStylesheets().add(Main.class.getResource("style.css").toExternalForm());
 		stg.setMaximized(true);
+		stg.setOnShown(new EventHandler<WindowEvent>() {
+			@Override
+			public void handle(WindowEvent arg0) {
+				long shown = System.currentTimeMillis();
+				System.out.println("First window shown in " + (shown - launched) + " ms, " 
+						+ (shown - ManagementFactory.getRuntimeMXBean().getStartTime()) + " ms after the JVM started");
+			}
+		});
 		stg.show();
+		if(!"false".equals(System.getProperty("prewarm"))) prewarm();
+	}
+	
+	/**
+	 * Sets up the search screen and then the collections screen on the application thread 
+	 * while the home screen is shown, one at a time so the window stays responsive in between.
+	 */
+	public void prewarm(){
+		Platform.runLater(new Runnable() {
+			@Override
+			public void run() {
+				getSearch();
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						getCollection();
+					}
+				});
+			}
+		});
+	}
+	
+	/**
+	 * returns the search screen, setting it up the first time
+	 * @return SearchDataView of the search screen
+	 */
+	public SearchDataView getSearch(){
+		if(s == null) {
+			s = screen(false);
+			searchSP.setContent(s.getVBox());
+		}
+		return s;
+	}
+	
+	/**
+	 * returns the collections screen, setting it up the first time
+	 * @return SearchDataView of the collections screen
+	 */
+	public SearchDataView getCollection(){
+		if(c == null) {
+			c = screen(true);
+			collectionSP.setContent(c.getVBox());
+		}
+		return c;
+	}
+	
+	/**
+	 * returns the RecordStore the Records of both screens are shared through
+	 * @return RecordStore of the application
+	 */
+	public RecordStore getStore(){
+		return store;
+	}
+	
+	private SearchDataView screen(boolean isCollection){
+		try {
+			return new SearchDataView(db, this, isCollection);
+		} catch (SQLException | MalformedURLException e) {
+			throw new IllegalStateException("Could not set up the " + (isCollection ? "collections" : "search") + " screen", e);
+		}
 	}
 	
 	/**
@@ -154,6 +235,7 @@ public class Main extends Application {
 		searchBtn.setOnAction(new EventHandler<ActionEvent>() {
 			@Override
 			public void handle(ActionEvent arg0) {				
+				getSearch();
 				homeSP.setVisible(false);
 				searchSP.setVisible(true);
 				collectionSP.setVisible(false);
@@ -162,6 +244,7 @@ public class Main extends Application {
 		collectionBtn.setOnAction(new EventHandler<ActionEvent>() {
 			@Override
 			public void handle(ActionEvent arg0) {
+				getCollection();
 				homeSP.setVisible(false);
 				searchSP.setVisible(false);
 				collectionSP.setVisible(true);
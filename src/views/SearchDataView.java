@@ -1,7 +1,6 @@
 package views;
 
 import java.net.MalformedURLException;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import database.Database;
@@ -9,9 +8,13 @@ import filters.AlbumFilters;
 import filters.DanceFilters;
 import filters.PublicationFilters;
 import filters.RecordingFilters;
+import javafx.animation.PauseTransition;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.scene.control.Button;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.RadioButton;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
@@ -23,6 +26,8 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.VBox;
+import javafx.util.Duration;
+import tables.RecordStore;
 import tables.RecordTable;
 
 /**
@@ -32,6 +37,11 @@ import tables.RecordTable;
  * 
  * The navigation buttons of Dance, Publication, Recording, or Album determine the state's changing to 
  * "d", "p", "r", or "a" respectively.
+ * 
+ * The table, cell info and advanced search filters of a state are only set up the first time they are 
+ * shown, by their getters, so a screen starts with the Dance table alone and reads nothing else.
+ * 
+ * The search bar searches as one types, once no key has been typed for DEBOUNCE ms, see setDebounce.
  * @author lisaketcham
  *
  */
@@ -43,6 +53,8 @@ public class SearchDataView {
 	private RecordingFilters rf;
 	private AlbumFilters af;
 	private HBox searchBox;
+	//the filters and tables set up so far, in the order they were first shown
+	private VBox filtersBox, tablesBox;
 	private Database db;
 	public Main m;
 	private RecordTable danceTable, publicationTable, recordingTable, albumTable;
@@ -51,6 +63,10 @@ public class SearchDataView {
 	private Button export, reset;
 	private String state, danceTitle, publicationTitle, recordingTitle, albumTitle;
 	private boolean isCollection;
+	//searches once the typing stops
+	private PauseTransition typing;
+	
+	public static final long DEBOUNCE = Long.getLong("search.debounce", 150);
 	
 	public SearchDataView(Database db, Main m, boolean isCollection) throws MalformedURLException, SQLException{
 		this.m = m;
@@ -74,7 +90,7 @@ public class SearchDataView {
 	
 	/**
 	 * sets up the search bar and search button, and will search on both
-	 * a button press and 'Enter' or 'Return' key event
+	 * a button press and 'Enter' or 'Return' key event, as well as while typing
 	 */
 	@SuppressWarnings("static-access")
 	public void setUpSearchBar(){
@@ -101,10 +117,31 @@ public class SearchDataView {
 
 		this.vBox.getChildren().add(searchBox);
 		
+		//Typing, searches once no key has been typed for a while unless the title is searched already
+		typing = new PauseTransition(Duration.millis(DEBOUNCE));
+		typing.setOnFinished(new EventHandler<ActionEvent>() {
+			@Override
+			public void handle(ActionEvent arg0) {
+				if(search.getText().equals(getTitle())) return;
+				try {
+					searchText(search.getText());
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		search.textProperty().addListener(new ChangeListener<String>() {
+			@Override
+			public void changed(ObservableValue<? extends String> observable, String oldValue, String newValue) {
+				typing.playFromStart();
+			}
+		});
+		
 		//Go Button Event
 		searchGoBtn.setOnAction(new EventHandler<ActionEvent>() {
 			@Override
 			public void handle(ActionEvent arg0) {
+				typing.stop();
 				try {
 					searchText(search.getText());
 				} catch (SQLException e) {
@@ -116,6 +153,7 @@ public class SearchDataView {
 		searchBox.addEventHandler(KeyEvent.KEY_PRESSED, new EventHandler<KeyEvent>() {
 			public void handle(KeyEvent arg0){
 				if(arg0.getCode() == KeyCode.ENTER){
+					typing.stop();
 					try {
 						searchText(search.getText());
 					} catch (SQLException e) {
@@ -130,43 +168,22 @@ public class SearchDataView {
 			@Override
 			public void handle(ActionEvent arg0) {
 				search.setText("");
-				ResultSet set;
 				//reset table
 				if(state.equals("d")) {
 					danceTitle = "";
-					try {
-						set = db.searchTableByName("dance", "", isCollection);
-						danceTable.setTableData(danceTable.populate(set));
-					} catch (SQLException e) {
-						e.printStackTrace();
-					}
+					getDanceTable().searchByName("", isCollection);
 				}
 				else if(state.equals("p")) {
 					publicationTitle = "";
-					try {
-						set = db.searchTableByName("publication", "", isCollection);
-						publicationTable.setTableData(publicationTable.populate(set));
-					} catch (SQLException e) {
-						e.printStackTrace();
-					}
+					getPublicationTable().searchByName("", isCollection);
 				}
 				else if(state.equals("r")) {
 					recordingTitle = "";
-					try {
-						set = db.searchTableByName("recording", "", isCollection);
-						recordingTable.setTableData(recordingTable.populate(set));
-					} catch (SQLException e) {
-						e.printStackTrace();
-					}
+					getRecordingTable().searchByName("", isCollection);
 				}
 				else if(state.equals("a")) {
 					albumTitle = "";
-					try {
-						set = db.searchTableByName("album", "", isCollection);
-						albumTable.setTableData(albumTable.populate(set));
-					} catch (SQLException e) {
-						e.printStackTrace();
-					}
+					getAlbumTable().searchByName("", isCollection);
 				}
 				
 				//visibility? make it disappear on cell info
@@ -174,43 +191,57 @@ public class SearchDataView {
 		});
 	}
 	
+	/**
+	 * sets how long after the last key typed the search bar searches
+	 * @param millis long ms to wait, 0 to search on every key
+	 */
+	public void setDebounce(long millis) {
+		typing.setDuration(Duration.millis(millis));
+	}
+	
+	/**
+	 * returns the title searched for in the table of the current state
+	 * @return String title
+	 */
+	private String getTitle() {
+		if(state.equals("d")) return danceTitle;
+		else if(state.equals("p")) return publicationTitle;
+		else if(state.equals("r")) return recordingTitle;
+		else return albumTitle;
+	}
+	
 	public void searchText(String title) throws SQLException {
-		ResultSet set;
 		if(state.equals("d")) {
 			danceTitle = title;
-			set = db.searchTableByName("dance",title, isCollection);
-			danceTable.setTableData(danceTable.populate(set));
+			getDanceTable().searchByName(title, isCollection);
 			
-			danceTable.getTable().setVisible(true);
-			danceTable.getCellInfo().setVisible(false);
-			danceTable.getCellInfo().setVis(false);
+			getDanceTable().getTable().setVisible(true);
+			getDanceTable().getCellInfo().setVisible(false);
+			getDanceTable().getCellInfo().setVis(false);
 		}
 		else if(state.equals("p")) {
 			publicationTitle = title;
-			set = db.searchTableByName("publication",title, isCollection);
-			publicationTable.setTableData(publicationTable.populate(set));
+			getPublicationTable().searchByName(title, isCollection);
 			
-			publicationTable.getTable().setVisible(true);
-			publicationTable.getCellInfo().setVisible(false);
-			publicationTable.getCellInfo().setVis(false);
+			getPublicationTable().getTable().setVisible(true);
+			getPublicationTable().getCellInfo().setVisible(false);
+			getPublicationTable().getCellInfo().setVis(false);
 		}
 		else if(state.equals("r")) {
 			recordingTitle = title;
-			set = db.searchTableByName("recording",title, isCollection);
-			recordingTable.setTableData(recordingTable.populate(set));
+			getRecordingTable().searchByName(title, isCollection);
 			
-			recordingTable.getTable().setVisible(true);
-			recordingTable.getCellInfo().setVisible(false);
-			recordingTable.getCellInfo().setVis(false);
+			getRecordingTable().getTable().setVisible(true);
+			getRecordingTable().getCellInfo().setVisible(false);
+			getRecordingTable().getCellInfo().setVis(false);
 		}
 		else if(state.equals("a")) {
 			albumTitle = title;
-			set = db.searchTableByName("album",title, isCollection);
-			albumTable.setTableData(albumTable.populate(set));
+			getAlbumTable().searchByName(title, isCollection);
 			
-			albumTable.getTable().setVisible(true);
-			albumTable.getCellInfo().setVisible(false);
-			albumTable.getCellInfo().setVis(false);
+			getAlbumTable().getTable().setVisible(true);
+			getAlbumTable().getCellInfo().setVisible(false);
+			getAlbumTable().getCellInfo().setVis(false);
 		}
 	}
 	
@@ -267,16 +298,16 @@ public class SearchDataView {
 					searchBox.setVisible(true);
 					advSF.setSelected(false);
 					search.clear();
-					if(!danceTable.getCellInfo().isVis()) reset.setVisible(true);
+					if(!getDanceTable().getCellInfo().isVis()) reset.setVisible(true);
 					else reset.setVisible(false);
 				}
 				state = "d";
 				reset.setText("Reset/Refresh Dance Table");
 				export.setVisible(false);
-				searchFiltersVisibility(danceFiltersVBox.isVisible(), false, false, false);
+				searchFiltersVisibility(isVisible(danceFiltersVBox), false, false, false);
 				tableVisibility(true, false, false, false);
-				cellInfoVisibility(danceTable.getCellInfo().isVis(), false, false, false);
-				if(danceTable.getCellInfo().isVis()) danceTable.getTable().setVisible(false);
+				cellInfoVisibility(getDanceTable().getCellInfo().isVis(), false, false, false);
+				if(getDanceTable().getCellInfo().isVis()) danceTable.getTable().setVisible(false);
 				if (danceTitle.equals("")) search.setPromptText("Search by Dance Title");
 				else search.setText(danceTitle);
 			}
@@ -291,16 +322,16 @@ public class SearchDataView {
 					searchBox.setVisible(true);
 					advSF.setSelected(false);
 					search.clear();
-					if(!publicationTable.getCellInfo().isVis()) reset.setVisible(true);
+					if(!getPublicationTable().getCellInfo().isVis()) reset.setVisible(true);
 					else reset.setVisible(false);
 				}
 				state = "p";
 				reset.setText("Reset/Refresh Publication Table");
 				if(isCollection){export.setVisible(true);}
-				searchFiltersVisibility(false, publicationFiltersVBox.isVisible(), false, false);
+				searchFiltersVisibility(false, isVisible(publicationFiltersVBox), false, false);
 				tableVisibility(false, true, false, false);
-				cellInfoVisibility(false, publicationTable.getCellInfo().isVis(), false, false);
-				if(publicationTable.getCellInfo().isVis()) publicationTable.getTable().setVisible(false);
+				cellInfoVisibility(false, getPublicationTable().getCellInfo().isVis(), false, false);
+				if(getPublicationTable().getCellInfo().isVis()) publicationTable.getTable().setVisible(false);
 				if (publicationTitle.equals("")) search.setPromptText("Search by Publication Title");
 				else search.setText(publicationTitle);
 			}
@@ -315,16 +346,16 @@ public class SearchDataView {
 					searchBox.setVisible(true);
 					advSF.setSelected(false);
 					search.clear();
-					if(!recordingTable.getCellInfo().isVis()) reset.setVisible(true);
+					if(!getRecordingTable().getCellInfo().isVis()) reset.setVisible(true);
 					else reset.setVisible(false);
 				}
 				state = "r";
 				reset.setText("Reset/Refresh Recording Table");
 				export.setVisible(false);
-				searchFiltersVisibility(false, false, recordingFiltersVBox.isVisible(), false);
+				searchFiltersVisibility(false, false, isVisible(recordingFiltersVBox), false);
 				tableVisibility(false, false, true, false);
-				cellInfoVisibility(false, false, recordingTable.getCellInfo().isVis(), false);
-				if(recordingTable.getCellInfo().isVis()) recordingTable.getTable().setVisible(false);
+				cellInfoVisibility(false, false, getRecordingTable().getCellInfo().isVis(), false);
+				if(getRecordingTable().getCellInfo().isVis()) recordingTable.getTable().setVisible(false);
 				if (recordingTitle.equals("")) search.setPromptText("Search by Recording Title");
 				else search.setText(recordingTitle);
 			}
@@ -339,50 +370,66 @@ public class SearchDataView {
 					searchBox.setVisible(true);
 					advSF.setSelected(false);
 					search.clear();
-					if(!albumTable.getCellInfo().isVis()) reset.setVisible(true);
+					if(!getAlbumTable().getCellInfo().isVis()) reset.setVisible(true);
 					else reset.setVisible(false);
 				}
 				state = "a";
 				reset.setText("Reset/Refresh Album Table");
 				if(isCollection){export.setVisible(true);}
-				searchFiltersVisibility(false, false, false, albumFiltersVBox.isVisible());
+				searchFiltersVisibility(false, false, false, isVisible(albumFiltersVBox));
 				tableVisibility(false, false, false, true);
-				cellInfoVisibility(false, false, false, albumTable.getCellInfo().isVis());
-				if(albumTable.getCellInfo().isVis()) albumTable.getTable().setVisible(false);
+				cellInfoVisibility(false, false, false, getAlbumTable().getCellInfo().isVis());
+				if(getAlbumTable().getCellInfo().isVis()) albumTable.getTable().setVisible(false);
 				if (albumTitle.equals("")) search.setPromptText("Search by Album Title");
 				else search.setText(albumTitle);
 			}
 		});
 	}
 	
+	/**
+	 * based on the given visibilities, sets the visibility of the advanced search filters of each state.
+	 * filters that are not set up yet are only set up if they are to be shown.
+	 * @param d boolean for dance filters visibility
+	 * @param p boolean for publication filters visibility
+	 * @param r boolean for recording filters visibility
+	 * @param a boolean for album filters visibility
+	 */
 	public void searchFiltersVisibility(boolean d, boolean p, boolean r, boolean a){
-		danceFiltersVBox.setVisible(d);
-		publicationFiltersVBox.setVisible(p);
-		recordingFiltersVBox.setVisible(r);
-		albumFiltersVBox.setVisible(a);
+		if(d || danceFiltersVBox != null) getDanceFiltersVBox().setVisible(d);
+		if(p || publicationFiltersVBox != null) getPublicationFiltersVBox().setVisible(p);
+		if(r || recordingFiltersVBox != null) getRecordingFiltersVBox().setVisible(r);
+		if(a || albumFiltersVBox != null) getAlbumFiltersVBox().setVisible(a);
+	}
+	
+	/**
+	 * whether filters that may not be set up yet are shown
+	 */
+	private static boolean isVisible(VBox filters){
+		return filters != null && filters.isVisible();
 	}
 
 	/**
 	 * based on the given table visibilities, sets the visibility of each table
 	 * and hides or shows cellInfo of each table depending on the state. - *no cell info
+	 * tables that are not set up yet are only set up if they are to be shown.
 	 * @param d boolean for danceTable visibility
 	 * @param p boolean for publicationTable visibility
 	 * @param r boolean for recordingTable visibility
 	 * @param a boolean for albumTable visibility
 	 */
 	public void tableVisibility(boolean d, boolean p, boolean r, boolean a){
-		danceTable.getTable().setVisible(d);
-		publicationTable.getTable().setVisible(p);
-		recordingTable.getTable().setVisible(r);
-		albumTable.getTable().setVisible(a);
+		if(d || danceTable != null) getDanceTable().getTable().setVisible(d);
+		if(p || publicationTable != null) getPublicationTable().getTable().setVisible(p);
+		if(r || recordingTable != null) getRecordingTable().getTable().setVisible(r);
+		if(a || albumTable != null) getAlbumTable().getTable().setVisible(a);
 	}
 	
 	//javadoc
 	public void cellInfoVisibility(boolean d, boolean p, boolean r, boolean a){
-		danceTable.getCellInfo().setVisible(d);
-		publicationTable.getCellInfo().setVisible(p);
-		recordingTable.getCellInfo().setVisible(r);
-		albumTable.getCellInfo().setVisible(a);
+		if(d || danceTable != null) getDanceTable().getCellInfo().setVisible(d);
+		if(p || publicationTable != null) getPublicationTable().getCellInfo().setVisible(p);
+		if(r || recordingTable != null) getRecordingTable().getCellInfo().setVisible(r);
+		if(a || albumTable != null) getAlbumTable().getCellInfo().setVisible(a);
 	}
 	
 	/**
@@ -403,103 +450,115 @@ public class SearchDataView {
 				if(state.equals("d")){
 					if(advSF.isSelected()) advSF.setText("Hide Advanced Search Options For Dance");
 					else advSF.setText("Show Advanced Search Options For Dance");
-					searchFiltersVisibility(!danceFiltersVBox.isVisible(), false, false, false);
+					searchFiltersVisibility(!isVisible(danceFiltersVBox), false, false, false);
 					df.setTitleField(danceTitle);
 				}
 				else if(state.equals("p")){
 					if(advSF.isSelected()) advSF.setText("Hide Advanced Search Options For Publication");
 					else advSF.setText("Show Advanced Search Options For Publication");
-					searchFiltersVisibility(false, !publicationFiltersVBox.isVisible(), false, false);
+					searchFiltersVisibility(false, !isVisible(publicationFiltersVBox), false, false);
 					pf.setTitleField(publicationTitle);
 				}
 				else if(state.equals("r")){
 					if(advSF.isSelected()) advSF.setText("Hide Advanced Search Options For Recording");
 					else advSF.setText("Show Advanced Search Options For Recording");
-					searchFiltersVisibility(false, false, !recordingFiltersVBox.isVisible(), false);
+					searchFiltersVisibility(false, false, !isVisible(recordingFiltersVBox), false);
 					rf.setTitleField(recordingTitle);
 				}
 				else{
 					if(advSF.isSelected()) advSF.setText("Hide Advanced Search Options For Album");
 					else advSF.setText("Show Advanced Search Options For Album");
-					searchFiltersVisibility(false, false, false, !albumFiltersVBox.isVisible());
+					searchFiltersVisibility(false, false, false, !isVisible(albumFiltersVBox));
 					af.setTitleField(albumTitle);
 				}
 			}
 		});
 	}
 	
-	public void searchFilters() throws SQLException, MalformedURLException {
-		df = new DanceFilters(db,this);
-		danceFiltersVBox = df.getFiltersVBox();
-		this.vBox.getChildren().add(danceFiltersVBox);
-		danceFiltersVBox.managedProperty().bind(danceFiltersVBox.visibleProperty());
-		danceFiltersVBox.setVisible(false);
-
-		rf = new RecordingFilters(db,this);
-		recordingFiltersVBox = rf.getFiltersVBox();
-		this.vBox.getChildren().add(recordingFiltersVBox);
-		recordingFiltersVBox.managedProperty().bind(recordingFiltersVBox.visibleProperty());
-		recordingFiltersVBox.setVisible(false);
-
-		af = new AlbumFilters(db,this);
-		albumFiltersVBox = af.getFiltersVBox();
-		this.vBox.getChildren().add(albumFiltersVBox);
-		albumFiltersVBox.managedProperty().bind(albumFiltersVBox.visibleProperty());
-		albumFiltersVBox.setVisible(false);
-
-		pf = new PublicationFilters(db,this);
-		publicationFiltersVBox = pf.getFiltersVBox();
-		this.vBox.getChildren().add(publicationFiltersVBox);
-		publicationFiltersVBox.managedProperty().bind(publicationFiltersVBox.visibleProperty());
-		publicationFiltersVBox.setVisible(false);
+	/**
+	 * adds the box the advanced search filters go in once they are first shown, see getDanceFiltersVBox, 
+	 * and searches with the filters of the state on 'Enter'
+	 */
+	public void searchFilters() {
+		filtersBox = new VBox(10);
+		this.vBox.getChildren().add(filtersBox);
 		
 		vBox.addEventHandler(KeyEvent.KEY_PRESSED, new EventHandler<KeyEvent>() {
 			public void handle(KeyEvent arg0){
 				if(arg0.getCode() == KeyCode.ENTER){
-					if(state.equals("d") && df.getSearchBool()) df.callQuery();
-					else if(state.equals("r") && rf.getSearchBool()) rf.callQuery();
-					else if(state.equals("a") && af.getSearchBool()) af.callQuery();
-					else if(state.equals("p") && pf.getSearchBool()) pf.callQuery();
+					if(state.equals("d") && df != null && df.getSearchBool()) df.callQuery();
+					else if(state.equals("r") && rf != null && rf.getSearchBool()) rf.callQuery();
+					else if(state.equals("a") && af != null && af.getSearchBool()) af.callQuery();
+					else if(state.equals("p") && pf != null && pf.getSearchBool()) pf.callQuery();
 				}
 			}
 		});
 	}
 	
-	public void setUpTables() throws MalformedURLException, SQLException{
-		danceTable = new RecordTable(db, this, "dance", "d");
-		setUpTable(danceTable.getTable(), danceTable.getCellInfo());
-		albumTable = new RecordTable(db, this, "album", "a");
-		setUpTable(albumTable.getTable(), albumTable.getCellInfo());
-		recordingTable = new RecordTable(db, this, "recording", "r");
-		setUpTable(recordingTable.getTable(), recordingTable.getCellInfo());
-		publicationTable = new RecordTable(db, this, "publication", "p");
-		setUpTable(publicationTable.getTable(), publicationTable.getCellInfo());
-		if(isCollection) showIHave();
+	/**
+	 * adds the given filters to the box of filters, hidden until their state's advanced search is shown
+	 * @param filters VBox of the filters
+	 * @return the VBox of the filters
+	 */
+	private VBox setUpFilters(VBox filters){
+		filtersBox.getChildren().add(filters);
+		filters.managedProperty().bind(filters.visibleProperty());
+		filters.setVisible(false);
+		return filters;
+	}
+	
+	/**
+	 * adds the box the tables go in once they are first shown and shows the Dance table
+	 */
+	public void setUpTables() {
+		tablesBox = new VBox(10);
+		this.vBox.getChildren().add(tablesBox);
 		tableVisibility(true, false, false, false);
 	}
+	
+	/**
+	 * sets up the RecordTable of a state and adds it to the box of tables, shown if it is of the current state.
+	 * a table of the Collection reads only what is marked as ihave from the start.
+	 * @param tableString String of the table name of the schema
+	 * @param state String "d", "p", "r" or "a"
+	 * @return the RecordTable
+	 */
+	private RecordTable newTable(String tableString, String state){
+		RecordTable rt;
+		try {
+			rt = new RecordTable(db, this, tableString, state);
+		} catch (SQLException | MalformedURLException e) {
+			throw new IllegalStateException("Could not set up the " + tableString + " table", e);
+		}
+		rt.getTable().setVisible(state.equals(this.state));
+		setUpTable(rt.getTable(), rt.getProgress(), rt.getCellInfo());
+		return rt;
+	}
 
 	/**
-	 * adds the given table and cellInfo to this class' VBox and binds when they are shown or 
+	 * adds the given table, progress bar and cellInfo to this class' VBox and binds when they are shown or 
 	 * hidden to their visible property in order to collapse respective screens.
 	 * @param table TableView of the passed in table
+	 * @param progress ProgressBar shown while the rows of the passed in table are read
 	 * @param cellInfo VBox representing the information from a single cell of the passed in table
 	 */
-	public void setUpTable(TableView<?> table, VBox cellInfo){
-		this.vBox.getChildren().add(table);
+	public void setUpTable(TableView<?> table, ProgressBar progress, VBox cellInfo){
+		tablesBox.getChildren().add(table);
 		table.managedProperty().bind(table.visibleProperty());
-		this.vBox.getChildren().add(cellInfo);
+		tablesBox.getChildren().add(progress);
+		progress.managedProperty().bind(progress.visibleProperty());
+		tablesBox.getChildren().add(cellInfo);
 		cellInfo.managedProperty().bind(cellInfo.visibleProperty());
 	}
 	
+	/**
+	 * shows only what is marked as ihave in the tables set up so far, the others do once they are set up
+	 */
 	public void showIHave() throws SQLException{
-		ResultSet set = db.searchTableByName("dance", "", true);
-		danceTable.setTableData(danceTable.populate(set));
-		set = db.searchTableByName("publication", "", true);
-		publicationTable.setTableData(publicationTable.populate(set));
-		set = db.searchTableByName("album", "", true);
-		albumTable.setTableData(albumTable.populate(set));
-		set = db.searchTableByName("recording", "", true);
-		recordingTable.setTableData(recordingTable.populate(set));
+		if(danceTable != null) danceTable.searchByName("", true);
+		if(publicationTable != null) publicationTable.searchByName("", true);
+		if(albumTable != null) albumTable.searchByName("", true);
+		if(recordingTable != null) recordingTable.searchByName("", true);
 	}
 	
 	public void exportButton(){
@@ -528,7 +587,18 @@ public class SearchDataView {
 	}
 
 
-	public VBox getDanceFiltersVBox() {return danceFiltersVBox;}
+	public VBox getDanceFiltersVBox() {
+		if(df == null) {
+			try {
+				df = new DanceFilters(db, this);
+			} catch (SQLException | MalformedURLException e) {
+				throw new IllegalStateException("Could not set up the dance filters", e);
+			}
+			danceFiltersVBox = setUpFilters(df.getFiltersVBox());
+		}
+		return danceFiltersVBox;
+	}
+	
 	public String getDanceTitle() {
 		return danceTitle;
 	}
@@ -569,14 +639,65 @@ public class SearchDataView {
 		return reset;
 	}
 	
-	public VBox getRecordingFiltersVBox() {return recordingFiltersVBox;}
-	public VBox getAlbumFiltersVBox() {return albumFiltersVBox;}
-	public VBox getPublicationFiltersVBox() {return publicationFiltersVBox;}
+	public VBox getRecordingFiltersVBox() {
+		if(rf == null) {
+			try {
+				rf = new RecordingFilters(db, this);
+			} catch (SQLException | MalformedURLException e) {
+				throw new IllegalStateException("Could not set up the recording filters", e);
+			}
+			recordingFiltersVBox = setUpFilters(rf.getFiltersVBox());
+		}
+		return recordingFiltersVBox;
+	}
+	
+	public VBox getAlbumFiltersVBox() {
+		if(af == null) {
+			try {
+				af = new AlbumFilters(db, this);
+			} catch (SQLException | MalformedURLException e) {
+				throw new IllegalStateException("Could not set up the album filters", e);
+			}
+			albumFiltersVBox = setUpFilters(af.getFiltersVBox());
+		}
+		return albumFiltersVBox;
+	}
+	
+	public VBox getPublicationFiltersVBox() {
+		if(pf == null) {
+			try {
+				pf = new PublicationFilters(db, this);
+			} catch (SQLException | MalformedURLException e) {
+				throw new IllegalStateException("Could not set up the publication filters", e);
+			}
+			publicationFiltersVBox = setUpFilters(pf.getFiltersVBox());
+		}
+		return publicationFiltersVBox;
+	}
+	
 	public Database getDb() {return db;}
-	public RecordTable getDanceTable() {return danceTable;}
-	public RecordTable getPublicationTable() {return publicationTable;}
-	public RecordTable getRecordingTable() {return recordingTable;}
-	public RecordTable getAlbumTable() {return albumTable;}
+	public RecordStore getStore() {return m.getStore();}
+	
+	public RecordTable getDanceTable() {
+		if(danceTable == null) danceTable = newTable("dance", "d");
+		return danceTable;
+	}
+	
+	public RecordTable getPublicationTable() {
+		if(publicationTable == null) publicationTable = newTable("publication", "p");
+		return publicationTable;
+	}
+	
+	public RecordTable getRecordingTable() {
+		if(recordingTable == null) recordingTable = newTable("recording", "r");
+		return recordingTable;
+	}
+	
+	public RecordTable getAlbumTable() {
+		if(albumTable == null) albumTable = newTable("album", "a");
+		return albumTable;
+	}
+	
 	public TextField getSearch() {return search;}
 	public RadioButton getAdvSF() {return advSF;}
 	public String getState() {return state;}	